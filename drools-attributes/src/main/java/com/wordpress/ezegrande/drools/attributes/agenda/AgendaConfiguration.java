@@ -0,0 +1,54 @@
+package com.wordpress.ezegrande.drools.attributes.agenda;
+
+import org.kie.api.KieBaseConfiguration;
+
+/**
+ * Agenda related options used to build the KieBase of the agenda scalability
+ * harness. The rule engine can be:
+ * <ul>
+ * <li>PHREAK (default): rules are evaluated lazily, only when their agenda
+ * group gets the focus and the agenda is fired
+ * <li>RETEOO: every rule is evaluated eagerly when a fact is inserted. Note
+ * that drools-reteoo.jar must be on the classpath, otherwise Drools switches to
+ * PHREAK
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class AgendaConfiguration {
+    public static final String PHREAK = "phreak";
+    public static final String RETEOO = "reteoo";
+
+    private static final String RULE_ENGINE_PROPERTY = "drools.ruleEngine";
+
+    private String ruleEngine = PHREAK;
+
+    public AgendaConfiguration() {
+        // Default configuration: lazy (phreak) evaluation
+    }
+
+    public AgendaConfiguration(String ruleEngine) {
+        this.ruleEngine = ruleEngine;
+    }
+
+    public String getRuleEngine() {
+        return ruleEngine;
+    }
+
+    public void setRuleEngine(String ruleEngine) {
+        this.ruleEngine = ruleEngine;
+    }
+
+    /**
+     * Applies this configuration to the given KieBaseConfiguration
+     *
+     * @param kbconf
+     */
+    public void applyTo(KieBaseConfiguration kbconf) {
+        kbconf.setProperty(RULE_ENGINE_PROPERTY, ruleEngine);
+    }
+
+    public String toString() {
+        return "Agenda Configuration [Rule Engine: " + ruleEngine + "]";
+    }
+}
@@ -0,0 +1,139 @@
+package com.wordpress.ezegrande.drools.attributes.agenda;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates a DRL with a big number of prioritized rules, in the same way than
+ * salience.drl but at scale. Each generated rule matches every Person in the
+ * Working Memory, so the number of activations is rules * persons.
+ * <ul>
+ * <li>Salience: rules are spread over the given number of salience levels
+ * <li>Agenda group: rules are spread over the given number of agenda groups
+ * (none means that all rules belong to the MAIN agenda group)
+ * <li>Activation group: rules are spread over the given number of activation
+ * groups (none means that rules do not belong to any activation group)
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class AgendaRuleGenerator {
+    public static final String PACKAGE_NAME = "com.wordpress.ezegrande.drools.attributes.agenda.generated";
+    private static final String RULE_NAME_PREFIX = "Generated rule ";
+    private static final String AGENDA_GROUP_PREFIX = "agenda-";
+    private static final String ACTIVATION_GROUP_PREFIX = "activation-";
+
+    private final int ruleCount;
+    private final int salienceLevels;
+    private final int agendaGroupCount;
+    private final int activationGroupCount;
+
+    private final Map<String, Integer> saliences;
+    private final Map<String, Integer> agendaGroups;
+
+    public AgendaRuleGenerator(int ruleCount, int salienceLevels, int agendaGroupCount, int activationGroupCount) {
+        if (ruleCount <= 0 || salienceLevels <= 0) {
+            throw new IllegalArgumentException("At least one rule and one salience level are required");
+        }
+        this.ruleCount = ruleCount;
+        this.salienceLevels = salienceLevels;
+        this.agendaGroupCount = agendaGroupCount;
+        this.activationGroupCount = activationGroupCount;
+        this.saliences = new HashMap<String, Integer>(ruleCount * 2);
+        this.agendaGroups = new HashMap<String, Integer>(ruleCount * 2);
+        for (int i = 0; i < ruleCount; i++) {
+            saliences.put(getRuleName(i), Integer.valueOf(getSalience(i)));
+            agendaGroups.put(getRuleName(i), Integer.valueOf(getAgendaGroupIndex(i)));
+        }
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public int getSalienceLevels() {
+        return salienceLevels;
+    }
+
+    public int getAgendaGroupCount() {
+        return agendaGroupCount;
+    }
+
+    public int getActivationGroupCount() {
+        return activationGroupCount;
+    }
+
+    /**
+     * @return the DRL content with all the generated rules
+     */
+    public String generateDrl() {
+        StringBuilder drl = new StringBuilder(ruleCount * 160);
+        drl.append("package ").append(PACKAGE_NAME).append("\n\n");
+        drl.append("import com.wordpress.ezegrande.drools.attributes.model.Person;\n\n");
+        for (int i = 0; i < ruleCount; i++) {
+            drl.append("rule \"").append(getRuleName(i)).append("\"\n");
+            drl.append("salience ").append(getSalience(i)).append("\n");
+            if (agendaGroupCount > 0) {
+                drl.append("agenda-group \"").append(getAgendaGroupName(getAgendaGroupIndex(i))).append("\"\n");
+            }
+            if (activationGroupCount > 0) {
+                drl.append("activation-group \"").append(ACTIVATION_GROUP_PREFIX).append(i % activationGroupCount)
+                        .append("\"\n");
+            }
+            drl.append("    when\n");
+            drl.append("        $p: Person()\n");
+            drl.append("    then\n");
+            drl.append("end\n\n");
+        }
+        return drl.toString();
+    }
+
+    /**
+     * @return the names of the generated agenda groups, in the order in which
+     *         they should get the focus
+     */
+    public String[] getAgendaGroupNames() {
+        String[] names = new String[agendaGroupCount];
+        for (int i = 0; i < agendaGroupCount; i++) {
+            names[i] = getAgendaGroupName(i);
+        }
+        return names;
+    }
+
+    /**
+     * @param ruleName
+     * @return the salience of the generated rule with the given name
+     */
+    public int getSalience(String ruleName) {
+        return saliences.get(ruleName).intValue();
+    }
+
+    /**
+     * @param ruleName
+     * @return the index of the agenda group of the generated rule with the
+     *         given name, or 0 if agenda groups are not being used
+     */
+    public int getAgendaGroupIndex(String ruleName) {
+        return agendaGroups.get(ruleName).intValue();
+    }
+
+    private String getRuleName(int index) {
+        return RULE_NAME_PREFIX + index;
+    }
+
+    private String getAgendaGroupName(int index) {
+        return AGENDA_GROUP_PREFIX + index;
+    }
+
+    private int getAgendaGroupIndex(int index) {
+        return agendaGroupCount > 0 ? index % agendaGroupCount : 0;
+    }
+
+    /**
+     * Saliences are centered around the default salience (0), so both positive
+     * and negative values are generated like in salience.drl
+     */
+    private int getSalience(int index) {
+        return (index % salienceLevels) - (salienceLevels / 2);
+    }
+}
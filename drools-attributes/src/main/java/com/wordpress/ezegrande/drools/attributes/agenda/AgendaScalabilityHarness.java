@@ -0,0 +1,147 @@
+package com.wordpress.ezegrande.drools.attributes.agenda;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieBaseConfiguration;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message.Level;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.attributes.model.Person;
+
+/**
+ * Runs the rules created by an {@link AgendaRuleGenerator} against a growing
+ * number of Person facts, and measures how the agenda behaves:
+ * <ul>
+ * <li>How long it takes to build the KieBase, insert the facts and fire the
+ * rules
+ * <li>How many matches were created, cancelled (activation-group) and fired
+ * <li>Whether the rules were fired in the expected order (agenda group focus
+ * and salience)
+ * </ul>
+ *
+ * Stateful Sessions are used, so agenda groups can get the focus.
+ *
+ * @author ezegrande
+ */
+public class AgendaScalabilityHarness {
+    private static final String GENERATED_DRL_PATH = "src/main/resources/"
+            + AgendaRuleGenerator.PACKAGE_NAME.replace('.', '/') + "/generated.drl";
+
+    private Logger logger = LoggerFactory.getLogger(AgendaScalabilityHarness.class);
+
+    /**
+     * Builds the KieBase with the generated rules, inserts the given number of
+     * facts and fires all the rules
+     *
+     * @param generator
+     * @param configuration
+     * @param factCount
+     * @return the measurements of this run
+     */
+    public AgendaScalabilityResult run(AgendaRuleGenerator generator, AgendaConfiguration configuration,
+            int factCount) {
+        AgendaScalabilityResult result = new AgendaScalabilityResult();
+        result.setRuleCount(generator.getRuleCount());
+        result.setFactCount(factCount);
+
+        long start = System.nanoTime();
+        KieBase kbase = createKieBase(generator.generateDrl(), configuration);
+        result.setBuildMillis(toMillis(System.nanoTime() - start));
+
+        List<Person> persons = createPersons(factCount);
+        OrderingAgendaEventListener listener = new OrderingAgendaEventListener(generator);
+        KieSession session = kbase.newKieSession();
+        try {
+            session.addEventListener(listener);
+            start = System.nanoTime();
+            for (Person person : persons) {
+                session.insert(person);
+            }
+            result.setInsertMillis(toMillis(System.nanoTime() - start));
+
+            // The focus is a stack: the last group pushed is the first one to
+            // be fired
+            String[] agendaGroups = generator.getAgendaGroupNames();
+            for (int i = agendaGroups.length - 1; i >= 0; i--) {
+                session.getAgenda().getAgendaGroup(agendaGroups[i]).setFocus();
+            }
+            start = System.nanoTime();
+            session.fireAllRules();
+            result.setFireMillis(toMillis(System.nanoTime() - start));
+        } finally {
+            session.dispose();
+        }
+        result.setCreatedMatches(listener.getCreatedCount());
+        result.setCancelledMatches(listener.getCancelledCount());
+        result.setFiredMatches(listener.getFiredCount());
+        result.setOrderingViolations(listener.getOrderingViolations());
+        logger.info(configuration + " => " + result);
+        return result;
+    }
+
+    /**
+     * Creates a KieBase that contains only the given DRL content
+     *
+     * @param drl
+     * @param configuration
+     * @return the new KieBase
+     */
+    KieBase createKieBase(String drl, AgendaConfiguration configuration) {
+        KieServices ks = KieServices.Factory.get();
+        KieFileSystem kfs = ks.newKieFileSystem();
+        kfs.write(GENERATED_DRL_PATH, drl);
+        KieBuilder kbuilder = ks.newKieBuilder(kfs);
+        kbuilder.buildAll();
+        if (kbuilder.getResults().hasMessages(Level.ERROR)) {
+            throw new IllegalArgumentException(kbuilder.getResults().toString());
+        }
+        KieContainer kcontainer = ks.newKieContainer(kbuilder.getKieModule().getReleaseId());
+
+        KieBaseConfiguration kbconf = ks.newKieBaseConfiguration();
+        configuration.applyTo(kbconf);
+        return kcontainer.newKieBase(kbconf);
+    }
+
+    private List<Person> createPersons(int factCount) {
+        List<Person> persons = new ArrayList<Person>(factCount);
+        for (int i = 0; i < factCount; i++) {
+            persons.add(new Person("Person " + i, Integer.valueOf(18 + i % 80)));
+        }
+        return persons;
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000L;
+    }
+
+    /**
+     * Runs the harness with a growing number of rules (200 salience levels, 10
+     * agenda groups) and facts. The rule engine can be sent as the first
+     * argument (phreak by default).
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        AgendaConfiguration configuration = new AgendaConfiguration();
+        if (args.length > 0) {
+            configuration.setRuleEngine(args[0]);
+        }
+        AgendaScalabilityHarness harness = new AgendaScalabilityHarness();
+        int[] ruleCounts = { 100, 1000, 5000 };
+        int[] factCounts = { 10, 100 };
+        for (int ruleCount : ruleCounts) {
+            for (int factCount : factCounts) {
+                AgendaRuleGenerator generator = new AgendaRuleGenerator(ruleCount, 200, 10, 0);
+                harness.run(generator, configuration, factCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.wordpress.ezegrande.drools.attributes.agenda;
+
+/**
+ * Measurements taken by the {@link AgendaScalabilityHarness} for a single run
+ *
+ * @author ezegrande
+ */
+public class AgendaScalabilityResult {
+    private int ruleCount;
+    private int factCount;
+    private long buildMillis;
+    private long insertMillis;
+    private long fireMillis;
+    private long createdMatches;
+    private long cancelledMatches;
+    private long firedMatches;
+    private long orderingViolations;
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public void setRuleCount(int ruleCount) {
+        this.ruleCount = ruleCount;
+    }
+
+    public int getFactCount() {
+        return factCount;
+    }
+
+    public void setFactCount(int factCount) {
+        this.factCount = factCount;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    public void setBuildMillis(long buildMillis) {
+        this.buildMillis = buildMillis;
+    }
+
+    public long getInsertMillis() {
+        return insertMillis;
+    }
+
+    public void setInsertMillis(long insertMillis) {
+        this.insertMillis = insertMillis;
+    }
+
+    public long getFireMillis() {
+        return fireMillis;
+    }
+
+    public void setFireMillis(long fireMillis) {
+        this.fireMillis = fireMillis;
+    }
+
+    public long getCreatedMatches() {
+        return createdMatches;
+    }
+
+    public void setCreatedMatches(long createdMatches) {
+        this.createdMatches = createdMatches;
+    }
+
+    public long getCancelledMatches() {
+        return cancelledMatches;
+    }
+
+    public void setCancelledMatches(long cancelledMatches) {
+        this.cancelledMatches = cancelledMatches;
+    }
+
+    public long getFiredMatches() {
+        return firedMatches;
+    }
+
+    public void setFiredMatches(long firedMatches) {
+        this.firedMatches = firedMatches;
+    }
+
+    public long getOrderingViolations() {
+        return orderingViolations;
+    }
+
+    public void setOrderingViolations(long orderingViolations) {
+        this.orderingViolations = orderingViolations;
+    }
+
+    /**
+     * @return fired matches per second during fireAllRules
+     */
+    public double getFiredPerSecond() {
+        return fireMillis == 0 ? firedMatches * 1000d : firedMatches * 1000d / fireMillis;
+    }
+
+    public String toString() {
+        return "Agenda Scalability [Rules: " + ruleCount + " | Facts: " + factCount + " | Build: " + buildMillis
+                + "ms | Insert: " + insertMillis + "ms | Fire: " + fireMillis + "ms | Created: " + createdMatches
+                + " | Cancelled: " + cancelledMatches + " | Fired: " + firedMatches + " | Ordering violations: "
+                + orderingViolations + "]";
+    }
+}
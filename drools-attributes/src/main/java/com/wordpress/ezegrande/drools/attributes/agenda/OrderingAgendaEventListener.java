@@ -0,0 +1,98 @@
+package com.wordpress.ezegrande.drools.attributes.agenda;
+
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.AgendaGroupPoppedEvent;
+import org.kie.api.event.rule.AgendaGroupPushedEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.event.rule.RuleFlowGroupActivatedEvent;
+import org.kie.api.event.rule.RuleFlowGroupDeactivatedEvent;
+
+/**
+ * This listener validates the order in which the generated rules are fired:
+ * agenda groups must be fired in the order in which they got the focus, and
+ * inside each agenda group the salience must never increase. It also keeps a
+ * count of the created, cancelled and fired matches.
+ *
+ * @author ezegrande
+ */
+public class OrderingAgendaEventListener implements AgendaEventListener {
+    private final AgendaRuleGenerator generator;
+
+    private long createdCount;
+    private long cancelledCount;
+    private long firedCount;
+    private long orderingViolations;
+
+    private int lastAgendaGroup = -1;
+    private int lastSalience = Integer.MAX_VALUE;
+
+    public OrderingAgendaEventListener(AgendaRuleGenerator generator) {
+        this.generator = generator;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    public long getFiredCount() {
+        return firedCount;
+    }
+
+    public long getOrderingViolations() {
+        return orderingViolations;
+    }
+
+    public void matchCreated(MatchCreatedEvent event) {
+        createdCount++;
+    }
+
+    public void matchCancelled(MatchCancelledEvent event) {
+        cancelledCount++;
+    }
+
+    public void beforeMatchFired(BeforeMatchFiredEvent event) {
+    }
+
+    public void afterMatchFired(AfterMatchFiredEvent event) {
+        firedCount++;
+        String ruleName = event.getMatch().getRule().getName();
+        int agendaGroup = generator.getAgendaGroupIndex(ruleName);
+        int salience = generator.getSalience(ruleName);
+        if (agendaGroup != lastAgendaGroup) {
+            if (agendaGroup < lastAgendaGroup) {
+                orderingViolations++;
+            }
+            lastAgendaGroup = agendaGroup;
+            lastSalience = Integer.MAX_VALUE;
+        }
+        if (salience > lastSalience) {
+            orderingViolations++;
+        }
+        lastSalience = salience;
+    }
+
+    public void agendaGroupPopped(AgendaGroupPoppedEvent event) {
+    }
+
+    public void agendaGroupPushed(AgendaGroupPushedEvent event) {
+    }
+
+    public void beforeRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
+    }
+
+    public void afterRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
+    }
+
+    public void beforeRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
+    }
+
+    public void afterRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.wordpress.ezegrande.drools.attributes.backtest;
+
+/**
+ * Result of a replay of the {@link Backtester}
+ *
+ * @author ezegrande
+ */
+public class BacktestResult {
+    private final long events;
+    private final long firedRules;
+    private final long simulatedMillis;
+    private final long wallNanos;
+
+    BacktestResult(long events, long firedRules, long simulatedMillis, long wallNanos) {
+        this.events = events;
+        this.firedRules = firedRules;
+        this.simulatedMillis = simulatedMillis;
+        this.wallNanos = wallNanos;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getFiredRules() {
+        return firedRules;
+    }
+
+    /**
+     * @return the time moved by the pseudo clock
+     */
+    public long getSimulatedMillis() {
+        return simulatedMillis;
+    }
+
+    /**
+     * @return the real time spent in the replay
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return how many times faster than realtime the history was replayed
+     */
+    public double getSpeedup() {
+        return wallNanos == 0 ? 0 : simulatedMillis * 1e6 / wallNanos;
+    }
+
+    public String toString() {
+        return "BacktestResult [Events: " + events + " | Fired Rules: " + firedRules + " | Simulated: "
+                + simulatedMillis + " ms | Wall: " + wallNanos / 1000000 + " ms | Speedup: "
+                + (long) getSpeedup() + "x]";
+    }
+}
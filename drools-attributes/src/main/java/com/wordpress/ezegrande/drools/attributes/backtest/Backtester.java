@@ -0,0 +1,146 @@
+package com.wordpress.ezegrande.drools.attributes.backtest;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.core.time.SessionPseudoClock;
+import org.drools.core.time.TimerService;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.kie.api.time.SessionClock;
+
+/**
+ * Replays historical events against a session with a pseudo clock, as fast as
+ * the rules can be fired, to backtest rules with time attributes (duration,
+ * date-effective, date-expires, timers) over long periods:
+ * <ul>
+ * <li>The clock is moved to the timestamp of the next event stopping at each
+ * timer due in between, and the rules are fired there. So the timers inserted
+ * or scheduled by the rules of a timer (chained timers) start from its due
+ * time, as in realtime, instead of from the timestamp of the event
+ * <li>The timers due at the timestamp of an event are fired before applying
+ * the event, which may cancel them
+ * <li>All the events with the same timestamp are applied before firing the
+ * rules once
+ * <li>The events must be sorted by timestamp
+ * </ul>
+ *
+ * The session must be created with the pseudo clock (ClockTypeOption
+ * "pseudo"). The first replay moves the clock to the timestamp of the first
+ * event, so the date attributes see historical dates.
+ *
+ * @author ezegrande
+ */
+public class Backtester {
+    private final KieSession session;
+    private final SessionPseudoClock clock;
+    private final TimerService timerService;
+    private final Map<Object, FactHandle> factHandles = new IdentityHashMap<Object, FactHandle>();
+
+    public Backtester(KieSession session) {
+        SessionClock sessionClock = session.getSessionClock();
+        if (!(sessionClock instanceof SessionPseudoClock) || !(sessionClock instanceof TimerService)) {
+            throw new IllegalArgumentException("The session does not use a pseudo clock: " + sessionClock);
+        }
+        this.session = session;
+        this.clock = (SessionPseudoClock) sessionClock;
+        this.timerService = (TimerService) sessionClock;
+    }
+
+    /**
+     * Replays the events
+     *
+     * @param events
+     *            sorted by timestamp
+     * @return the result of the replay
+     */
+    public BacktestResult replay(Iterable<TimedEvent> events) {
+        return replay(events, Long.MIN_VALUE);
+    }
+
+    /**
+     * Replays the events, and then moves the clock to the end time, so the
+     * timers due until then are fired at their due times
+     *
+     * @param events
+     *            sorted by timestamp
+     * @param endTime
+     *            milliseconds since the epoch
+     * @return the result of the replay
+     */
+    public BacktestResult replay(Iterable<TimedEvent> events, long endTime) {
+        long start = System.nanoTime();
+        // The time until the first event is not simulated
+        long startTime = clock.getCurrentTime();
+        long eventCount = 0;
+        long fired = 0;
+        for (TimedEvent event : events) {
+            long now = clock.getCurrentTime();
+            long timestamp = event.getTimestamp();
+            if (timestamp < now) {
+                throw new IllegalArgumentException("The event is before the current time (" + now + "): " + event);
+            }
+            if (timestamp > now) {
+                if (eventCount == 0) {
+                    startTime = timestamp;
+                    clock.advanceTime(timestamp - now, TimeUnit.MILLISECONDS);
+                    fired += session.fireAllRules();
+                } else {
+                    // Fires the events of the previous timestamp
+                    fired += session.fireAllRules();
+                    // Fires the timers due until now, before the event may cancel them
+                    fired += advanceTo(timestamp);
+                }
+            }
+            apply(event);
+            eventCount++;
+        }
+        fired += session.fireAllRules();
+        if (endTime > clock.getCurrentTime()) {
+            fired += advanceTo(endTime);
+        }
+        return new BacktestResult(eventCount, fired, clock.getCurrentTime() - startTime, System.nanoTime() - start);
+    }
+
+    /**
+     * @return the current time of the pseudo clock
+     */
+    public long getCurrentTime() {
+        return clock.getCurrentTime();
+    }
+
+    /**
+     * Moves the clock to the given time, stopping at each timer due before it
+     * to fire the rules, and then fires the rules at the given time
+     *
+     * @return the number of fired rules
+     */
+    private long advanceTo(long time) {
+        long fired = 0;
+        while (true) {
+            long now = clock.getCurrentTime();
+            // -1 without timers
+            long timeToNextJob = timerService.getTimeToNextJob();
+            if (timeToNextJob < 0 || now + timeToNextJob >= time) {
+                clock.advanceTime(time - now, TimeUnit.MILLISECONDS);
+                return fired + session.fireAllRules();
+            }
+            clock.advanceTime(timeToNextJob, TimeUnit.MILLISECONDS);
+            fired += session.fireAllRules();
+        }
+    }
+
+    private void apply(TimedEvent event) {
+        Object fact = event.getFact();
+        if (event.isDelete()) {
+            FactHandle factHandle = factHandles.remove(fact);
+            if (factHandle == null) {
+                throw new IllegalArgumentException("The fact was not inserted by a previous event: " + event);
+            }
+            session.delete(factHandle);
+        } else {
+            factHandles.put(fact, session.insert(fact));
+        }
+    }
+}
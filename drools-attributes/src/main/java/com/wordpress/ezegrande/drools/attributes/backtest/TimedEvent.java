@@ -0,0 +1,59 @@
+package com.wordpress.ezegrande.drools.attributes.backtest;
+
+/**
+ * A historical event replayed by the {@link Backtester}: at its timestamp, a
+ * fact is inserted into the session or deleted from it.
+ *
+ * @author ezegrande
+ */
+public class TimedEvent {
+    private final long timestamp;
+    private final Object fact;
+    private final boolean delete;
+
+    private TimedEvent(long timestamp, Object fact, boolean delete) {
+        if (fact == null) {
+            throw new IllegalArgumentException("The fact of the event can not be null");
+        }
+        this.timestamp = timestamp;
+        this.fact = fact;
+        this.delete = delete;
+    }
+
+    /**
+     * @param timestamp
+     *            milliseconds since the epoch
+     * @param fact
+     * @return an event that inserts the fact
+     */
+    public static TimedEvent insert(long timestamp, Object fact) {
+        return new TimedEvent(timestamp, fact, false);
+    }
+
+    /**
+     * @param timestamp
+     *            milliseconds since the epoch
+     * @param fact
+     *            a fact inserted by a previous event
+     * @return an event that deletes the fact
+     */
+    public static TimedEvent delete(long timestamp, Object fact) {
+        return new TimedEvent(timestamp, fact, true);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Object getFact() {
+        return fact;
+    }
+
+    public boolean isDelete() {
+        return delete;
+    }
+
+    public String toString() {
+        return "TimedEvent [Timestamp: " + timestamp + " | " + (delete ? "Delete" : "Insert") + ": " + fact + "]";
+    }
+}
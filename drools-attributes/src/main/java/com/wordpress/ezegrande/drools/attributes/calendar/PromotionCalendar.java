@@ -0,0 +1,155 @@
+package com.wordpress.ezegrande.drools.attributes.calendar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.StatelessKieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calendar of time-boxed promotions. Instead of using the date-effective and
+ * date-expires attributes, which are checked each time a rule is about to be
+ * fired, the promotion windows come from data and are kept in a
+ * {@link PromotionIntervalIndex}.
+ *
+ * Each time the calendar is refreshed, a new KieBase is created from the
+ * (already compiled) KieContainer and the rules whose promotion window is not
+ * active are removed from it. Inactive promotions are not part of the network
+ * at all, so they cost nothing when the rules are fired. Rules without a
+ * promotion window are always kept.
+ *
+ * When the calendar is started, the next refresh is scheduled at the time in
+ * which the next promotion becomes effective or expires. Note that the
+ * sessions created before a refresh keep using the previous KieBase.
+ *
+ * @author ezegrande
+ */
+public class PromotionCalendar {
+    private Logger logger = LoggerFactory.getLogger(PromotionCalendar.class);
+
+    private final KieContainer kcontainer;
+    private volatile PromotionIntervalIndex index;
+    private volatile KieBase kieBase;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextRefresh;
+
+    public PromotionCalendar(KieContainer kcontainer, Collection<PromotionWindow> windows) {
+        this.kcontainer = kcontainer;
+        this.index = new PromotionIntervalIndex(windows);
+        refresh();
+    }
+
+    /**
+     * Replaces the promotion windows (i.e. after reloading them from the data
+     * source) and refreshes the calendar
+     *
+     * @param windows
+     */
+    public void setWindows(Collection<PromotionWindow> windows) {
+        this.index = new PromotionIntervalIndex(windows);
+        refresh();
+    }
+
+    public PromotionIntervalIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the KieBase that only contains the promotions active at the time
+     *         of the last refresh
+     */
+    public KieBase getKieBase() {
+        return kieBase;
+    }
+
+    public KieSession newKieSession() {
+        return kieBase.newKieSession();
+    }
+
+    public StatelessKieSession newStatelessKieSession() {
+        return kieBase.newStatelessKieSession();
+    }
+
+    /**
+     * Refreshes the calendar for the current time
+     */
+    public void refresh() {
+        refresh(System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a new KieBase which only contains the promotions active at the
+     * given time, and schedules the next refresh if the calendar is started
+     *
+     * @param time
+     */
+    public synchronized void refresh(long time) {
+        PromotionIntervalIndex currentIndex = index;
+        Set<String> inactiveRules = currentIndex.getInactiveRules(time);
+
+        KieBase kbase = kcontainer.newKieBase(KieServices.Factory.get().newKieBaseConfiguration());
+        for (KiePackage kpackage : kbase.getKiePackages()) {
+            for (Rule rule : new ArrayList<Rule>(kpackage.getRules())) {
+                if (inactiveRules.contains(rule.getName())) {
+                    kbase.removeRule(kpackage.getName(), rule.getName());
+                }
+            }
+        }
+        this.kieBase = kbase;
+        logger.info("Promotion calendar refreshed: " + currentIndex.getActiveRules(time).size() + " active and "
+                + inactiveRules.size() + " inactive promotions");
+
+        if (scheduler != null) {
+            scheduleNextRefresh(currentIndex.getNextChange(time), time);
+        }
+    }
+
+    /**
+     * Starts refreshing the calendar each time a promotion becomes effective or
+     * expires
+     *
+     * @param scheduler
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        refresh();
+    }
+
+    /**
+     * Stops the scheduled refreshes
+     */
+    public synchronized void stop() {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+        scheduler = null;
+    }
+
+    private void scheduleNextRefresh(final long nextChange, long time) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+        if (nextChange == PromotionWindow.NEVER) {
+            return;
+        }
+        nextRefresh = scheduler.schedule(new Runnable() {
+            public void run() {
+                refresh(Math.max(nextChange, System.currentTimeMillis()));
+            }
+        }, nextChange - time, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,110 @@
+package com.wordpress.ezegrande.drools.attributes.calendar;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable index of promotion windows. The time line is split into the
+ * elementary intervals delimited by every effective and expiration time, and
+ * the set of active promotions is precomputed for each one of them. Because of
+ * this, finding the active promotions for a given time is a binary search over
+ * the interval boundaries, and no dates are compared per promotion.
+ *
+ * @author ezegrande
+ */
+public class PromotionIntervalIndex {
+    private final long[] boundaries;
+    private final Set<String>[] activeRules;
+    private final Set<String> allRules;
+
+    @SuppressWarnings("unchecked")
+    public PromotionIntervalIndex(Collection<PromotionWindow> windows) {
+        Set<Long> times = new TreeSet<Long>();
+        Set<String> ruleNames = new HashSet<String>();
+        for (PromotionWindow window : windows) {
+            if (!ruleNames.add(window.getRuleName())) {
+                throw new IllegalArgumentException("Duplicated promotion window for the rule '"
+                        + window.getRuleName() + "'");
+            }
+            if (window.getEffective() != PromotionWindow.ALWAYS) {
+                times.add(Long.valueOf(window.getEffective()));
+            }
+            if (window.getExpires() != PromotionWindow.NEVER) {
+                times.add(Long.valueOf(window.getExpires()));
+            }
+        }
+        this.allRules = Collections.unmodifiableSet(ruleNames);
+        this.boundaries = new long[times.size()];
+        int i = 0;
+        for (Long time : times) {
+            boundaries[i++] = time.longValue();
+        }
+
+        // Interval k goes from boundaries[k - 1] (inclusive) to boundaries[k]
+        // (exclusive). The activity of every window is constant inside each
+        // interval, so it is enough to evaluate it at the start of the interval
+        this.activeRules = new Set[boundaries.length + 1];
+        for (int k = 0; k < activeRules.length; k++) {
+            long start = k == 0 ? PromotionWindow.ALWAYS : boundaries[k - 1];
+            Set<String> active = new HashSet<String>();
+            for (PromotionWindow window : windows) {
+                if (window.isActive(start)) {
+                    active.add(window.getRuleName());
+                }
+            }
+            activeRules[k] = Collections.unmodifiableSet(active);
+        }
+    }
+
+    /**
+     * @return the names of all the rules with a promotion window
+     */
+    public Set<String> getRuleNames() {
+        return allRules;
+    }
+
+    /**
+     * @param time
+     * @return the names of the rules whose promotion window is active at the
+     *         given time
+     */
+    public Set<String> getActiveRules(long time) {
+        return activeRules[intervalOf(time)];
+    }
+
+    /**
+     * @param time
+     * @return the names of the rules whose promotion window is not active at
+     *         the given time
+     */
+    public Set<String> getInactiveRules(long time) {
+        Set<String> inactive = new HashSet<String>(allRules);
+        inactive.removeAll(getActiveRules(time));
+        return inactive;
+    }
+
+    /**
+     * @param time
+     * @return the first time after the given one in which a promotion becomes
+     *         effective or expires, or {@link PromotionWindow#NEVER} if there
+     *         are no more changes
+     */
+    public long getNextChange(long time) {
+        int interval = intervalOf(time);
+        return interval < boundaries.length ? boundaries[interval] : PromotionWindow.NEVER;
+    }
+
+    /**
+     * @param time
+     * @return the index of the interval that contains the given time, which is
+     *         the number of boundaries lower or equal than the time
+     */
+    private int intervalOf(long time) {
+        int position = Arrays.binarySearch(boundaries, time);
+        return position >= 0 ? position + 1 : -(position + 1);
+    }
+}
@@ -0,0 +1,91 @@
+package com.wordpress.ezegrande.drools.attributes.calendar;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * The time window in which a promotion rule is active. It is the data driven
+ * equivalent of the date-effective and date-expires attributes:
+ * <ul>
+ * <li>Effective: the rule is active from this time on (inclusive). No value
+ * means that the rule has always been active
+ * <li>Expires: the rule is active until this time (exclusive). No value means
+ * that the rule never expires
+ * </ul>
+ *
+ * Dates are parsed only once, when the window is created, using the same
+ * format than the rule attributes: dd-MMM-yyyy by default, which can be
+ * overridden by the system property drools.dateformat
+ *
+ * @author ezegrande
+ */
+public class PromotionWindow {
+    public static final long ALWAYS = Long.MIN_VALUE;
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private static final String DATE_FORMAT_PROPERTY = "drools.dateformat";
+    private static final String DEFAULT_DATE_FORMAT = "dd-MMM-yyyy";
+
+    private final String ruleName;
+    private final long effective;
+    private final long expires;
+
+    public PromotionWindow(String ruleName, long effective, long expires) {
+        if (effective > expires) {
+            throw new IllegalArgumentException("The promotion '" + ruleName + "' expires before being effective");
+        }
+        this.ruleName = ruleName;
+        this.effective = effective;
+        this.expires = expires;
+    }
+
+    /**
+     * Creates a window from dates in the drools.dateformat format
+     *
+     * @param ruleName
+     * @param effective
+     *            the effective date, or null if it has always been effective
+     * @param expires
+     *            the expiration date, or null if it never expires
+     * @return the new PromotionWindow
+     */
+    public static PromotionWindow parse(String ruleName, String effective, String expires) {
+        DateFormat format = new SimpleDateFormat(System.getProperty(DATE_FORMAT_PROPERTY, DEFAULT_DATE_FORMAT),
+                Locale.ENGLISH);
+        try {
+            long effectiveTime = effective == null ? ALWAYS : format.parse(effective).getTime();
+            long expiresTime = expires == null ? NEVER : format.parse(expires).getTime();
+            return new PromotionWindow(ruleName, effectiveTime, expiresTime);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid date for the promotion '" + ruleName + "'", e);
+        }
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    public long getEffective() {
+        return effective;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    /**
+     * @param time
+     * @return true if the promotion is active at the given time
+     */
+    public boolean isActive(long time) {
+        return effective <= time && time < expires;
+    }
+
+    public String toString() {
+        return "Promotion [Rule: " + ruleName + " | Effective: " + (effective == ALWAYS ? "-" : new Date(effective))
+                + " | Expires: " + (expires == NEVER ? "-" : new Date(expires)) + "]";
+    }
+}
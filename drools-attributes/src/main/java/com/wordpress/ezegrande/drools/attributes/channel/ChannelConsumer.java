@@ -0,0 +1,20 @@
+package com.wordpress.ezegrande.drools.attributes.channel;
+
+import java.util.List;
+
+/**
+ * Receives the items sent by the rules to an output channel. It is called
+ * outside of the engine thread, with batches of consecutive items, in the
+ * order in which the rules sent them.
+ *
+ * @author ezegrande
+ */
+public interface ChannelConsumer<T> {
+
+    /**
+     * @param items
+     *            the next items of the channel, the list must not be kept
+     *            after returning
+     */
+    void deliver(List<T> items);
+}
@@ -0,0 +1,95 @@
+package com.wordpress.ezegrande.drools.attributes.channel;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with many producers and a single consumer:
+ * <ul>
+ * <li>A producer claims the next sequence and then publishes its item in the
+ * slot of the sequence, so the items are consumed in the order in which the
+ * sequences were claimed
+ * <li>When the buffer is full, the producer waits (yielding) until the
+ * consumer frees the slot
+ * <li>The consumer stops at the first claimed slot that is not published yet
+ * </ul>
+ *
+ * Only one thread at a time may consume the items.
+ *
+ * @author ezegrande
+ */
+class RingBuffer<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Only written by the consumer
+    private volatile long head;
+
+    /**
+     * @param capacity
+     *            rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<T>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds the item, waiting for a free slot if the buffer is full
+     *
+     * @param item
+     * @return true if the producer had to wait for a free slot
+     */
+    boolean put(T item) {
+        long sequence = tail.getAndIncrement();
+        boolean waited = false;
+        while (sequence - head > mask) {
+            waited = true;
+            Thread.yield();
+        }
+        slots.set((int) sequence & mask, item);
+        return waited;
+    }
+
+    /**
+     * Moves up to max published items to the list, in order
+     *
+     * @return the number of moved items
+     */
+    int drainTo(List<? super T> items, int max) {
+        long h = head;
+        int count = 0;
+        while (count < max) {
+            int index = (int) h & mask;
+            T item = slots.get(index);
+            if (item == null) {
+                break;
+            }
+            slots.set(index, null);
+            items.add(item);
+            h++;
+            count++;
+        }
+        head = h;
+        return count;
+    }
+
+    /**
+     * @return true if there are no claimed items, published or not
+     */
+    boolean isEmpty() {
+        return head == tail.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,251 @@
+package com.wordpress.ezegrande.drools.attributes.channel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kie.api.runtime.Channel;
+import org.kie.api.runtime.KieRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typed output channels of a session, that replace the globals used by the
+ * rules to produce their results (for example, the gifts list). The rules send
+ * the results to a channel instead of mutating a shared collection:
+ *
+ * <pre>
+ * channels[&quot;gifts&quot;].send(new Gift(&quot;Chocolates&quot;, $p.getName()));
+ * </pre>
+ *
+ * All the channels of the session share a lock-free {@link RingBuffer}, so
+ * sending only publishes the item and the engine thread goes on. The items
+ * are delivered to the {@link ChannelConsumer}s by the threads of an
+ * Executor:
+ * <ul>
+ * <li>The items are delivered in the order in which they were sent, also
+ * between different channels of the session
+ * <li>Consecutive items of the same channel are delivered in a single batch,
+ * of up to the maximum batch size
+ * <li>Only one thread at a time delivers the items of a session, the
+ * Executor may be shared by many sessions
+ * <li>If the buffer is full, the engine thread waits until there is a free
+ * slot
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class SessionOutputChannels {
+    private Logger logger = LoggerFactory.getLogger(SessionOutputChannels.class);
+
+    private final KieRuntime runtime;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final RingBuffer<Emission> buffer;
+    private final Map<String, OutputChannel<?>> channels = new LinkedHashMap<String, OutputChannel<?>>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong fullCount = new AtomicLong();
+    private final Object deliveryLock = new Object();
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param runtime
+     *            session whose rules send the items
+     * @param executor
+     *            runs the delivery to the consumers
+     * @param capacity
+     *            number of items that may be waiting to be delivered
+     * @param maxBatchSize
+     *            maximum number of items delivered in a single batch
+     */
+    public SessionOutputChannels(KieRuntime runtime, Executor executor, int capacity, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + maxBatchSize);
+        }
+        this.runtime = runtime;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.buffer = new RingBuffer<Emission>(capacity);
+    }
+
+    /**
+     * Registers a channel in the session
+     *
+     * @param name
+     *            name used by the rules, <code>channels["name"]</code>
+     * @param type
+     *            type of the items, sending an item of another type fails
+     * @param consumer
+     *            receives the items of the channel
+     */
+    public synchronized <T> void register(String name, Class<T> type, ChannelConsumer<? super T> consumer) {
+        if (channels.containsKey(name)) {
+            throw new IllegalArgumentException("The channel is already registered: " + name);
+        }
+        OutputChannel<T> channel = new OutputChannel<T>(name, type, consumer);
+        channels.put(name, channel);
+        runtime.registerChannel(name, channel);
+    }
+
+    /**
+     * Waits until all the items sent so far are delivered
+     *
+     * @param timeout
+     * @param unit
+     * @return false if the timeout elapsed before
+     * @throws InterruptedException
+     */
+    public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = sentCount.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (deliveryLock) {
+            while (deliveredCount.get() < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(deliveryLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unregisters the channels from the session. The items already sent are
+     * still delivered.
+     */
+    public synchronized void close() {
+        for (String name : channels.keySet()) {
+            runtime.unregisterChannel(name);
+        }
+        channels.clear();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the number of times the engine thread waited because the buffer
+     *         was full
+     */
+    public long getFullCount() {
+        return fullCount.get();
+    }
+
+    private void send(OutputChannel<?> channel, Object item) {
+        if (buffer.put(new Emission(channel, item))) {
+            fullCount.incrementAndGet();
+        }
+        sentCount.incrementAndGet();
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+
+    private void drain() {
+        List<Emission> emissions = new ArrayList<Emission>(maxBatchSize);
+        while (true) {
+            buffer.drainTo(emissions, maxBatchSize);
+            if (emissions.isEmpty()) {
+                draining.set(false);
+                // A producer may have published after the last drain, or
+                // may be about to publish a claimed slot
+                if (buffer.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                Thread.yield();
+                continue;
+            }
+            deliver(emissions);
+            emissions.clear();
+        }
+    }
+
+    private void deliver(List<Emission> emissions) {
+        int start = 0;
+        while (start < emissions.size()) {
+            OutputChannel<?> channel = emissions.get(start).channel;
+            int end = start + 1;
+            while (end < emissions.size() && emissions.get(end).channel == channel) {
+                end++;
+            }
+            List<Object> items = new ArrayList<Object>(end - start);
+            for (int i = start; i < end; i++) {
+                items.add(emissions.get(i).item);
+            }
+            channel.deliver(items);
+            batchCount.incrementAndGet();
+            start = end;
+        }
+        deliveredCount.addAndGet(emissions.size());
+        synchronized (deliveryLock) {
+            deliveryLock.notifyAll();
+        }
+    }
+
+    /**
+     * An item sent to a channel
+     */
+    private static final class Emission {
+        private final OutputChannel<?> channel;
+        private final Object item;
+
+        Emission(OutputChannel<?> channel, Object item) {
+            this.channel = channel;
+            this.item = item;
+        }
+    }
+
+    /**
+     * The Channel registered in the session
+     */
+    private final class OutputChannel<T> implements Channel {
+        private final String name;
+        private final Class<T> type;
+        private final ChannelConsumer<? super T> consumer;
+
+        OutputChannel(String name, Class<T> type, ChannelConsumer<? super T> consumer) {
+            this.name = name;
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        public void send(Object item) {
+            if (!type.isInstance(item)) {
+                throw new IllegalArgumentException("The channel '" + name + "' only accepts " + type.getName()
+                        + ": " + item);
+            }
+            SessionOutputChannels.this.send(this, item);
+        }
+
+        @SuppressWarnings("unchecked")
+        void deliver(List<Object> items) {
+            try {
+                ((ChannelConsumer<Object>) consumer).deliver(items);
+            } catch (RuntimeException e) {
+                logger.error("Unable to deliver " + items.size() + " items of the channel '" + name + "'", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+import java.util.Date;
+
+import com.wordpress.ezegrande.drools.attributes.calendar.PromotionWindow;
+
+/**
+ * A rule found in the source of a DRL file by the {@link DrlRuleParser}, with
+ * the attributes that can make it statically unreachable or pending:
+ * <ul>
+ * <li>date-effective: the rule can not fire before this date, it is pending
+ * until then
+ * <li>date-expires: the rule can not fire after this date
+ * <li>enabled false: the rule never fires
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class DrlRule {
+    private final String packageName;
+    private final String name;
+    private final int start;
+    private final int end;
+    private final PromotionWindow window;
+    private final boolean enabled;
+
+    DrlRule(String packageName, String name, int start, int end, PromotionWindow window, boolean enabled) {
+        this.packageName = packageName;
+        this.name = name;
+        this.start = start;
+        this.end = end;
+        this.window = window;
+        this.enabled = enabled;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the offset of the rule in the DRL source
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the offset after the end of the rule in the DRL source
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public PromotionWindow getWindow() {
+        return window;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param time
+     *            the time of the analysis
+     * @return the reason why the rule can not fire at the given time or later,
+     *         or null if it may fire. A rule that is not effective yet is not
+     *         unreachable, see {@link #getPendingReason(long)}
+     */
+    public String getUnreachableReason(long time) {
+        if (!enabled) {
+            return "disabled";
+        }
+        if (window.getExpires() <= time) {
+            return "expired on " + new Date(window.getExpires());
+        }
+        return null;
+    }
+
+    /**
+     * @param time
+     *            the time of the analysis
+     * @return the reason why the rule can not fire at the given time but may
+     *         fire later, or null if it is effective or unreachable
+     */
+    public String getPendingReason(long time) {
+        if (getUnreachableReason(time) != null || window.getEffective() <= time) {
+            return null;
+        }
+        return "not effective until " + new Date(window.getEffective());
+    }
+
+    public String toString() {
+        return "DrlRule [Package: " + packageName + " | Name: " + name + " | Enabled: " + enabled + " | Window: "
+                + window + "]";
+    }
+}
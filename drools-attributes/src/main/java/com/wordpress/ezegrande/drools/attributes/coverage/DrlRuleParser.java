@@ -0,0 +1,112 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.wordpress.ezegrande.drools.attributes.calendar.PromotionWindow;
+
+/**
+ * Finds the rules in the source of a DRL file, without compiling it, and
+ * removes rules from it. It only understands the layout used in this project:
+ * <ul>
+ * <li>One 'package' declaration
+ * <li>Each rule starts with a line 'rule "name"' and finishes with a line
+ * 'end'
+ * <li>The attributes are written one per line before 'when'
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class DrlRuleParser {
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)", Pattern.MULTILINE);
+    private static final Pattern RULE = Pattern.compile("^\\s*rule\\s+(?:\"([^\"]+)\"|'([^']+)'|(\\S+))",
+            Pattern.MULTILINE);
+    private static final Pattern END = Pattern.compile("^\\s*end\\s*$", Pattern.MULTILINE);
+    private static final Pattern WHEN = Pattern.compile("^\\s*when\\b", Pattern.MULTILINE);
+    private static final Pattern DATE_EFFECTIVE = Pattern.compile("date-effective\\s+\"([^\"]+)\"");
+    private static final Pattern DATE_EXPIRES = Pattern.compile("date-expires\\s+\"([^\"]+)\"");
+    private static final Pattern DISABLED = Pattern.compile("enabled\\s+false");
+
+    private DrlRuleParser() {
+        // Non-instantiable from outside
+    }
+
+    /**
+     * @param drl
+     *            source of a DRL file
+     * @return the rules found in the source, in order
+     */
+    public static List<DrlRule> parse(String drl) {
+        Matcher packageMatcher = PACKAGE.matcher(drl);
+        String packageName = packageMatcher.find() ? packageMatcher.group(1) : "";
+
+        List<DrlRule> rules = new ArrayList<DrlRule>();
+        Matcher ruleMatcher = RULE.matcher(drl);
+        Matcher endMatcher = END.matcher(drl);
+        Matcher whenMatcher = WHEN.matcher(drl);
+        int from = 0;
+        while (ruleMatcher.find(from)) {
+            String name = firstGroup(ruleMatcher);
+            int start = ruleMatcher.start();
+            if (!endMatcher.find(ruleMatcher.end())) {
+                throw new IllegalArgumentException("The rule '" + name + "' has no end");
+            }
+            int end = endMatcher.end();
+            int attributesEnd = whenMatcher.find(ruleMatcher.end()) ? Math.min(whenMatcher.start(), end) : end;
+            String attributes = drl.substring(ruleMatcher.end(), attributesEnd);
+
+            PromotionWindow window = PromotionWindow.parse(name, find(DATE_EFFECTIVE, attributes), find(
+                    DATE_EXPIRES, attributes));
+            rules.add(new DrlRule(packageName, name, start, end, window, !DISABLED.matcher(attributes).find()));
+            from = end;
+        }
+        return rules;
+    }
+
+    /**
+     * @param drl
+     *            source of a DRL file
+     * @param rules
+     *            rules of the source that will be removed
+     * @return the source without the given rules
+     */
+    public static String prune(String drl, Collection<DrlRule> rules) {
+        StringBuilder pruned = new StringBuilder(drl.length());
+        int from = 0;
+        for (DrlRule rule : parse(drl)) {
+            if (contains(rules, rule)) {
+                pruned.append(drl, from, rule.getStart());
+                pruned.append("\n// Rule '").append(rule.getName()).append("' removed\n");
+                from = rule.getEnd();
+            }
+        }
+        pruned.append(drl, from, drl.length());
+        return pruned.toString();
+    }
+
+    private static boolean contains(Collection<DrlRule> rules, DrlRule rule) {
+        for (DrlRule other : rules) {
+            if (other.getPackageName().equals(rule.getPackageName()) && other.getName().equals(rule.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String firstGroup(Matcher matcher) {
+        for (int i = 1; i <= matcher.groupCount(); i++) {
+            if (matcher.group(i) != null) {
+                return matcher.group(i);
+            }
+        }
+        return null;
+    }
+
+    private static String find(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
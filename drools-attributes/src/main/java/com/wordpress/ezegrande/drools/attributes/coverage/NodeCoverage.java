@@ -0,0 +1,127 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coverage of a node of the rule network after replaying a fact stream:
+ * <ul>
+ * <li>Object type and alpha nodes: the facts that reached the node (for an
+ * alpha node, the facts its constraint was evaluated on) and the facts that
+ * matched it, counting the insertions and the modifications
+ * <li>Beta nodes: the most tuples found in the left input and the facts that
+ * reached the right input. The join constraints are evaluated only when both
+ * inputs have something.
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class NodeCoverage {
+    private final int nodeId;
+    private final String nodeType;
+    private final String description;
+    private final List<String> rules;
+    private final boolean beta;
+    private final long reachedCount;
+    private final long matchedCount;
+    private final long leftCount;
+    private final long rightCount;
+
+    private NodeCoverage(int nodeId, String nodeType, String description, List<String> rules, boolean beta,
+            long reachedCount, long matchedCount, long leftCount, long rightCount) {
+        this.nodeId = nodeId;
+        this.nodeType = nodeType;
+        this.description = description;
+        this.rules = Collections.unmodifiableList(rules);
+        this.beta = beta;
+        this.reachedCount = reachedCount;
+        this.matchedCount = matchedCount;
+        this.leftCount = leftCount;
+        this.rightCount = rightCount;
+    }
+
+    /**
+     * @return the coverage of an object type or alpha node
+     */
+    public static NodeCoverage alpha(int nodeId, String nodeType, String description, List<String> rules,
+            long reachedCount, long matchedCount) {
+        return new NodeCoverage(nodeId, nodeType, description, rules, false, reachedCount, matchedCount, 0, 0);
+    }
+
+    /**
+     * @return the coverage of a beta node
+     */
+    public static NodeCoverage beta(int nodeId, String nodeType, String description, List<String> rules,
+            long leftCount, long rightCount) {
+        return new NodeCoverage(nodeId, nodeType, description, rules, true, 0, 0, leftCount, rightCount);
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the simple name of the class of the node, e.g. AlphaNode
+     */
+    public String getNodeType() {
+        return nodeType;
+    }
+
+    /**
+     * @return the constraints of the node, or the object type of an object
+     *         type node
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the names of the rules that share the node
+     */
+    public List<String> getRules() {
+        return rules;
+    }
+
+    public boolean isBeta() {
+        return beta;
+    }
+
+    public long getReachedCount() {
+        return reachedCount;
+    }
+
+    public long getMatchedCount() {
+        return matchedCount;
+    }
+
+    public long getLeftCount() {
+        return leftCount;
+    }
+
+    public long getRightCount() {
+        return rightCount;
+    }
+
+    /**
+     * @return true if the constraints of the node were never evaluated: no
+     *         fact reached an alpha node, or one of the inputs of a beta node
+     *         was always empty
+     */
+    public boolean isNeverReached() {
+        return beta ? leftCount == 0 || rightCount == 0 : reachedCount == 0;
+    }
+
+    /**
+     * @return true if no fact matched an alpha node, or if the constraints of
+     *         a beta node were never evaluated
+     */
+    public boolean isNeverMatched() {
+        return beta ? isNeverReached() : matchedCount == 0;
+    }
+
+    public String toString() {
+        return "NodeCoverage [Node: " + nodeType + " #" + nodeId + " '" + description + "' | Rules: " + rules
+                + (beta ? " | Left: " + leftCount + " | Right: " + rightCount : " | Reached: " + reachedCount
+                        + " | Matched: " + matchedCount) + "]";
+    }
+}
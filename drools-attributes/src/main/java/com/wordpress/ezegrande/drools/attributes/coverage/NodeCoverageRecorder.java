@@ -0,0 +1,287 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.core.base.ClassObjectType;
+import org.drools.core.common.BaseNode;
+import org.drools.core.common.InternalFactHandle;
+import org.drools.core.common.InternalWorkingMemory;
+import org.drools.core.common.RuleBasePartitionId;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.reteoo.AlphaNode;
+import org.drools.core.reteoo.BetaMemory;
+import org.drools.core.reteoo.BetaNode;
+import org.drools.core.reteoo.EntryPointNode;
+import org.drools.core.reteoo.LeftTuple;
+import org.drools.core.reteoo.LeftTupleSink;
+import org.drools.core.reteoo.LeftTupleSource;
+import org.drools.core.reteoo.ModifyPreviousTuples;
+import org.drools.core.reteoo.NodeTypeEnums;
+import org.drools.core.reteoo.ObjectSink;
+import org.drools.core.reteoo.ObjectSinkNode;
+import org.drools.core.reteoo.ObjectSource;
+import org.drools.core.reteoo.ObjectTypeNode;
+import org.drools.core.reteoo.RightTuple;
+import org.drools.core.reteoo.RightTupleMemory;
+import org.drools.core.rule.constraint.MvelConstraint;
+import org.drools.core.spi.PropagationContext;
+import org.drools.core.spi.RuleComponent;
+import org.drools.core.util.FastIterator;
+import org.kie.api.KieBase;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.runtime.KieSession;
+
+/**
+ * Records the coverage of the object type, alpha and beta nodes of a KieBase,
+ * walking its network the same way the NetworkAnalyzer of drools-examples
+ * does:
+ * <ul>
+ * <li>A counting sink is added to every object type and alpha node, so it
+ * receives every fact that matched the node. The facts that reached an alpha
+ * node are the ones that matched its parent.
+ * <li>Phreak evaluates the beta nodes lazily and in batches, so they can not
+ * be counted the same way. Their memories are sampled after each replayed
+ * fact instead, keeping the most tuples found in the left input (including
+ * the ones blocked by a not or an exists). A tuple that is added and removed
+ * while the same fact is fired is not seen.
+ * </ul>
+ *
+ * The counting sinks change the KieBase, so it must be used only for the
+ * replay. The recorder depends on the internal classes of drools-core, so it
+ * must be reviewed after upgrading Drools.
+ *
+ * @author ezegrande
+ */
+class NodeCoverageRecorder {
+    private final Map<Integer, BaseNode> nodes = new LinkedHashMap<Integer, BaseNode>();
+    private final Map<Integer, CountingSink> sinks = new HashMap<Integer, CountingSink>();
+    private final Map<Integer, Long> leftCounts = new HashMap<Integer, Long>();
+    private final Map<Integer, Long> rightCounts = new HashMap<Integer, Long>();
+
+    /**
+     * @param kbase
+     *            a KieBase built by Drools, only for the replay
+     * @throws IllegalArgumentException
+     *             if it is not a KieBase of drools-core
+     */
+    NodeCoverageRecorder(KieBase kbase) {
+        if (!(kbase instanceof InternalKnowledgeBase)) {
+            throw new IllegalArgumentException("Unsupported KieBase: " + kbase.getClass().getName());
+        }
+        for (EntryPointNode entryPoint : ((InternalKnowledgeBase) kbase).getRete().getEntryPointNodes().values()) {
+            for (ObjectTypeNode node : entryPoint.getObjectTypeNodes().values()) {
+                visit(node);
+            }
+        }
+        for (BaseNode node : nodes.values()) {
+            if (node instanceof ObjectTypeNode || node instanceof AlphaNode) {
+                CountingSink sink = new CountingSink((ObjectSource) node);
+                ((ObjectSource) node).addObjectSink(sink);
+                sinks.put(node.getId(), sink);
+            }
+        }
+    }
+
+    private void visit(BaseNode node) {
+        if (nodes.containsKey(node.getId())) {
+            return;
+        }
+        nodes.put(node.getId(), node);
+        if (node instanceof ObjectSource) {
+            for (ObjectSink child : ((ObjectSource) node).getSinkPropagator().getSinks()) {
+                visit((BaseNode) child);
+            }
+        }
+        if (node instanceof LeftTupleSource) {
+            for (LeftTupleSink child : ((LeftTupleSource) node).getSinkPropagator().getSinks()) {
+                visit((BaseNode) child);
+            }
+        }
+    }
+
+    /**
+     * Samples the memories of the beta nodes, after the rules were fired
+     */
+    void sample(KieSession session) {
+        InternalWorkingMemory workingMemory = (InternalWorkingMemory) session;
+        for (BaseNode node : nodes.values()) {
+            if (!(node instanceof BetaNode)) {
+                continue;
+            }
+            BetaNode beta = (BetaNode) node;
+            BetaMemory memory = BetaNode.getBetaMemory(beta, workingMemory);
+            long left = memory.getLeftTupleMemory().size();
+            RightTupleMemory rightMemory = memory.getRightTupleMemory();
+            if (beta.getType() == NodeTypeEnums.NotNode || beta.getType() == NodeTypeEnums.ExistsNode) {
+                // The blocked tuples are kept by the fact that blocks them
+                FastIterator it = rightMemory.fullFastIterator();
+                for (RightTuple rightTuple = BetaNode.getFirstRightTuple(rightMemory, it); rightTuple != null; rightTuple = (RightTuple) it
+                        .next(rightTuple)) {
+                    for (LeftTuple blocked = rightTuple.getBlocked(); blocked != null; blocked = blocked
+                            .getBlockedNext()) {
+                        left++;
+                    }
+                }
+            }
+            updateMax(leftCounts, node.getId(), left);
+            updateMax(rightCounts, node.getId(), rightMemory.size());
+        }
+    }
+
+    /**
+     * @return the coverage of the nodes, in the order of the network
+     */
+    List<NodeCoverage> getCoverages() {
+        List<NodeCoverage> coverages = new ArrayList<NodeCoverage>();
+        for (BaseNode node : nodes.values()) {
+            // The nodes without rules, e.g. the object type node of the
+            // InitialFact, are not reported
+            if (node.getAssociations().isEmpty()) {
+                continue;
+            }
+            String type = node.getClass().getSimpleName();
+            if (node instanceof ObjectTypeNode) {
+                long count = sinks.get(node.getId()).count;
+                coverages.add(NodeCoverage.alpha(node.getId(), type, describe(node), getRules(node), count, count));
+            } else if (node instanceof AlphaNode) {
+                long reached = sinks.get(((AlphaNode) node).getParentObjectSource().getId()).count;
+                coverages.add(NodeCoverage.alpha(node.getId(), type, describe(node), getRules(node), reached,
+                        sinks.get(node.getId()).count));
+            } else if (node instanceof BetaNode) {
+                // The facts that reached the right input are counted by the
+                // sink of its parent, unless it is a subnetwork
+                CountingSink rightSink = sinks.get(((BetaNode) node).getRightInput().getId());
+                long right = rightSink == null ? get(rightCounts, node.getId()) : rightSink.count;
+                coverages.add(NodeCoverage.beta(node.getId(), type, describe(node), getRules(node),
+                        get(leftCounts, node.getId()), right));
+            }
+        }
+        return coverages;
+    }
+
+    private static void updateMax(Map<Integer, Long> counts, int id, long count) {
+        if (count > get(counts, id)) {
+            counts.put(id, count);
+        }
+    }
+
+    private static long get(Map<Integer, Long> counts, int id) {
+        Long count = counts.get(id);
+        return count == null ? 0 : count.longValue();
+    }
+
+    private static String describe(BaseNode node) {
+        if (node instanceof ObjectTypeNode) {
+            Object objectType = ((ObjectTypeNode) node).getObjectType();
+            if (objectType instanceof ClassObjectType) {
+                return ((ClassObjectType) objectType).getClassType().getSimpleName();
+            }
+            return String.valueOf(objectType);
+        }
+        if (node instanceof AlphaNode) {
+            return describe(((AlphaNode) node).getConstraint());
+        }
+        StringBuilder description = new StringBuilder();
+        for (Object constraint : ((BetaNode) node).getConstraints()) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(describe(constraint));
+        }
+        return description.toString();
+    }
+
+    private static String describe(Object constraint) {
+        if (constraint instanceof MvelConstraint) {
+            return ((MvelConstraint) constraint).getExpression();
+        }
+        return String.valueOf(constraint);
+    }
+
+    private static List<String> getRules(BaseNode node) {
+        List<String> rules = new ArrayList<String>();
+        for (Rule rule : node.getAssociations().keySet()) {
+            rules.add(rule.getName());
+        }
+        Collections.sort(rules);
+        return rules;
+    }
+
+    /**
+     * Counts the facts propagated by an object type or alpha node. It is not
+     * an alpha node, so the parent never hashes it, and it has no children.
+     */
+    private static final class CountingSink implements ObjectSinkNode {
+        private final ObjectSource source;
+        private ObjectSinkNode previous;
+        private ObjectSinkNode next;
+        private long count;
+
+        CountingSink(ObjectSource source) {
+            this.source = source;
+        }
+
+        public void assertObject(InternalFactHandle factHandle, PropagationContext context,
+                InternalWorkingMemory workingMemory) {
+            count++;
+        }
+
+        public void modifyObject(InternalFactHandle factHandle, ModifyPreviousTuples modifyPreviousTuples,
+                PropagationContext context, InternalWorkingMemory workingMemory) {
+            count++;
+        }
+
+        public void byPassModifyToBetaNode(InternalFactHandle factHandle, ModifyPreviousTuples modifyPreviousTuples,
+                PropagationContext context, InternalWorkingMemory workingMemory) {
+            // The fact no longer matches the source
+        }
+
+        public int getId() {
+            return -source.getId();
+        }
+
+        public RuleBasePartitionId getPartitionId() {
+            return source.getPartitionId();
+        }
+
+        public short getType() {
+            return NodeTypeEnums.ObjectSource;
+        }
+
+        public Map<Rule, RuleComponent> getAssociations() {
+            return Collections.emptyMap();
+        }
+
+        public ObjectSinkNode getNextObjectSinkNode() {
+            return next;
+        }
+
+        public void setNextObjectSinkNode(ObjectSinkNode next) {
+            this.next = next;
+        }
+
+        public ObjectSinkNode getPreviousObjectSinkNode() {
+            return previous;
+        }
+
+        public void setPreviousObjectSinkNode(ObjectSinkNode previous) {
+            this.previous = previous;
+        }
+
+        public void writeExternal(ObjectOutput out) throws IOException {
+            throw new UnsupportedOperationException("The replay KieBase can not be serialized");
+        }
+
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+            throw new UnsupportedOperationException("The replay KieBase can not be serialized");
+        }
+    }
+}
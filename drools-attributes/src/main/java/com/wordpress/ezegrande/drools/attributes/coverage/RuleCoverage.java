@@ -0,0 +1,92 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+/**
+ * Coverage of a rule after replaying a fact stream:
+ * <ul>
+ * <li>Created: matches of the rule added to the agenda
+ * <li>Cancelled: matches removed from the agenda before firing
+ * <li>Fired: matches fired
+ * <li>Unreachable reason: why the rule can never fire, known without running
+ * it (for example, an expired date-expires). Null if it may fire.
+ * <li>Pending reason: why the rule can not fire yet but may fire later (a
+ * date-effective in the future). Null if it is effective or unreachable.
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class RuleCoverage {
+    private final String packageName;
+    private final String ruleName;
+    private final long createdCount;
+    private final long cancelledCount;
+    private final long firedCount;
+    private final String unreachableReason;
+    private final String pendingReason;
+
+    public RuleCoverage(String packageName, String ruleName, long createdCount, long cancelledCount,
+            long firedCount, String unreachableReason, String pendingReason) {
+        this.packageName = packageName;
+        this.ruleName = ruleName;
+        this.createdCount = createdCount;
+        this.cancelledCount = cancelledCount;
+        this.firedCount = firedCount;
+        this.unreachableReason = unreachableReason;
+        this.pendingReason = pendingReason;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    public long getFiredCount() {
+        return firedCount;
+    }
+
+    public String getUnreachableReason() {
+        return unreachableReason;
+    }
+
+    public String getPendingReason() {
+        return pendingReason;
+    }
+
+    /**
+     * @return true if the rule can never fire
+     */
+    public boolean isUnreachable() {
+        return unreachableReason != null;
+    }
+
+    /**
+     * @return true if the rule can not fire yet, but may fire later
+     */
+    public boolean isPending() {
+        return pendingReason != null;
+    }
+
+    /**
+     * @return true if the conditions of the rule were never fully matched
+     */
+    public boolean isNeverMatched() {
+        return createdCount == 0;
+    }
+
+    public String toString() {
+        return "RuleCoverage [Rule: " + packageName + "." + ruleName + " | Created: " + createdCount
+                + " | Cancelled: " + cancelledCount + " | Fired: " + firedCount
+                + (unreachableReason == null ? "" : " | Unreachable: " + unreachableReason)
+                + (pendingReason == null ? "" : " | Pending: " + pendingReason) + "]";
+    }
+}
@@ -0,0 +1,219 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message.Level;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+
+/**
+ * Finds the dead rules of a set of DRL files:
+ * <ul>
+ * <li>Statically: rules that are disabled or expired at the time of the
+ * analysis, found in the DRL source. The rules that are not effective yet
+ * are reported as pending, they are not dead
+ * <li>Dynamically: a recorded fact stream is replayed into an instrumented
+ * session, and the rules that were never matched or never fired are reported.
+ * The constraints of the network that were never reached are reported too,
+ * per object type, alpha and beta node (see {@link NodeCoverageRecorder}).
+ * </ul>
+ *
+ * Dead rules still cost compilation time and memory in the rule network, so
+ * a pruned KieBase can be built from the same DRL files without them. The
+ * rules are removed from the source before compiling it. The pending rules
+ * are never pruned.
+ *
+ * @author ezegrande
+ */
+public class RuleCoverageAnalyzer {
+    private final Map<String, String> sources = new LinkedHashMap<String, String>();
+    private final List<DrlRule> rules = new ArrayList<DrlRule>();
+    private final Map<String, Object> globals = new HashMap<String, Object>();
+    private long analysisTime = System.currentTimeMillis();
+
+    /**
+     * @param drlResourcesPaths
+     *            DRL files in the classpath
+     */
+    public RuleCoverageAnalyzer(String... drlResourcesPaths) {
+        for (String path : drlResourcesPaths) {
+            String source = readResource(path);
+            sources.put(path, source);
+            rules.addAll(DrlRuleParser.parse(source));
+        }
+    }
+
+    /**
+     * Sets a global in the sessions used to replay the facts
+     */
+    public void setGlobal(String identifier, Object value) {
+        globals.put(identifier, value);
+    }
+
+    /**
+     * Sets the time used to decide if the date-expires attribute makes a rule
+     * unreachable, and if the date-effective attribute makes it pending. By default, the creation time of the
+     * analyzer.
+     */
+    public void setAnalysisTime(long analysisTime) {
+        this.analysisTime = analysisTime;
+    }
+
+    /**
+     * @return the rules found in all the DRL files
+     */
+    public List<DrlRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Inserts each fact into a new session with all the rules, firing the
+     * rules after each insertion, and reports the coverage of each rule and
+     * of each node of the network
+     *
+     * @param facts
+     *            the recorded fact stream
+     * @return the coverage report
+     */
+    public RuleCoverageReport replay(Iterable<?> facts) {
+        RuleCoverageListener listener = new RuleCoverageListener();
+        KieBase kbase = newKieBase(sources);
+        NodeCoverageRecorder recorder = new NodeCoverageRecorder(kbase);
+        KieSession session = kbase.newKieSession();
+        long factCount = 0;
+        try {
+            session.addEventListener(listener);
+            for (Map.Entry<String, Object> global : globals.entrySet()) {
+                session.setGlobal(global.getKey(), global.getValue());
+            }
+            for (Object fact : facts) {
+                session.insert(fact);
+                session.fireAllRules();
+                recorder.sample(session);
+                factCount++;
+            }
+        } finally {
+            session.dispose();
+        }
+
+        List<RuleCoverage> coverages = new ArrayList<RuleCoverage>();
+        for (DrlRule rule : rules) {
+            long[] counts = listener.getCounts(rule.getPackageName(), rule.getName());
+            coverages.add(new RuleCoverage(rule.getPackageName(), rule.getName(), counts[0], counts[1], counts[2],
+                    rule.getUnreachableReason(analysisTime), rule.getPendingReason(analysisTime)));
+        }
+        return new RuleCoverageReport(coverages, recorder.getCoverages(), factCount);
+    }
+
+    /**
+     * @return the rules that can never fire at the time of the analysis
+     */
+    public List<DrlRule> getUnreachableRules() {
+        List<DrlRule> unreachable = new ArrayList<DrlRule>();
+        for (DrlRule rule : rules) {
+            if (rule.getUnreachableReason(analysisTime) != null) {
+                unreachable.add(rule);
+            }
+        }
+        return unreachable;
+    }
+
+    /**
+     * @return the rules that can not fire yet at the time of the analysis, but
+     *         may fire later
+     */
+    public List<DrlRule> getPendingRules() {
+        List<DrlRule> pending = new ArrayList<DrlRule>();
+        for (DrlRule rule : rules) {
+            if (rule.getPendingReason(analysisTime) != null) {
+                pending.add(rule);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Builds a KieBase without the unreachable rules, and without the rules
+     * that never fired in the report if pruneNeverFired is true. The pending
+     * rules are kept, they did not fire because they are not effective yet
+     *
+     * @param report
+     *            a report of a replay, or null to prune only the unreachable
+     *            rules
+     * @param pruneNeverFired
+     * @return the pruned KieBase
+     */
+    public KieBase newPrunedKieBase(RuleCoverageReport report, boolean pruneNeverFired) {
+        List<DrlRule> pruned = getUnreachableRules();
+        if (report != null && pruneNeverFired) {
+            List<DrlRule> pending = getPendingRules();
+            for (DrlRule rule : rules) {
+                if (pending.contains(rule)) {
+                    continue;
+                }
+                RuleCoverage coverage = report.getCoverage(rule.getPackageName(), rule.getName());
+                if (coverage != null && coverage.getFiredCount() == 0 && !pruned.contains(rule)) {
+                    pruned.add(rule);
+                }
+            }
+        }
+        Map<String, String> prunedSources = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            prunedSources.put(source.getKey(), DrlRuleParser.prune(source.getValue(), pruned));
+        }
+        return newKieBase(prunedSources);
+    }
+
+    private KieBase newKieBase(Map<String, String> drls) {
+        KieServices ks = KieServices.Factory.get();
+        KieFileSystem kfs = ks.newKieFileSystem();
+        for (Map.Entry<String, String> drl : drls.entrySet()) {
+            kfs.write("src/main/resources/" + drl.getKey(), drl.getValue());
+        }
+        KieBuilder kbuilder = ks.newKieBuilder(kfs);
+        kbuilder.buildAll();
+        if (kbuilder.getResults().hasMessages(Level.ERROR)) {
+            throw new IllegalArgumentException(kbuilder.getResults().toString());
+        }
+        KieContainer kcontainer = ks.newKieContainer(kbuilder.getKieModule().getReleaseId());
+        return kcontainer.newKieBase(ks.newKieBaseConfiguration());
+    }
+
+    private static String readResource(String path) {
+        InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new IllegalArgumentException("DRL file not found in the classpath: " + path);
+        }
+        try {
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            StringBuilder source = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                source.append(buffer, 0, read);
+            }
+            return source.toString();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read the DRL file " + path, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nothing else to do
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.AgendaGroupPoppedEvent;
+import org.kie.api.event.rule.AgendaGroupPushedEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.event.rule.RuleFlowGroupActivatedEvent;
+import org.kie.api.event.rule.RuleFlowGroupDeactivatedEvent;
+
+/**
+ * Counts the created, cancelled and fired matches of each rule. The counts are
+ * kept by the full name of the rule (package and name).
+ *
+ * @author ezegrande
+ */
+public class RuleCoverageListener implements AgendaEventListener {
+    private static final int CREATED = 0;
+    private static final int CANCELLED = 1;
+    private static final int FIRED = 2;
+
+    private final Map<String, long[]> counts = new HashMap<String, long[]>();
+
+    /**
+     * @return the created, cancelled and fired matches of the rule
+     */
+    public synchronized long[] getCounts(String packageName, String ruleName) {
+        long[] ruleCounts = counts.get(packageName + "." + ruleName);
+        return ruleCounts == null ? new long[3] : ruleCounts.clone();
+    }
+
+    public long getCreatedCount(String packageName, String ruleName) {
+        return getCounts(packageName, ruleName)[CREATED];
+    }
+
+    public long getCancelledCount(String packageName, String ruleName) {
+        return getCounts(packageName, ruleName)[CANCELLED];
+    }
+
+    public long getFiredCount(String packageName, String ruleName) {
+        return getCounts(packageName, ruleName)[FIRED];
+    }
+
+    public void matchCreated(MatchCreatedEvent event) {
+        increment(event.getMatch().getRule(), CREATED);
+    }
+
+    public void matchCancelled(MatchCancelledEvent event) {
+        increment(event.getMatch().getRule(), CANCELLED);
+    }
+
+    public void afterMatchFired(AfterMatchFiredEvent event) {
+        increment(event.getMatch().getRule(), FIRED);
+    }
+
+    public void beforeMatchFired(BeforeMatchFiredEvent event) {
+    }
+
+    public void agendaGroupPopped(AgendaGroupPoppedEvent event) {
+    }
+
+    public void agendaGroupPushed(AgendaGroupPushedEvent event) {
+    }
+
+    public void beforeRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
+    }
+
+    public void afterRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
+    }
+
+    public void beforeRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
+    }
+
+    public void afterRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
+    }
+
+    private synchronized void increment(Rule rule, int count) {
+        String key = rule.getPackageName() + "." + rule.getName();
+        long[] ruleCounts = counts.get(key);
+        if (ruleCounts == null) {
+            ruleCounts = new long[3];
+            counts.put(key, ruleCounts);
+        }
+        ruleCounts[count]++;
+    }
+}
@@ -0,0 +1,168 @@
+package com.wordpress.ezegrande.drools.attributes.coverage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coverage of all the rules and all the nodes of a KieBase after replaying a
+ * fact stream with the {@link RuleCoverageAnalyzer}
+ *
+ * @author ezegrande
+ */
+public class RuleCoverageReport {
+    private final List<RuleCoverage> coverages;
+    private final List<NodeCoverage> nodeCoverages;
+    private final long factCount;
+
+    public RuleCoverageReport(List<RuleCoverage> coverages, List<NodeCoverage> nodeCoverages, long factCount) {
+        this.coverages = Collections.unmodifiableList(new ArrayList<RuleCoverage>(coverages));
+        this.nodeCoverages = Collections.unmodifiableList(new ArrayList<NodeCoverage>(nodeCoverages));
+        this.factCount = factCount;
+    }
+
+    public List<RuleCoverage> getCoverages() {
+        return coverages;
+    }
+
+    /**
+     * @return the coverage of the object type, alpha and beta nodes, in the
+     *         order of the network
+     */
+    public List<NodeCoverage> getNodeCoverages() {
+        return nodeCoverages;
+    }
+
+    /**
+     * @return the coverage of the first node of the type with the
+     *         description, or null if it is not in the report
+     */
+    public NodeCoverage getNodeCoverage(String nodeType, String description) {
+        for (NodeCoverage coverage : nodeCoverages) {
+            if (coverage.getNodeType().equals(nodeType) && coverage.getDescription().equals(description)) {
+                return coverage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the nodes whose constraints were never evaluated
+     */
+    public List<NodeCoverage> getNeverReachedNodes() {
+        List<NodeCoverage> neverReached = new ArrayList<NodeCoverage>();
+        for (NodeCoverage coverage : nodeCoverages) {
+            if (coverage.isNeverReached()) {
+                neverReached.add(coverage);
+            }
+        }
+        return neverReached;
+    }
+
+    /**
+     * @return the nodes that no fact matched, including the ones never
+     *         reached
+     */
+    public List<NodeCoverage> getNeverMatchedNodes() {
+        List<NodeCoverage> neverMatched = new ArrayList<NodeCoverage>();
+        for (NodeCoverage coverage : nodeCoverages) {
+            if (coverage.isNeverMatched()) {
+                neverMatched.add(coverage);
+            }
+        }
+        return neverMatched;
+    }
+
+    /**
+     * @return the number of replayed facts
+     */
+    public long getFactCount() {
+        return factCount;
+    }
+
+    /**
+     * @return the coverage of the rule, or null if it is not in the report
+     */
+    public RuleCoverage getCoverage(String packageName, String ruleName) {
+        for (RuleCoverage coverage : coverages) {
+            if (coverage.getPackageName().equals(packageName) && coverage.getRuleName().equals(ruleName)) {
+                return coverage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the rules that fired at least once
+     */
+    public List<RuleCoverage> getFiredRules() {
+        List<RuleCoverage> fired = new ArrayList<RuleCoverage>();
+        for (RuleCoverage coverage : coverages) {
+            if (coverage.getFiredCount() > 0) {
+                fired.add(coverage);
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * @return the rules that never fired, including the unreachable and the
+     *         pending ones
+     */
+    public List<RuleCoverage> getNeverFiredRules() {
+        List<RuleCoverage> neverFired = new ArrayList<RuleCoverage>();
+        for (RuleCoverage coverage : coverages) {
+            if (coverage.getFiredCount() == 0) {
+                neverFired.add(coverage);
+            }
+        }
+        return neverFired;
+    }
+
+    /**
+     * @return the rules that can never fire
+     */
+    public List<RuleCoverage> getUnreachableRules() {
+        List<RuleCoverage> unreachable = new ArrayList<RuleCoverage>();
+        for (RuleCoverage coverage : coverages) {
+            if (coverage.isUnreachable()) {
+                unreachable.add(coverage);
+            }
+        }
+        return unreachable;
+    }
+
+    /**
+     * @return the rules that can not fire yet, but may fire later
+     */
+    public List<RuleCoverage> getPendingRules() {
+        List<RuleCoverage> pending = new ArrayList<RuleCoverage>();
+        for (RuleCoverage coverage : coverages) {
+            if (coverage.isPending()) {
+                pending.add(coverage);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return the fraction of the rules that fired at least once
+     */
+    public double getFiredRatio() {
+        return coverages.isEmpty() ? 0 : (double) getFiredRules().size() / coverages.size();
+    }
+
+    public String toString() {
+        StringBuilder report = new StringBuilder("RuleCoverageReport [Facts: " + factCount + " | Rules: "
+                + coverages.size() + " | Fired: " + getFiredRules().size() + " | Unreachable: "
+                + getUnreachableRules().size() + " | Pending: " + getPendingRules().size() + " | Nodes: "
+                + nodeCoverages.size() + " | Never matched: " + getNeverMatchedNodes().size() + "]");
+        for (RuleCoverage coverage : coverages) {
+            report.append("\n\t").append(coverage);
+        }
+        for (NodeCoverage coverage : nodeCoverages) {
+            report.append("\n\t").append(coverage);
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.wordpress.ezegrande.drools.attributes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wordpress.ezegrande.drools.attributes.agenda.AgendaConfiguration;
+import com.wordpress.ezegrande.drools.attributes.agenda.AgendaRuleGenerator;
+import com.wordpress.ezegrande.drools.attributes.agenda.AgendaScalabilityHarness;
+import com.wordpress.ezegrande.drools.attributes.agenda.AgendaScalabilityResult;
+
+/**
+ * Tests cases for the agenda scalability harness. The rules are generated, so
+ * they use the salience, agenda-group and activation-group attributes at a
+ * bigger scale than salience.drl. Sizes are kept small so the tests run fast;
+ * use {@link AgendaScalabilityHarness#main(String[])} for bigger workloads.
+ *
+ * @author ezegrande
+ */
+public class AgendaScalabilityTestCase {
+    private AgendaScalabilityHarness harness = new AgendaScalabilityHarness();
+
+    /**
+     * All the rules belong to the MAIN agenda group, so they must be fired from
+     * the highest to the lowest salience
+     */
+    @Test
+    public void testSalience() {
+        AgendaRuleGenerator generator = new AgendaRuleGenerator(200, 50, 0, 0);
+        AgendaScalabilityResult result = harness.run(generator, new AgendaConfiguration(), 20);
+
+        Assert.assertEquals(200 * 20, result.getCreatedMatches());
+        Assert.assertEquals(200 * 20, result.getFiredMatches());
+        Assert.assertEquals(0, result.getOrderingViolations());
+    }
+
+    /**
+     * Agenda groups must be fired in the order in which they got the focus,
+     * and the salience is only taken into account inside each group
+     */
+    @Test
+    public void testAgendaGroups() {
+        AgendaRuleGenerator generator = new AgendaRuleGenerator(100, 10, 5, 0);
+        AgendaScalabilityResult result = harness.run(generator, new AgendaConfiguration(), 10);
+
+        Assert.assertEquals(100 * 10, result.getFiredMatches());
+        Assert.assertEquals(0, result.getOrderingViolations());
+    }
+
+    /**
+     * Only one match is fired for each activation group, the rest of them are
+     * cancelled
+     */
+    @Test
+    public void testActivationGroups() {
+        AgendaRuleGenerator generator = new AgendaRuleGenerator(100, 10, 0, 10);
+        AgendaScalabilityResult result = harness.run(generator, new AgendaConfiguration(), 5);
+
+        Assert.assertEquals(10, result.getFiredMatches());
+        Assert.assertEquals(0, result.getOrderingViolations());
+    }
+}
@@ -0,0 +1,137 @@
+package com.wordpress.ezegrande.drools.attributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.attributes.backtest.BacktestResult;
+import com.wordpress.ezegrande.drools.attributes.backtest.Backtester;
+import com.wordpress.ezegrande.drools.attributes.backtest.TimedEvent;
+import com.wordpress.ezegrande.drools.attributes.model.Gift;
+import com.wordpress.ezegrande.drools.attributes.model.Person;
+import com.wordpress.ezegrande.drools.util.TestUtil;
+
+/**
+ * Tests cases for the {@link Backtester}, replaying Persons against the rule of
+ * the file duration.drl (a gift after 5 seconds of detecting a Person)
+ *
+ * @author ezegrande
+ */
+public class BacktesterTestCase {
+    private Logger logger = LoggerFactory.getLogger(BacktesterTestCase.class);
+
+    private static final String DRL_PATH_DURATION = "duration.drl";
+    private static final String DRL_PATH_CHAINED_TIMERS = "chained-timers.drl";
+    // 01-Jan-2014 00:00:00 UTC
+    private static final long START = 1388534400000L;
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * Only the Persons that stay at least 5 seconds get a gift, including the
+     * ones whose timer is due after the last event
+     */
+    @Test
+    public void testReplay() {
+        List<Gift> gifts = new ArrayList<Gift>();
+        KieSession session = TestUtil.createKieSession(true, DRL_PATH_DURATION);
+        try {
+            session.setGlobal("gifts", gifts);
+            Person john = new Person("John", 30);
+            Person mary = new Person("Mary", 25);
+            Person peter = new Person("Peter", 40);
+            List<TimedEvent> events = new ArrayList<TimedEvent>();
+            events.add(TimedEvent.insert(START, john));
+            events.add(TimedEvent.insert(START + SECOND, mary));
+            events.add(TimedEvent.delete(START + 3 * SECOND, mary));
+            events.add(TimedEvent.insert(START + 10 * SECOND, peter));
+
+            Backtester backtester = new Backtester(session);
+            BacktestResult result = backtester.replay(events, START + 20 * SECOND);
+
+            Assert.assertEquals(2, gifts.size());
+            Assert.assertEquals("John", gifts.get(0).getRecipient());
+            Assert.assertEquals("Peter", gifts.get(1).getRecipient());
+            Assert.assertEquals(4, result.getEvents());
+            Assert.assertEquals(2, result.getFiredRules());
+            Assert.assertEquals(20 * SECOND, result.getSimulatedMillis());
+            Assert.assertEquals(START + 20 * SECOND, backtester.getCurrentTime());
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    /**
+     * A year of history, a Person per hour, is replayed thousands of times
+     * faster than realtime
+     */
+    @Test
+    public void testReplayYear() {
+        List<Gift> gifts = new ArrayList<Gift>();
+        KieSession session = TestUtil.createKieSession(true, DRL_PATH_DURATION);
+        try {
+            session.setGlobal("gifts", gifts);
+            int hours = 365 * 24;
+            List<TimedEvent> events = new ArrayList<TimedEvent>(hours * 2);
+            for (int hour = 0; hour < hours; hour++) {
+                long timestamp = START + TimeUnit.HOURS.toMillis(hour);
+                Person person = new Person("Person" + hour, hour % 80);
+                events.add(TimedEvent.insert(timestamp, person));
+                // Half of them leave before the 5 seconds of the rule
+                events.add(TimedEvent.delete(timestamp + (hour % 2 == 0 ? 3 : 10) * SECOND, person));
+            }
+
+            BacktestResult result = new Backtester(session).replay(events);
+            logger.info("Year replay: " + result);
+
+            Assert.assertEquals(hours / 2, gifts.size());
+            Assert.assertEquals(hours * 2, result.getEvents());
+            Assert.assertTrue(result.getSpeedup() > 1000);
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    /**
+     * The clock stops at each due timer, so a timer scheduled by the rule of
+     * another timer starts from its due time, not from the next event
+     */
+    @Test
+    public void testChainedTimers() {
+        List<Gift> gifts = new ArrayList<Gift>();
+        List<Long> deliveryTimes = new ArrayList<Long>();
+        KieSession session = TestUtil.createKieSession(true, DRL_PATH_CHAINED_TIMERS);
+        try {
+            session.setGlobal("gifts", gifts);
+            session.setGlobal("deliveryTimes", deliveryTimes);
+            List<TimedEvent> events = new ArrayList<TimedEvent>();
+            events.add(TimedEvent.insert(START, new Person("John", 30)));
+            events.add(TimedEvent.insert(START + 60 * SECOND, new Person("Mary", 25)));
+
+            BacktestResult result = new Backtester(session).replay(events, START + 120 * SECOND);
+
+            Assert.assertEquals(2, gifts.size());
+            Assert.assertEquals(2, deliveryTimes.size());
+            Assert.assertEquals(Long.valueOf(START + 10 * SECOND), deliveryTimes.get(0));
+            Assert.assertEquals(Long.valueOf(START + 70 * SECOND), deliveryTimes.get(1));
+            Assert.assertEquals(4, result.getFiredRules());
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRealtimeClock() {
+        KieSession session = TestUtil.createKieSession(DRL_PATH_DURATION);
+        try {
+            new Backtester(session);
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+}
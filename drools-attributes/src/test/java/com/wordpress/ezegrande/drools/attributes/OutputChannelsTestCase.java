@@ -0,0 +1,146 @@
+package com.wordpress.ezegrande.drools.attributes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+
+import com.wordpress.ezegrande.drools.attributes.channel.ChannelConsumer;
+import com.wordpress.ezegrande.drools.attributes.channel.SessionOutputChannels;
+import com.wordpress.ezegrande.drools.attributes.model.Gift;
+import com.wordpress.ezegrande.drools.attributes.model.Person;
+import com.wordpress.ezegrande.drools.util.TestUtil;
+
+/**
+ * Tests cases for the {@link SessionOutputChannels}, using the rules of the
+ * file channels.drl
+ *
+ * @author ezegrande
+ */
+public class OutputChannelsTestCase {
+    private static final String DRL_PATH_CHANNELS = "channels.drl";
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The items of all the channels are delivered outside of the engine thread,
+     * in the order in which the rules sent them
+     */
+    @Test
+    public void testOrderedDelivery() throws InterruptedException {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        KieSession session = TestUtil.createKieSession(DRL_PATH_CHANNELS);
+        SessionOutputChannels channels = new SessionOutputChannels(session, executor, 1024, 64);
+        try {
+            channels.register("messages", String.class, new ChannelConsumer<String>() {
+                public void deliver(List<String> items) {
+                    threads.add(Thread.currentThread());
+                    events.addAll(items);
+                }
+            });
+            channels.register("gifts", Gift.class, new ChannelConsumer<Gift>() {
+                public void deliver(List<Gift> items) {
+                    threads.add(Thread.currentThread());
+                    for (Gift gift : items) {
+                        events.add(gift.toString());
+                    }
+                }
+            });
+            final List<Person> adults = new ArrayList<Person>();
+            channels.register("adults", Person.class, new ChannelConsumer<Person>() {
+                public void deliver(List<Person> items) {
+                    adults.addAll(items);
+                }
+            });
+
+            Person john = new Person("John", 4);
+            Person peter = new Person("Peter", 22);
+            TestUtil.insertAll(session, john, peter);
+            session.fireAllRules();
+            Assert.assertTrue(channels.awaitDelivery(10, TimeUnit.SECONDS));
+
+            Assert.assertEquals(5, events.size());
+            Assert.assertEquals("FIRST", events.get(0));
+            for (int i = 1; i < 5; i += 2) {
+                String name = events.get(i).substring("Gift for ".length());
+                Assert.assertEquals("Chocolates for " + name, events.get(i + 1));
+            }
+            Assert.assertEquals(Collections.singletonList(peter), adults);
+            Assert.assertEquals(6, channels.getDeliveredCount());
+            Assert.assertFalse(threads.contains(Thread.currentThread()));
+        } finally {
+            channels.close();
+            TestUtil.dispose(session);
+        }
+    }
+
+    /**
+     * With a small buffer and a slow consumer, the engine waits for free slots
+     * and no item is lost or reordered
+     */
+    @Test
+    public void testFullBuffer() throws InterruptedException {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> gifts = Collections.synchronizedList(new ArrayList<String>());
+        KieSession session = TestUtil.createKieSession(DRL_PATH_CHANNELS);
+        SessionOutputChannels channels = new SessionOutputChannels(session, executor, 4, 3);
+        try {
+            channels.register("messages", String.class, new ChannelConsumer<String>() {
+                public void deliver(List<String> items) {
+                    messages.addAll(items);
+                }
+            });
+            channels.register("gifts", Gift.class, new ChannelConsumer<Gift>() {
+                public void deliver(List<Gift> items) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (Gift gift : items) {
+                        gifts.add(gift.getRecipient());
+                    }
+                }
+            });
+            channels.register("adults", Person.class, new ChannelConsumer<Person>() {
+                public void deliver(List<Person> items) {
+                }
+            });
+
+            for (int i = 0; i < 200; i++) {
+                session.insert(new Person("Person" + i, i % 40));
+            }
+            session.fireAllRules();
+            Assert.assertTrue(channels.awaitDelivery(30, TimeUnit.SECONDS));
+
+            Assert.assertEquals(201, messages.size());
+            Assert.assertEquals(200, gifts.size());
+            for (int i = 0; i < 200; i++) {
+                Assert.assertEquals("Gift for " + gifts.get(i), messages.get(i + 1));
+            }
+            Assert.assertTrue(channels.getFullCount() > 0);
+        } finally {
+            channels.close();
+            TestUtil.dispose(session);
+        }
+    }
+}
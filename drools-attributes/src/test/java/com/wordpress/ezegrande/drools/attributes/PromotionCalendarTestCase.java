@@ -0,0 +1,148 @@
+package com.wordpress.ezegrande.drools.attributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.StatelessKieSession;
+
+import com.wordpress.ezegrande.drools.attributes.calendar.PromotionCalendar;
+import com.wordpress.ezegrande.drools.attributes.calendar.PromotionIntervalIndex;
+import com.wordpress.ezegrande.drools.attributes.calendar.PromotionWindow;
+import com.wordpress.ezegrande.drools.attributes.model.Gift;
+import com.wordpress.ezegrande.drools.attributes.model.Person;
+import com.wordpress.ezegrande.drools.util.TestUtil;
+
+/**
+ * Tests cases for the promotion calendar. The rules included in the file
+ * promotions.drl are the same than the ones in date-effective.drl and
+ * date-expires.drl, but their windows are defined by data.
+ *
+ * @author ezegrande
+ */
+public class PromotionCalendarTestCase {
+    private static final String DRL_PATH_PROMOTIONS = "promotions.drl";
+    private static final String PROMOTIONS_PACKAGE = "com.wordpress.ezegrande.drools.attributes.promotions";
+
+    private static final String CHOCOLATES = "Chocolates promotion";
+    private static final String FLIGHT_TO_MARS = "Flight to Mars promotion";
+    private static final String FRUITS = "Fruits promotion";
+
+    private static final String JOHN = "John";
+
+    /**
+     * Same windows than the ones defined in date-effective.drl and
+     * date-expires.drl
+     */
+    private List<PromotionWindow> createWindows() {
+        return Arrays.asList(PromotionWindow.parse(CHOCOLATES, "01-Jan-2010", null),
+                PromotionWindow.parse(FLIGHT_TO_MARS, "01-Jan-2150", null),
+                PromotionWindow.parse(FRUITS, null, "01-Jan-2010"));
+    }
+
+    /**
+     * Tests the lookup of the active promotions and the next change in the
+     * interval index
+     */
+    @Test
+    public void testIntervalIndex() {
+        PromotionIntervalIndex index = new PromotionIntervalIndex(Arrays.asList(new PromotionWindow("A", 10, 20),
+                new PromotionWindow("B", 15, PromotionWindow.NEVER), new PromotionWindow("C",
+                        PromotionWindow.ALWAYS, 15)));
+
+        Assert.assertEquals(Collections.singleton("C"), index.getActiveRules(0));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("A", "C")), index.getActiveRules(10));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("A", "B")), index.getActiveRules(15));
+        Assert.assertEquals(Collections.singleton("B"), index.getActiveRules(20));
+        Assert.assertEquals(Collections.singleton("B"), index.getActiveRules(Long.MAX_VALUE - 1));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("A", "C")), index.getInactiveRules(100));
+
+        Assert.assertEquals(10, index.getNextChange(0));
+        Assert.assertEquals(15, index.getNextChange(10));
+        Assert.assertEquals(20, index.getNextChange(17));
+        Assert.assertEquals(PromotionWindow.NEVER, index.getNextChange(20));
+    }
+
+    /**
+     * Inactive promotions are removed from the KieBase, so only the Chocolates
+     * promotion and the rule without window are fired
+     */
+    @Test
+    public void testInactivePromotionsAreRemoved() {
+        PromotionCalendar calendar = new PromotionCalendar(TestUtil.createKieContainer(DRL_PATH_PROMOTIONS),
+                createWindows());
+
+        KieBase kbase = calendar.getKieBase();
+        Assert.assertEquals(2, kbase.getKiePackage(PROMOTIONS_PACKAGE).getRules().size());
+        Assert.assertNull(kbase.getRule(PROMOTIONS_PACKAGE, FLIGHT_TO_MARS));
+        Assert.assertNull(kbase.getRule(PROMOTIONS_PACKAGE, FRUITS));
+
+        List<Gift> gifts = execute(calendar);
+        Assert.assertEquals(2, gifts.size());
+        Assert.assertTrue(descriptions(gifts).containsAll(Arrays.asList("Chocolates", "Flowers")));
+    }
+
+    /**
+     * Refreshing the calendar for the year 2151 enables the Flight to Mars
+     */
+    @Test
+    public void testRefresh() {
+        PromotionCalendar calendar = new PromotionCalendar(TestUtil.createKieContainer(DRL_PATH_PROMOTIONS),
+                createWindows());
+        calendar.refresh(PromotionWindow.parse(FLIGHT_TO_MARS, "01-Jan-2151", null).getEffective());
+
+        List<Gift> gifts = execute(calendar);
+        Assert.assertEquals(3, gifts.size());
+        Assert.assertTrue(descriptions(gifts).containsAll(Arrays.asList("Chocolates", "Flight to Mars", "Flowers")));
+    }
+
+    /**
+     * When the calendar is started, it gets refreshed as soon as a promotion
+     * becomes effective
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testScheduledRefresh() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        List<PromotionWindow> windows = Arrays.asList(new PromotionWindow(FRUITS, now + 500, PromotionWindow.NEVER));
+        PromotionCalendar calendar = new PromotionCalendar(TestUtil.createKieContainer(DRL_PATH_PROMOTIONS),
+                windows);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            calendar.start(scheduler);
+            Assert.assertNull(calendar.getKieBase().getRule(PROMOTIONS_PACKAGE, FRUITS));
+
+            Thread.sleep(2 * 1000); // Give time to the promotion to become
+                                    // effective
+
+            Assert.assertNotNull(calendar.getKieBase().getRule(PROMOTIONS_PACKAGE, FRUITS));
+        } finally {
+            calendar.stop();
+            scheduler.shutdownNow();
+        }
+    }
+
+    private List<Gift> execute(PromotionCalendar calendar) {
+        List<Gift> gifts = new ArrayList<Gift>();
+        StatelessKieSession session = calendar.newStatelessKieSession();
+        session.setGlobal("gifts", gifts);
+        session.execute(new Person(JOHN, 30));
+        return gifts;
+    }
+
+    private List<String> descriptions(List<Gift> gifts) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Gift gift : gifts) {
+            descriptions.add(gift.getDescription());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,226 @@
+package com.wordpress.ezegrande.drools.attributes;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.core.time.SessionPseudoClock;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.api.runtime.StatelessKieSession;
+import org.kie.api.runtime.conf.ClockTypeOption;
+
+import com.wordpress.ezegrande.drools.attributes.coverage.DrlRule;
+import com.wordpress.ezegrande.drools.attributes.coverage.DrlRuleParser;
+import com.wordpress.ezegrande.drools.attributes.coverage.NodeCoverage;
+import com.wordpress.ezegrande.drools.attributes.coverage.RuleCoverage;
+import com.wordpress.ezegrande.drools.attributes.coverage.RuleCoverageAnalyzer;
+import com.wordpress.ezegrande.drools.attributes.coverage.RuleCoverageReport;
+import com.wordpress.ezegrande.drools.attributes.model.Gift;
+import com.wordpress.ezegrande.drools.attributes.model.Person;
+
+/**
+ * Tests cases for the rule coverage analysis, using the rules of
+ * date-effective.drl and date-expires.drl. The chocolates until 2010 can never
+ * fire, and the Flight to Mars is pending until 2150.
+ *
+ * @author ezegrande
+ */
+public class RuleCoverageTestCase {
+    private static final String DRL_PATH_DATE_EFFECTIVE = "date-effective.drl";
+    private static final String DRL_PATH_DATE_EXPIRES = "date-expires.drl";
+    private static final String DRL_PATH_COVERAGE = "coverage.drl";
+    private static final String DATE_EFFECTIVE_PACKAGE = "com.wordpress.ezegrande.drools.attributes.dateeffective";
+    private static final String DATE_EXPIRES_PACKAGE = "com.wordpress.ezegrande.drools.attributes.dateexpires";
+
+    private static final String FLIGHT_TO_MARS = "Give a Flight to Mars as a gift, effective from January 1st 2150";
+    private static final String EXPIRED_CHOCOLATES = "Give chocolates as a gift until January 1st 2010";
+
+    /**
+     * The rules and their attributes are found in the DRL source
+     */
+    @Test
+    public void testParser() {
+        RuleCoverageAnalyzer analyzer = new RuleCoverageAnalyzer(DRL_PATH_DATE_EFFECTIVE);
+        List<DrlRule> rules = analyzer.getRules();
+        Assert.assertEquals(2, rules.size());
+        Assert.assertEquals(DATE_EFFECTIVE_PACKAGE, rules.get(0).getPackageName());
+        Assert.assertEquals(FLIGHT_TO_MARS, rules.get(1).getName());
+        Assert.assertNull(rules.get(0).getUnreachableReason(System.currentTimeMillis()));
+        Assert.assertNull(rules.get(0).getPendingReason(System.currentTimeMillis()));
+        Assert.assertNull(rules.get(1).getUnreachableReason(System.currentTimeMillis()));
+        Assert.assertNotNull(rules.get(1).getPendingReason(System.currentTimeMillis()));
+
+        String disabled = "package test\nrule \"A\"\nenabled false\nwhen\nthen\nend\nrule B\nwhen\nthen\nend\n";
+        List<DrlRule> disabledRules = DrlRuleParser.parse(disabled);
+        Assert.assertEquals("disabled", disabledRules.get(0).getUnreachableReason(0));
+        Assert.assertEquals("B", disabledRules.get(1).getName());
+        Assert.assertEquals(1, DrlRuleParser.parse(DrlRuleParser.prune(disabled, disabledRules.subList(0, 1)))
+                .size());
+    }
+
+    /**
+     * Replays a stream of Persons and reports which rules fired, which can
+     * never fire and which are pending
+     */
+    @Test
+    public void testReplay() {
+        RuleCoverageAnalyzer analyzer = new RuleCoverageAnalyzer(DRL_PATH_DATE_EFFECTIVE, DRL_PATH_DATE_EXPIRES);
+        List<Gift> gifts = new ArrayList<Gift>();
+        analyzer.setGlobal("gifts", gifts);
+        RuleCoverageReport report = analyzer.replay(createPersons());
+
+        Assert.assertEquals(3, report.getFactCount());
+        Assert.assertEquals(4, report.getCoverages().size());
+        Assert.assertEquals(2, report.getFiredRules().size());
+        Assert.assertEquals(1, report.getUnreachableRules().size());
+        Assert.assertEquals(1, report.getPendingRules().size());
+        Assert.assertEquals(0.5, report.getFiredRatio(), 0);
+        Assert.assertEquals(6, gifts.size());
+
+        RuleCoverage flight = report.getCoverage(DATE_EFFECTIVE_PACKAGE, FLIGHT_TO_MARS);
+        Assert.assertFalse(flight.isUnreachable());
+        Assert.assertTrue(flight.isPending());
+        Assert.assertEquals(0, flight.getFiredCount());
+        RuleCoverage chocolates = report.getCoverage(DATE_EXPIRES_PACKAGE, EXPIRED_CHOCOLATES);
+        Assert.assertTrue(chocolates.isUnreachable());
+        Assert.assertEquals(0, chocolates.getFiredCount());
+        for (RuleCoverage coverage : report.getFiredRules()) {
+            Assert.assertEquals(3, coverage.getFiredCount());
+            Assert.assertFalse(coverage.isUnreachable());
+            Assert.assertFalse(coverage.isPending());
+        }
+    }
+
+    /**
+     * The alpha node of the seniors is evaluated for every person but never
+     * matched, so the join with their gifts is never reached. The not node is
+     * reached by the adults, and by the gift that blocks Mary.
+     */
+    @Test
+    public void testNodeCoverage() {
+        RuleCoverageAnalyzer analyzer = new RuleCoverageAnalyzer(DRL_PATH_COVERAGE);
+        List<Object> facts = new ArrayList<Object>(createPersons());
+        facts.add(new Gift("Fruits", "Mary"));
+        RuleCoverageReport report = analyzer.replay(facts);
+
+        NodeCoverage persons = report.getNodeCoverage("ObjectTypeNode", "Person");
+        Assert.assertEquals(3, persons.getMatchedCount());
+        Assert.assertEquals(4, persons.getRules().size());
+        Assert.assertEquals(1, report.getNodeCoverage("ObjectTypeNode", "Gift").getMatchedCount());
+
+        NodeCoverage adults = report.getNodeCoverage("AlphaNode", "age >= 18");
+        Assert.assertEquals(3, adults.getReachedCount());
+        Assert.assertEquals(3, adults.getMatchedCount());
+        Assert.assertEquals(2, adults.getRules().size());
+        NodeCoverage seniors = report.getNodeCoverage("AlphaNode", "age >= 65");
+        Assert.assertEquals(3, seniors.getReachedCount());
+        Assert.assertEquals(0, seniors.getMatchedCount());
+        Assert.assertFalse(seniors.isNeverReached());
+        Assert.assertTrue(seniors.isNeverMatched());
+
+        NodeCoverage join = report.getNodeCoverage("JoinNode", "recipient == $p.name");
+        Assert.assertEquals(0, join.getLeftCount());
+        Assert.assertEquals(1, join.getRightCount());
+        Assert.assertTrue(join.isNeverReached());
+        NodeCoverage not = report.getNodeCoverage("NotNode", "recipient == $p.name");
+        Assert.assertEquals(3, not.getLeftCount());
+        Assert.assertEquals(1, not.getRightCount());
+        Assert.assertFalse(not.isNeverReached());
+
+        Assert.assertEquals(1, report.getNeverReachedNodes().size());
+        Assert.assertEquals(2, report.getNeverMatchedNodes().size());
+        Assert.assertEquals(0, report.getCoverage("com.wordpress.ezegrande.drools.attributes.coverage", "Seniors")
+                .getFiredCount());
+        Assert.assertEquals(3, report.getCoverage("com.wordpress.ezegrande.drools.attributes.coverage",
+                "Adults without gifts").getFiredCount());
+    }
+
+    /**
+     * The pruned KieBase has only the rules that can fire now or later, and
+     * gives the same gifts than the complete one
+     */
+    @Test
+    public void testPrunedKieBase() {
+        RuleCoverageAnalyzer analyzer = new RuleCoverageAnalyzer(DRL_PATH_DATE_EFFECTIVE, DRL_PATH_DATE_EXPIRES);
+        analyzer.setGlobal("gifts", new ArrayList<Gift>());
+        KieBase kbase = analyzer.newPrunedKieBase(analyzer.replay(createPersons()), true);
+        Assert.assertEquals(3, countRules(kbase));
+
+        List<Gift> gifts = new ArrayList<Gift>();
+        StatelessKieSession session = kbase.newStatelessKieSession();
+        session.setGlobal("gifts", gifts);
+        session.execute(createPersons());
+        Assert.assertEquals(6, gifts.size());
+        for (Gift gift : gifts) {
+            Assert.assertTrue("Chocolates".equals(gift.getDescription()) || "Fruits".equals(gift.getDescription()));
+        }
+
+        // Without a report only the unreachable rules are removed
+        Assert.assertEquals(3, countRules(analyzer.newPrunedKieBase(null, false)));
+        // In 1970 none of the date-effective rules were effective yet, and no
+        // rule had expired
+        analyzer.setAnalysisTime(0);
+        Assert.assertTrue(analyzer.getUnreachableRules().isEmpty());
+        for (DrlRule rule : analyzer.getPendingRules()) {
+            Assert.assertEquals(DATE_EFFECTIVE_PACKAGE, rule.getPackageName());
+        }
+        Assert.assertEquals(2, analyzer.getPendingRules().size());
+    }
+
+    /**
+     * A rule that is not effective yet is kept in the pruned KieBase, and
+     * fires once its date-effective is reached
+     */
+    @Test
+    public void testPendingRuleIsNotPruned() throws Exception {
+        RuleCoverageAnalyzer analyzer = new RuleCoverageAnalyzer(DRL_PATH_DATE_EFFECTIVE);
+        analyzer.setGlobal("gifts", new ArrayList<Gift>());
+        RuleCoverageReport report = analyzer.replay(createPersons());
+        Assert.assertEquals(0, report.getCoverage(DATE_EFFECTIVE_PACKAGE, FLIGHT_TO_MARS).getFiredCount());
+        Assert.assertTrue(analyzer.getUnreachableRules().isEmpty());
+        KieBase kbase = analyzer.newPrunedKieBase(report, true);
+        Assert.assertEquals(2, countRules(kbase));
+
+        KieSessionConfiguration conf = KieServices.Factory.get().newKieSessionConfiguration();
+        conf.setOption(ClockTypeOption.get("pseudo"));
+        KieSession session = kbase.newKieSession(conf, null);
+        try {
+            List<Gift> gifts = new ArrayList<Gift>();
+            session.setGlobal("gifts", gifts);
+            SessionPseudoClock clock = session.getSessionClock();
+            clock.advanceTime(new SimpleDateFormat("dd-MMM-yyyy", Locale.ENGLISH).parse("02-Jan-2150").getTime(),
+                    TimeUnit.MILLISECONDS);
+            session.insert(new Person("John", Integer.valueOf(30)));
+            session.fireAllRules();
+            Assert.assertEquals(2, gifts.size());
+            Assert.assertEquals(FLIGHT_TO_MARS, analyzer.getPendingRules().get(0).getName());
+        } finally {
+            session.dispose();
+        }
+    }
+
+    private List<Person> createPersons() {
+        List<Person> persons = new ArrayList<Person>();
+        persons.add(new Person("John", Integer.valueOf(30)));
+        persons.add(new Person("Mary", Integer.valueOf(25)));
+        persons.add(new Person("George", Integer.valueOf(40)));
+        return persons;
+    }
+
+    private int countRules(KieBase kbase) {
+        int rules = 0;
+        for (KiePackage kpackage : kbase.getKiePackages()) {
+            rules += kpackage.getRules().size();
+        }
+        return rules;
+    }
+}
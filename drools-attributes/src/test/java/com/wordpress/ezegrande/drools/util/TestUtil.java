@@ -104,6 +104,18 @@ public class TestUtil {
     }
    
 
+    /**
+     * Creates a new KieContainer, which will include a KieModule with the DRL
+     * files sent as parameter
+     * 
+     * @param drlResourcesPaths
+     *            DRL files that will be included
+     * @return the new KieContainer
+     */
+    public static KieContainer createKieContainer(String... drlResourcesPaths) {
+        return createKieContainer(KieServices.Factory.get(), drlResourcesPaths);
+    }
+
     /**
      * Creates a new KieContainer, which will include a KieModule with the DRL
      * files sent as parameter
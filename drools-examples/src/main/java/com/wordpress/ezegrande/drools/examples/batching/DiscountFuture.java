@@ -0,0 +1,82 @@
+package com.wordpress.ezegrande.drools.examples.batching;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * The discount of a Purchase submitted to a {@link PurchaseCoalescer}. It is
+ * completed when the batch of the Purchase is executed. It can not be
+ * cancelled, because the Purchase may already be part of a batch.
+ *
+ * @author ezegrande
+ */
+public class DiscountFuture implements Future<Double> {
+    private final Purchase purchase;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Throwable failure;
+
+    DiscountFuture(Purchase purchase) {
+        this.purchase = purchase;
+    }
+
+    public Purchase getPurchase() {
+        return purchase;
+    }
+
+    void complete() {
+        done.countDown();
+    }
+
+    void fail(Throwable failure) {
+        this.failure = failure;
+        done.countDown();
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public Double get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    public Double get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("The batch of the purchase was not executed yet");
+        }
+        return result();
+    }
+
+    private Double result() throws ExecutionException {
+        if (failure != null) {
+            throw new BatchExecutionException(failure);
+        }
+        return Double.valueOf(purchase.getDiscount());
+    }
+
+    /**
+     * The constructors of ExecutionException are protected in Java 5
+     */
+    private static class BatchExecutionException extends ExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        BatchExecutionException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.wordpress.ezegrande.drools.examples.batching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kie.api.runtime.StatelessKieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Coalesces the Purchases submitted concurrently by many threads, and executes
+ * them in batches in a Stateless Session (for example, with the rules of
+ * 'discount.drl'). Each caller gets a {@link DiscountFuture} with the discount
+ * of its own Purchase.
+ *
+ * A single thread executes the batches. The Purchases that arrive while a batch
+ * is executed are part of the next one. A batch is closed when it has the
+ * maximum number of Purchases, when the batching window elapses since its
+ * first Purchase, or when no Purchase arrives during twice the average gap
+ * between Purchases. The window adapts to the load:
+ * <ul>
+ * <li>If no Purchase arrived while waiting, waiting only added latency, so
+ * the window is halved, down to a minimum of 1 microsecond
+ * <li>If other Purchases arrived (while waiting, or queued while the previous
+ * batch was executed) but the batch was not filled, the window is increased
+ * by a quarter, up to its maximum
+ * <li>If the batch was filled, the window is kept
+ * </ul>
+ *
+ * Under low load the Purchases are executed almost immediately, and under high
+ * load they are grouped in big batches. The Stateless Session is only used by
+ * the batching thread, its globals must be set before starting the coalescer.
+ *
+ * @author ezegrande
+ */
+public class PurchaseCoalescer {
+    private static final long MIN_WINDOW_INCREMENT_NANOS = 1000;
+    private static final long MIN_GAP_NANOS = 1000;
+
+    private Logger logger = LoggerFactory.getLogger(PurchaseCoalescer.class);
+
+    private final StatelessKieSession session;
+    private final int maxBatchSize;
+    private final long maxWindowNanos;
+    private final BlockingQueue<DiscountFuture> queue = new LinkedBlockingQueue<DiscountFuture>();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong purchaseCount = new AtomicLong();
+    private volatile long windowNanos;
+    // Only used by the batching thread
+    private long averageGapNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param session
+     *            Stateless Session that executes the batches
+     * @param maxBatchSize
+     *            maximum number of Purchases in a batch
+     * @param maxWindowMicros
+     *            maximum time to wait for more Purchases since the first
+     *            Purchase of a batch
+     */
+    public PurchaseCoalescer(StatelessKieSession session, int maxBatchSize, long maxWindowMicros) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + maxBatchSize);
+        }
+        if (maxWindowMicros < 0) {
+            throw new IllegalArgumentException("Invalid batching window: " + maxWindowMicros);
+        }
+        this.session = session;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWindowNanos = TimeUnit.MICROSECONDS.toNanos(maxWindowMicros);
+        this.windowNanos = maxWindowNanos;
+        this.averageGapNanos = Math.max(MIN_GAP_NANOS, maxWindowNanos / 8);
+    }
+
+    /**
+     * Starts the batching thread
+     */
+    public synchronized void start() {
+        if (running) {
+            throw new IllegalStateException("The coalescer is already running");
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, "purchase-coalescer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the batching thread after executing the Purchases already
+     * submitted
+     *
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+        if (current != null) {
+            current.interrupt();
+            current.join();
+        }
+        // Purchases submitted while stopping
+        List<DiscountFuture> rejected = new ArrayList<DiscountFuture>();
+        queue.drainTo(rejected);
+        for (DiscountFuture future : rejected) {
+            future.fail(new IllegalStateException("The coalescer was stopped"));
+        }
+    }
+
+    /**
+     * Submits a Purchase to be executed in the next batch. It is queued under
+     * the lock of {@link #stop()}, so once stopping no Purchase is queued after
+     * the queue was drained.
+     *
+     * @param purchase
+     * @return the future discount of the Purchase
+     */
+    public DiscountFuture submit(Purchase purchase) {
+        DiscountFuture future = new DiscountFuture(purchase);
+        synchronized (this) {
+            if (!running) {
+                throw new IllegalStateException("The coalescer is not running");
+            }
+            queue.add(future);
+        }
+        return future;
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getPurchaseCount() {
+        return purchaseCount.get();
+    }
+
+    /**
+     * @return the current batching window, in microseconds
+     */
+    public long getWindowMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(windowNanos);
+    }
+
+    private void dispatch() {
+        List<DiscountFuture> batch = new ArrayList<DiscountFuture>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                fill(batch);
+            } catch (InterruptedException e) {
+                // Stopped, the remaining Purchases are executed below
+            }
+            execute(batch);
+        }
+        while (!queue.isEmpty()) {
+            queue.drainTo(batch, maxBatchSize);
+            execute(batch);
+        }
+    }
+
+    /**
+     * Adds Purchases to the batch until it is full, the window elapses or no
+     * Purchase arrives during twice the average gap between Purchases. Then
+     * it adapts the window.
+     */
+    private void fill(List<DiscountFuture> batch) throws InterruptedException {
+        long window = windowNanos;
+        long now = System.nanoTime();
+        long deadline = now + window;
+        long lastArrival = now;
+        // The Purchases already queued arrived while the previous batch was executed
+        boolean arrived = queue.drainTo(batch, maxBatchSize - batch.size()) > 0;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            DiscountFuture future = queue.poll(Math.min(remaining, 2 * averageGapNanos), TimeUnit.NANOSECONDS);
+            if (future == null) {
+                break;
+            }
+            now = System.nanoTime();
+            averageGapNanos = Math.max(MIN_GAP_NANOS, averageGapNanos + (now - lastArrival - averageGapNanos) / 8);
+            lastArrival = now;
+            arrived = true;
+            batch.add(future);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+        if (!arrived) {
+            // Never below the minimum, so a window can grow again when the load comes back
+            windowNanos = Math.max(Math.min(maxWindowNanos, MIN_WINDOW_INCREMENT_NANOS), window / 2);
+        } else if (batch.size() < maxBatchSize) {
+            windowNanos = Math.min(maxWindowNanos, window + Math.max(window / 4, MIN_WINDOW_INCREMENT_NANOS));
+        }
+    }
+
+    private void execute(List<DiscountFuture> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Purchase> purchases = new ArrayList<Purchase>(batch.size());
+        for (DiscountFuture future : batch) {
+            purchases.add(future.getPurchase());
+        }
+        batchCount.incrementAndGet();
+        purchaseCount.addAndGet(batch.size());
+        try {
+            session.execute(purchases);
+            for (DiscountFuture future : batch) {
+                future.complete();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Unable to execute a batch of " + batch.size() + " purchases", e);
+            for (DiscountFuture future : batch) {
+                future.fail(e);
+            }
+        }
+        batch.clear();
+    }
+}
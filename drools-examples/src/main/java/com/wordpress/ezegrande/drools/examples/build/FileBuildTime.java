@@ -0,0 +1,38 @@
+package com.wordpress.ezegrande.drools.examples.build;
+
+/**
+ * Time spent compiling a DRL file
+ *
+ * @author ezegrande
+ */
+public class FileBuildTime {
+    private final String path;
+    private final String packageName;
+    private final long nanos;
+
+    FileBuildTime(String path, String packageName, long nanos) {
+        this.path = path;
+        this.packageName = packageName;
+        this.nanos = nanos;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getMillis() {
+        return nanos / 1000000;
+    }
+
+    public String toString() {
+        return "FileBuildTime [Path: " + path + " | Package: " + packageName + " | Time: " + getMillis() + " ms]";
+    }
+}
@@ -0,0 +1,74 @@
+package com.wordpress.ezegrande.drools.examples.build;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Report of a build of the {@link RuleBuildService}: the compile time of each
+ * built file, and the wall time of the whole build. In a full build the
+ * packages are compiled in parallel, so the wall time is usually lower than
+ * the sum of the compile times.
+ *
+ * @author ezegrande
+ */
+public class RuleBuildReport {
+    private final List<FileBuildTime> files;
+    private final long wallNanos;
+    private final boolean incremental;
+
+    RuleBuildReport(List<FileBuildTime> files, long wallNanos, boolean incremental) {
+        this.files = Collections.unmodifiableList(files);
+        this.wallNanos = wallNanos;
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return the built files, in build order within each package
+     */
+    public List<FileBuildTime> getFiles() {
+        return files;
+    }
+
+    /**
+     * @param count
+     * @return the files that took longer to compile, slowest first
+     */
+    public List<FileBuildTime> getSlowestFiles(int count) {
+        List<FileBuildTime> sorted = new ArrayList<FileBuildTime>(files);
+        Collections.sort(sorted, new Comparator<FileBuildTime>() {
+            public int compare(FileBuildTime o1, FileBuildTime o2) {
+                return o1.getNanos() < o2.getNanos() ? 1 : (o1.getNanos() == o2.getNanos() ? 0 : -1);
+            }
+        });
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    /**
+     * @return the sum of the compile times of the files
+     */
+    public long getCompileMillis() {
+        long nanos = 0;
+        for (FileBuildTime file : files) {
+            nanos += file.getNanos();
+        }
+        return nanos / 1000000;
+    }
+
+    public long getWallMillis() {
+        return wallNanos / 1000000;
+    }
+
+    /**
+     * @return true if only the changed files were compiled
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public String toString() {
+        return "RuleBuildReport [Files: " + files.size() + " | Incremental: " + incremental + " | Compile: "
+                + getCompileMillis() + " ms | Wall: " + getWallMillis() + " ms]";
+    }
+}
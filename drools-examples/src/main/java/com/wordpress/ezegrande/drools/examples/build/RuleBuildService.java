@@ -0,0 +1,321 @@
+package com.wordpress.ezegrande.drools.examples.build;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.Message.Level;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.definition.KiePackage;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.builder.IncrementalResults;
+import org.kie.internal.builder.InternalKieBuilder;
+import org.kie.internal.definition.KnowledgePackage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a repository of DRL files into a single KieBase, instead of writing
+ * all of them into one KieFileSystem and building it serially:
+ * <ul>
+ * <li>The files are grouped by their package, and each package is built with
+ * its own KieFileSystem and KieBuilder. The packages are built in parallel,
+ * so they must be independent (no types, functions or rules of one package
+ * may be used from another one)
+ * <li>The files of a package are compiled one by one with incremental builds,
+ * so the compile time of each file is reported
+ * <li>When a file changes, only that file is compiled again, and its package
+ * is replaced in the KieBase
+ * </ul>
+ *
+ * The sessions created from the KieBase see the updated packages.
+ *
+ * @author ezegrande
+ */
+public class RuleBuildService {
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)", Pattern.MULTILINE);
+    private static final String RESOURCES = "src/main/resources/";
+    private static final String DEFAULT_PACKAGE = "defaultpkg";
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private Logger logger = LoggerFactory.getLogger(RuleBuildService.class);
+
+    private final KieServices ks = KieServices.Factory.get();
+    private final ExecutorService executor;
+    private final int instance = instances.incrementAndGet();
+    private final Map<String, PackageBuild> packages = new LinkedHashMap<String, PackageBuild>();
+    private KnowledgeBase kbase;
+
+    /**
+     * @param threads
+     *            number of packages built in parallel
+     */
+    public RuleBuildService(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Adds a DRL file to the repository, it is compiled by the next
+     * {@link #buildAll()}
+     *
+     * @param path
+     *            path of the file in the repository
+     * @param drl
+     *            content of the file
+     */
+    public synchronized void addDrl(String path, String drl) {
+        String packageName = getPackageName(drl);
+        PackageBuild build = packages.get(packageName);
+        if (build == null) {
+            build = new PackageBuild(packageName);
+            packages.put(packageName, build);
+        }
+        build.files.put(path, drl);
+    }
+
+    /**
+     * Adds DRL files from the classpath to the repository
+     *
+     * @param paths
+     *            classpath resources
+     * @throws IOException
+     */
+    public void addClasspathDrl(String... paths) throws IOException {
+        for (String path : paths) {
+            addDrl(path, readClasspathResource(path));
+        }
+    }
+
+    /**
+     * Builds every package of the repository in parallel, and creates a new
+     * KieBase with all of them
+     *
+     * @return the compile time of each file
+     * @throws IllegalArgumentException
+     *             if a file has errors
+     */
+    public synchronized RuleBuildReport buildAll() {
+        long start = System.nanoTime();
+        List<Future<List<FileBuildTime>>> results = new ArrayList<Future<List<FileBuildTime>>>();
+        for (final PackageBuild build : packages.values()) {
+            results.add(executor.submit(new Callable<List<FileBuildTime>>() {
+                public List<FileBuildTime> call() {
+                    return build.buildAll();
+                }
+            }));
+        }
+        List<FileBuildTime> files = new ArrayList<FileBuildTime>();
+        for (Future<List<FileBuildTime>> result : results) {
+            files.addAll(get(result));
+        }
+        KnowledgeBase newKieBase = KnowledgeBaseFactory.newKnowledgeBase();
+        for (PackageBuild build : packages.values()) {
+            newKieBase.addKnowledgePackages(build.loadPackages());
+        }
+        kbase = newKieBase;
+        RuleBuildReport report = new RuleBuildReport(files, System.nanoTime() - start, false);
+        logger.info("Built " + packages.size() + " packages: " + report);
+        return report;
+    }
+
+    /**
+     * Adds or changes a file after {@link #buildAll()}. Only the file is
+     * compiled, and its package is replaced in the KieBase.
+     *
+     * @param path
+     *            path of the file in the repository
+     * @param drl
+     *            new content of the file
+     * @return the compile time of the file
+     * @throws IllegalArgumentException
+     *             if the file has errors, the previous version is kept
+     */
+    public synchronized RuleBuildReport update(String path, String drl) {
+        if (kbase == null) {
+            throw new IllegalStateException("The repository was not built yet");
+        }
+        long start = System.nanoTime();
+        String packageName = getPackageName(drl);
+        PackageBuild build = packages.get(packageName);
+        if (build == null) {
+            build = new PackageBuild(packageName);
+            packages.put(packageName, build);
+            build.buildAll();
+        }
+        for (PackageBuild other : packages.values()) {
+            if (other != build && other.files.containsKey(path)) {
+                throw new IllegalArgumentException("The file " + path + " can not be moved from the package "
+                        + other.name + " to " + packageName);
+            }
+        }
+        List<FileBuildTime> files = new ArrayList<FileBuildTime>(1);
+        files.add(build.update(path, drl));
+        for (String name : build.packageNames) {
+            if (kbase.getKnowledgePackage(name) != null) {
+                kbase.removeKnowledgePackage(name);
+            }
+        }
+        kbase.addKnowledgePackages(build.loadPackages());
+        RuleBuildReport report = new RuleBuildReport(files, System.nanoTime() - start, true);
+        logger.info("Updated " + path + ": " + report);
+        return report;
+    }
+
+    /**
+     * @return the KieBase of the last build
+     */
+    public synchronized KieBase getKieBase() {
+        if (kbase == null) {
+            throw new IllegalStateException("The repository was not built yet");
+        }
+        return kbase;
+    }
+
+    /**
+     * Stops the threads that build the packages
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static String getPackageName(String drl) {
+        Matcher matcher = PACKAGE.matcher(drl);
+        return matcher.find() ? matcher.group(1) : DEFAULT_PACKAGE;
+    }
+
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building the packages", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to build a package", e.getCause());
+        }
+    }
+
+    private static String readClasspathResource(String path) throws IOException {
+        InputStream in = RuleBuildService.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("Resource not found: " + path);
+        }
+        try {
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            StringBuilder drl = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                drl.append(buffer, 0, read);
+            }
+            return drl.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The files of a package, built in their own KieModule
+     */
+    private final class PackageBuild {
+        private final String name;
+        private final ReleaseId releaseId;
+        private final Map<String, String> files = new LinkedHashMap<String, String>();
+        // Names of the KiePackages of the module, to remove them on updates
+        private final List<String> packageNames = new ArrayList<String>();
+        private KieFileSystem kfs;
+        private InternalKieBuilder builder;
+
+        PackageBuild(String name) {
+            this.name = name;
+            this.releaseId = ks.newReleaseId("com.wordpress.ezegrande.rules", name.replace('.', '-') + "-"
+                    + instance, "1.0");
+        }
+
+        List<FileBuildTime> buildAll() {
+            kfs = ks.newKieFileSystem();
+            kfs.generateAndWritePomXML(releaseId);
+            builder = (InternalKieBuilder) ks.newKieBuilder(kfs);
+            builder.buildAll();
+            List<FileBuildTime> times = new ArrayList<FileBuildTime>(files.size());
+            List<Message> errors = new ArrayList<Message>();
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                long start = System.nanoTime();
+                errors.addAll(compile(file.getKey(), file.getValue()));
+                times.add(new FileBuildTime(file.getKey(), name, System.nanoTime() - start));
+            }
+            if (!errors.isEmpty()) {
+                throw new IllegalArgumentException("Errors in the package " + name + ": " + errors);
+            }
+            return times;
+        }
+
+        FileBuildTime update(String path, String drl) {
+            String previous = files.get(path);
+            long start = System.nanoTime();
+            List<Message> errors = compile(path, drl);
+            long nanos = System.nanoTime() - start;
+            if (!errors.isEmpty()) {
+                if (previous == null) {
+                    kfs.delete(RESOURCES + path);
+                    builder.createFileSet(RESOURCES + path).build();
+                } else {
+                    compile(path, previous);
+                }
+                throw new IllegalArgumentException("Errors in " + path + ": " + errors);
+            }
+            files.put(path, drl);
+            return new FileBuildTime(path, name, nanos);
+        }
+
+        /**
+         * @return new instances of the compiled packages
+         */
+        Collection<KnowledgePackage> loadPackages() {
+            Collection<KiePackage> kiePackages = ks.newKieContainer(releaseId).getKieBase().getKiePackages();
+            List<KnowledgePackage> knowledgePackages = new ArrayList<KnowledgePackage>(kiePackages.size());
+            packageNames.clear();
+            for (KiePackage kiePackage : kiePackages) {
+                knowledgePackages.add((KnowledgePackage) kiePackage);
+                packageNames.add(kiePackage.getName());
+            }
+            return knowledgePackages;
+        }
+
+        private List<Message> compile(String path, String drl) {
+            kfs.write(RESOURCES + path, drl);
+            IncrementalResults results = builder.createFileSet(RESOURCES + path).build();
+            List<Message> errors = new ArrayList<Message>();
+            for (Message message : results.getAddedMessages()) {
+                if (message.getLevel() == Level.ERROR) {
+                    errors.add(message);
+                }
+            }
+            return errors;
+        }
+    }
+}
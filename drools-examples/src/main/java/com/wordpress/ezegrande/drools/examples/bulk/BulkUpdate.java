@@ -0,0 +1,187 @@
+package com.wordpress.ezegrande.drools.examples.bulk;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.core.common.InternalFactHandle;
+import org.drools.core.common.InternalWorkingMemoryEntryPoint;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.reteoo.PropertySpecificUtil;
+import org.kie.api.definition.type.Modifies;
+import org.kie.api.definition.type.PropertyReactive;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A batch of changes to facts of a session, propagated together before firing
+ * the rules, instead of calling update(handle, object) once per change:
+ * <ul>
+ * <li>The facts are changed in place, and {@link #change(FactHandle, String...)}
+ * records which properties changed
+ * <li>The changes to the same fact are merged, so it is updated once with
+ * all of its changed properties
+ * <li>{@link #apply()} updates each fact with the property mask of its
+ * changes, as a modify block does. For property reactive classes (e.g.
+ * Purchase), only the patterns that constrain those properties are evaluated
+ * again; the rest of the network ignores the update
+ * <li>The mask of a property includes the properties that its setter
+ * modifies, listed in its {@link Modifies} annotation (e.g. the Customer Name
+ * of a Purchase modifies its Customer id)
+ * </ul>
+ *
+ * The facts deleted before {@link #apply()} are skipped. It is not
+ * thread-safe, like the KieSession.
+ *
+ * @author ezegrande
+ */
+public class BulkUpdate {
+    private Logger logger = LoggerFactory.getLogger(BulkUpdate.class);
+
+    private final KieSession session;
+    private final InternalKnowledgeBase kbase;
+    // Mask of each property, by class
+    private final Map<Class<?>, Map<String, Long>> masks = new HashMap<Class<?>, Map<String, Long>>();
+    // Merged masks of the changed facts, in the order of their first change
+    private final LinkedHashMap<FactHandle, PendingUpdate> pending = new LinkedHashMap<FactHandle, PendingUpdate>();
+    private long changes;
+
+    public BulkUpdate(KieSession session) {
+        this.session = session;
+        this.kbase = (InternalKnowledgeBase) session.getKieBase();
+    }
+
+    /**
+     * Records that some properties of a fact changed
+     *
+     * @param handle
+     *            the FactHandle of the fact, changed in place
+     * @param properties
+     *            names of the changed properties, e.g. 'subtotal'
+     * @throws IllegalArgumentException
+     *             if a property can not be set in the class of the fact
+     */
+    public void change(FactHandle handle, String... properties) {
+        if (properties.length == 0) {
+            throw new IllegalArgumentException("No changed properties for " + handle);
+        }
+        Object fact = ((InternalFactHandle) handle).getObject();
+        Map<String, Long> propertyMasks = getPropertyMasks(fact.getClass());
+        long mask = 0;
+        for (String property : properties) {
+            Long propertyMask = propertyMasks.get(property);
+            if (propertyMask == null) {
+                throw new IllegalArgumentException("Unknown property " + property + " of "
+                        + fact.getClass().getName() + ", the properties are " + propertyMasks.keySet());
+            }
+            mask |= propertyMask;
+        }
+        PendingUpdate update = pending.get(handle);
+        if (update == null) {
+            pending.put(handle, new PendingUpdate(mask));
+        } else {
+            update.mask |= mask;
+        }
+        changes++;
+    }
+
+    /**
+     * @return the number of facts with changes to apply
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of changes recorded since the last apply, before
+     *         merging them
+     */
+    public long getChanges() {
+        return changes;
+    }
+
+    /**
+     * Updates every changed fact once, with the mask of its changed
+     * properties. The rules are not fired.
+     *
+     * @return the number of updated facts
+     */
+    public int apply() {
+        int updated = 0;
+        for (Map.Entry<FactHandle, PendingUpdate> entry : pending.entrySet()) {
+            InternalFactHandle handle = (InternalFactHandle) entry.getKey();
+            if (!handle.isValid()) {
+                continue;
+            }
+            Object fact = handle.getObject();
+            ((InternalWorkingMemoryEntryPoint) handle.getEntryPoint()).update(handle, fact, entry.getValue().mask,
+                    fact.getClass(), null);
+            updated++;
+        }
+        logger.debug("Applied " + changes + " changes to " + updated + " facts");
+        pending.clear();
+        changes = 0;
+        return updated;
+    }
+
+    /**
+     * Applies the changes and fires the rules
+     *
+     * @return the number of fired rules
+     */
+    public int applyAndFire() {
+        apply();
+        return session.fireAllRules();
+    }
+
+    private Map<String, Long> getPropertyMasks(Class<?> type) {
+        Map<String, Long> propertyMasks = masks.get(type);
+        if (propertyMasks == null) {
+            if (!type.isAnnotationPresent(PropertyReactive.class)) {
+                logger.warn(type.getName() + " is not property reactive, its updates evaluate every pattern again");
+            }
+            List<String> settable = PropertySpecificUtil.getSettableProperties(kbase, type);
+            propertyMasks = new HashMap<String, Long>();
+            for (String property : settable) {
+                long mask = PropertySpecificUtil.calculatePositiveMask(Collections.singletonList(property), settable);
+                Modifies modifies = getModifies(type, property);
+                if (modifies != null) {
+                    mask |= PropertySpecificUtil.calculatePositiveMask(Arrays.asList(modifies.value()), settable);
+                }
+                propertyMasks.put(property, Long.valueOf(mask));
+            }
+            masks.put(type, propertyMasks);
+        }
+        return propertyMasks;
+    }
+
+    /**
+     * @return the Modifies annotation of the setter of the property, or null
+     */
+    private static Modifies getModifies(Class<?> type, String property) {
+        String setter = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(setter) && method.getParameterTypes().length == 1) {
+                return method.getAnnotation(Modifies.class);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The merged changes of a fact
+     */
+    private static final class PendingUpdate {
+        private long mask;
+
+        PendingUpdate(long mask) {
+            this.mask = mask;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.wordpress.ezegrande.drools.examples.cache;
+
+import java.util.List;
+
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * The result of evaluating a Purchase: the change of its discount, if the
+ * rules changed it, and the names of the fired rules. It is immutable, so the
+ * same instance is shared by every Purchase with the same {@link PurchaseKey}.
+ *
+ * @author ezegrande
+ */
+public class DiscountResult {
+    private final boolean discountChanged;
+    private final double discount;
+    private final List<String> firedRules;
+    private final long version;
+
+    DiscountResult(boolean discountChanged, double discount, List<String> firedRules, long version) {
+        this.discountChanged = discountChanged;
+        this.discount = discount;
+        this.firedRules = firedRules;
+        this.version = version;
+    }
+
+    /**
+     * Sets the discount of the Purchase, if the rules changed it
+     *
+     * @param purchase
+     */
+    public void applyTo(Purchase purchase) {
+        if (discountChanged) {
+            purchase.setDiscount(discount);
+        }
+    }
+
+    public boolean isDiscountChanged() {
+        return discountChanged;
+    }
+
+    public double getDiscount() {
+        return discount;
+    }
+
+    /**
+     * @return the names of the fired rules, in firing order (unmodifiable)
+     */
+    public List<String> getFiredRules() {
+        return firedRules;
+    }
+
+    /**
+     * @return the version of the KieBase that produced this result
+     */
+    long getVersion() {
+        return version;
+    }
+
+    public String toString() {
+        return "DiscountResult [Discount: " + (discountChanged ? String.valueOf(discount) : "unchanged")
+                + " | Fired Rules: " + firedRules + "]";
+    }
+}
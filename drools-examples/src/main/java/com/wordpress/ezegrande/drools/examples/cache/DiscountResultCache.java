@@ -0,0 +1,273 @@
+package com.wordpress.ezegrande.drools.examples.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kie.api.KieBase;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.event.kiebase.AfterFunctionRemovedEvent;
+import org.kie.api.event.kiebase.AfterKiePackageAddedEvent;
+import org.kie.api.event.kiebase.AfterKiePackageRemovedEvent;
+import org.kie.api.event.kiebase.AfterRuleAddedEvent;
+import org.kie.api.event.kiebase.AfterRuleRemovedEvent;
+import org.kie.api.event.kiebase.DefaultKieBaseEventListener;
+import org.kie.api.event.kiebase.KieBaseEventListener;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.runtime.StatelessKieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Opt-in memoization of the stateless evaluation of Purchases (for example,
+ * with the rules of 'discount.drl'). The Purchases with the same
+ * {@link PurchaseKey} get the same result, so it is evaluated once and then
+ * applied from a bounded LRU cache.
+ *
+ * Every rule of the KieBase must be declared cache-safe with the
+ * <code>@cacheSafe</code> metadata. A cache-safe rule:
+ * <ul>
+ * <li>Only reads the Payment Method and the Subtotal of the Purchase
+ * <li>Only modifies the Discount of the Purchase
+ * <li>Has no side effects in the globals (like sending emails with the
+ * emailService); the logging of the rules is skipped on cache hits
+ * </ul>
+ *
+ * The cached results are tied to the version of the KieBase, which is
+ * increased when a rule, function or package is added or removed. If a rule
+ * that is not cache-safe is added, the Purchases are evaluated without the
+ * cache. This class is thread-safe.
+ *
+ * @author ezegrande
+ */
+public class DiscountResultCache {
+    /**
+     * Metadata that declares a rule as cache-safe
+     */
+    public static final String CACHE_SAFE = "cacheSafe";
+
+    private Logger logger = LoggerFactory.getLogger(DiscountResultCache.class);
+
+    private final KieBase kbase;
+    private final LruCache<PurchaseKey, DiscountResult> cache;
+    private final Map<String, Object> globals = new HashMap<String, Object>();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final KieBaseEventListener versionListener;
+    private volatile boolean enabled;
+
+    /**
+     * @param kbase
+     *            KieBase with the rules, all of them must be cache-safe
+     * @param maxEntries
+     *            maximum number of cached results
+     */
+    public DiscountResultCache(KieBase kbase, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid number of entries: " + maxEntries);
+        }
+        List<String> unsafeRules = findUnsafeRules(kbase);
+        if (!unsafeRules.isEmpty()) {
+            throw new IllegalArgumentException("The rules are not declared @" + CACHE_SAFE + ": " + unsafeRules);
+        }
+        this.kbase = kbase;
+        this.cache = new LruCache<PurchaseKey, DiscountResult>(maxEntries);
+        this.enabled = true;
+        this.versionListener = new DefaultKieBaseEventListener() {
+            @Override
+            public void afterRuleAdded(AfterRuleAddedEvent event) {
+                invalidate();
+            }
+
+            @Override
+            public void afterRuleRemoved(AfterRuleRemovedEvent event) {
+                invalidate();
+            }
+
+            @Override
+            public void afterKiePackageAdded(AfterKiePackageAddedEvent event) {
+                invalidate();
+            }
+
+            @Override
+            public void afterKiePackageRemoved(AfterKiePackageRemovedEvent event) {
+                invalidate();
+            }
+
+            @Override
+            public void afterFunctionRemoved(AfterFunctionRemovedEvent event) {
+                invalidate();
+            }
+        };
+        kbase.addEventListener(versionListener);
+    }
+
+    /**
+     * Sets a global for the evaluations. It must be set before executing any
+     * Purchase.
+     *
+     * @param identifier
+     * @param value
+     */
+    public synchronized void setGlobal(String identifier, Object value) {
+        globals.put(identifier, value);
+    }
+
+    /**
+     * Applies the result of the rules to the Purchase, evaluating them only
+     * if the result of an equal Purchase is not cached for the current
+     * version of the KieBase
+     *
+     * @param purchase
+     * @return the result applied to the Purchase
+     */
+    public DiscountResult execute(Purchase purchase) {
+        if (!enabled) {
+            return evaluate(purchase, version.get());
+        }
+        PurchaseKey key = new PurchaseKey(purchase);
+        // Read before evaluating, so a result of an old KieBase is never valid
+        long current = version.get();
+        DiscountResult result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result != null && result.getVersion() == current) {
+            hits.incrementAndGet();
+            result.applyTo(purchase);
+            return result;
+        }
+        misses.incrementAndGet();
+        // The rules set the discount of a copy, the one of the Purchase is
+        // not a part of the key
+        Purchase probe = new Purchase(purchase.getCustomerName(), purchase.getSubtotal(),
+                purchase.getPaymentMethod());
+        probe.setDiscount(Double.NaN);
+        result = evaluate(probe, current);
+        synchronized (cache) {
+            if (current == version.get()) {
+                cache.put(key, result);
+            }
+        }
+        result.applyTo(purchase);
+        return result;
+    }
+
+    /**
+     * Stops tracking the version of the KieBase and clears the cache
+     */
+    public void dispose() {
+        kbase.removeEventListener(versionListener);
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the ratio of executions applied from the cache, between 0 and 1
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of results removed because the cache was full
+     */
+    public long getEvictions() {
+        synchronized (cache) {
+            return cache.getEvictions();
+        }
+    }
+
+    /**
+     * @return the number of times the cache was cleared because the KieBase
+     *         changed
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the version of the KieBase known by the cache
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return false if a rule that is not cache-safe was added to the KieBase
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private DiscountResult evaluate(Purchase purchase, long kbaseVersion) {
+        StatelessKieSession session = kbase.newStatelessKieSession();
+        synchronized (this) {
+            for (Map.Entry<String, Object> global : globals.entrySet()) {
+                session.setGlobal(global.getKey(), global.getValue());
+            }
+        }
+        final List<String> firedRules = new ArrayList<String>(1);
+        session.addEventListener(new DefaultAgendaEventListener() {
+            @Override
+            public void afterMatchFired(AfterMatchFiredEvent event) {
+                firedRules.add(event.getMatch().getRule().getName());
+            }
+        });
+        session.execute(purchase);
+        double discount = purchase.getDiscount();
+        return new DiscountResult(!Double.isNaN(discount), discount, Collections.unmodifiableList(firedRules),
+                kbaseVersion);
+    }
+
+    private void invalidate() {
+        synchronized (cache) {
+            version.incrementAndGet();
+            cache.clear();
+        }
+        invalidations.incrementAndGet();
+        List<String> unsafeRules = findUnsafeRules(kbase);
+        enabled = unsafeRules.isEmpty();
+        if (!enabled) {
+            logger.warn("The rules are not declared @" + CACHE_SAFE + ", the cache is disabled: " + unsafeRules);
+        }
+    }
+
+    private static List<String> findUnsafeRules(KieBase kbase) {
+        List<String> unsafeRules = new ArrayList<String>();
+        for (KiePackage kpackage : kbase.getKiePackages()) {
+            for (Rule rule : kpackage.getRules()) {
+                if (!rule.getMetaData().containsKey(CACHE_SAFE)) {
+                    unsafeRules.add(rule.getName());
+                }
+            }
+        }
+        return unsafeRules;
+    }
+}
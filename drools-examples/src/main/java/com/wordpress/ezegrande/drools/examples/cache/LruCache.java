@@ -0,0 +1,35 @@
+package com.wordpress.ezegrande.drools.examples.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A LinkedHashMap in access order that removes its least recently used entry
+ * when it has more than the maximum number of entries. It is not thread-safe.
+ *
+ * @author ezegrande
+ */
+class LruCache<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+    private long evictions;
+
+    LruCache(int maxEntries) {
+        super(16, 0.75f, true);
+        this.maxEntries = maxEntries;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        if (size() > maxEntries) {
+            evictions++;
+            return true;
+        }
+        return false;
+    }
+}
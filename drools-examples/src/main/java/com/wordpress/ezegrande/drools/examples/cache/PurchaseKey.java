@@ -0,0 +1,54 @@
+package com.wordpress.ezegrande.drools.examples.cache;
+
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Canonical key of the content of a Purchase that the cache-safe rules may
+ * read: the Payment Method and the Subtotal. Two Purchases with the same key
+ * get the same result from those rules, whatever their Customer is.
+ *
+ * @author ezegrande
+ */
+public final class PurchaseKey {
+    private final PaymentMethod paymentMethod;
+    private final long subtotalBits;
+    private final int hash;
+
+    public PurchaseKey(Purchase purchase) {
+        this.paymentMethod = purchase.getPaymentMethod();
+        // The bits, so the key is consistent with Double.equals
+        this.subtotalBits = Double.doubleToLongBits(purchase.getSubtotal());
+        int h = paymentMethod == null ? 0 : paymentMethod.ordinal() + 1;
+        this.hash = 31 * h + (int) (subtotalBits ^ (subtotalBits >>> 32));
+    }
+
+    public PaymentMethod getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public double getSubtotal() {
+        return Double.longBitsToDouble(subtotalBits);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PurchaseKey)) {
+            return false;
+        }
+        PurchaseKey other = (PurchaseKey) obj;
+        return paymentMethod == other.paymentMethod && subtotalBits == other.subtotalBits;
+    }
+
+    public String toString() {
+        return "PurchaseKey [Payment Method: " + paymentMethod + " | Subtotal: " + getSubtotal() + "]";
+    }
+}
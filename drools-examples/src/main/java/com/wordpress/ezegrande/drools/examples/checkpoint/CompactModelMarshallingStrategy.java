@@ -0,0 +1,112 @@
+package com.wordpress.ezegrande.drools.examples.checkpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Marshalling strategy for the objects of the model (Purchase and
+ * PotentialCustomer). Instead of using Java serialization, only the values of
+ * the fields are written, so the model does not need to be Serializable and
+ * each fact takes a few bytes:
+ * <ul>
+ * <li>Purchase: tag, customer name, subtotal, payment method, discount
+ * <li>PotentialCustomer: tag, customer name, credit limit
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class CompactModelMarshallingStrategy implements ObjectMarshallingStrategy {
+    private static final byte PURCHASE = 1;
+    private static final byte POTENTIAL_CUSTOMER = 2;
+
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    public boolean accept(Object object) {
+        return object instanceof Purchase || object instanceof PotentialCustomer;
+    }
+
+    public void write(ObjectOutputStream os, Object object) throws IOException {
+        writeObject(os, object);
+    }
+
+    public Object read(ObjectInputStream is) throws IOException, ClassNotFoundException {
+        return readObject(is);
+    }
+
+    public byte[] marshal(Context context, ObjectOutputStream os, Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeObject(out, object);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public Object unmarshal(Context context, ObjectInputStream is, byte[] object, ClassLoader classloader)
+            throws IOException, ClassNotFoundException {
+        return readObject(new DataInputStream(new ByteArrayInputStream(object)));
+    }
+
+    public Context createContext() {
+        // No shared state is needed between objects
+        return null;
+    }
+
+    /**
+     * Writes the fields of a Purchase or a PotentialCustomer
+     *
+     * @param out
+     * @param object
+     * @throws IOException
+     */
+    public void writeObject(DataOutput out, Object object) throws IOException {
+        if (object instanceof Purchase) {
+            Purchase purchase = (Purchase) object;
+            out.writeByte(PURCHASE);
+            out.writeUTF(purchase.getCustomerName());
+            out.writeDouble(purchase.getSubtotal());
+            out.writeByte(purchase.getPaymentMethod().ordinal());
+            out.writeDouble(purchase.getDiscount());
+        } else if (object instanceof PotentialCustomer) {
+            PotentialCustomer potentialCustomer = (PotentialCustomer) object;
+            out.writeByte(POTENTIAL_CUSTOMER);
+            out.writeUTF(potentialCustomer.getCustomerName());
+            out.writeDouble(potentialCustomer.getCreditLimit());
+        } else {
+            throw new IllegalArgumentException("Unsupported object: " + object);
+        }
+    }
+
+    /**
+     * Reads an object written by {@link #writeObject(DataOutput, Object)}
+     *
+     * @param in
+     * @return the Purchase or PotentialCustomer
+     * @throws IOException
+     */
+    public Object readObject(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case PURCHASE:
+            Purchase purchase = new Purchase(in.readUTF(), in.readDouble(), PAYMENT_METHODS[in.readByte()]);
+            purchase.setDiscount(in.readDouble());
+            return purchase;
+        case POTENTIAL_CUSTOMER:
+            return new PotentialCustomer(in.readUTF(), in.readDouble());
+        default:
+            throw new IOException("Unknown object tag: " + tag);
+        }
+    }
+}
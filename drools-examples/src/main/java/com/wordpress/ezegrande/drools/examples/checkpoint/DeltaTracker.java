@@ -0,0 +1,133 @@
+package com.wordpress.ezegrande.drools.examples.checkpoint;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+
+import com.wordpress.ezegrande.drools.examples.util.FactHandleUtil;
+
+/**
+ * Keeps track of the facts inserted, updated and deleted since the last
+ * checkpoint. Operations over the same fact are merged, so a delta contains at
+ * most one operation per FactHandle:
+ * <ul>
+ * <li>Insert + Update = Insert
+ * <li>Insert + Delete = nothing
+ * <li>Update + Update = Update
+ * <li>Update + Delete = Delete
+ * </ul>
+ * 
+ * Note that only the changes notified to the engine are tracked. If an object
+ * is modified without calling update (or modify), the change will not be part
+ * of the delta.
+ * 
+ * Only the changes made by the application are tracked, like in the
+ * FactJournal. The facts inserted, updated or deleted by the rules are derived
+ * again when the delta is applied, so they are not part of it (a fact inserted
+ * logically would otherwise lose its justification). The changes that the
+ * application makes to facts inserted by the rules since the last full
+ * checkpoint are ignored too, as those facts are not in the deltas.
+ * 
+ * @author ezegrande
+ */
+public class DeltaTracker implements RuleRuntimeEventListener {
+    private final Map<Long, FactOperation> operations = new LinkedHashMap<Long, FactOperation>();
+    // Facts inserted by the rules since the last full checkpoint, they are
+    // derived again with new ids when the deltas are applied
+    private final Set<Long> derived = new HashSet<Long>();
+
+    public synchronized void objectInserted(ObjectInsertedEvent event) {
+        Long id = Long.valueOf(FactHandleUtil.getId(event.getFactHandle()));
+        if (event.getRule() != null) {
+            derived.add(id);
+            return;
+        }
+        operations.put(id, new FactOperation(FactOperation.Type.INSERT, id.longValue(), event.getObject()));
+    }
+
+    public synchronized void objectUpdated(ObjectUpdatedEvent event) {
+        Long id = Long.valueOf(FactHandleUtil.getId(event.getFactHandle()));
+        if (event.getRule() != null || derived.contains(id)) {
+            return;
+        }
+        FactOperation previous = operations.get(id);
+        FactOperation.Type type = FactOperation.Type.UPDATE;
+        if (previous != null && previous.getType() == FactOperation.Type.INSERT) {
+            type = FactOperation.Type.INSERT;
+        }
+        operations.put(id, new FactOperation(type, id.longValue(), event.getObject()));
+    }
+
+    public synchronized void objectDeleted(ObjectDeletedEvent event) {
+        Long id = Long.valueOf(FactHandleUtil.getId(event.getFactHandle()));
+        if (event.getRule() != null || derived.remove(id)) {
+            return;
+        }
+        FactOperation previous = operations.remove(id);
+        if (previous == null || previous.getType() != FactOperation.Type.INSERT) {
+            operations.put(id, new FactOperation(FactOperation.Type.DELETE, id.longValue(), null));
+        }
+    }
+
+    /**
+     * @return the number of pending operations
+     */
+    public synchronized int size() {
+        return operations.size();
+    }
+
+    /**
+     * Returns the pending operations and starts tracking a new delta
+     * 
+     * @return the operations since the last call, in order
+     */
+    public synchronized List<FactOperation> drain() {
+        List<FactOperation> delta = new ArrayList<FactOperation>(operations.values());
+        operations.clear();
+        return delta;
+    }
+
+    /**
+     * Puts back the operations returned by {@link #drain()}, when their delta
+     * could not be written. They go before the operations tracked since then,
+     * merged with them as if they had never been drained.
+     *
+     * @param delta
+     *            the operations returned by the last drain
+     */
+    public synchronized void restore(List<FactOperation> delta) {
+        Map<Long, FactOperation> merged = new LinkedHashMap<Long, FactOperation>();
+        for (FactOperation previous : delta) {
+            Long id = Long.valueOf(previous.getFactHandleId());
+            FactOperation next = operations.remove(id);
+            if (next == null) {
+                merged.put(id, previous);
+            } else if (next.getType() == FactOperation.Type.UPDATE) {
+                // Insert + Update = Insert, Update + Update = Update
+                merged.put(id, new FactOperation(previous.getType(), id.longValue(), next.getObject()));
+            } else if (previous.getType() != FactOperation.Type.INSERT) {
+                // Update + Delete = Delete, and Insert + Delete = nothing
+                merged.put(id, next);
+            }
+        }
+        merged.putAll(operations);
+        operations.clear();
+        operations.putAll(merged);
+    }
+
+    /**
+     * Discards the pending operations (i.e. after a full checkpoint)
+     */
+    public synchronized void reset() {
+        operations.clear();
+        derived.clear();
+    }
+}
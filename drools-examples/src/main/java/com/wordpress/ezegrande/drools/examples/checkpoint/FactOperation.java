@@ -0,0 +1,45 @@
+package com.wordpress.ezegrande.drools.examples.checkpoint;
+
+/**
+ * An operation over a fact of the Working Memory, identified by the id of its
+ * FactHandle
+ * 
+ * @author ezegrande
+ */
+public class FactOperation {
+    /**
+     * Available operations over a fact
+     */
+    public enum Type {
+        INSERT, UPDATE, DELETE;
+    }
+
+    private final Type type;
+    private final long factHandleId;
+    private final Object object;
+
+    public FactOperation(Type type, long factHandleId, Object object) {
+        this.type = type;
+        this.factHandleId = factHandleId;
+        this.object = object;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getFactHandleId() {
+        return factHandleId;
+    }
+
+    /**
+     * @return the inserted or updated object, or null for DELETE operations
+     */
+    public Object getObject() {
+        return object;
+    }
+
+    public String toString() {
+        return "Fact Operation [Type: " + type + " | FactHandle: " + factHandleId + " | Object: " + object + "]";
+    }
+}
@@ -0,0 +1,412 @@
+package com.wordpress.ezegrande.drools.examples.checkpoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.marshalling.Marshaller;
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.util.FactHandleUtil;
+
+/**
+ * Saves and restores the state of a Stateful Session in a directory. There are
+ * two kinds of checkpoints:
+ * <ul>
+ * <li>Full: the Drools Marshaller writes the facts, their FactHandles, the
+ * Agenda and the pending timers (i.e. rules with the duration attribute). The
+ * objects of the model are written by the
+ * {@link CompactModelMarshallingStrategy}, the rest of them must be
+ * Serializable. Previous checkpoints are deleted after a full checkpoint.
+ * <li>Delta: only the facts inserted, updated or deleted since the previous
+ * checkpoint (see {@link DeltaTracker}). The Agenda is not part of a delta:
+ * when a delta is restored its operations are applied to the session, so the
+ * rules are evaluated again. Only the changes made by the application are
+ * part of a delta, the facts of the rules are derived again.
+ * </ul>
+ *
+ * A full checkpoint is taken right after restoring deltas: the facts inserted
+ * by the deltas get new ids in the restored session, and the next deltas refer
+ * to them.
+ *
+ * Checkpoints are written to a temporary file which is renamed once it is
+ * synced to disk, so a crash never leaves a partial checkpoint. Then the
+ * directory is synced too, so the rename survives a crash. Java 5 can not open
+ * a directory, so it is synced through the FileChannel of Java 7 when it is
+ * available. With older JVMs, or file systems that do not support it, the
+ * last checkpoint may be lost in a crash. They are read through a memory
+ * mapped buffer.
+ *
+ * Note that globals are not part of the checkpoint, so they must be set again
+ * in the restored session.
+ *
+ * @author ezegrande
+ */
+public class SessionCheckpointer {
+    private static final int MAGIC = 0x44434B50;
+    private static final byte FULL = 1;
+    private static final byte DELTA = 2;
+
+    private static final byte SERIALIZED_OBJECT = 0;
+    private static final byte MODEL_OBJECT = 1;
+
+    private static final String PREFIX = "checkpoint-";
+    private static final String FULL_SUFFIX = ".full";
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private Logger logger = LoggerFactory.getLogger(SessionCheckpointer.class);
+
+    private final File directory;
+    private final Marshaller marshaller;
+    private final CompactModelMarshallingStrategy modelStrategy = new CompactModelMarshallingStrategy();
+    private final DeltaTracker tracker = new DeltaTracker();
+    private long sequence;
+
+    public SessionCheckpointer(KieBase kbase, File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Invalid checkpoint directory: " + directory);
+        }
+        this.directory = directory;
+        KieServices ks = KieServices.Factory.get();
+        ObjectMarshallingStrategy[] strategies = { modelStrategy,
+                ks.getMarshallers().newSerializeMarshallingStrategy() };
+        this.marshaller = ks.getMarshallers().newMarshaller(kbase, strategies);
+        for (File file : listCheckpoints()) {
+            sequence = Math.max(sequence, sequenceOf(file));
+        }
+    }
+
+    /**
+     * Starts tracking the changes of the session, so delta checkpoints can be
+     * taken
+     *
+     * @param session
+     */
+    public void track(KieSession session) {
+        tracker.reset();
+        session.addEventListener(tracker);
+    }
+
+    /**
+     * Writes a full checkpoint of the session and deletes the previous ones
+     *
+     * @param session
+     * @return the checkpoint file
+     * @throws IOException
+     */
+    public synchronized File checkpoint(KieSession session) throws IOException {
+        long start = System.nanoTime();
+        long checkpointSequence = ++sequence;
+        File tempFile = new File(directory, PREFIX + checkpointSequence + FULL_SUFFIX + TEMP_SUFFIX);
+        FileOutputStream fos = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            writeHeader(out, FULL, checkpointSequence);
+            marshaller.marshall(out, session);
+            out.flush();
+        } finally {
+            // The marshaller closes the stream, so the file is synced after
+            // closing it
+            fos.close();
+        }
+        sync(tempFile);
+        File file = commit(tempFile, new File(directory, PREFIX + checkpointSequence + FULL_SUFFIX));
+        tracker.reset();
+        for (File previous : listCheckpoints()) {
+            if (sequenceOf(previous) < checkpointSequence && !previous.delete()) {
+                logger.warn("Unable to delete the checkpoint " + previous);
+            }
+        }
+        logger.info("Full checkpoint " + file.getName() + " (" + file.length() + " bytes) written in "
+                + (System.nanoTime() - start) / 1000 + "us");
+        return file;
+    }
+
+    /**
+     * Writes the changes since the previous checkpoint. If it fails, the
+     * changes are kept for the next delta.
+     *
+     * @return the checkpoint file
+     * @throws IOException
+     */
+    public synchronized File checkpointDelta() throws IOException {
+        long start = System.nanoTime();
+        List<FactOperation> operations = tracker.drain();
+        long checkpointSequence = ++sequence;
+        File tempFile = new File(directory, PREFIX + checkpointSequence + DELTA_SUFFIX + TEMP_SUFFIX);
+        File file = null;
+        try {
+            writeDelta(tempFile, checkpointSequence, operations);
+            file = commit(tempFile, new File(directory, PREFIX + checkpointSequence + DELTA_SUFFIX));
+        } finally {
+            if (file == null) {
+                tracker.restore(operations);
+                tempFile.delete();
+            }
+        }
+        logger.info("Delta checkpoint " + file.getName() + " (" + operations.size() + " operations, "
+                + file.length() + " bytes) written in " + (System.nanoTime() - start) / 1000 + "us");
+        return file;
+    }
+
+    private void writeDelta(File tempFile, long checkpointSequence, List<FactOperation> operations)
+            throws IOException {
+        FileOutputStream fos = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream header = new DataOutputStream(fos);
+            writeHeader(header, DELTA, checkpointSequence);
+            header.flush();
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            out.writeInt(operations.size());
+            for (FactOperation operation : operations) {
+                out.writeByte(operation.getType().ordinal());
+                out.writeLong(operation.getFactHandleId());
+                if (operation.getType() != FactOperation.Type.DELETE) {
+                    writeObject(out, operation.getObject());
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Restores the session with the default configuration
+     *
+     * @return the restored session
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public KieSession restore() throws IOException, ClassNotFoundException {
+        return restore(KieServices.Factory.get().newKieSessionConfiguration());
+    }
+
+    /**
+     * Restores the last full checkpoint and applies the deltas taken after it.
+     * If there were deltas, it takes a full checkpoint of the restored session,
+     * which replaces the previous ones. The changes of the restored session are
+     * tracked from now on.
+     *
+     * @param ksconf
+     *            the configuration of the restored session, i.e. the clock type
+     * @return the restored session
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public synchronized KieSession restore(KieSessionConfiguration ksconf) throws IOException,
+            ClassNotFoundException {
+        long start = System.nanoTime();
+        File full = null;
+        List<File> deltas = new ArrayList<File>();
+        for (File file : listCheckpoints()) {
+            if (file.getName().endsWith(FULL_SUFFIX) && (full == null || sequenceOf(file) > sequenceOf(full))) {
+                full = file;
+            }
+        }
+        if (full == null) {
+            throw new IOException("There is no full checkpoint in " + directory);
+        }
+        for (File file : listCheckpoints()) {
+            if (file.getName().endsWith(DELTA_SUFFIX) && sequenceOf(file) > sequenceOf(full)) {
+                deltas.add(file);
+            }
+        }
+        sortBySequence(deltas);
+
+        InputStream in = new ByteBufferInputStream(map(full));
+        readHeader(new DataInputStream(in), FULL, full);
+        KieSession session = marshaller.unmarshall(in, ksconf, KieServices.Factory.get().newEnvironment());
+
+        // Map the ids of the checkpoint to the FactHandles of the session. Ids
+        // are kept by the marshaller, but facts inserted by a delta get new
+        // ids, so a full checkpoint is taken below
+        Map<Long, FactHandle> factHandles = new HashMap<Long, FactHandle>();
+        for (FactHandle factHandle : session.getFactHandles()) {
+            factHandles.put(Long.valueOf(FactHandleUtil.getId(factHandle)), factHandle);
+        }
+        for (File delta : deltas) {
+            applyDelta(session, delta, factHandles);
+        }
+        logger.info("Session restored from " + full.getName() + " and " + deltas.size() + " deltas in "
+                + (System.nanoTime() - start) / 1000 + "us");
+        if (!deltas.isEmpty()) {
+            checkpoint(session);
+        }
+        track(session);
+        return session;
+    }
+
+    private void applyDelta(KieSession session, File delta, Map<Long, FactHandle> factHandles) throws IOException,
+            ClassNotFoundException {
+        InputStream in = new ByteBufferInputStream(map(delta));
+        readHeader(new DataInputStream(in), DELTA, delta);
+        ObjectInputStream ois = new ObjectInputStream(in);
+        int count = ois.readInt();
+        FactOperation.Type[] types = FactOperation.Type.values();
+        for (int i = 0; i < count; i++) {
+            FactOperation.Type type = types[ois.readByte()];
+            Long id = Long.valueOf(ois.readLong());
+            switch (type) {
+            case INSERT:
+                factHandles.put(id, session.insert(readObject(ois)));
+                break;
+            case UPDATE:
+                session.update(getFactHandle(factHandles, id), readObject(ois));
+                break;
+            case DELETE:
+                session.delete(getFactHandle(factHandles, id));
+                factHandles.remove(id);
+                break;
+            }
+        }
+    }
+
+    private FactHandle getFactHandle(Map<Long, FactHandle> factHandles, Long id) throws IOException {
+        FactHandle factHandle = factHandles.get(id);
+        if (factHandle == null) {
+            throw new IOException("Unknown FactHandle in delta checkpoint: " + id);
+        }
+        return factHandle;
+    }
+
+    private void writeObject(ObjectOutputStream out, Object object) throws IOException {
+        if (modelStrategy.accept(object)) {
+            out.writeByte(MODEL_OBJECT);
+            modelStrategy.writeObject(out, object);
+        } else {
+            out.writeByte(SERIALIZED_OBJECT);
+            out.writeObject(object);
+        }
+    }
+
+    private Object readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        return in.readByte() == MODEL_OBJECT ? modelStrategy.readObject(in) : in.readObject();
+    }
+
+    private void writeHeader(DataOutputStream out, byte type, long checkpointSequence) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(type);
+        out.writeLong(checkpointSequence);
+    }
+
+    private void readHeader(DataInputStream in, byte type, File file) throws IOException {
+        if (in.readInt() != MAGIC || in.readByte() != type) {
+            throw new IOException("Invalid checkpoint file: " + file);
+        }
+        in.readLong();
+    }
+
+    private ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            // The mapping remains valid after closing the channel
+            raf.close();
+        }
+    }
+
+    private void sync(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private File commit(File tempFile, File file) throws IOException {
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Unable to rename " + tempFile + " to " + file);
+        }
+        syncDirectory();
+        return file;
+    }
+
+    /**
+     * Syncs the directory, so its renamed files are durable. It is the same
+     * than FileChannel.open(directory.toPath(), StandardOpenOption.READ)
+     * .force(true), called by reflection since it requires Java 7.
+     */
+    private void syncDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            Object path = File.class.getMethod("toPath").invoke(directory);
+            Class<?> openOptionClass = Class.forName("java.nio.file.OpenOption");
+            Object options = Array.newInstance(openOptionClass, 1);
+            Array.set(options, 0, Class.forName("java.nio.file.StandardOpenOption").getField("READ").get(null));
+            Method open = FileChannel.class.getMethod("open", Class.forName("java.nio.file.Path"), options
+                    .getClass());
+            channel = (FileChannel) open.invoke(null, path, options);
+        } catch (InvocationTargetException e) {
+            // i.e. a directory can not be opened in Windows
+            logger.debug("Unable to open the directory " + directory + " to sync it: " + e.getCause());
+            return;
+        } catch (Exception e) {
+            logger.debug("The directory " + directory + " can not be synced before Java 7");
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private List<File> listCheckpoints() {
+        List<File> checkpoints = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(PREFIX) && (name.endsWith(FULL_SUFFIX) || name.endsWith(DELTA_SUFFIX))) {
+                    checkpoints.add(file);
+                }
+            }
+        }
+        return checkpoints;
+    }
+
+    private void sortBySequence(List<File> files) {
+        Collections.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long s1 = sequenceOf(f1);
+                long s2 = sequenceOf(f2);
+                return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+            }
+        });
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.indexOf('.')));
+    }
+}
@@ -0,0 +1,289 @@
+package com.wordpress.ezegrande.drools.examples.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Distributes the Purchases between several {@link RuleNode}s. The rules
+ * correlate the Purchases of the same customer, so the customers are split in a
+ * fixed number of partitions using the hash of their names, and each partition
+ * is owned by only one node:
+ * <ul>
+ * <li>A Purchase is sent to the node that owns the partition of its customer
+ * <li>The Potential Customers are the union of the ones inferred by all the
+ * nodes
+ * <li>When a node joins or leaves the cluster the partitions are rebalanced:
+ * the sessions of the moved partitions are exported from their old owners and
+ * imported in the new ones, so the state of the rules is not lost. The old
+ * owner keeps the session until the new one acknowledges the import; if the
+ * import fails, the old owner restores it and keeps the partition
+ * </ul>
+ *
+ * A node that leaves without calling {@link #removeNode(InetSocketAddress)}
+ * loses its partitions, there is no replication.
+ *
+ * @author ezegrande
+ */
+public class ClusterCoordinator {
+    public static final int DEFAULT_PARTITION_COUNT = 64;
+
+    private Logger logger = LoggerFactory.getLogger(ClusterCoordinator.class);
+
+    private final int partitionCount;
+    private final NodeClient[] owners;
+    private final List<NodeClient> nodes = new ArrayList<NodeClient>();
+    // Purchases are submitted concurrently, rebalancing is exclusive
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ClusterCoordinator() {
+        this(DEFAULT_PARTITION_COUNT);
+    }
+
+    public ClusterCoordinator(int partitionCount) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Invalid partition count: " + partitionCount);
+        }
+        this.partitionCount = partitionCount;
+        this.owners = new NodeClient[partitionCount];
+    }
+
+    /**
+     * @return the partition of the customer
+     */
+    public int getPartition(String customerName) {
+        return (customerName.hashCode() & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    /**
+     * Sends the Purchase to the node that owns the partition of its customer,
+     * and sets the discount calculated by the node
+     *
+     * @param purchase
+     * @throws IOException
+     */
+    public void submit(Purchase purchase) throws IOException {
+        int partition = getPartition(purchase.getCustomerName());
+        lock.readLock().lock();
+        try {
+            NodeClient owner = owners[partition];
+            if (owner == null) {
+                throw new IllegalStateException("There are no nodes in the cluster");
+            }
+            purchase.setDiscount(owner.insert(partition, purchase));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the Potential Customers inferred by all the nodes
+     * @throws IOException
+     */
+    public List<PotentialCustomer> getPotentialCustomers() throws IOException {
+        lock.readLock().lock();
+        try {
+            List<PotentialCustomer> potentialCustomers = new ArrayList<PotentialCustomer>();
+            for (NodeClient node : nodes) {
+                potentialCustomers.addAll(node.getPotentialCustomers());
+            }
+            return potentialCustomers;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Connects to a new node and moves to it its share of the partitions
+     *
+     * @param address
+     * @throws IOException
+     */
+    public void addNode(InetSocketAddress address) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (findNode(address) != null) {
+                throw new IllegalArgumentException("The node " + address + " is already in the cluster");
+            }
+            NodeClient node = new NodeClient(address);
+            nodes.add(node);
+            try {
+                rebalance();
+            } catch (IOException e) {
+                // The partitions moved before the failure stay in the node
+                if (countPartitions(node) == 0) {
+                    nodes.remove(node);
+                    node.close();
+                }
+                throw e;
+            }
+            logger.info("Node " + address + " added, partitions: " + getPartitionCounts());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the partitions of the node to the rest of the nodes, and
+     * disconnects from it
+     *
+     * @param address
+     * @throws IOException
+     */
+    public void removeNode(InetSocketAddress address) throws IOException {
+        lock.writeLock().lock();
+        try {
+            NodeClient node = findNode(address);
+            if (node == null) {
+                throw new IllegalArgumentException("The node " + address + " is not in the cluster");
+            }
+            if (nodes.size() == 1) {
+                throw new IllegalStateException("The last node of the cluster can not be removed");
+            }
+            nodes.remove(node);
+            try {
+                rebalance();
+            } catch (IOException e) {
+                // The partitions that were not moved are still owned by the node
+                nodes.add(node);
+                throw e;
+            }
+            node.close();
+            logger.info("Node " + address + " removed, partitions: " + getPartitionCounts());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of partitions owned by each node
+     */
+    public Map<InetSocketAddress, Integer> getPartitionCounts() {
+        lock.readLock().lock();
+        try {
+            Map<InetSocketAddress, Integer> counts = new LinkedHashMap<InetSocketAddress, Integer>();
+            for (NodeClient node : nodes) {
+                counts.put(node.getAddress(), Integer.valueOf(countPartitions(node)));
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Disconnects from all the nodes
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            for (NodeClient node : nodes) {
+                try {
+                    node.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close the connection to " + node.getAddress(), e);
+                }
+            }
+            nodes.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the minimum number of partitions so that no node owns more than
+     * its share. Partitions without an owner, or owned by a node that is no
+     * longer in the cluster, are moved first.
+     */
+    private void rebalance() throws IOException {
+        int share = (partitionCount + nodes.size() - 1) / nodes.size();
+        for (int partition = 0; partition < partitionCount; partition++) {
+            NodeClient owner = owners[partition];
+            if (owner == null || !nodes.contains(owner)) {
+                move(partition, owner, leastLoadedNode());
+            }
+        }
+        for (int partition = 0; partition < partitionCount; partition++) {
+            NodeClient owner = owners[partition];
+            if (countPartitions(owner) > share) {
+                NodeClient target = leastLoadedNode();
+                if (countPartitions(target) < share) {
+                    move(partition, owner, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the session of the partition. The ownership only changes once the
+     * new owner imported it.
+     */
+    private void move(int partition, NodeClient from, NodeClient to) throws IOException {
+        if (from == null) {
+            owners[partition] = to;
+            return;
+        }
+        byte[] session = from.exportPartition(partition);
+        try {
+            to.importPartition(partition, session);
+        } catch (IOException e) {
+            try {
+                from.restorePartition(partition);
+            } catch (IOException restoreError) {
+                logger.error("Unable to restore the partition " + partition + " in " + from.getAddress(),
+                        restoreError);
+            }
+            throw e;
+        }
+        owners[partition] = to;
+        try {
+            from.releasePartition(partition);
+        } catch (IOException e) {
+            // The old owner keeps an exported copy, which is neither queried nor updated
+            logger.warn("Unable to release the partition " + partition + " in " + from.getAddress(), e);
+        }
+    }
+
+    private NodeClient leastLoadedNode() {
+        NodeClient leastLoaded = null;
+        int min = Integer.MAX_VALUE;
+        for (NodeClient node : nodes) {
+            int count = countPartitions(node);
+            if (count < min) {
+                min = count;
+                leastLoaded = node;
+            }
+        }
+        return leastLoaded;
+    }
+
+    private int countPartitions(NodeClient node) {
+        int count = 0;
+        for (NodeClient owner : owners) {
+            if (owner == node) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private NodeClient findNode(InetSocketAddress address) {
+        for (NodeClient node : nodes) {
+            if (node.getAddress().equals(address)) {
+                return node;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.wordpress.ezegrande.drools.examples.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wordpress.ezegrande.drools.examples.checkpoint.CompactModelMarshallingStrategy;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Connection from the {@link ClusterCoordinator} to a {@link RuleNode}. The
+ * requests are sent one at a time, each one of them waits for its response.
+ *
+ * @author ezegrande
+ */
+class NodeClient {
+    private final InetSocketAddress address;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final CompactModelMarshallingStrategy modelStrategy = new CompactModelMarshallingStrategy();
+
+    NodeClient(InetSocketAddress address) throws IOException {
+        this.address = address;
+        this.socket = new Socket(address.getAddress(), address.getPort());
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the discount of the purchase calculated by the node
+     */
+    synchronized double insert(int partition, Purchase purchase) throws IOException {
+        out.writeByte(RuleNode.INSERT);
+        out.writeInt(partition);
+        modelStrategy.writeObject(out, purchase);
+        readResponse();
+        return in.readDouble();
+    }
+
+    synchronized List<PotentialCustomer> getPotentialCustomers() throws IOException {
+        out.writeByte(RuleNode.POTENTIAL_CUSTOMERS);
+        readResponse();
+        int size = in.readInt();
+        List<PotentialCustomer> potentialCustomers = new ArrayList<PotentialCustomer>(size);
+        for (int i = 0; i < size; i++) {
+            potentialCustomers.add((PotentialCustomer) modelStrategy.readObject(in));
+        }
+        return potentialCustomers;
+    }
+
+    synchronized byte[] exportPartition(int partition) throws IOException {
+        out.writeByte(RuleNode.EXPORT);
+        out.writeInt(partition);
+        readResponse();
+        byte[] session = new byte[in.readInt()];
+        in.readFully(session);
+        return session;
+    }
+
+    synchronized void importPartition(int partition, byte[] session) throws IOException {
+        out.writeByte(RuleNode.IMPORT);
+        out.writeInt(partition);
+        out.writeInt(session.length);
+        out.write(session);
+        readResponse();
+    }
+
+    synchronized void releasePartition(int partition) throws IOException {
+        out.writeByte(RuleNode.RELEASE);
+        out.writeInt(partition);
+        readResponse();
+    }
+
+    synchronized void restorePartition(int partition) throws IOException {
+        out.writeByte(RuleNode.RESTORE);
+        out.writeInt(partition);
+        readResponse();
+    }
+
+    void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Flushes the request and reads the status of the response
+     */
+    private void readResponse() throws IOException {
+        out.flush();
+        if (in.readByte() != RuleNode.OK) {
+            throw new IOException("Request failed in the node " + address + ": " + in.readUTF());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NodeClient [Address: " + address + "]";
+    }
+}
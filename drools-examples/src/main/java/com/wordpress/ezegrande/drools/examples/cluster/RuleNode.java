@@ -0,0 +1,383 @@
+package com.wordpress.ezegrande.drools.examples.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.marshalling.Marshaller;
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+import org.kie.api.runtime.ClassObjectFilter;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.checkpoint.CompactModelMarshallingStrategy;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * A rule engine node. It owns a set of partitions, each one of them with its
+ * own Stateful Session, and it serves the requests of the
+ * {@link ClusterCoordinator} through a socket:
+ * <ul>
+ * <li>Insert a Purchase into a partition and fire the rules. The discount is
+ * sent back.
+ * <li>Get the Potential Customers inferred in all the partitions of the node
+ * <li>Export a partition: its session is marshalled and set aside. It is kept
+ * until the partition is released (the new owner imported it) or restored
+ * (the import failed). Meanwhile it is not queried and its Purchases are
+ * rejected
+ * <li>Import a partition: the marshalled session is restored in this node
+ * <li>Release an exported partition: its session is disposed
+ * <li>Restore an exported partition: its session is owned again by this node
+ * </ul>
+ *
+ * The session of a partition is created when its first Purchase is inserted.
+ * The rules of the KieBase may use the globals 'logger' and 'emailService'.
+ *
+ * @author ezegrande
+ */
+public class RuleNode {
+    static final byte INSERT = 1;
+    static final byte POTENTIAL_CUSTOMERS = 2;
+    static final byte EXPORT = 3;
+    static final byte IMPORT = 4;
+    static final byte RELEASE = 5;
+    static final byte RESTORE = 6;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private Logger logger = LoggerFactory.getLogger(RuleNode.class);
+
+    private final KieBase kbase;
+    private final Marshaller marshaller;
+    private final CompactModelMarshallingStrategy modelStrategy = new CompactModelMarshallingStrategy();
+    private final Map<Integer, KieSession> partitions = new ConcurrentHashMap<Integer, KieSession>();
+    // Exported partitions, until they are released or restored
+    private final Map<Integer, KieSession> exported = new ConcurrentHashMap<Integer, KieSession>();
+    private final Set<Socket> sockets = Collections.synchronizedSet(new HashSet<Socket>());
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private ServerSocket serverSocket;
+
+    public RuleNode(KieBase kbase) {
+        this.kbase = kbase;
+        KieServices ks = KieServices.Factory.get();
+        ObjectMarshallingStrategy[] strategies = { modelStrategy,
+                ks.getMarshallers().newSerializeMarshallingStrategy() };
+        this.marshaller = ks.getMarshallers().newMarshaller(kbase, strategies);
+    }
+
+    /**
+     * Starts listening in a random port of the loopback interface
+     *
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        start(new InetSocketAddress(InetAddress.getByName(null), 0));
+    }
+
+    /**
+     * Starts listening in the given address
+     *
+     * @param address
+     * @throws IOException
+     */
+    public void start(InetSocketAddress address) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        connections.execute(new Runnable() {
+            public void run() {
+                accept();
+            }
+        });
+        logger.info("Rule node listening in " + getAddress());
+    }
+
+    /**
+     * Stops listening and disposes the sessions of all the partitions
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the server socket", e);
+        }
+        // The serve threads are blocked reading from their sockets
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+        }
+        connections.shutdownNow();
+        for (KieSession session : partitions.values()) {
+            session.dispose();
+        }
+        partitions.clear();
+        for (KieSession session : exported.values()) {
+            session.dispose();
+        }
+        exported.clear();
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * @return the partitions that have a session in this node
+     */
+    public Set<Integer> getPartitions() {
+        return new HashSet<Integer>(partitions.keySet());
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connections.execute(new Runnable() {
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.error("Unable to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        sockets.add(socket);
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                byte request;
+                try {
+                    request = in.readByte();
+                } catch (EOFException e) {
+                    // The coordinator closed the connection
+                    break;
+                }
+                try {
+                    handle(request, in, out);
+                } catch (IOException e) {
+                    // e.g. a session that can not be imported. If the connection
+                    // was lost, writing the response or reading the next request fails
+                    logger.error("Unable to handle the request " + request, e);
+                    writeError(out, e);
+                } catch (RuntimeException e) {
+                    logger.error("Unable to handle the request " + request, e);
+                    writeError(out, e);
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            logger.debug("Connection closed: " + e.getMessage());
+        } catch (IOException e) {
+            logger.error("Connection error", e);
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private void writeError(DataOutputStream out, Exception e) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(String.valueOf(e.getMessage()));
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the socket", e);
+        }
+    }
+
+    private void handle(byte request, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (request) {
+        case INSERT: {
+            Integer partition = Integer.valueOf(in.readInt());
+            Purchase purchase = (Purchase) modelStrategy.readObject(in);
+            double discount = insert(partition, purchase);
+            out.writeByte(OK);
+            out.writeDouble(discount);
+            break;
+        }
+        case POTENTIAL_CUSTOMERS: {
+            List<PotentialCustomer> potentialCustomers = getPotentialCustomers();
+            out.writeByte(OK);
+            out.writeInt(potentialCustomers.size());
+            for (PotentialCustomer potentialCustomer : potentialCustomers) {
+                modelStrategy.writeObject(out, potentialCustomer);
+            }
+            break;
+        }
+        case EXPORT: {
+            byte[] session = exportPartition(Integer.valueOf(in.readInt()));
+            out.writeByte(OK);
+            out.writeInt(session.length);
+            out.write(session);
+            break;
+        }
+        case IMPORT: {
+            Integer partition = Integer.valueOf(in.readInt());
+            byte[] session = new byte[in.readInt()];
+            in.readFully(session);
+            importPartition(partition, session);
+            out.writeByte(OK);
+            break;
+        }
+        case RELEASE: {
+            releasePartition(Integer.valueOf(in.readInt()));
+            out.writeByte(OK);
+            break;
+        }
+        case RESTORE: {
+            restorePartition(Integer.valueOf(in.readInt()));
+            out.writeByte(OK);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unknown request: " + request);
+        }
+    }
+
+    private double insert(Integer partition, Purchase purchase) {
+        KieSession session = getSession(partition);
+        synchronized (session) {
+            session.insert(purchase);
+            session.fireAllRules();
+        }
+        return purchase.getDiscount();
+    }
+
+    private List<PotentialCustomer> getPotentialCustomers() {
+        List<PotentialCustomer> potentialCustomers = new ArrayList<PotentialCustomer>();
+        for (KieSession session : partitions.values()) {
+            synchronized (session) {
+                Collection<?> objects = session.getObjects(new ClassObjectFilter(PotentialCustomer.class));
+                for (Object object : objects) {
+                    potentialCustomers.add((PotentialCustomer) object);
+                }
+            }
+        }
+        return potentialCustomers;
+    }
+
+    /**
+     * The session is kept until the partition is released or restored
+     *
+     * @return the marshalled session of the partition, or an empty array if
+     *         the partition has no session in this node
+     */
+    private synchronized byte[] exportPartition(Integer partition) throws IOException {
+        KieSession session = partitions.get(partition);
+        if (session == null) {
+            return new byte[0];
+        }
+        synchronized (session) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            marshaller.marshall(bytes, session);
+            partitions.remove(partition);
+            exported.put(partition, session);
+            logger.info("Partition " + partition + " exported (" + bytes.size() + " bytes)");
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Disposes the session of an exported partition, once it was imported by
+     * its new owner
+     */
+    private void releasePartition(Integer partition) {
+        KieSession session = exported.remove(partition);
+        if (session != null) {
+            session.dispose();
+            logger.info("Partition " + partition + " released");
+        }
+    }
+
+    /**
+     * Owns again an exported partition, after its import failed
+     */
+    private synchronized void restorePartition(Integer partition) {
+        KieSession session = exported.remove(partition);
+        if (session != null) {
+            partitions.put(partition, session);
+            logger.info("Partition " + partition + " restored");
+        }
+    }
+
+    private void importPartition(Integer partition, byte[] marshalledSession) throws IOException {
+        if (marshalledSession.length == 0) {
+            return;
+        }
+        KieServices ks = KieServices.Factory.get();
+        KieSession session;
+        try {
+            session = marshaller.unmarshall(new ByteArrayInputStream(marshalledSession),
+                    ks.newKieSessionConfiguration(), ks.newEnvironment());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to import the partition " + partition + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to import the partition " + partition + ": " + e.getMessage());
+        }
+        try {
+            setGlobals(session);
+        } catch (RuntimeException e) {
+            session.dispose();
+            throw new IOException("Unable to import the partition " + partition + ": " + e.getMessage());
+        }
+        KieSession previous = partitions.put(partition, session);
+        if (previous != null) {
+            previous.dispose();
+        }
+        logger.info("Partition " + partition + " imported (" + marshalledSession.length + " bytes)");
+    }
+
+    private synchronized KieSession getSession(Integer partition) {
+        KieSession session = partitions.get(partition);
+        if (session == null) {
+            if (exported.containsKey(partition)) {
+                throw new IllegalStateException("The partition " + partition + " was exported");
+            }
+            session = kbase.newKieSession();
+            setGlobals(session);
+            partitions.put(partition, session);
+        }
+        return session;
+    }
+
+    private void setGlobals(KieSession session) {
+        session.setGlobal("logger", logger);
+        session.setGlobal("emailService", EmailService.getInstance());
+    }
+}
@@ -0,0 +1,489 @@
+package com.wordpress.ezegrande.drools.examples.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.checkpoint.CompactModelMarshallingStrategy;
+import com.wordpress.ezegrande.drools.examples.checkpoint.FactOperation;
+import com.wordpress.ezegrande.drools.examples.util.FactHandleUtil;
+
+/**
+ * Write-ahead journal of the facts inserted, updated and deleted in a Stateful
+ * Session. Add it as an event listener of the session, and every operation
+ * done from outside the rules is appended to the journal. Operations done by
+ * the consequences of the rules (i.e. inserting a PotentialCustomer) are not
+ * journaled, since the rules will do them again when the journal is replayed
+ * and the rules are fired.
+ *
+ * Syncing each operation to disk would kill the throughput, so operations are
+ * group committed: they are buffered and synced when the batch is full, when
+ * the sync interval elapses or when {@link #commit()} is called. Only the
+ * committed operations are durable.
+ *
+ * The journal is split in segments ('journal-N.log'). Each record is written as
+ * length + CRC32 + payload. The length is checked before reading the payload,
+ * and a record is corrupted if its length is shorter than its type and id,
+ * bigger than {@link #MAX_RECORD_LENGTH} or beyond the end of the segment, or
+ * if its checksum does not match (e.g. a zero-filled tail). The operations
+ * after the last commit may be partially written during a crash, so a
+ * corrupted record in the last segment ends the replay. The previous segments
+ * were synced when they were closed, so a corrupted record in one of them
+ * fails the replay with an IOException.
+ *
+ * Operations refer to facts by the id of their FactHandle. The replayed facts
+ * get new ids, and the new session hands out ids that the old segments may
+ * already use, so they can not be mixed in the same journal. A journal created
+ * in a directory with segments starts recovering: it does not open a segment
+ * and rejects new operations, until the session is checkpointed (after
+ * replaying the segments) and {@link #deleteClosedSegments()} deletes them.
+ *
+ * @author ezegrande
+ */
+public class FactJournal implements RuleRuntimeEventListener {
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    /**
+     * Maximum length of the payload of a record, in bytes
+     */
+    public static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+    // Type and FactHandle id
+    private static final int MIN_RECORD_LENGTH = 1 + 8;
+
+    private static final byte SERIALIZED_OBJECT = 0;
+    private static final byte MODEL_OBJECT = 1;
+
+    private static Logger logger = LoggerFactory.getLogger(FactJournal.class);
+
+    private final JournalConfiguration configuration;
+    private final CompactModelMarshallingStrategy modelStrategy = new CompactModelMarshallingStrategy();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService syncScheduler;
+
+    private long segment;
+    private FileOutputStream segmentFile;
+    private DataOutputStream out;
+    private long segmentSize;
+
+    // Segments of a previous session, not deleted yet
+    private boolean recovering;
+    private boolean closed;
+
+    private int pendingOperations;
+    private long appendCount;
+    private long commitCount;
+
+    public FactJournal(JournalConfiguration configuration) throws IOException {
+        File directory = configuration.getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Invalid journal directory: " + directory);
+        }
+        this.configuration = configuration;
+        for (File file : listSegments(directory)) {
+            segment = Math.max(segment, segmentOf(file));
+            recovering = true;
+        }
+        if (recovering) {
+            logger.info("The journal " + directory + " has segments up to " + segment
+                    + ", new operations are rejected until they are deleted");
+        } else {
+            openSegment();
+        }
+        if (configuration.getSyncIntervalMillis() > 0) {
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "fact-journal-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            syncScheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        commit();
+                    } catch (IOException e) {
+                        logger.error("Unable to sync the fact journal", e);
+                    }
+                }
+            }, configuration.getSyncIntervalMillis(), configuration.getSyncIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            syncScheduler = null;
+        }
+    }
+
+    public JournalConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return the number of operations appended to the journal
+     */
+    public synchronized long getAppendCount() {
+        return appendCount;
+    }
+
+    /**
+     * @return the number of times that the journal was synced to disk
+     */
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    public void objectInserted(ObjectInsertedEvent event) {
+        if (event.getRule() == null) {
+            append(new FactOperation(FactOperation.Type.INSERT, FactHandleUtil.getId(event.getFactHandle()), event
+                    .getObject()));
+        }
+    }
+
+    public void objectUpdated(ObjectUpdatedEvent event) {
+        if (event.getRule() == null) {
+            append(new FactOperation(FactOperation.Type.UPDATE, FactHandleUtil.getId(event.getFactHandle()), event
+                    .getObject()));
+        }
+    }
+
+    public void objectDeleted(ObjectDeletedEvent event) {
+        if (event.getRule() == null) {
+            append(new FactOperation(FactOperation.Type.DELETE, FactHandleUtil.getId(event.getFactHandle()), null));
+        }
+    }
+
+    /**
+     * Appends an operation to the journal. It will be durable after the next
+     * commit.
+     *
+     * @param operation
+     * @throws IllegalStateException
+     *             if the journal is closed or recovering
+     * @throws IllegalArgumentException
+     *             if the record is bigger than {@link #MAX_RECORD_LENGTH}
+     */
+    public synchronized void append(FactOperation operation) {
+        checkWritable();
+        try {
+            payload.reset();
+            DataOutputStream record = new DataOutputStream(payload);
+            record.writeByte(operation.getType().ordinal());
+            record.writeLong(operation.getFactHandleId());
+            if (operation.getType() != FactOperation.Type.DELETE) {
+                writeObject(record, operation.getObject());
+            }
+            record.flush();
+            if (payload.size() > MAX_RECORD_LENGTH) {
+                throw new IllegalArgumentException("The record of " + operation + " has " + payload.size()
+                        + " bytes, the maximum is " + MAX_RECORD_LENGTH);
+            }
+            crc.reset();
+            crc.update(payload.toByteArray(), 0, payload.size());
+
+            out.writeInt(payload.size());
+            out.writeInt((int) crc.getValue());
+            payload.writeTo(out);
+            segmentSize += 8 + payload.size();
+            appendCount++;
+            if (++pendingOperations >= configuration.getBatchSize()) {
+                commit();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write the fact journal: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Syncs the pending operations to disk, and switches to a new segment if
+     * the current one is full
+     *
+     * @throws IOException
+     */
+    public synchronized void commit() throws IOException {
+        if (pendingOperations == 0 || out == null) {
+            return;
+        }
+        out.flush();
+        segmentFile.getChannel().force(false);
+        pendingOperations = 0;
+        commitCount++;
+        if (segmentSize >= configuration.getSegmentSize()) {
+            rotate();
+        }
+    }
+
+    /**
+     * Commits the pending operations and switches to a new segment
+     *
+     * @throws IOException
+     */
+    public synchronized void rotate() throws IOException {
+        checkWritable();
+        closeSegment();
+        openSegment();
+    }
+
+    /**
+     * Deletes all the segments but the current one. It should be called after
+     * checkpointing the session, since the previous operations are part of the
+     * checkpoint. A recovering journal deletes all the segments of the
+     * previous session, and opens a new one to accept new operations.
+     *
+     * @throws IOException
+     */
+    public synchronized void deleteClosedSegments() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The fact journal is closed");
+        }
+        long current = recovering ? segment + 1 : segment;
+        for (File file : listSegments(configuration.getDirectory())) {
+            if (segmentOf(file) < current && !file.delete()) {
+                throw new IOException("Unable to delete the journal segment " + file);
+            }
+        }
+        if (recovering) {
+            recovering = false;
+            openSegment();
+        }
+    }
+
+    /**
+     * @return true if the journal has segments of a previous session, and
+     *         rejects new operations until {@link #deleteClosedSegments()}
+     */
+    public synchronized boolean isRecovering() {
+        return recovering;
+    }
+
+    /**
+     * Commits the pending operations and closes the journal
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (syncScheduler != null) {
+            syncScheduler.shutdown();
+        }
+        closeSegment();
+    }
+
+    /**
+     * Replays all the operations of the journal into the given session. The
+     * rules are not fired.
+     *
+     * @param directory
+     *            the directory of the journal
+     * @param session
+     *            a new session, or the session restored from the checkpoint
+     *            taken when the journal segments were deleted. Checkpoint it
+     *            and call {@link #deleteClosedSegments()} before journaling
+     *            its operations
+     * @return the number of replayed operations
+     * @throws IOException
+     *             if a segment other than the last one is corrupted
+     * @throws ClassNotFoundException
+     */
+    public static long replay(File directory, KieSession session) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        CompactModelMarshallingStrategy modelStrategy = new CompactModelMarshallingStrategy();
+        Map<Long, FactHandle> factHandles = new HashMap<Long, FactHandle>();
+        for (FactHandle factHandle : session.getFactHandles()) {
+            factHandles.put(Long.valueOf(FactHandleUtil.getId(factHandle)), factHandle);
+        }
+        FactOperation.Type[] types = FactOperation.Type.values();
+        List<File> segments = listSegments(directory);
+        long count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            File file = segments.get(i);
+            boolean lastSegment = i == segments.size() - 1;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                byte[] buffer = new byte[256];
+                CRC32 crc = new CRC32();
+                long size = file.length();
+                long position = 0;
+                while (position < size) {
+                    String corruption = null;
+                    int length = 0;
+                    if (size - position < 8) {
+                        corruption = "Partial record header";
+                    } else {
+                        length = in.readInt();
+                        int checksum = in.readInt();
+                        if (length < MIN_RECORD_LENGTH || length > MAX_RECORD_LENGTH) {
+                            corruption = "Invalid record length " + length;
+                        } else if (length > size - position - 8) {
+                            corruption = "Partial record of " + length + " bytes";
+                        } else {
+                            if (buffer.length < length) {
+                                buffer = new byte[Math.max(length, buffer.length * 2)];
+                            }
+                            in.readFully(buffer, 0, length);
+                            crc.reset();
+                            crc.update(buffer, 0, length);
+                            if ((int) crc.getValue() != checksum) {
+                                corruption = "Invalid checksum";
+                            }
+                        }
+                    }
+                    if (corruption != null) {
+                        String message = corruption + " at offset " + position + " of " + file.getName();
+                        if (!lastSegment) {
+                            throw new IOException(message + ", which is not the last segment");
+                        }
+                        // The operations after the last commit, partially written during a crash
+                        logger.warn(message + ", the rest of the journal was not committed");
+                        break;
+                    }
+                    position += 8 + length;
+                    apply(session, factHandles, modelStrategy, types,
+                            new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+                    count++;
+                }
+            } catch (EOFException e) {
+                throw new IOException("Unexpected end of " + file.getName() + ": " + e.getMessage(), e);
+            } finally {
+                in.close();
+            }
+        }
+        logger.info("Replayed " + count + " operations from " + segments.size() + " segments in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+        return count;
+    }
+
+    private static void apply(KieSession session, Map<Long, FactHandle> factHandles,
+            CompactModelMarshallingStrategy modelStrategy, FactOperation.Type[] types, DataInputStream record)
+            throws IOException, ClassNotFoundException {
+        int type = record.readByte();
+        if (type < 0 || type >= types.length) {
+            throw new IOException("Unknown operation type in the journal: " + type);
+        }
+        Long id = Long.valueOf(record.readLong());
+        switch (types[type]) {
+        case INSERT:
+            factHandles.put(id, session.insert(readObject(modelStrategy, record)));
+            break;
+        case UPDATE:
+            session.update(getFactHandle(factHandles, id), readObject(modelStrategy, record));
+            break;
+        case DELETE:
+            session.delete(getFactHandle(factHandles, id));
+            factHandles.remove(id);
+            break;
+        }
+    }
+
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("The fact journal is closed");
+        }
+        if (recovering) {
+            throw new IllegalStateException("The fact journal has segments of a previous session, replay them,"
+                    + " checkpoint the session and call deleteClosedSegments() before journaling new operations");
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segment++;
+        segmentFile = new FileOutputStream(new File(configuration.getDirectory(), PREFIX + segment + SUFFIX));
+        out = new DataOutputStream(new BufferedOutputStream(segmentFile, 64 * 1024));
+        segmentSize = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        if (out == null) {
+            return;
+        }
+        out.flush();
+        segmentFile.getChannel().force(false);
+        if (pendingOperations > 0) {
+            pendingOperations = 0;
+            commitCount++;
+        }
+        out.close();
+        out = null;
+    }
+
+    private void writeObject(DataOutputStream record, Object object) throws IOException {
+        if (modelStrategy.accept(object)) {
+            record.writeByte(MODEL_OBJECT);
+            modelStrategy.writeObject(record, object);
+        } else {
+            record.writeByte(SERIALIZED_OBJECT);
+            ObjectOutputStream oos = new ObjectOutputStream(record);
+            oos.writeObject(object);
+            oos.flush();
+        }
+    }
+
+    private static Object readObject(CompactModelMarshallingStrategy modelStrategy, DataInputStream record)
+            throws IOException, ClassNotFoundException {
+        if (record.readByte() == MODEL_OBJECT) {
+            return modelStrategy.readObject(record);
+        }
+        return new ObjectInputStream(record).readObject();
+    }
+
+    private static FactHandle getFactHandle(Map<Long, FactHandle> factHandles, Long id) throws IOException {
+        FactHandle factHandle = factHandles.get(id);
+        if (factHandle == null) {
+            throw new IOException("Unknown FactHandle in the journal: " + id);
+        }
+        return factHandle;
+    }
+
+    private static List<File> listSegments(File directory) {
+        List<File> segments = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX)) {
+                    segments.add(file);
+                }
+            }
+        }
+        Collections.sort(segments, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long s1 = segmentOf(f1);
+                long s2 = segmentOf(f2);
+                return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+            }
+        });
+        return segments;
+    }
+
+    private static long segmentOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.wordpress.ezegrande.drools.examples.journal;
+
+import java.io.File;
+
+/**
+ * Configuration of a {@link FactJournal}:
+ * <ul>
+ * <li>Directory: where the journal segments are written
+ * <li>Batch size: number of operations written before syncing the journal to
+ * disk (group commit). 1 means that every operation is synced.
+ * <li>Sync interval: maximum time (in milliseconds) that an operation waits to
+ * be synced to disk. 0 disables the periodic sync, so operations are only
+ * synced when the batch is full or when commit is called.
+ * <li>Segment size: the journal switches to a new segment file when the
+ * current one reaches this size (in bytes)
+ * </ul>
+ * 
+ * @author ezegrande
+ */
+public class JournalConfiguration {
+    private File directory;
+    private int batchSize = 1000;
+    private long syncIntervalMillis = 10;
+    private long segmentSize = 64L * 1024 * 1024;
+
+    public JournalConfiguration(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public void setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public String toString() {
+        return "Journal Configuration [Directory: " + directory + " | Batch Size: " + batchSize
+                + " | Sync Interval: " + syncIntervalMillis + "ms | Segment Size: " + segmentSize + "]";
+    }
+}
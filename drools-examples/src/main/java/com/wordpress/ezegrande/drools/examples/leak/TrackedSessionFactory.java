@@ -0,0 +1,270 @@
+package com.wordpress.ezegrande.drools.examples.leak;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.metrics.Gauge;
+import com.wordpress.ezegrande.drools.examples.metrics.MetricsRegistry;
+
+/**
+ * Creates KieSessions that detect when they are leaked: they become
+ * unreachable without being disposed. The KieBase keeps a reference to every
+ * session until it is disposed, so a leaked session keeps its node memories
+ * (and all its facts) in the heap forever.
+ *
+ * Each session is returned wrapped in a proxy, watched with a
+ * PhantomReference. When the application drops the proxy without calling
+ * dispose (or destroy), the leak is counted and logged, and optionally the
+ * session is disposed. The stack trace where the session was created is
+ * captured for one of every N sessions, to find the code that leaked it
+ * without paying the cost for every session.
+ *
+ * The leaks are detected when the proxies are collected, and reported by
+ * {@link #checkLeaks()}, which is also called for every new session. The
+ * application must keep the proxy while it uses the session, not only an
+ * object obtained from it (like an EntryPoint).
+ *
+ * The proxy implements only KieSession, so it can not be passed to the APIs
+ * that cast the session to the classes of drools-core, like the Marshaller
+ * used by the SessionCheckpointer. {@link #unwrap(KieSession)} returns the
+ * real session for those calls. The proxy must still be kept reachable
+ * during the call, or the session is reported as leaked (and disposed if
+ * auto dispose is enabled).
+ *
+ * @author ezegrande
+ */
+public class TrackedSessionFactory {
+    private Logger logger = LoggerFactory.getLogger(TrackedSessionFactory.class);
+
+    private final KieBase kbase;
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    // Keeps the references reachable until their proxies are collected
+    private final Map<SessionReference, Boolean> live = new ConcurrentHashMap<SessionReference, Boolean>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong disposed = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    private volatile int stackSampleRate = 100;
+    private volatile boolean autoDispose;
+
+    public TrackedSessionFactory(KieBase kbase) {
+        this.kbase = kbase;
+    }
+
+    /**
+     * @param stackSampleRate
+     *            the creation stack is captured for one of every N sessions,
+     *            0 disables it. 100 by default.
+     */
+    public void setStackSampleRate(int stackSampleRate) {
+        if (stackSampleRate < 0) {
+            throw new IllegalArgumentException("Invalid stack sample rate: " + stackSampleRate);
+        }
+        this.stackSampleRate = stackSampleRate;
+    }
+
+    /**
+     * @param autoDispose
+     *            true to dispose the leaked sessions, false (the default) to
+     *            only report them
+     */
+    public void setAutoDispose(boolean autoDispose) {
+        this.autoDispose = autoDispose;
+    }
+
+    /**
+     * @return a new tracked session of the KieBase
+     */
+    public KieSession newKieSession() {
+        return track(kbase.newKieSession());
+    }
+
+    /**
+     * Tracks a session created elsewhere
+     *
+     * @param session
+     * @return the tracked session, the application must use it instead of
+     *         the given one
+     */
+    public KieSession track(KieSession session) {
+        checkLeaks();
+        long id = created.incrementAndGet();
+        int sampleRate = stackSampleRate;
+        Throwable creationStack = sampleRate > 0 && id % sampleRate == 0 ? new Throwable("KieSession #" + id
+                + " created here") : null;
+        SessionHandler handler = new SessionHandler(session);
+        KieSession proxy = (KieSession) Proxy.newProxyInstance(KieSession.class.getClassLoader(),
+                new Class<?>[] { KieSession.class }, handler);
+        handler.reference = new SessionReference(proxy, queue, session, id, creationStack);
+        live.put(handler.reference, Boolean.TRUE);
+        return proxy;
+    }
+
+    /**
+     * @param session
+     *            a session returned by a TrackedSessionFactory, or any other
+     *            session
+     * @return the real session of a tracked session, or the given session if
+     *         it is not tracked
+     */
+    public static KieSession unwrap(KieSession session) {
+        if (session != null && Proxy.isProxyClass(session.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(session);
+            if (handler instanceof SessionHandler) {
+                return ((SessionHandler) handler).session;
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Reports the sessions whose proxies were collected without being
+     * disposed
+     *
+     * @return the number of leaks found
+     */
+    public int checkLeaks() {
+        int found = 0;
+        Reference<?> polled;
+        while ((polled = queue.poll()) != null) {
+            SessionReference reference = (SessionReference) polled;
+            if (live.remove(reference) != null) {
+                found++;
+                leaked(reference);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the tracked sessions that were not disposed nor leaked yet
+     */
+    public int getLiveSessions() {
+        return live.size();
+    }
+
+    public long getCreatedSessions() {
+        return created.get();
+    }
+
+    public long getDisposedSessions() {
+        return disposed.get();
+    }
+
+    public long getLeakedSessions() {
+        return leaked.get();
+    }
+
+    /**
+     * Publishes the counters as gauges: '&lt;prefix&gt;.live',
+     * '&lt;prefix&gt;.created', '&lt;prefix&gt;.disposed' and
+     * '&lt;prefix&gt;.leaked'
+     *
+     * @param registry
+     * @param prefix
+     *            for example 'sessions.tracked'
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".live", new Gauge() {
+            public long getValue() {
+                return getLiveSessions();
+            }
+        });
+        registry.gauge(prefix + ".created", gauge(created));
+        registry.gauge(prefix + ".disposed", gauge(disposed));
+        registry.gauge(prefix + ".leaked", gauge(leaked));
+    }
+
+    private static Gauge gauge(final AtomicLong value) {
+        return new Gauge() {
+            public long getValue() {
+                return value.get();
+            }
+        };
+    }
+
+    private void leaked(SessionReference reference) {
+        leaked.incrementAndGet();
+        String message = "KieSession #" + reference.id + " became unreachable without being disposed"
+                + (autoDispose ? ", disposing it" : "");
+        if (reference.creationStack != null) {
+            logger.warn(message, reference.creationStack);
+        } else {
+            logger.warn(message + " (creation stack not sampled)");
+        }
+        if (autoDispose) {
+            try {
+                reference.session.dispose();
+            } catch (RuntimeException e) {
+                logger.error("Unable to dispose the leaked KieSession #" + reference.id, e);
+            }
+        }
+        reference.clear();
+    }
+
+    /**
+     * Watches a proxy, and keeps its session to dispose it if it leaks
+     */
+    private static final class SessionReference extends PhantomReference<Object> {
+        private final KieSession session;
+        private final long id;
+        private final Throwable creationStack;
+
+        SessionReference(Object proxy, ReferenceQueue<Object> queue, KieSession session, long id,
+                Throwable creationStack) {
+            super(proxy, queue);
+            this.session = session;
+            this.id = id;
+            this.creationStack = creationStack;
+        }
+    }
+
+    /**
+     * Delegates to the session, and stops tracking it when it is disposed. It
+     * must not reference the proxy.
+     */
+    private final class SessionHandler implements InvocationHandler {
+        private final KieSession session;
+        private SessionReference reference;
+
+        SessionHandler(KieSession session) {
+            this.session = session;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("toString".equals(name)) {
+                    return "TrackedKieSession #" + reference.id;
+                }
+            }
+            if (("dispose".equals(name) || "destroy".equals(name)) && method.getParameterTypes().length == 0) {
+                if (live.remove(reference) != null) {
+                    disposed.incrementAndGet();
+                    reference.clear();
+                }
+            }
+            try {
+                return method.invoke(session, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
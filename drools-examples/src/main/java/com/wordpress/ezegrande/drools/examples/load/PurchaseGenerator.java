@@ -0,0 +1,129 @@
+package com.wordpress.ezegrande.drools.examples.load;
+
+import java.util.Random;
+
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Generates a stream of synthetic purchases, to load the rules like in
+ * production:
+ * <ul>
+ * <li>The customers are chosen uniformly among a fixed number of them, named
+ * 'customer0', 'customer1', ...
+ * <li>The payment methods follow a configurable mix, by default a third of
+ * each one
+ * <li>The subtotals follow a {@link SubtotalDistribution}, by default
+ * log-normal with a median of $150
+ * </ul>
+ *
+ * With the same seed and configuration the same stream is generated, so the
+ * runs can be compared. It is not thread-safe.
+ *
+ * @author ezegrande
+ */
+public class PurchaseGenerator {
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    private final Random random;
+    private final String[] customers;
+    private final double[] paymentMix = new double[PAYMENT_METHODS.length];
+    private SubtotalDistribution subtotals = SubtotalDistribution.logNormal(150, 0.8);
+
+    /**
+     * @param seed
+     * @param customers
+     *            number of different customers
+     */
+    public PurchaseGenerator(long seed, int customers) {
+        if (customers <= 0) {
+            throw new IllegalArgumentException("Invalid number of customers: " + customers);
+        }
+        this.random = new Random(seed);
+        this.customers = new String[customers];
+        for (int i = 0; i < customers; i++) {
+            this.customers[i] = "customer" + i;
+        }
+        setPaymentMix(1, 1, 1);
+    }
+
+    /**
+     * Sets the weight of each payment method, they do not need to add 1
+     *
+     * @param cash
+     * @param debit
+     * @param credit
+     */
+    public void setPaymentMix(double cash, double debit, double credit) {
+        double total = cash + debit + credit;
+        if (cash < 0 || debit < 0 || credit < 0 || total <= 0) {
+            throw new IllegalArgumentException("Invalid payment mix: " + cash + ", " + debit + ", " + credit);
+        }
+        // Cumulative probabilities, in the order of the PaymentMethod values
+        double[] weights = new double[PAYMENT_METHODS.length];
+        weights[PaymentMethod.CASH.ordinal()] = cash;
+        weights[PaymentMethod.DEBIT.ordinal()] = debit;
+        weights[PaymentMethod.CREDIT.ordinal()] = credit;
+        double cumulative = 0;
+        for (int i = 0; i < weights.length; i++) {
+            cumulative += weights[i] / total;
+            paymentMix[i] = cumulative;
+        }
+        paymentMix[paymentMix.length - 1] = 1;
+    }
+
+    public void setSubtotals(SubtotalDistribution subtotals) {
+        this.subtotals = subtotals;
+    }
+
+    /**
+     * @return the next purchase of the stream
+     */
+    public Purchase next() {
+        String customer = customers[random.nextInt(customers.length)];
+        double p = random.nextDouble();
+        int method = 0;
+        while (p >= paymentMix[method]) {
+            method++;
+        }
+        return new Purchase(customer, subtotals.next(random), PAYMENT_METHODS[method]);
+    }
+
+    /**
+     * @param count
+     * @return the next purchases of the stream
+     */
+    public Purchase[] next(int count) {
+        Purchase[] purchases = new Purchase[count];
+        for (int i = 0; i < count; i++) {
+            purchases[i] = next();
+        }
+        return purchases;
+    }
+
+    public int getCustomers() {
+        return customers.length;
+    }
+
+    /**
+     * @return the probability of each payment method, e.g. 'CASH 0.333 / DEBIT
+     *         0.333 / CREDIT 0.333'
+     */
+    public String getPaymentMix() {
+        StringBuilder mix = new StringBuilder();
+        double previous = 0;
+        for (int i = 0; i < PAYMENT_METHODS.length; i++) {
+            if (i > 0) {
+                mix.append(" / ");
+            }
+            mix.append(PAYMENT_METHODS[i]).append(' ').append(Math.round((paymentMix[i] - previous) * 1000) / 1000.0);
+            previous = paymentMix[i];
+        }
+        return mix.toString();
+    }
+
+    public String toString() {
+        return "PurchaseGenerator [Customers: " + customers.length + " | Payment Mix: " + getPaymentMix()
+                + " | Subtotals: " + subtotals + "]";
+    }
+}
@@ -0,0 +1,311 @@
+package com.wordpress.ezegrande.drools.examples.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.kie.api.KieBase;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.StatelessKieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.metrics.Histogram;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Runs a stream of purchases from a {@link PurchaseGenerator} against the
+ * rules of a KieBase for a given time, for soak tests. The purchases are
+ * processed in batches, and the latency of each batch (inserting it and
+ * firing the rules) is recorded. In STATEFUL mode the time spent in
+ * fireAllRules is also recorded on its own, as the fire latency; a
+ * StatelessKieSession inserts and fires in a single call, so in STATELESS
+ * mode only the batch latency is known. Every sample interval it records the
+ * throughput, the latency percentiles, the used heap and the garbage
+ * collections of the interval.
+ *
+ * Session modes:
+ * <ul>
+ * <li>STATEFUL: a single KieSession for the whole run. Only the last purchases
+ * (the window) are kept in it, the older ones are deleted, so the rules that
+ * join purchases see a sliding window of them
+ * <li>STATELESS: each batch is executed in a StatelessKieSession
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class SoakDriver {
+    private Logger logger = LoggerFactory.getLogger(SoakDriver.class);
+
+    public enum Mode {
+        STATEFUL, STATELESS
+    }
+
+    private final KieBase kbase;
+    private final PurchaseGenerator generator;
+    private final Mode mode;
+    private final Map<String, Object> globals = new LinkedHashMap<String, Object>();
+    private int batchSize = 100;
+    private int window = 10000;
+    private int targetRate;
+    private long sampleIntervalMillis = 10000;
+
+    public SoakDriver(KieBase kbase, PurchaseGenerator generator, Mode mode) {
+        this.kbase = kbase;
+        this.generator = generator;
+        this.mode = mode;
+    }
+
+    public void setGlobal(String name, Object value) {
+        globals.put(name, value);
+    }
+
+    /**
+     * @param batchSize
+     *            purchases inserted before firing the rules, 100 by default
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param window
+     *            purchases kept in a STATEFUL session, 10000 by default
+     */
+    public void setWindow(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * @param targetRate
+     *            purchases per second, or 0 (the default) to run as fast as
+     *            possible
+     */
+    public void setTargetRate(int targetRate) {
+        if (targetRate < 0) {
+            throw new IllegalArgumentException("Invalid target rate: " + targetRate);
+        }
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * @param sampleIntervalMillis
+     *            10 seconds by default
+     */
+    public void setSampleIntervalMillis(long sampleIntervalMillis) {
+        if (sampleIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid sample interval: " + sampleIntervalMillis);
+        }
+        this.sampleIntervalMillis = sampleIntervalMillis;
+    }
+
+    /**
+     * @return description of the rules, the session mode and the load. The
+     *         reports are compared with the previous ones with the same
+     *         configuration
+     */
+    public String getConfiguration() {
+        return "Rules: " + getRuleSet() + " | Mode: " + mode + " | Batch: " + batchSize
+                + (mode == Mode.STATEFUL ? " | Window: " + window : "") + " | Rate: "
+                + (targetRate == 0 ? "max" : targetRate + "/s") + " | " + generator;
+    }
+
+    /**
+     * @return the packages of the KieBase with their number of rules, and a
+     *         hash of the rule names, e.g.
+     *         'com.wordpress.ezegrande.drools.examples.simple[6] #1b2e5f0a'
+     */
+    private String getRuleSet() {
+        List<String> packages = new ArrayList<String>();
+        List<String> rules = new ArrayList<String>();
+        for (KiePackage kpackage : kbase.getKiePackages()) {
+            if (kpackage.getRules().isEmpty()) {
+                continue;
+            }
+            packages.add(kpackage.getName() + "[" + kpackage.getRules().size() + "]");
+            for (Rule rule : kpackage.getRules()) {
+                rules.add(kpackage.getName() + "." + rule.getName());
+            }
+        }
+        Collections.sort(packages);
+        Collections.sort(rules);
+        StringBuilder ruleSet = new StringBuilder();
+        for (String kpackage : packages) {
+            ruleSet.append(kpackage).append(' ');
+        }
+        return ruleSet.append('#').append(Integer.toHexString(rules.hashCode())).toString();
+    }
+
+    /**
+     * Runs the purchases against the rules
+     *
+     * @param name
+     *            name of the run in the report
+     * @param durationMillis
+     * @return the report of the run
+     * @throws InterruptedException
+     *             if interrupted while waiting for the target rate
+     */
+    public SoakReport run(String name, long durationMillis) throws InterruptedException {
+        logger.info("Starting soak run " + name + " for " + durationMillis + " ms | " + getConfiguration());
+        Runner runner = mode == Mode.STATEFUL ? new StatefulRunner() : new StatelessRunner();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        Histogram total = new Histogram();
+        Histogram interval = new Histogram();
+        Histogram totalFire = new Histogram();
+        Histogram intervalFire = new Histogram();
+        List<SoakSample> samples = new ArrayList<SoakSample>();
+        long maxHeapUsed = 0;
+        long startGcCount = getGcCount(collectors);
+        long startGcMillis = getGcMillis(collectors);
+        long sampleGcCount = startGcCount;
+        long sampleGcMillis = startGcMillis;
+        long purchases = 0;
+        long samplePurchases = 0;
+        long start = System.nanoTime();
+        long end = start + durationMillis * 1000000;
+        long sampleStart = start;
+        long now = start;
+        try {
+            while (now < end) {
+                Purchase[] batch = generator.next(batchSize);
+                long batchStart = System.nanoTime();
+                long fireNanos = runner.execute(batch);
+                now = System.nanoTime();
+                total.record(now - batchStart);
+                interval.record(now - batchStart);
+                if (fireNanos >= 0) {
+                    totalFire.record(fireNanos);
+                    intervalFire.record(fireNanos);
+                }
+                purchases += batchSize;
+                samplePurchases += batchSize;
+                if (targetRate > 0) {
+                    long ahead = start + (long) (purchases * 1e9 / targetRate) - now;
+                    if (ahead > 0) {
+                        Thread.sleep(ahead / 1000000, (int) (ahead % 1000000));
+                        now = System.nanoTime();
+                    }
+                }
+                if (now - sampleStart >= sampleIntervalMillis * 1000000 || now >= end) {
+                    long heapUsed = memory.getHeapMemoryUsage().getUsed();
+                    maxHeapUsed = Math.max(maxHeapUsed, heapUsed);
+                    long gcCount = getGcCount(collectors);
+                    long gcMillis = getGcMillis(collectors);
+                    SoakSample sample = new SoakSample((now - start) / 1000000, samplePurchases, samplePurchases
+                            * 1000000000 / Math.max(1, now - sampleStart), interval.getPercentileMicros(50), interval
+                            .getPercentileMicros(99), interval.getPercentileMicros(99.9), intervalFire
+                            .getPercentileMicros(50), intervalFire.getPercentileMicros(99), intervalFire
+                            .getPercentileMicros(99.9), heapUsed, gcCount - sampleGcCount, gcMillis
+                            - sampleGcMillis);
+                    samples.add(sample);
+                    logger.info(name + " | " + sample);
+                    interval = new Histogram();
+                    intervalFire = new Histogram();
+                    samplePurchases = 0;
+                    sampleStart = now;
+                    sampleGcCount = gcCount;
+                    sampleGcMillis = gcMillis;
+                }
+            }
+        } finally {
+            runner.dispose();
+        }
+        SoakReport report = new SoakReport(name, getConfiguration(), (now - start) / 1000000, purchases, total
+                .getPercentileMicros(50), total.getPercentileMicros(99), total.getPercentileMicros(99.9), total
+                .getMaxMicros(), totalFire.getPercentileMicros(50), totalFire.getPercentileMicros(99), totalFire
+                .getPercentileMicros(99.9), maxHeapUsed, getGcCount(collectors) - startGcCount,
+                getGcMillis(collectors) - startGcMillis, samples);
+        logger.info("Finished soak run: " + report);
+        return report;
+    }
+
+    private static long getGcCount(List<GarbageCollectorMXBean> collectors) {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcMillis(List<GarbageCollectorMXBean> collectors) {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private interface Runner {
+        /**
+         * @return the nanoseconds spent firing the rules, or -1 if they can
+         *         not be measured apart from the insertions
+         */
+        long execute(Purchase[] batch);
+
+        void dispose();
+    }
+
+    private final class StatefulRunner implements Runner {
+        private final KieSession session = kbase.newKieSession();
+        private final LinkedList<FactHandle> handles = new LinkedList<FactHandle>();
+
+        StatefulRunner() {
+            for (Map.Entry<String, Object> global : globals.entrySet()) {
+                session.setGlobal(global.getKey(), global.getValue());
+            }
+        }
+
+        public long execute(Purchase[] batch) {
+            for (Purchase purchase : batch) {
+                handles.add(session.insert(purchase));
+            }
+            while (handles.size() > window) {
+                session.delete(handles.removeFirst());
+            }
+            long fireStart = System.nanoTime();
+            session.fireAllRules();
+            return System.nanoTime() - fireStart;
+        }
+
+        public void dispose() {
+            session.dispose();
+        }
+    }
+
+    private final class StatelessRunner implements Runner {
+        private final StatelessKieSession session = kbase.newStatelessKieSession();
+
+        StatelessRunner() {
+            for (Map.Entry<String, Object> global : globals.entrySet()) {
+                session.setGlobal(global.getKey(), global.getValue());
+            }
+        }
+
+        public long execute(Purchase[] batch) {
+            session.execute(Arrays.asList(batch));
+            return -1;
+        }
+
+        public void dispose() {
+            // Nothing to release
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.wordpress.ezegrande.drools.examples.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Result of a {@link SoakDriver} run: the totals of the whole run and a
+ * {@link SoakSample} per interval. The totals can be stored and loaded again,
+ * to compare runs made before and after an upgrade.
+ *
+ * The batch latency is the time to insert a batch and fire the rules. The
+ * fire latency is the time spent firing the rules only, it is 0 in STATELESS
+ * mode.
+ *
+ * @author ezegrande
+ */
+public class SoakReport {
+    private final String name;
+    private final String configuration;
+    private final long durationMillis;
+    private final long purchases;
+    private final long batchP50Micros;
+    private final long batchP99Micros;
+    private final long batchP999Micros;
+    private final long batchMaxMicros;
+    private final long fireP50Micros;
+    private final long fireP99Micros;
+    private final long fireP999Micros;
+    private final long maxHeapUsedBytes;
+    private final long gcCount;
+    private final long gcMillis;
+    private final List<SoakSample> samples;
+
+    SoakReport(String name, String configuration, long durationMillis, long purchases, long batchP50Micros,
+            long batchP99Micros, long batchP999Micros, long batchMaxMicros, long fireP50Micros, long fireP99Micros,
+            long fireP999Micros, long maxHeapUsedBytes, long gcCount, long gcMillis, List<SoakSample> samples) {
+        this.name = name;
+        this.configuration = configuration;
+        this.durationMillis = durationMillis;
+        this.purchases = purchases;
+        this.batchP50Micros = batchP50Micros;
+        this.batchP99Micros = batchP99Micros;
+        this.batchP999Micros = batchP999Micros;
+        this.batchMaxMicros = batchMaxMicros;
+        this.fireP50Micros = fireP50Micros;
+        this.fireP99Micros = fireP99Micros;
+        this.fireP999Micros = fireP999Micros;
+        this.maxHeapUsedBytes = maxHeapUsedBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.samples = Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * Loads the totals of a report saved with {@link #store(OutputStream)},
+     * without its samples. The reports saved before the fire latency was
+     * recorded are loaded with their latencies as the batch latencies.
+     *
+     * @param in
+     * @return the report
+     * @throws IOException
+     */
+    public static SoakReport load(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        try {
+            return new SoakReport(properties.getProperty("name"), properties.getProperty("configuration"),
+                    getLong(properties, "durationMillis"), getLong(properties, "purchases"), getLong(properties,
+                            "batchP50Micros", "p50Micros"), getLong(properties, "batchP99Micros", "p99Micros"),
+                    getLong(properties, "batchP999Micros", "p999Micros"), getLong(properties, "batchMaxMicros",
+                            "maxMicros"), getLong(properties, "fireP50Micros"), getLong(properties, "fireP99Micros"),
+                    getLong(properties, "fireP999Micros"), getLong(properties, "maxHeapUsedBytes"), getLong(
+                            properties, "gcCount"), getLong(properties, "gcMillis"), new ArrayList<SoakSample>());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid soak report: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares several runs, for example before and after an upgrade. Each
+     * run is compared against the first one with the same configuration.
+     *
+     * @param reports
+     * @return a table with the totals of each run, and the change of the
+     *         throughput and the latencies against its baseline
+     */
+    public static String compare(List<SoakReport> reports) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-32s %12s %8s %14s %8s %14s %8s %14s %8s %13s %8s %13s %8s %13s %8s %10s%n",
+                "Run", "Purchases/s", "Change", "Batch P50 us", "Change", "Batch P99 us", "Change",
+                "Batch P999 us", "Change", "Fire P50 us", "Change", "Fire P99 us", "Change", "Fire P999 us",
+                "Change", "Heap MB"));
+        Map<String, SoakReport> baselines = new HashMap<String, SoakReport>();
+        for (SoakReport report : reports) {
+            SoakReport baseline = baselines.get(report.getConfiguration());
+            if (baseline == null) {
+                baseline = report;
+                baselines.put(report.getConfiguration(), report);
+            }
+            table.append(String.format("%-32s %12d %8s %14d %8s %14d %8s %14d %8s %13d %8s %13d %8s %13d %8s %10d%n",
+                    report.getName(), report.getThroughput(), change(baseline.getThroughput(), report
+                            .getThroughput()), report.getBatchP50Micros(), change(baseline.getBatchP50Micros(),
+                            report.getBatchP50Micros()), report.getBatchP99Micros(), change(baseline
+                            .getBatchP99Micros(), report.getBatchP99Micros()), report.getBatchP999Micros(), change(
+                            baseline.getBatchP999Micros(), report.getBatchP999Micros()), report.getFireP50Micros(),
+                    change(baseline.getFireP50Micros(), report.getFireP50Micros()), report.getFireP99Micros(),
+                    change(baseline.getFireP99Micros(), report.getFireP99Micros()), report.getFireP999Micros(),
+                    change(baseline.getFireP999Micros(), report.getFireP999Micros()), report.getMaxHeapUsedBytes()
+                            / (1024 * 1024)));
+        }
+        return table.toString();
+    }
+
+    /**
+     * Stores the totals of the report
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void store(OutputStream out) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("name", name);
+        properties.setProperty("configuration", configuration);
+        properties.setProperty("durationMillis", String.valueOf(durationMillis));
+        properties.setProperty("purchases", String.valueOf(purchases));
+        properties.setProperty("batchP50Micros", String.valueOf(batchP50Micros));
+        properties.setProperty("batchP99Micros", String.valueOf(batchP99Micros));
+        properties.setProperty("batchP999Micros", String.valueOf(batchP999Micros));
+        properties.setProperty("batchMaxMicros", String.valueOf(batchMaxMicros));
+        properties.setProperty("fireP50Micros", String.valueOf(fireP50Micros));
+        properties.setProperty("fireP99Micros", String.valueOf(fireP99Micros));
+        properties.setProperty("fireP999Micros", String.valueOf(fireP999Micros));
+        properties.setProperty("maxHeapUsedBytes", String.valueOf(maxHeapUsedBytes));
+        properties.setProperty("gcCount", String.valueOf(gcCount));
+        properties.setProperty("gcMillis", String.valueOf(gcMillis));
+        properties.store(out, "Soak report " + name);
+    }
+
+    /**
+     * Writes the samples as CSV, with a header line
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeSamples(Writer out) throws IOException {
+        out.write(SoakSample.CSV_HEADER);
+        out.write('\n');
+        for (SoakSample sample : samples) {
+            out.write(sample.toCsv());
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return description of the rules, session mode and load of the run
+     */
+    public String getConfiguration() {
+        return configuration;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getPurchases() {
+        return purchases;
+    }
+
+    /**
+     * @return purchases per second during the whole run
+     */
+    public long getThroughput() {
+        return durationMillis == 0 ? 0 : purchases * 1000 / durationMillis;
+    }
+
+    public long getBatchP50Micros() {
+        return batchP50Micros;
+    }
+
+    public long getBatchP99Micros() {
+        return batchP99Micros;
+    }
+
+    public long getBatchP999Micros() {
+        return batchP999Micros;
+    }
+
+    public long getBatchMaxMicros() {
+        return batchMaxMicros;
+    }
+
+    public long getFireP50Micros() {
+        return fireP50Micros;
+    }
+
+    public long getFireP99Micros() {
+        return fireP99Micros;
+    }
+
+    public long getFireP999Micros() {
+        return fireP999Micros;
+    }
+
+    public long getMaxHeapUsedBytes() {
+        return maxHeapUsedBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    /**
+     * @return the samples of the run, empty if the report was loaded
+     */
+    public List<SoakSample> getSamples() {
+        return samples;
+    }
+
+    private static long getLong(Properties properties, String key) {
+        return Long.parseLong(properties.getProperty(key, "0"));
+    }
+
+    private static long getLong(Properties properties, String key, String oldKey) {
+        return Long.parseLong(properties.getProperty(key, properties.getProperty(oldKey, "0")));
+    }
+
+    private static String change(long baseline, long value) {
+        if (baseline == 0) {
+            return "-";
+        }
+        return String.format("%+.1f%%", (value - baseline) * 100d / baseline);
+    }
+
+    public String toString() {
+        return "SoakReport [Name: " + name + " | Duration: " + durationMillis + " ms | Throughput: "
+                + getThroughput() + " purchases/s | Batch P50: " + batchP50Micros + " us | Batch P99: "
+                + batchP99Micros + " us | Batch P999: " + batchP999Micros + " us | Batch Max: " + batchMaxMicros
+                + " us | Fire P50: " + fireP50Micros + " us | Fire P99: " + fireP99Micros + " us | Fire P999: "
+                + fireP999Micros + " us | Max heap: "
+                + maxHeapUsedBytes / (1024 * 1024) + " MB | GC: " + gcCount + " (" + gcMillis + " ms)]";
+    }
+}
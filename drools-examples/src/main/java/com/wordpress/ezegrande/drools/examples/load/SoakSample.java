@@ -0,0 +1,123 @@
+package com.wordpress.ezegrande.drools.examples.load;
+
+/**
+ * Measures of a {@link SoakDriver} run during one sample interval. The batch
+ * latency is the time to insert a batch and fire the rules, the fire latency
+ * is the time spent firing the rules only (0 in STATELESS mode, where it can
+ * not be measured on its own).
+ *
+ * @author ezegrande
+ */
+public class SoakSample {
+    static final String CSV_HEADER = "elapsed_ms,purchases,throughput,batch_p50_us,batch_p99_us,batch_p999_us,fire_p50_us,fire_p99_us,fire_p999_us,heap_used_bytes,gc_count,gc_ms";
+
+    private final long elapsedMillis;
+    private final long purchases;
+    private final long throughput;
+    private final long batchP50Micros;
+    private final long batchP99Micros;
+    private final long batchP999Micros;
+    private final long fireP50Micros;
+    private final long fireP99Micros;
+    private final long fireP999Micros;
+    private final long heapUsedBytes;
+    private final long gcCount;
+    private final long gcMillis;
+
+    SoakSample(long elapsedMillis, long purchases, long throughput, long batchP50Micros, long batchP99Micros,
+            long batchP999Micros, long fireP50Micros, long fireP99Micros, long fireP999Micros, long heapUsedBytes,
+            long gcCount, long gcMillis) {
+        this.elapsedMillis = elapsedMillis;
+        this.purchases = purchases;
+        this.throughput = throughput;
+        this.batchP50Micros = batchP50Micros;
+        this.batchP99Micros = batchP99Micros;
+        this.batchP999Micros = batchP999Micros;
+        this.fireP50Micros = fireP50Micros;
+        this.fireP99Micros = fireP99Micros;
+        this.fireP999Micros = fireP999Micros;
+        this.heapUsedBytes = heapUsedBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    /**
+     * @return the time since the start of the run, at the end of the interval
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the purchases processed in the interval
+     */
+    public long getPurchases() {
+        return purchases;
+    }
+
+    /**
+     * @return purchases per second in the interval
+     */
+    public long getThroughput() {
+        return throughput;
+    }
+
+    public long getBatchP50Micros() {
+        return batchP50Micros;
+    }
+
+    public long getBatchP99Micros() {
+        return batchP99Micros;
+    }
+
+    public long getBatchP999Micros() {
+        return batchP999Micros;
+    }
+
+    public long getFireP50Micros() {
+        return fireP50Micros;
+    }
+
+    public long getFireP99Micros() {
+        return fireP99Micros;
+    }
+
+    public long getFireP999Micros() {
+        return fireP999Micros;
+    }
+
+    /**
+     * @return the used heap at the end of the interval
+     */
+    public long getHeapUsedBytes() {
+        return heapUsedBytes;
+    }
+
+    /**
+     * @return the garbage collections during the interval
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * @return the time spent in garbage collections during the interval
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    String toCsv() {
+        return elapsedMillis + "," + purchases + "," + throughput + "," + batchP50Micros + "," + batchP99Micros
+                + "," + batchP999Micros + "," + fireP50Micros + "," + fireP99Micros + "," + fireP999Micros + ","
+                + heapUsedBytes + "," + gcCount + "," + gcMillis;
+    }
+
+    public String toString() {
+        return "SoakSample [Elapsed: " + elapsedMillis + " ms | Throughput: " + throughput
+                + " purchases/s | Batch P50: " + batchP50Micros + " us | Batch P99: " + batchP99Micros
+                + " us | Batch P999: " + batchP999Micros + " us | Fire P50: " + fireP50Micros + " us | Fire P99: "
+                + fireP99Micros + " us | Fire P999: " + fireP999Micros + " us | Heap: "
+                + heapUsedBytes / (1024 * 1024) + " MB | GC: " + gcCount + " (" + gcMillis + " ms)]";
+    }
+}
@@ -0,0 +1,67 @@
+package com.wordpress.ezegrande.drools.examples.load;
+
+import java.util.Random;
+
+/**
+ * Distribution of the subtotals of the generated purchases. The subtotals are
+ * rounded to cents.
+ *
+ * @author ezegrande
+ */
+public abstract class SubtotalDistribution {
+
+    /**
+     * @param random
+     * @return the next subtotal, never negative
+     */
+    abstract double next(Random random);
+
+    /**
+     * @param min
+     * @param max
+     * @return subtotals uniformly distributed between min and max
+     */
+    public static SubtotalDistribution uniform(final double min, final double max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid range: " + min + " - " + max);
+        }
+        return new SubtotalDistribution() {
+            double next(Random random) {
+                return round(min + random.nextDouble() * (max - min));
+            }
+
+            public String toString() {
+                return "uniform(" + min + ", " + max + ")";
+            }
+        };
+    }
+
+    /**
+     * Log-normal subtotals: most purchases are close to the median, and a few
+     * ones are much bigger, as in real sales
+     *
+     * @param median
+     * @param sigma
+     *            standard deviation of the logarithm of the subtotals, 1 gives
+     *            about 1% of purchases over 10 times the median
+     * @return the distribution
+     */
+    public static SubtotalDistribution logNormal(final double median, final double sigma) {
+        if (median <= 0 || sigma < 0) {
+            throw new IllegalArgumentException("Invalid log-normal distribution: " + median + ", " + sigma);
+        }
+        return new SubtotalDistribution() {
+            double next(Random random) {
+                return round(median * Math.exp(sigma * random.nextGaussian()));
+            }
+
+            public String toString() {
+                return "logNormal(" + median + ", " + sigma + ")";
+            }
+        };
+    }
+
+    private static double round(double subtotal) {
+        return Math.round(subtotal * 100) / 100d;
+    }
+}
@@ -0,0 +1,148 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Estimates the memory held by a fact in a session:
+ * <ul>
+ * <li>Object bytes: the shallow size of the fact, plus the contents of its
+ * String fields, for a 64-bit JVM with compressed references. The layout of
+ * each class is computed once with reflection.
+ * <li>Engine bytes: the fact handle and the entries of the fact in the node
+ * memories. It depends on the rules, it is configured for each type (see
+ * MemoryAccountingBenchmark to measure it).
+ * </ul>
+ *
+ * It is thread-safe, so it can be shared by many sessions.
+ *
+ * @author ezegrande
+ */
+public class FactSizeEstimator {
+    static final int HEADER = 12;
+    static final int REFERENCE = 4;
+    static final int ALIGNMENT = 8;
+    /** Default engine bytes per fact, measured with the rules of the examples */
+    public static final long DEFAULT_ENGINE_OVERHEAD = 400;
+
+    private final ConcurrentMap<Class<?>, Layout> layouts = new ConcurrentHashMap<Class<?>, Layout>();
+    private final ConcurrentMap<Class<?>, Long> engineOverheads = new ConcurrentHashMap<Class<?>, Long>();
+    private final long defaultEngineOverhead;
+
+    public FactSizeEstimator() {
+        this(DEFAULT_ENGINE_OVERHEAD);
+    }
+
+    /**
+     * @param defaultEngineOverhead
+     *            engine bytes of the types without their own overhead
+     */
+    public FactSizeEstimator(long defaultEngineOverhead) {
+        this.defaultEngineOverhead = defaultEngineOverhead;
+    }
+
+    /**
+     * @param type
+     * @param bytes
+     *            engine bytes of each fact of the type
+     */
+    public void setEngineOverhead(Class<?> type, long bytes) {
+        engineOverheads.put(type, bytes);
+    }
+
+    /**
+     * @param type
+     * @return the engine bytes of each fact of the type
+     */
+    public long estimateEngineBytes(Class<?> type) {
+        Long bytes = engineOverheads.get(type);
+        return bytes == null ? defaultEngineOverhead : bytes;
+    }
+
+    /**
+     * @param fact
+     * @return the estimated bytes of the fact object
+     */
+    public long estimateObjectBytes(Object fact) {
+        Class<?> type = fact.getClass();
+        if (type.isArray()) {
+            return align(16 + (long) Array.getLength(fact) * sizeOf(type.getComponentType()));
+        }
+        Layout layout = layouts.get(type);
+        if (layout == null) {
+            layout = new Layout(type);
+            layouts.put(type, layout);
+        }
+        long bytes = layout.shallowBytes;
+        for (Field field : layout.stringFields) {
+            try {
+                Object value = field.get(fact);
+                if (value != null) {
+                    bytes += sizeOfString((String) value);
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Unable to read " + field, e);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param fact
+     * @return the estimated bytes of the object and its engine overhead
+     */
+    public long estimate(Object fact) {
+        return estimateObjectBytes(fact) + estimateEngineBytes(fact.getClass());
+    }
+
+    private static long sizeOfString(String value) {
+        // String object (header, hash and array reference) plus its char array
+        return align(HEADER + 4 + REFERENCE) + align(16 + 2L * value.length());
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Shallow size and String fields of a class
+     */
+    private static final class Layout {
+        private final long shallowBytes;
+        private final List<Field> stringFields = new ArrayList<Field>();
+
+        Layout(Class<?> type) {
+            long bytes = HEADER;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        bytes += sizeOf(field.getType());
+                        if (field.getType() == String.class) {
+                            field.setAccessible(true);
+                            stringFields.add(field);
+                        }
+                    }
+                }
+            }
+            this.shallowBytes = align(bytes);
+        }
+    }
+}
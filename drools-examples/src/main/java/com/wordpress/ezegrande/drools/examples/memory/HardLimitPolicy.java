@@ -0,0 +1,17 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+/**
+ * What a {@link MemoryAccountedSession} does when an insert would exceed its
+ * hard limit
+ *
+ * @author ezegrande
+ */
+public enum HardLimitPolicy {
+    /** The insert is rejected with an IllegalStateException */
+    REJECT,
+    /**
+     * The oldest facts inserted by the application are deleted until the new
+     * one fits. The facts inserted by the rules are kept
+     */
+    EVICT_OLDEST;
+}
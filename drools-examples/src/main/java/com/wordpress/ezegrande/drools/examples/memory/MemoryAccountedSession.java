@@ -0,0 +1,312 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.metrics.Gauge;
+import com.wordpress.ezegrande.drools.examples.metrics.MetricsRegistry;
+
+/**
+ * A KieSession with memory accounting and limits. Every fact in the session
+ * (inserted by the application or by the rules, in any entry point) is
+ * accounted with a {@link FactSizeEstimator}, by type.
+ *
+ * The facts of the application must be inserted through
+ * {@link #insert(Object)}, which applies the hard limit before inserting:
+ * <ul>
+ * <li>REJECT: the insert fails with an IllegalStateException
+ * <li>EVICT_OLDEST: the oldest facts inserted through {@link #insert(Object)}
+ * are deleted until the new one fits
+ * </ul>
+ *
+ * The facts inserted by the rules are never evicted: they record what the
+ * rules already did (e.g. a PotentialCustomer), and deleting them would make
+ * the rules fire again. They can not be rejected either, so after
+ * {@link #fireAllRules()} the session may be over the hard limit. With
+ * EVICT_OLDEST the oldest facts of the application are deleted then, and the
+ * activations created by the deletions are fired by the next fireAllRules. If
+ * the session is still over the limit, or with REJECT, the next inserts are
+ * rejected until it goes back under the limit.
+ *
+ * It is not thread-safe, like the KieSession. The totals can be read from
+ * other threads.
+ *
+ * @author ezegrande
+ */
+public class MemoryAccountedSession {
+    private Logger logger = LoggerFactory.getLogger(MemoryAccountedSession.class);
+
+    private static final MemoryLimitListener NO_LISTENER = new MemoryLimitListener() {
+        public void softLimitExceeded(MemoryAccountedSession session) {
+        }
+
+        public void hardLimitExceeded(MemoryAccountedSession session) {
+        }
+    };
+
+    private final KieSession session;
+    private final MemoryLimits limits;
+    private final FactSizeEstimator estimator;
+    private final Accountant accountant = new Accountant();
+    // Estimated bytes of each fact, in insertion order (oldest first)
+    private final LinkedHashMap<FactHandle, Long> facts = new LinkedHashMap<FactHandle, Long>();
+    // Facts inserted through insert(), the only ones evicted (oldest first)
+    private final LinkedHashSet<FactHandle> evictable = new LinkedHashSet<FactHandle>();
+    private final ConcurrentMap<Class<?>, TypeCounters> types = new ConcurrentHashMap<Class<?>, TypeCounters>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong rejectedInserts = new AtomicLong();
+    private final AtomicLong evictedFacts = new AtomicLong();
+    private final AtomicLong softLimitEvents = new AtomicLong();
+    private MemoryLimitListener listener = NO_LISTENER;
+    private boolean overSoftLimit;
+
+    public MemoryAccountedSession(KieSession session, MemoryLimits limits, FactSizeEstimator estimator) {
+        this.session = session;
+        this.limits = limits;
+        this.estimator = estimator;
+        session.addEventListener(accountant);
+    }
+
+    public void setListener(MemoryLimitListener listener) {
+        this.listener = listener == null ? NO_LISTENER : listener;
+    }
+
+    public KieSession getSession() {
+        return session;
+    }
+
+    /**
+     * Inserts a fact, applying the hard limit
+     *
+     * @param fact
+     * @return the FactHandle of the fact
+     * @throws IllegalStateException
+     *             if the fact does not fit in the hard limit
+     */
+    public FactHandle insert(Object fact) {
+        long hardLimit = limits.getHardLimitBytes();
+        if (hardLimit > 0) {
+            long bytes = estimator.estimate(fact);
+            if (limits.getPolicy() == HardLimitPolicy.EVICT_OLDEST && bytes <= hardLimit) {
+                evict(hardLimit - bytes);
+            }
+            if (usedBytes.get() + bytes > hardLimit) {
+                rejectedInserts.incrementAndGet();
+                listener.hardLimitExceeded(this);
+                throw new IllegalStateException("The fact " + fact + " (" + bytes + " bytes) exceeds the hard limit: "
+                        + usedBytes.get() + " of " + hardLimit + " bytes used");
+            }
+        }
+        FactHandle handle = session.insert(fact);
+        evictable.add(handle);
+        return handle;
+    }
+
+    /**
+     * Fires the rules, and then evicts the oldest facts of the application if
+     * the rules went over the hard limit and the policy is EVICT_OLDEST
+     *
+     * @return the number of fired rules
+     */
+    public int fireAllRules() {
+        int fired = session.fireAllRules();
+        long hardLimit = limits.getHardLimitBytes();
+        if (hardLimit > 0 && usedBytes.get() > hardLimit) {
+            if (limits.getPolicy() == HardLimitPolicy.EVICT_OLDEST) {
+                evict(hardLimit);
+            }
+            listener.hardLimitExceeded(this);
+        }
+        return fired;
+    }
+
+    /**
+     * Disposes the session
+     */
+    public void dispose() {
+        session.removeEventListener(accountant);
+        session.dispose();
+        facts.clear();
+        evictable.clear();
+        types.clear();
+        usedBytes.set(0);
+    }
+
+    /**
+     * @return the estimated bytes of all the facts of the session
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return the estimated memory of each fact type, by type name
+     */
+    public Map<String, TypeMemory> getTypeMemory() {
+        Map<String, TypeMemory> memory = new TreeMap<String, TypeMemory>();
+        for (Map.Entry<Class<?>, TypeCounters> entry : types.entrySet()) {
+            String name = entry.getKey().getSimpleName();
+            TypeCounters counters = entry.getValue();
+            memory.put(name, new TypeMemory(name, counters.facts.get(), counters.objectBytes.get(),
+                    counters.engineBytes.get()));
+        }
+        return memory;
+    }
+
+    public long getRejectedInserts() {
+        return rejectedInserts.get();
+    }
+
+    public long getEvictedFacts() {
+        return evictedFacts.get();
+    }
+
+    /**
+     * @return the times that the session went over the soft limit
+     */
+    public long getSoftLimitEvents() {
+        return softLimitEvents.get();
+    }
+
+    public MemoryLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Publishes the memory of the session as gauges: '&lt;prefix&gt;.bytes',
+     * '&lt;prefix&gt;.rejected', '&lt;prefix&gt;.evicted' and
+     * '&lt;prefix&gt;.softLimitEvents'. Remove them with
+     * {@link MetricsRegistry#removeAll(String)} after disposing the session.
+     *
+     * @param registry
+     * @param prefix
+     *            for example 'session.orders.memory'
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".bytes", gauge(usedBytes));
+        registry.gauge(prefix + ".rejected", gauge(rejectedInserts));
+        registry.gauge(prefix + ".evicted", gauge(evictedFacts));
+        registry.gauge(prefix + ".softLimitEvents", gauge(softLimitEvents));
+    }
+
+    private static Gauge gauge(final AtomicLong value) {
+        return new Gauge() {
+            public long getValue() {
+                return value.get();
+            }
+        };
+    }
+
+    /**
+     * Deletes the oldest facts inserted through {@link #insert(Object)} until
+     * the session uses at most the given bytes, or there are no more of them
+     */
+    private void evict(long maxBytes) {
+        if (usedBytes.get() <= maxBytes) {
+            return;
+        }
+        // The deletions update the maps through the listener
+        List<FactHandle> oldest = new ArrayList<FactHandle>();
+        long bytes = usedBytes.get();
+        for (FactHandle handle : evictable) {
+            if (bytes <= maxBytes) {
+                break;
+            }
+            Long factBytes = facts.get(handle);
+            oldest.add(handle);
+            bytes -= factBytes == null ? 0 : factBytes.longValue();
+        }
+        for (FactHandle handle : oldest) {
+            session.delete(handle);
+        }
+        evictedFacts.addAndGet(oldest.size());
+        logger.debug("Evicted " + oldest.size() + " facts, " + usedBytes.get() + " bytes used");
+    }
+
+    private void added(FactHandle handle, Object fact) {
+        long objectBytes = estimator.estimateObjectBytes(fact);
+        long engineBytes = estimator.estimateEngineBytes(fact.getClass());
+        facts.put(handle, objectBytes + engineBytes);
+        getCounters(fact.getClass()).add(1, objectBytes, engineBytes);
+        long used = usedBytes.addAndGet(objectBytes + engineBytes);
+        long softLimit = limits.getSoftLimitBytes();
+        if (softLimit > 0 && used > softLimit && !overSoftLimit) {
+            overSoftLimit = true;
+            softLimitEvents.incrementAndGet();
+            logger.warn("The session went over its soft limit: " + used + " of " + softLimit + " bytes used");
+            listener.softLimitExceeded(this);
+        }
+    }
+
+    private void removed(FactHandle handle, Object fact) {
+        Long bytes = facts.remove(handle);
+        if (bytes == null) {
+            return;
+        }
+        long engineBytes = estimator.estimateEngineBytes(fact.getClass());
+        getCounters(fact.getClass()).add(-1, -(bytes - engineBytes), -engineBytes);
+        long used = usedBytes.addAndGet(-bytes);
+        if (overSoftLimit && used <= limits.getSoftLimitBytes()) {
+            overSoftLimit = false;
+        }
+    }
+
+    private TypeCounters getCounters(Class<?> type) {
+        TypeCounters counters = types.get(type);
+        if (counters == null) {
+            counters = new TypeCounters();
+            types.put(type, counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Counters of a fact type
+     */
+    private static final class TypeCounters {
+        private final AtomicLong facts = new AtomicLong();
+        private final AtomicLong objectBytes = new AtomicLong();
+        private final AtomicLong engineBytes = new AtomicLong();
+
+        void add(long count, long object, long engine) {
+            facts.addAndGet(count);
+            objectBytes.addAndGet(object);
+            engineBytes.addAndGet(engine);
+        }
+    }
+
+    /**
+     * Accounts the facts inserted, updated and deleted in the session
+     */
+    private final class Accountant implements RuleRuntimeEventListener {
+        public void objectInserted(ObjectInsertedEvent event) {
+            added(event.getFactHandle(), event.getObject());
+        }
+
+        public void objectUpdated(ObjectUpdatedEvent event) {
+            removed(event.getFactHandle(), event.getOldObject());
+            added(event.getFactHandle(), event.getObject());
+        }
+
+        public void objectDeleted(ObjectDeletedEvent event) {
+            evictable.remove(event.getFactHandle());
+            removed(event.getFactHandle(), event.getOldObject());
+        }
+    }
+}
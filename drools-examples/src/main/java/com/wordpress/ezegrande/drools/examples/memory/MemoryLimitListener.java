@@ -0,0 +1,26 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+/**
+ * Notified when a {@link MemoryAccountedSession} goes over its limits. It is
+ * called from the thread that uses the session, so it must not block.
+ *
+ * @author ezegrande
+ */
+public interface MemoryLimitListener {
+
+    /**
+     * The session went over its soft limit. It is notified again only after
+     * the session goes back under the limit.
+     *
+     * @param session
+     */
+    void softLimitExceeded(MemoryAccountedSession session);
+
+    /**
+     * An insert was rejected or facts were evicted to respect the hard limit,
+     * or the rules inserted facts over it
+     *
+     * @param session
+     */
+    void hardLimitExceeded(MemoryAccountedSession session);
+}
@@ -0,0 +1,47 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+/**
+ * Memory limits of a {@link MemoryAccountedSession}, in estimated bytes:
+ * <ul>
+ * <li>Soft limit: when the session goes over it, its
+ * {@link MemoryLimitListener} is notified. 0 disables it.
+ * <li>Hard limit: the session never goes over it with the facts inserted by
+ * the application, the {@link HardLimitPolicy} decides how. 0 disables it.
+ * </ul>
+ *
+ * The same limits can be shared by many sessions, each one is accounted on its
+ * own.
+ *
+ * @author ezegrande
+ */
+public class MemoryLimits {
+    private long softLimitBytes;
+    private long hardLimitBytes;
+    private HardLimitPolicy policy = HardLimitPolicy.REJECT;
+
+    public MemoryLimits(long softLimitBytes, long hardLimitBytes, HardLimitPolicy policy) {
+        if (softLimitBytes < 0 || hardLimitBytes < 0 || (hardLimitBytes > 0 && softLimitBytes > hardLimitBytes)) {
+            throw new IllegalArgumentException("Invalid memory limits: " + softLimitBytes + " / " + hardLimitBytes);
+        }
+        this.softLimitBytes = softLimitBytes;
+        this.hardLimitBytes = hardLimitBytes;
+        this.policy = policy;
+    }
+
+    public long getSoftLimitBytes() {
+        return softLimitBytes;
+    }
+
+    public long getHardLimitBytes() {
+        return hardLimitBytes;
+    }
+
+    public HardLimitPolicy getPolicy() {
+        return policy;
+    }
+
+    public String toString() {
+        return "Memory Limits [Soft: " + softLimitBytes + " bytes | Hard: " + hardLimitBytes + " bytes | Policy: "
+                + policy + "]";
+    }
+}
@@ -0,0 +1,53 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+/**
+ * Estimated memory held by the facts of a type in a session: the fact
+ * objects, and the engine overhead (fact handles and the entries in the node
+ * memories of the network)
+ *
+ * @author ezegrande
+ */
+public class TypeMemory {
+    private final String type;
+    private final long facts;
+    private final long objectBytes;
+    private final long engineBytes;
+
+    TypeMemory(String type, long facts, long objectBytes, long engineBytes) {
+        this.type = type;
+        this.facts = facts;
+        this.objectBytes = objectBytes;
+        this.engineBytes = engineBytes;
+    }
+
+    /**
+     * @return the simple name of the class of the facts
+     */
+    public String getType() {
+        return type;
+    }
+
+    public long getFacts() {
+        return facts;
+    }
+
+    public long getObjectBytes() {
+        return objectBytes;
+    }
+
+    /**
+     * @return the estimated bytes of the fact handles and node memories
+     */
+    public long getEngineBytes() {
+        return engineBytes;
+    }
+
+    public long getTotalBytes() {
+        return objectBytes + engineBytes;
+    }
+
+    public String toString() {
+        return "TypeMemory [Type: " + type + " | Facts: " + facts + " | Objects: " + objectBytes
+                + " bytes | Engine: " + engineBytes + " bytes]";
+    }
+}
@@ -0,0 +1,10 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+/**
+ * A value that is read when the metrics are scraped
+ *
+ * @author ezegrande
+ */
+public interface Gauge {
+    long getValue();
+}
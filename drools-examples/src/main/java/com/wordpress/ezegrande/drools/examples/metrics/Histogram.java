@@ -0,0 +1,90 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with fixed buckets (1-2-5 series), from 10 microseconds to
+ * 10 seconds. It can be updated from several threads, and the percentiles are
+ * estimated with the upper bound of their bucket.
+ *
+ * @author ezegrande
+ */
+public class Histogram {
+    /** Upper bounds of the buckets in microseconds, the last one is unbounded */
+    static final long[] BOUNDS = { 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000,
+            200000, 500000, 1000000, 2000000, 5000000, 10000000, Long.MAX_VALUE };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos
+     *            the measured latency
+     */
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (micros > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // Retry until the max is updated or a higher one is set
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : sumNanos.get() / n / 1000;
+    }
+
+    public long getMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    /**
+     * @param percentile
+     *            between 0 and 100
+     * @return the upper bound of the bucket of the percentile, or the max if it
+     *         is in the unbounded bucket
+     */
+    public long getPercentileMicros(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * @param bucket
+     * @return the latencies recorded in the bucket
+     */
+    long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    public String toString() {
+        return "Histogram [Count: " + getCount() + " | Mean: " + getMeanMicros() + " us | P50: "
+                + getPercentileMicros(50) + " us | P99: " + getPercentileMicros(99) + " us | Max: "
+                + getMaxMicros() + " us]";
+    }
+}
@@ -0,0 +1,122 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal HTTP endpoint to scrape a {@link MetricsRegistry} from dashboards.
+ * It only listens on the loopback address, and serves:
+ * <ul>
+ * <li>GET /metrics: the metrics as text
+ * <li>GET /metrics.json: the metrics as JSON
+ * </ul>
+ *
+ * The requests are served one at a time by a daemon thread.
+ *
+ * @author ezegrande
+ */
+public class MetricsEndpoint {
+    private Logger logger = LoggerFactory.getLogger(MetricsEndpoint.class);
+
+    private final MetricsRegistry registry;
+    private final ServerSocket serverSocket;
+    private final Thread thread;
+
+    /**
+     * Starts the endpoint
+     *
+     * @param registry
+     * @param port
+     *            0 to use any free port
+     * @throws IOException
+     *             if the port can not be bound
+     */
+    public MetricsEndpoint(MetricsRegistry registry, int port) throws IOException {
+        this.registry = registry;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        }, "metrics-endpoint-" + serverSocket.getLocalPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops the endpoint
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the metrics endpoint", e);
+        }
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // Closed
+                return;
+            } catch (IOException e) {
+                logger.warn("Unable to accept a metrics request", e);
+                continue;
+            }
+            try {
+                handle(socket);
+            } catch (IOException e) {
+                logger.warn("Unable to serve a metrics request", e);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Ignored
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        String requestLine = reader.readLine();
+        String[] parts = requestLine == null ? new String[0] : requestLine.split(" ");
+        String path = parts.length > 1 ? parts[1] : "";
+        if (parts.length < 2 || !"GET".equals(parts[0])) {
+            respond(socket, "405 Method Not Allowed", "text/plain", "Only GET is supported\n");
+        } else if ("/metrics".equals(path)) {
+            respond(socket, "200 OK", "text/plain; charset=utf-8", registry.toText());
+        } else if ("/metrics.json".equals(path)) {
+            respond(socket, "200 OK", "application/json; charset=utf-8", registry.toJson());
+        } else {
+            respond(socket, "404 Not Found", "text/plain", "Unknown path: " + path + "\n");
+        }
+    }
+
+    private static void respond(Socket socket, String status, String contentType, String body) throws IOException {
+        byte[] content = body.getBytes("UTF-8");
+        String headers = "HTTP/1.0 " + status + "\r\nContent-Type: " + contentType + "\r\nContent-Length: "
+                + content.length + "\r\nConnection: close\r\n\r\n";
+        OutputStream out = socket.getOutputStream();
+        out.write(headers.getBytes("US-ASCII"));
+        out.write(content);
+        out.flush();
+    }
+}
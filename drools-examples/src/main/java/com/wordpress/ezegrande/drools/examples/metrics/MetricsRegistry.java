@@ -0,0 +1,162 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of named metrics: counters, gauges and latency histograms. It does
+ * not depend on any monitoring system, the metrics are rendered as text (one
+ * 'name value' line per value) or as JSON, and any exporter can read them.
+ *
+ * The names are dot separated, for example 'sessions.live' or
+ * 'session.orders.facts.Purchase'.
+ *
+ * @author ezegrande
+ */
+public class MetricsRegistry {
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    /**
+     * @param name
+     * @return the counter, it is created if it does not exist
+     */
+    public AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @param name
+     * @return the histogram, it is created if it does not exist
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, replacing the previous one with the same name
+     *
+     * @param name
+     * @param gauge
+     */
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Removes the metric with the name, whatever its kind
+     *
+     * @param name
+     */
+    public void remove(String name) {
+        counters.remove(name);
+        gauges.remove(name);
+        histograms.remove(name);
+    }
+
+    /**
+     * Removes the metrics whose name starts with the prefix, for example the
+     * metrics of a disposed session
+     *
+     * @param prefix
+     */
+    public void removeAll(String prefix) {
+        removeAll(counters, prefix);
+        removeAll(gauges, prefix);
+        removeAll(histograms, prefix);
+    }
+
+    /**
+     * @return the current value of every metric, sorted by name. The
+     *         histograms are expanded into their count, mean, percentiles and
+     *         max
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getValue());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean_us", histogram.getMeanMicros());
+            values.put(name + ".p50_us", histogram.getPercentileMicros(50));
+            values.put(name + ".p99_us", histogram.getPercentileMicros(99));
+            values.put(name + ".p999_us", histogram.getPercentileMicros(99.9));
+            values.put(name + ".max_us", histogram.getMaxMicros());
+        }
+        return values;
+    }
+
+    /**
+     * @return the metrics as text, a 'name value' line per value
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> value : snapshot().entrySet()) {
+            text.append(value.getKey()).append(' ').append(value.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the metrics as a flat JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Long> value : snapshot().entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"');
+            appendEscaped(json, value.getKey());
+            json.append("\":").append(value.getValue());
+        }
+        return json.append('}').toString();
+    }
+
+    private static void removeAll(Map<String, ?> metrics, String prefix) {
+        for (String name : metrics.keySet()) {
+            if (name.startsWith(prefix)) {
+                metrics.remove(name);
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder json, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+
+/**
+ * A KieSession monitored by {@link RuleMetrics}. The facts are counted by type
+ * with a listener, so they include the facts of every entry point and the
+ * ones inserted by the rules. The rules must be fired through
+ * {@link #fireAllRules()} to measure their latency.
+ *
+ * Metrics of the session: 'session.&lt;name&gt;.facts.&lt;Type&gt;' and
+ * 'session.&lt;name&gt;.fire'. The latency of all the sessions is also recorded
+ * in 'sessions.fire', and the fired rules in 'rules.fired'. Only the metrics
+ * registered by the session are removed when it is disposed, so the name of a
+ * session may be a prefix of the name of another one (e.g. 'orders' and
+ * 'orders.eu').
+ *
+ * @author ezegrande
+ */
+public class MonitoredSession implements MonitoredSessionMBean {
+    private final RuleMetrics metrics;
+    private final KieSession session;
+    private final String name;
+    private final ObjectName objectName;
+    private final ConcurrentMap<String, AtomicInteger> factCounts = new ConcurrentHashMap<String, AtomicInteger>();
+    private final String fireLatencyName;
+    private final Histogram fireLatency;
+    private final Histogram allFireLatency;
+    private final AtomicLong rulesFired;
+    private final FactCounter factCounter = new FactCounter();
+
+    MonitoredSession(RuleMetrics metrics, KieSession session, String name) {
+        this.metrics = metrics;
+        this.session = session;
+        this.name = name;
+        this.objectName = metrics.objectName("type=KieSession,metrics=" + ObjectName.quote(metrics.getName())
+                + ",name=" + ObjectName.quote(name));
+        this.fireLatencyName = "session." + name + ".fire";
+        this.fireLatency = metrics.getRegistry().histogram(fireLatencyName);
+        this.allFireLatency = metrics.getRegistry().histogram("sessions.fire");
+        this.rulesFired = metrics.getRegistry().counter("rules.fired");
+    }
+
+    void start() {
+        session.addEventListener(factCounter);
+    }
+
+    public KieSession getSession() {
+        return session;
+    }
+
+    /**
+     * Fires the rules of the session, recording the latency
+     *
+     * @return the number of fired rules
+     */
+    public int fireAllRules() {
+        long start = System.nanoTime();
+        int fired = session.fireAllRules();
+        long nanos = System.nanoTime() - start;
+        fireLatency.record(nanos);
+        allFireLatency.record(nanos);
+        rulesFired.addAndGet(fired);
+        return fired;
+    }
+
+    /**
+     * Disposes the session and removes its metrics
+     */
+    public void dispose() {
+        session.removeEventListener(factCounter);
+        session.dispose();
+        metrics.disposed(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Integer> getFactCounts() {
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (Map.Entry<String, AtomicInteger> count : factCounts.entrySet()) {
+            counts.put(count.getKey(), count.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @param type
+     * @return the number of facts of the type
+     */
+    public int getFactCount(Class<?> type) {
+        AtomicInteger exact = factCounts.get(typeName(type));
+        return exact == null ? 0 : exact.get();
+    }
+
+    public long getFactCount() {
+        long count = 0;
+        for (AtomicInteger typeCount : factCounts.values()) {
+            count += typeCount.get();
+        }
+        return count;
+    }
+
+    public long getFireCount() {
+        return fireLatency.getCount();
+    }
+
+    public long getFireMeanMicros() {
+        return fireLatency.getMeanMicros();
+    }
+
+    public long getFireP99Micros() {
+        return fireLatency.getPercentileMicros(99);
+    }
+
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * @return the names of the metrics registered by this session
+     */
+    List<String> getMetricNames() {
+        List<String> names = new ArrayList<String>();
+        names.add(fireLatencyName);
+        for (String type : factCounts.keySet()) {
+            names.add(factCountName(type));
+        }
+        return names;
+    }
+
+    private void count(Object fact, int delta) {
+        String type = typeName(fact.getClass());
+        AtomicInteger count = factCounts.get(type);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = factCounts.putIfAbsent(type, created);
+            if (count == null) {
+                count = created;
+                final AtomicInteger gauge = created;
+                metrics.getRegistry().gauge(factCountName(type), new Gauge() {
+                    public long getValue() {
+                        return gauge.get();
+                    }
+                });
+            }
+        }
+        count.addAndGet(delta);
+    }
+
+    private String factCountName(String type) {
+        return "session." + name + ".facts." + type;
+    }
+
+    private static String typeName(Class<?> type) {
+        String simpleName = type.getSimpleName();
+        return simpleName.length() == 0 ? type.getName() : simpleName;
+    }
+
+    /**
+     * Counts the facts inserted into and deleted from the session
+     */
+    private final class FactCounter implements RuleRuntimeEventListener {
+        public void objectInserted(ObjectInsertedEvent event) {
+            count(event.getObject(), 1);
+        }
+
+        public void objectUpdated(ObjectUpdatedEvent event) {
+            if (event.getOldObject() != null && event.getOldObject().getClass() != event.getObject().getClass()) {
+                count(event.getOldObject(), -1);
+                count(event.getObject(), 1);
+            }
+        }
+
+        public void objectDeleted(ObjectDeletedEvent event) {
+            count(event.getOldObject(), -1);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX interface of a {@link MonitoredSession}
+ *
+ * @author ezegrande
+ */
+public interface MonitoredSessionMBean {
+    String getName();
+
+    /**
+     * @return the number of facts of each type, by the simple name of their
+     *         class
+     */
+    Map<String, Integer> getFactCounts();
+
+    long getFactCount();
+
+    long getFireCount();
+
+    long getFireMeanMicros();
+
+    long getFireP99Micros();
+}
@@ -0,0 +1,186 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.kie.api.runtime.KieSession;
+
+/**
+ * Runtime metrics of the KieBases and KieSessions of an application:
+ * <ul>
+ * <li>Live, created and disposed sessions
+ * <li>Facts of each session by type
+ * <li>Latency of fireAllRules, for each session and for all of them
+ * <li>Build time of the KieBases
+ * </ul>
+ *
+ * The metrics are kept in a {@link MetricsRegistry}, and they are also
+ * published as MBeans in the domain {@value #DOMAIN}: one for the whole
+ * application (type=RuleMetrics) and one for each live session
+ * (type=KieSession). The sessions must be created through
+ * {@link #monitor(KieSession, String)} and disposed through their
+ * {@link MonitoredSession}.
+ *
+ * @author ezegrande
+ */
+public class RuleMetrics implements RuleMetricsMBean {
+    public static final String DOMAIN = "com.wordpress.ezegrande.drools";
+
+    private final String name;
+    private final MBeanServer server;
+    private final ObjectName objectName;
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final ConcurrentMap<String, MonitoredSession> sessions = new ConcurrentHashMap<String, MonitoredSession>();
+    private final AtomicLong created;
+    private final AtomicLong disposed;
+
+    /**
+     * Creates the metrics, published in the platform MBeanServer
+     *
+     * @param name
+     *            name of the application
+     */
+    public RuleMetrics(String name) {
+        this(name, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param name
+     *            name of the application
+     * @param server
+     *            where the MBeans are registered, or null to not publish
+     *            them
+     */
+    public RuleMetrics(String name, MBeanServer server) {
+        this.name = name;
+        this.server = server;
+        this.created = registry.counter("sessions.created");
+        this.disposed = registry.counter("sessions.disposed");
+        registry.gauge("sessions.live", new Gauge() {
+            public long getValue() {
+                return sessions.size();
+            }
+        });
+        this.objectName = objectName("type=RuleMetrics,name=" + ObjectName.quote(name));
+        register(this, objectName);
+    }
+
+    /**
+     * Starts monitoring a new session
+     *
+     * @param session
+     * @param sessionName
+     *            unique among the live sessions
+     * @return the monitored session, use it to fire the rules and to dispose
+     *         the session
+     * @throws IllegalArgumentException
+     *             if there is a live session with the same name
+     */
+    public MonitoredSession monitor(KieSession session, String sessionName) {
+        MonitoredSession monitored = new MonitoredSession(this, session, sessionName);
+        if (sessions.putIfAbsent(sessionName, monitored) != null) {
+            throw new IllegalArgumentException("There is a live session named " + sessionName);
+        }
+        monitored.start();
+        register(monitored, monitored.getObjectName());
+        created.incrementAndGet();
+        return monitored;
+    }
+
+    /**
+     * Records the build time of a KieBase, as the histogram
+     * 'kiebase.&lt;name&gt;.build'
+     *
+     * @param kieBaseName
+     * @param nanos
+     */
+    public void recordKieBaseBuild(String kieBaseName, long nanos) {
+        registry.histogram("kiebase." + kieBaseName + ".build").record(nanos);
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Unregisters the MBeans, the live sessions are not disposed
+     */
+    public void close() {
+        for (MonitoredSession session : sessions.values()) {
+            unregister(session.getObjectName());
+        }
+        unregister(objectName);
+    }
+
+    public int getLiveSessions() {
+        return sessions.size();
+    }
+
+    public long getCreatedSessions() {
+        return created.get();
+    }
+
+    public long getDisposedSessions() {
+        return disposed.get();
+    }
+
+    public String[] getSessionNames() {
+        return sessions.keySet().toArray(new String[0]);
+    }
+
+    public String getMetricsText() {
+        return registry.toText();
+    }
+
+    public String getMetricsJson() {
+        return registry.toJson();
+    }
+
+    void disposed(MonitoredSession session) {
+        if (sessions.remove(session.getName(), session)) {
+            unregister(session.getObjectName());
+            for (String metricName : session.getMetricNames()) {
+                registry.remove(metricName);
+            }
+            disposed.incrementAndGet();
+        }
+    }
+
+    ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid MBean name: " + properties, e);
+        }
+    }
+
+    private void register(Object mbean, ObjectName mbeanName) {
+        if (server != null) {
+            try {
+                server.registerMBean(mbean, mbeanName);
+            } catch (JMException e) {
+                throw new IllegalStateException("Unable to register the MBean " + mbeanName, e);
+            }
+        }
+    }
+
+    private void unregister(ObjectName mbeanName) {
+        if (server != null && server.isRegistered(mbeanName)) {
+            try {
+                server.unregisterMBean(mbeanName);
+            } catch (JMException e) {
+                throw new IllegalStateException("Unable to unregister the MBean " + mbeanName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+/**
+ * JMX interface of the {@link RuleMetrics}
+ *
+ * @author ezegrande
+ */
+public interface RuleMetricsMBean {
+    int getLiveSessions();
+
+    long getCreatedSessions();
+
+    long getDisposedSessions();
+
+    String[] getSessionNames();
+
+    String getMetricsText();
+
+    String getMetricsJson();
+}
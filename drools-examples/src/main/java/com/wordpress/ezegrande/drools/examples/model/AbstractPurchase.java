@@ -0,0 +1,53 @@
+package com.wordpress.ezegrande.drools.examples.model;
+
+import org.kie.api.definition.type.Modifies;
+import org.kie.api.definition.type.PropertyReactive;
+
+/**
+ * The properties of a Purchase that the rules read and write, without fields.
+ * The rules that match this type work with the {@link Purchase} POJOs and with
+ * other representations of the same data, i.e. the flyweights of an
+ * OffHeapPurchaseStore, which read the fields from its columns.
+ * 
+ * It is property reactive like Purchase. The masks of the updates made with
+ * the properties of a subclass are translated by the engine to the
+ * properties of this class.
+ * 
+ * @author ezegrande
+ */
+@PropertyReactive
+public abstract class AbstractPurchase {
+
+    public abstract int getCustomerId();
+
+    public abstract String getCustomerName();
+
+    @Modifies({ "customerId" })
+    public abstract void setCustomerName(String customerName);
+
+    public abstract double getSubtotal();
+
+    public abstract void setSubtotal(double subtotal);
+
+    public abstract PaymentMethod getPaymentMethod();
+
+    public abstract void setPaymentMethod(PaymentMethod paymentMethod);
+
+    public abstract double getDiscount();
+
+    public abstract void setDiscount(double discount);
+
+    /**
+     * Returns the total amount of this Purchase. Total = Subtotal - Discount
+     * 
+     * @return the Total Amount of this Purchase
+     */
+    public double getTotal() {
+        return getSubtotal() - (getSubtotal() * getDiscount());
+    }
+
+    public String toString() {
+        return "Purchase [Customer: " + getCustomerName() + " | Subtotal: " + getSubtotal() + " | Payment Method: "
+                + getPaymentMethod() + " | Discount: " + getDiscount() + " | Total : " + getTotal() + "]";
+    }
+}
@@ -0,0 +1,121 @@
+package com.wordpress.ezegrande.drools.examples.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of Customer Names. Each name gets a sequential int id the first
+ * time it is seen, and the id can be translated back to the name:
+ * <ul>
+ * <li>Looking up a name or an id does not lock
+ * <li>Equal names always return the same String instance, so repeated names
+ * are stored only once
+ * </ul>
+ *
+ * Ids are never released, the dictionary only grows.
+ *
+ * @author ezegrande
+ */
+public class CustomerDictionary {
+    private static CustomerDictionary instance = new CustomerDictionary();
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] names = new String[1024];
+    private volatile int size;
+
+    public CustomerDictionary() {
+        // Instances independent of the shared one may be created
+    }
+
+    /**
+     * @return the dictionary shared by the application
+     */
+    public static CustomerDictionary getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the id of the name, adding it to the dictionary if it is new
+     *
+     * @param name
+     * @return the id of the name
+     */
+    public int getId(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("The customer name can not be null");
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id.intValue();
+        }
+        return add(name);
+    }
+
+    /**
+     * @param name
+     * @return the id of the name, or -1 if it is not in the dictionary
+     */
+    public int findId(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id == null ? -1 : id.intValue();
+    }
+
+    /**
+     * @param id
+     * @return the name with the given id
+     */
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown customer id: " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * @param name
+     * @return the instance of the name kept by the dictionary
+     */
+    public String canonicalize(String name) {
+        return names[getId(name)];
+    }
+
+    /**
+     * @return the number of names in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the id of the name in the shared dictionary, or -1 if it is null
+     */
+    static int toId(String name) {
+        return name == null ? -1 : instance.getId(name);
+    }
+
+    /**
+     * @return the name of the id in the shared dictionary, or null if it is -1
+     */
+    static String toName(int id) {
+        return id < 0 ? null : instance.getName(id);
+    }
+
+    private synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id.intValue();
+        }
+        String[] current = names;
+        if (size == current.length) {
+            String[] grown = new String[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, size);
+            current = grown;
+        }
+        current[size] = name;
+        names = current;
+        // The name is published before its id
+        size++;
+        ids.put(name, Integer.valueOf(size - 1));
+        return size - 1;
+    }
+}
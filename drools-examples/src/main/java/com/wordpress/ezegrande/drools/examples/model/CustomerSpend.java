@@ -0,0 +1,66 @@
+package com.wordpress.ezegrande.drools.examples.model;
+
+import org.kie.api.definition.type.Modifies;
+import org.kie.api.definition.type.PropertyReactive;
+
+/**
+ * The Cash spend of a Customer, aggregated by the rules of
+ * 'customerSpend.drl':
+ * <ul>
+ * <li>Customer Name
+ * <li>Total amount spent in Cash
+ * <li>Number of Cash Purchases
+ * </ul>
+ * 
+ * The Customer Name is kept as its id in the shared {@link CustomerDictionary}.
+ * It is property reactive, so the rules that only constrain the Customer Name
+ * are not re-evaluated when the totals are modified. Setting the Customer Name
+ * modifies the Customer id too.
+ * 
+ * @author ezegrande
+ *
+ */
+@PropertyReactive
+public class CustomerSpend {
+    private int customerId;
+    private double total;
+    private long purchaseCount;
+
+    public CustomerSpend(String customerName) {
+        this.customerId = CustomerDictionary.toId(customerName);
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public String getCustomerName() {
+        return CustomerDictionary.toName(customerId);
+    }
+
+    @Modifies({ "customerId" })
+    public void setCustomerName(String customerName) {
+        this.customerId = CustomerDictionary.toId(customerName);
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public void setTotal(double total) {
+        this.total = total;
+    }
+
+    public long getPurchaseCount() {
+        return purchaseCount;
+    }
+
+    public void setPurchaseCount(long purchaseCount) {
+        this.purchaseCount = purchaseCount;
+    }
+
+    public String toString() {
+        return "Customer Spend [Name: " + getCustomerName() + " | Total: " + total + " | Purchases: " + purchaseCount
+                + "]";
+    }
+}
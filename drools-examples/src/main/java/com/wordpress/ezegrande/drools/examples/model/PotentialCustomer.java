@@ -7,35 +7,64 @@ package com.wordpress.ezegrande.drools.examples.model;
  * <li>Credit Limit
  * </ul>
  * 
+ * As in Purchase, the Customer Name is kept as its id in the shared
+ * {@link CustomerDictionary}.
+ * 
+ * It is immutable: its equality is based on all its fields, and the Truth
+ * Maintenance System keeps the logical facts in a hash table, so changing a
+ * field of a fact in the session would leave it in the wrong bucket. A new
+ * Potential Customer must be inserted instead.
+ * 
  * @author ezegrande
  *
  */
 public class PotentialCustomer {
-    private String customerName;
-    private double creditLimit;
+    private final int customerId;
+    private final double creditLimit;
 
     public PotentialCustomer(String customerName, double creditLimit) {
-        this.customerName = customerName;
+        this.customerId = CustomerDictionary.toId(customerName);
         this.creditLimit = creditLimit;
     }
 
-    public String getCustomerName() {
-        return customerName;
+    public int getCustomerId() {
+        return customerId;
     }
 
-    public void setCustomerName(String customerName) {
-        this.customerName = customerName;
+    public String getCustomerName() {
+        return CustomerDictionary.toName(customerId);
     }
 
     public double getCreditLimit() {
         return creditLimit;
     }
 
-    public void setCreditLimit(double creditLimit) {
-        this.creditLimit = creditLimit;
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(creditLimit);
+        int result = 31 + customerId;
+        return 31 * result + (int) (bits ^ (bits >>> 32));
+    }
+
+    /**
+     * Two Potential Customers are equal when they have the same name and the
+     * same credit limit. The Truth Maintenance System uses it to keep only one
+     * fact for equal logical insertions.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PotentialCustomer)) {
+            return false;
+        }
+        PotentialCustomer other = (PotentialCustomer) obj;
+        return customerId == other.customerId
+                && Double.doubleToLongBits(creditLimit) == Double.doubleToLongBits(other.creditLimit);
     }
 
     public String toString() {
-        return "Potential Customer [Name: " + customerName + " | Credit Limit: " + creditLimit + "]";
+        return "Potential Customer [Name: " + getCustomerName() + " | Credit Limit: " + creditLimit + "]";
     }
 }
@@ -1,29 +1,48 @@
 package com.wordpress.ezegrande.drools.examples.model;
 
+import org.kie.api.definition.type.Modifies;
+import org.kie.api.definition.type.PropertyReactive;
+
 /**
- * A simple representation of a Purchase
+ * A simple representation of a Purchase. The Customer Name is kept as its id
+ * in the shared {@link CustomerDictionary}, so the rules can join Purchases by
+ * comparing ints and repeated names are stored only once.
+ * 
+ * It is property reactive, so an update of the subtotal (e.g. with a
+ * BulkUpdate) only re-evaluates the patterns that constrain the subtotal.
+ * Setting the Customer Name modifies the Customer id too, so the patterns
+ * that join by the id are re-evaluated when the Customer changes.
+ * 
+ * The total and the String representation are defined in
+ * {@link AbstractPurchase}, which the rules may match instead.
  * 
  * @author ezegrande
  *
  */
-public class Purchase {
-    private String customerName;
+@PropertyReactive
+public class Purchase extends AbstractPurchase {
+    private int customerId;
     private double subtotal;
     private PaymentMethod paymentMethod;
     private double discount;
 
     public Purchase(String customerName, double subtotal, PaymentMethod paymentMethod) {
-        this.customerName = customerName;
+        this.customerId = CustomerDictionary.toId(customerName);
         this.subtotal = subtotal;
         this.paymentMethod = paymentMethod;
     }
 
+    public int getCustomerId() {
+        return customerId;
+    }
+
     public String getCustomerName() {
-        return customerName;
+        return CustomerDictionary.toName(customerId);
     }
 
+    @Modifies({ "customerId" })
     public void setCustomerName(String customerName) {
-        this.customerName = customerName;
+        this.customerId = CustomerDictionary.toId(customerName);
     }
 
     public double getSubtotal() {
@@ -49,18 +68,4 @@ public class Purchase {
     public void setDiscount(double discount) {
         this.discount = discount;
     }
-
-    /**
-     * Returns the total amount of this Purchase. Total = Subtotal - Discount
-     * 
-     * @return the Total Amount of this Purchase
-     */
-    public double getTotal() {
-        return subtotal - (subtotal * discount);
-    }
-
-    public String toString() {
-        return "Purchase [Customer: " + customerName + " | Subtotal: " + subtotal + " | Payment Method: " + paymentMethod
-                + " | Discount: " + discount + " | Total : " + getTotal() + "]";
-    }
 }
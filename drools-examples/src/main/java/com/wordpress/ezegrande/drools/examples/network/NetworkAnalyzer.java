@@ -0,0 +1,282 @@
+package com.wordpress.ezegrande.drools.examples.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.core.RuleBaseConfiguration;
+import org.drools.core.base.ClassObjectType;
+import org.drools.core.base.ValueType;
+import org.drools.core.base.extractors.MVELObjectClassFieldReader;
+import org.drools.core.common.BaseNode;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.reteoo.AlphaNode;
+import org.drools.core.reteoo.BetaNode;
+import org.drools.core.reteoo.CompositeObjectSinkAdapter;
+import org.drools.core.reteoo.EntryPointNode;
+import org.drools.core.reteoo.LeftTupleSink;
+import org.drools.core.reteoo.LeftTupleSource;
+import org.drools.core.reteoo.NodeTypeEnums;
+import org.drools.core.reteoo.ObjectSink;
+import org.drools.core.reteoo.ObjectSinkPropagator;
+import org.drools.core.reteoo.ObjectSource;
+import org.drools.core.reteoo.ObjectTypeNode;
+import org.drools.core.reteoo.TerminalNode;
+import org.drools.core.rule.IndexableConstraint;
+import org.drools.core.rule.constraint.MvelConstraint;
+import org.drools.core.util.Entry;
+import org.drools.core.util.ObjectHashMap;
+import org.kie.api.KieBase;
+import org.kie.api.definition.rule.Rule;
+
+/**
+ * Walks the network of a built KieBase (the Rete network, that Phreak also
+ * uses) and reports, for each node:
+ * <ul>
+ * <li>Its type and the rules that share it
+ * <li>For alpha nodes, whether the parent finds them by hashing the value of
+ * the field (equality constraints, once there are as many nodes on the field
+ * as the alpha node hashing threshold) or evaluates each one of them
+ * <li>For beta nodes, whether their memories are indexed by the join
+ * constraints
+ * </ul>
+ *
+ * It warns about the patterns that are not indexed: join constraints that can
+ * not index the memories (e.g. 'customerId != $p.customerId'), joins
+ * without constraints (cartesian products), and object types with many
+ * alpha nodes that must be evaluated one by one (e.g. ranges of a field).
+ *
+ * The analyzer depends on the internal classes of drools-core, so it must be
+ * reviewed after upgrading Drools.
+ *
+ * @author ezegrande
+ */
+public class NetworkAnalyzer {
+
+    private NetworkAnalyzer() {
+        // Non-instantiable from outside
+    }
+
+    /**
+     * @param kbase
+     *            a KieBase built by Drools
+     * @return the report of its network
+     * @throws IllegalArgumentException
+     *             if it is not a KieBase of drools-core
+     */
+    public static NetworkReport analyze(KieBase kbase) {
+        if (!(kbase instanceof InternalKnowledgeBase)) {
+            throw new IllegalArgumentException("Unsupported KieBase: " + kbase.getClass().getName());
+        }
+        InternalKnowledgeBase internal = (InternalKnowledgeBase) kbase;
+        RuleBaseConfiguration configuration = internal.getConfiguration();
+        Walker walker = new Walker(configuration);
+        for (EntryPointNode node : internal.getRete().getEntryPointNodes().values()) {
+            walker.visit(node, 0, NodeReport.Hashing.NOT_APPLICABLE);
+        }
+        if (!configuration.isIndexLeftBetaMemory() || !configuration.isIndexRightBetaMemory()) {
+            walker.nodes.get(0).addWarning("The indexing of the beta memories is disabled");
+        }
+        return new NetworkReport(walker.nodes, configuration.getAlphaNodeHashingThreshold());
+    }
+
+    /**
+     * Depth-first traversal, each shared node is reported once
+     */
+    private static final class Walker {
+        private final int threshold;
+        private final List<NodeReport> nodes = new ArrayList<NodeReport>();
+        private final Map<Integer, NodeReport> visited = new HashMap<Integer, NodeReport>();
+
+        Walker(RuleBaseConfiguration configuration) {
+            this.threshold = configuration.getAlphaNodeHashingThreshold();
+        }
+
+        void visit(BaseNode node, int depth, NodeReport.Hashing hashing) {
+            if (visited.containsKey(node.getId())) {
+                return;
+            }
+            NodeReport report = new NodeReport(node.getId(), node.getClass().getSimpleName(), describe(node),
+                    getRules(node), depth);
+            nodes.add(report);
+            visited.put(node.getId(), report);
+            if (node instanceof AlphaNode) {
+                report.setHashing(hashing);
+            }
+            if (node instanceof BetaNode) {
+                analyzeBetaNode((BetaNode) node, report);
+            }
+            if (node instanceof EntryPointNode) {
+                // The object type nodes are not sinks of the entry point
+                for (ObjectTypeNode child : ((EntryPointNode) node).getObjectTypeNodes().values()) {
+                    visit(child, depth + 1, NodeReport.Hashing.NOT_APPLICABLE);
+                }
+            } else if (node instanceof ObjectSource) {
+                ObjectSinkPropagator propagator = ((ObjectSource) node).getSinkPropagator();
+                Map<ObjectSink, NodeReport.Hashing> children = getHashing(propagator);
+                int notHashable = 0;
+                for (Map.Entry<ObjectSink, NodeReport.Hashing> child : children.entrySet()) {
+                    if (child.getValue() == NodeReport.Hashing.NOT_HASHABLE) {
+                        notHashable++;
+                    }
+                }
+                if (notHashable >= threshold) {
+                    report.addWarning(notHashable + " alpha nodes are evaluated one by one for every fact");
+                }
+                for (Map.Entry<ObjectSink, NodeReport.Hashing> child : children.entrySet()) {
+                    BaseNode childNode = (BaseNode) child.getKey();
+                    boolean firstVisit = !visited.containsKey(childNode.getId());
+                    visit(childNode, depth + 1, child.getValue());
+                    if (firstVisit && notHashable >= threshold && isObjectEquality(child.getKey())) {
+                        visited.get(childNode.getId()).addWarning(
+                                "Equality on a field of an object type (e.g. an enum) can not be hashed,"
+                                        + " compare a primitive or String field instead");
+                    }
+                }
+            }
+            if (node instanceof LeftTupleSource) {
+                for (LeftTupleSink child : ((LeftTupleSource) node).getSinkPropagator().getSinks()) {
+                    visit((BaseNode) child, depth + 1, NodeReport.Hashing.NOT_APPLICABLE);
+                }
+            }
+        }
+
+        /**
+         * @return the children of the propagator, in their order, with the
+         *         way they are reached if they are alpha nodes
+         */
+        private Map<ObjectSink, NodeReport.Hashing> getHashing(ObjectSinkPropagator propagator) {
+            Map<Object, Boolean> hashed = new IdentityHashMap<Object, Boolean>();
+            Map<Object, Boolean> hashable = new IdentityHashMap<Object, Boolean>();
+            if (propagator instanceof CompositeObjectSinkAdapter) {
+                CompositeObjectSinkAdapter composite = (CompositeObjectSinkAdapter) propagator;
+                ObjectHashMap hashedSinks = composite.getHashedSinkMap();
+                if (hashedSinks != null) {
+                    for (Entry entry : hashedSinks.toArray()) {
+                        hashed.put(((ObjectHashMap.ObjectEntry) entry).getValue(), Boolean.TRUE);
+                    }
+                }
+                if (composite.getHashableSinks() != null) {
+                    for (Iterator<?> it = composite.getHashableSinks().iterator(); it.hasNext();) {
+                        hashable.put(it.next(), Boolean.TRUE);
+                    }
+                }
+            }
+            Map<ObjectSink, NodeReport.Hashing> children = new LinkedHashMap<ObjectSink, NodeReport.Hashing>();
+            for (ObjectSink sink : propagator.getSinks()) {
+                NodeReport.Hashing hashing = NodeReport.Hashing.NOT_APPLICABLE;
+                if (sink instanceof AlphaNode) {
+                    if (hashed.containsKey(sink)) {
+                        hashing = NodeReport.Hashing.HASHED;
+                    } else if (hashable.containsKey(sink)
+                            || (!(propagator instanceof CompositeObjectSinkAdapter) && isHashable((AlphaNode) sink))) {
+                        hashing = NodeReport.Hashing.HASHABLE;
+                    } else {
+                        hashing = NodeReport.Hashing.NOT_HASHABLE;
+                    }
+                }
+                children.put(sink, hashing);
+            }
+            return children;
+        }
+
+        private void analyzeBetaNode(BetaNode node, NodeReport report) {
+            Object[] constraints = node.getConstraints();
+            report.setIndexedConstraints(node.getRawConstraints().isIndexed() ? node.getRawConstraints()
+                    .getIndexCount() : 0);
+            if (constraints.length == 0) {
+                if (node.getType() == NodeTypeEnums.JoinNode) {
+                    report.addWarning("Join without constraints, every fact is matched with every tuple"
+                            + " (cartesian product)");
+                }
+                return;
+            }
+            for (Object constraint : constraints) {
+                if (!(constraint instanceof IndexableConstraint)
+                        || !((IndexableConstraint) constraint).isIndexable(node.getType())) {
+                    report.addWarning("The constraint '" + describe(constraint)
+                            + "' is not indexable, it is evaluated for every pair of fact and tuple");
+                }
+            }
+        }
+    }
+
+    /**
+     * Same conditions as the CompositeObjectSinkAdapter, that hashes the
+     * equality constraints on fields with a value type other than objects
+     */
+    private static boolean isHashable(AlphaNode node) {
+        Object constraint = node.getConstraint();
+        if (!(constraint instanceof IndexableConstraint)) {
+            return false;
+        }
+        IndexableConstraint indexable = (IndexableConstraint) constraint;
+        return indexable.isIndexable(NodeTypeEnums.AlphaNode) && indexable.getField() != null
+                && indexable.getFieldExtractor().getValueType() != ValueType.OBJECT_TYPE
+                && !(indexable.getFieldExtractor() instanceof MVELObjectClassFieldReader);
+    }
+
+    private static boolean isObjectEquality(ObjectSink sink) {
+        if (!(sink instanceof AlphaNode) || !(((AlphaNode) sink).getConstraint() instanceof IndexableConstraint)) {
+            return false;
+        }
+        IndexableConstraint indexable = (IndexableConstraint) ((AlphaNode) sink).getConstraint();
+        return indexable.isIndexable(NodeTypeEnums.AlphaNode) && indexable.getField() != null
+                && indexable.getFieldExtractor().getValueType() == ValueType.OBJECT_TYPE;
+    }
+
+    private static String describe(BaseNode node) {
+        if (node instanceof EntryPointNode) {
+            return ((EntryPointNode) node).getEntryPoint().getEntryPointId();
+        }
+        if (node instanceof ObjectTypeNode) {
+            Object objectType = ((ObjectTypeNode) node).getObjectType();
+            if (objectType instanceof ClassObjectType) {
+                return ((ClassObjectType) objectType).getClassType().getSimpleName();
+            }
+            return String.valueOf(objectType);
+        }
+        if (node instanceof AlphaNode) {
+            return describe(((AlphaNode) node).getConstraint());
+        }
+        if (node instanceof BetaNode) {
+            StringBuilder description = new StringBuilder();
+            for (Object constraint : ((BetaNode) node).getConstraints()) {
+                if (description.length() > 0) {
+                    description.append(", ");
+                }
+                description.append(describe(constraint));
+            }
+            return description.toString();
+        }
+        if (node instanceof TerminalNode) {
+            return ((TerminalNode) node).getRule().getName();
+        }
+        return "";
+    }
+
+    private static String describe(Object constraint) {
+        if (constraint instanceof MvelConstraint) {
+            return ((MvelConstraint) constraint).getExpression();
+        }
+        return String.valueOf(constraint);
+    }
+
+    private static List<String> getRules(BaseNode node) {
+        List<String> rules = new ArrayList<String>();
+        if (node instanceof TerminalNode) {
+            rules.add(((TerminalNode) node).getRule().getName());
+            return rules;
+        }
+        for (Rule rule : node.getAssociations().keySet()) {
+            rules.add(rule.getName());
+        }
+        Collections.sort(rules);
+        return rules;
+    }
+}
@@ -0,0 +1,113 @@
+package com.wordpress.ezegrande.drools.examples.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Report of the network of a KieBase, built by the {@link NetworkAnalyzer}.
+ * The nodes are in depth-first order from the entry points.
+ *
+ * @author ezegrande
+ */
+public class NetworkReport {
+    private final List<NodeReport> nodes;
+    private final int alphaNodeHashingThreshold;
+
+    NetworkReport(List<NodeReport> nodes, int alphaNodeHashingThreshold) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.alphaNodeHashingThreshold = alphaNodeHashingThreshold;
+    }
+
+    public List<NodeReport> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @param type
+     *            e.g. 'AlphaNode'
+     * @return the nodes of the type
+     */
+    public List<NodeReport> getNodes(String type) {
+        List<NodeReport> selected = new ArrayList<NodeReport>();
+        for (NodeReport node : nodes) {
+            if (node.getType().equals(type)) {
+                selected.add(node);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @param type
+     * @param description
+     * @return the first node of the type with the description, or null
+     */
+    public NodeReport getNode(String type, String description) {
+        for (NodeReport node : nodes) {
+            if (node.getType().equals(type) && node.getDescription().equals(description)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of nodes of each type
+     */
+    public Map<String, Integer> getNodeCounts() {
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (NodeReport node : nodes) {
+            Integer count = counts.get(node.getType());
+            counts.put(node.getType(), count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the warnings of all the nodes, prefixed by their node
+     */
+    public List<String> getWarnings() {
+        List<String> warnings = new ArrayList<String>();
+        for (NodeReport node : nodes) {
+            for (String warning : node.getWarnings()) {
+                warnings.add("[" + node.getId() + "] " + warning);
+            }
+        }
+        return warnings;
+    }
+
+    /**
+     * @return the number of equality alpha nodes on the same field needed to
+     *         hash them
+     */
+    public int getAlphaNodeHashingThreshold() {
+        return alphaNodeHashingThreshold;
+    }
+
+    /**
+     * @return the report as an indented tree, followed by the warnings
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append("Nodes: ").append(getNodeCounts()).append('\n');
+        for (NodeReport node : nodes) {
+            for (int i = 0; i < node.getDepth(); i++) {
+                text.append("  ");
+            }
+            text.append(node).append('\n');
+        }
+        List<String> warnings = getWarnings();
+        text.append("Warnings: ").append(warnings.size()).append('\n');
+        for (String warning : warnings) {
+            text.append("  ").append(warning).append('\n');
+        }
+        return text.toString();
+    }
+
+    public String toString() {
+        return "NetworkReport [Nodes: " + getNodeCounts() + " | Warnings: " + getWarnings().size() + "]";
+    }
+}
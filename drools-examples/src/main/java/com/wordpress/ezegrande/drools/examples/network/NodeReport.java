@@ -0,0 +1,134 @@
+package com.wordpress.ezegrande.drools.examples.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Report of a node of the network of a KieBase
+ *
+ * @author ezegrande
+ */
+public class NodeReport {
+    /**
+     * How an alpha node is reached from its parent
+     */
+    public enum Hashing {
+        /** Not an alpha node */
+        NOT_APPLICABLE,
+        /** Found by the value of the fact, without evaluating the constraint */
+        HASHED,
+        /** Equality constraint, hashed when there are enough siblings on the field */
+        HASHABLE,
+        /** Evaluated for every fact that reaches the parent */
+        NOT_HASHABLE
+    }
+
+    private final int id;
+    private final String type;
+    private final String description;
+    private final List<String> rules;
+    private final int depth;
+    private Hashing hashing = Hashing.NOT_APPLICABLE;
+    private int indexedConstraints = -1;
+    private final List<String> warnings = new ArrayList<String>();
+
+    NodeReport(int id, String type, String description, List<String> rules, int depth) {
+        this.id = id;
+        this.type = type;
+        this.description = description;
+        this.rules = Collections.unmodifiableList(rules);
+        this.depth = depth;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the kind of node, e.g. 'AlphaNode' or 'JoinNode'
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the object type, constraint or rule of the node
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the names of the rules that use the node, sorted
+     */
+    public List<String> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the number of rules that share the node
+     */
+    public int getSharingCount() {
+        return rules.size();
+    }
+
+    /**
+     * @return the distance from the entry point, where the node was first
+     *         found
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public Hashing getHashing() {
+        return hashing;
+    }
+
+    /**
+     * @return the number of constraints of a beta node that index its
+     *         memories, -1 if it is not a beta node
+     */
+    public int getIndexedConstraints() {
+        return indexedConstraints;
+    }
+
+    /**
+     * @return true if it is a beta node whose memories are indexed
+     */
+    public boolean isIndexed() {
+        return indexedConstraints > 0;
+    }
+
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    void setHashing(Hashing hashing) {
+        this.hashing = hashing;
+    }
+
+    void setIndexedConstraints(int indexedConstraints) {
+        this.indexedConstraints = indexedConstraints;
+    }
+
+    void addWarning(String warning) {
+        warnings.add(warning);
+    }
+
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append('[').append(id).append("] ").append(type);
+        if (description.length() > 0) {
+            text.append(": ").append(description);
+        }
+        text.append(" | Shared by: ").append(getSharingCount());
+        if (hashing != Hashing.NOT_APPLICABLE) {
+            text.append(" | Hashing: ").append(hashing);
+        }
+        if (indexedConstraints >= 0) {
+            text.append(" | Indexed: ").append(isIndexed() ? indexedConstraints + " constraints" : "no");
+        }
+        return text.toString();
+    }
+}
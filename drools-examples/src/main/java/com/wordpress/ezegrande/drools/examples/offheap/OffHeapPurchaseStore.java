@@ -0,0 +1,291 @@
+package com.wordpress.ezegrande.drools.examples.offheap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.kie.api.runtime.KieRuntime;
+import org.kie.api.runtime.rule.FactHandle;
+
+import com.wordpress.ezegrande.drools.examples.model.CustomerDictionary;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+
+/**
+ * Stores Purchases outside of the Java heap, one column per field, in direct
+ * ByteBuffers:
+ * <ul>
+ * <li>Customer id (int), the names are kept in a {@link CustomerDictionary}
+ * <li>Subtotal (double)
+ * <li>Payment Method (byte, the ordinal of the enum)
+ * <li>Discount (double)
+ * </ul>
+ *
+ * The rules see the rows through {@link PurchaseFlyweight}s, which only keep
+ * the store and the row number and read and write the fields in the columns.
+ * The columns grow when they are full, up to {@link #MAX_CAPACITY} rows. Rows
+ * can not be removed.
+ *
+ * The store can be written and bulk loaded in its columnar format. This class
+ * is not thread-safe.
+ *
+ * @author ezegrande
+ */
+public class OffHeapPurchaseStore {
+    /**
+     * The biggest column (8 bytes per row) must fit in a ByteBuffer
+     */
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE / 8;
+
+    private static final int MAGIC = 0x50555243;
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    private final CustomerDictionary dictionary;
+    private ByteBuffer customerIds;
+    private ByteBuffer subtotals;
+    private ByteBuffer paymentMethods;
+    private ByteBuffer discounts;
+    private int capacity;
+    private int size;
+
+    /**
+     * Creates a store that uses the shared {@link CustomerDictionary}, so the
+     * customer ids of its rows can be joined with the ones of other facts
+     *
+     * @param initialCapacity
+     */
+    public OffHeapPurchaseStore(int initialCapacity) {
+        this(CustomerDictionary.getInstance(), initialCapacity);
+    }
+
+    public OffHeapPurchaseStore(CustomerDictionary dictionary, int initialCapacity) {
+        if (initialCapacity <= 0 || initialCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid capacity: " + initialCapacity);
+        }
+        this.dictionary = dictionary;
+        allocate(initialCapacity);
+    }
+
+    /**
+     * Adds a new row
+     *
+     * @return the row of the Purchase
+     */
+    public int add(String customerName, double subtotal, PaymentMethod paymentMethod) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        customerIds.putInt(row * 4, dictionary.getId(customerName));
+        subtotals.putDouble(row * 8, subtotal);
+        paymentMethods.put(row, (byte) paymentMethod.ordinal());
+        discounts.putDouble(row * 8, 0);
+        return row;
+    }
+
+    /**
+     * Inserts a {@link PurchaseFlyweight} for each row into the KieRuntime
+     *
+     * @param runtime
+     * @return the FactHandles, indexed by row
+     */
+    public FactHandle[] insertAll(KieRuntime runtime) {
+        FactHandle[] factHandles = new FactHandle[size];
+        for (int row = 0; row < size; row++) {
+            factHandles[row] = runtime.insert(new PurchaseFlyweight(this, row));
+        }
+        return factHandles;
+    }
+
+    /**
+     * @param row
+     * @return a new flyweight for the row
+     */
+    public PurchaseFlyweight get(int row) {
+        checkRow(row);
+        return new PurchaseFlyweight(this, row);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CustomerDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getCustomerId(int row) {
+        return customerIds.getInt(row * 4);
+    }
+
+    public String getCustomerName(int row) {
+        return dictionary.getName(getCustomerId(row));
+    }
+
+    public void setCustomerName(int row, String customerName) {
+        customerIds.putInt(row * 4, dictionary.getId(customerName));
+    }
+
+    public double getSubtotal(int row) {
+        return subtotals.getDouble(row * 8);
+    }
+
+    public void setSubtotal(int row, double subtotal) {
+        subtotals.putDouble(row * 8, subtotal);
+    }
+
+    public PaymentMethod getPaymentMethod(int row) {
+        return PAYMENT_METHODS[paymentMethods.get(row)];
+    }
+
+    public void setPaymentMethod(int row, PaymentMethod paymentMethod) {
+        paymentMethods.put(row, (byte) paymentMethod.ordinal());
+    }
+
+    public double getDiscount(int row) {
+        return discounts.getDouble(row * 8);
+    }
+
+    public void setDiscount(int row, double discount) {
+        discounts.putDouble(row * 8, discount);
+    }
+
+    /**
+     * Writes the store in its columnar format: a header, the names of the
+     * dictionary used by the rows, and then each column
+     *
+     * @param channel
+     * @throws IOException
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        // The ids are written as they are, so the whole dictionary is written
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        int names = dictionary.size();
+        header.writeInt(size);
+        header.writeInt(names);
+        for (int id = 0; id < names; id++) {
+            header.writeUTF(dictionary.getName(id));
+        }
+        header.flush();
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        prefix.putInt(MAGIC).putInt(bytes.size()).flip();
+        writeFully(channel, prefix);
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+        writeColumn(channel, customerIds, size * 4);
+        writeColumn(channel, subtotals, size * 8);
+        writeColumn(channel, paymentMethods, size);
+        writeColumn(channel, discounts, size * 8);
+    }
+
+    /**
+     * Bulk loads the rows written by {@link #writeTo(WritableByteChannel)},
+     * appending them to the store. The columns are copied directly into the
+     * ByteBuffers, the customer ids are translated only if the dictionary of
+     * this store has different ids.
+     *
+     * @param channel
+     * @return the number of loaded rows
+     * @throws IOException
+     */
+    public int load(ReadableByteChannel channel) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        readFully(channel, prefix);
+        if (prefix.getInt(0) != MAGIC) {
+            throw new IOException("Invalid purchase store format");
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(prefix.getInt(4));
+        readFully(channel, bytes);
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+        int rows = header.readInt();
+        int[] ids = new int[header.readInt()];
+        boolean sameIds = true;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dictionary.getId(header.readUTF());
+            sameIds &= ids[i] == i;
+        }
+        ensureCapacity(size + rows);
+        readColumn(channel, customerIds, size * 4, rows * 4);
+        readColumn(channel, subtotals, size * 8, rows * 8);
+        readColumn(channel, paymentMethods, size, rows);
+        readColumn(channel, discounts, size * 8, rows * 8);
+        if (!sameIds) {
+            for (int row = size; row < size + rows; row++) {
+                customerIds.putInt(row * 4, ids[customerIds.getInt(row * 4)]);
+            }
+        }
+        size += rows;
+        return rows;
+    }
+
+    void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + " | Size: " + size);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+        if (required > MAX_CAPACITY) {
+            throw new IllegalStateException("The store can not have more than " + MAX_CAPACITY + " rows");
+        }
+        ByteBuffer oldCustomerIds = customerIds;
+        ByteBuffer oldSubtotals = subtotals;
+        ByteBuffer oldPaymentMethods = paymentMethods;
+        ByteBuffer oldDiscounts = discounts;
+        allocate((int) Math.min(MAX_CAPACITY, Math.max(required, capacity * 2L)));
+        copy(oldCustomerIds, customerIds, size * 4);
+        copy(oldSubtotals, subtotals, size * 8);
+        copy(oldPaymentMethods, paymentMethods, size);
+        copy(oldDiscounts, discounts, size * 8);
+    }
+
+    private void allocate(int rows) {
+        customerIds = ByteBuffer.allocateDirect(rows * 4).order(ByteOrder.nativeOrder());
+        subtotals = ByteBuffer.allocateDirect(rows * 8).order(ByteOrder.nativeOrder());
+        paymentMethods = ByteBuffer.allocateDirect(rows);
+        discounts = ByteBuffer.allocateDirect(rows * 8).order(ByteOrder.nativeOrder());
+        capacity = rows;
+    }
+
+    private static void copy(ByteBuffer from, ByteBuffer to, int length) {
+        ByteBuffer source = from.duplicate();
+        source.clear().limit(length);
+        ByteBuffer target = to.duplicate();
+        target.clear();
+        target.put(source);
+    }
+
+    private static void writeColumn(WritableByteChannel channel, ByteBuffer column, int length) throws IOException {
+        ByteBuffer source = column.duplicate();
+        source.clear().limit(length);
+        writeFully(channel, source);
+    }
+
+    private static void readColumn(ReadableByteChannel channel, ByteBuffer column, int offset, int length)
+            throws IOException {
+        ByteBuffer target = column.duplicate();
+        target.clear().position(offset);
+        target.limit(offset + length);
+        readFully(channel, target);
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of the purchase store");
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.wordpress.ezegrande.drools.examples.offheap;
+
+import org.kie.api.definition.type.Modifies;
+import org.kie.api.definition.type.PropertyReactive;
+
+import com.wordpress.ezegrande.drools.examples.model.AbstractPurchase;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+
+/**
+ * A Purchase whose fields are kept in a row of an {@link OffHeapPurchaseStore}.
+ * It only holds the store and the row. It extends {@link AbstractPurchase}, so
+ * the rules that match AbstractPurchase can be used with both models.
+ *
+ * Two flyweights of the same row are equal.
+ *
+ * @author ezegrande
+ */
+@PropertyReactive
+public class PurchaseFlyweight extends AbstractPurchase {
+    private final OffHeapPurchaseStore store;
+    private final int row;
+
+    PurchaseFlyweight(OffHeapPurchaseStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public int getCustomerId() {
+        return store.getCustomerId(row);
+    }
+
+    @Override
+    public String getCustomerName() {
+        return store.getCustomerName(row);
+    }
+
+    @Override
+    @Modifies({ "customerId" })
+    public void setCustomerName(String customerName) {
+        store.setCustomerName(row, customerName);
+    }
+
+    @Override
+    public double getSubtotal() {
+        return store.getSubtotal(row);
+    }
+
+    @Override
+    public void setSubtotal(double subtotal) {
+        store.setSubtotal(row, subtotal);
+    }
+
+    @Override
+    public PaymentMethod getPaymentMethod() {
+        return store.getPaymentMethod(row);
+    }
+
+    @Override
+    public void setPaymentMethod(PaymentMethod paymentMethod) {
+        store.setPaymentMethod(row, paymentMethod);
+    }
+
+    @Override
+    public double getDiscount() {
+        return store.getDiscount(row);
+    }
+
+    @Override
+    public void setDiscount(double discount) {
+        store.setDiscount(row, discount);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(store) + row;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof PurchaseFlyweight)) {
+            return false;
+        }
+        PurchaseFlyweight other = (PurchaseFlyweight) obj;
+        return store == other.store && row == other.row;
+    }
+}
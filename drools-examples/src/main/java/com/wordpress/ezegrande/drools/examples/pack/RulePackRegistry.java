@@ -0,0 +1,236 @@
+package com.wordpress.ezegrande.drools.examples.pack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message.Level;
+import org.kie.api.builder.ReleaseId;
+import org.kie.internal.io.ResourceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.metrics.RuleMetrics;
+
+/**
+ * Registry of rule packs, each one with its own named KieBase. A rule pack is
+ * a set of DRL files, usually the files of a DRL package (for example,
+ * 'com.wordpress.ezegrande.drools.examples.simple'):
+ * <ul>
+ * <li>Registering a pack only records the paths of its files, nothing is read
+ * or compiled
+ * <li>The KieBase of a pack is built the first time it is requested, or in
+ * the background with {@link #warmUp(Executor, String...)}
+ * <li>An unused pack can be unloaded, its KieBase and KieModule are released
+ * and it is built again on the next request
+ * </ul>
+ *
+ * So the startup time and the heap depend on the packs that are used, not on
+ * the registered ones. The packs are built independently, a pack can not use
+ * the types or functions of another one.
+ *
+ * @author ezegrande
+ */
+public class RulePackRegistry {
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private Logger logger = LoggerFactory.getLogger(RulePackRegistry.class);
+
+    private final KieServices ks = KieServices.Factory.get();
+    private final int instance = instances.incrementAndGet();
+    private final ConcurrentMap<String, RulePack> packs = new ConcurrentHashMap<String, RulePack>();
+    private final RuleMetrics metrics;
+
+    public RulePackRegistry() {
+        this(null);
+    }
+
+    /**
+     * @param metrics
+     *            where the build time of each pack is recorded, or null
+     */
+    public RulePackRegistry(RuleMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers a rule pack, it is not built until it is requested
+     *
+     * @param name
+     *            name of the pack
+     * @param drlPaths
+     *            classpath resources of the DRL files
+     * @throws IllegalArgumentException
+     *             if the name is already registered or there are no files
+     */
+    public void register(String name, String... drlPaths) {
+        if (drlPaths.length == 0) {
+            throw new IllegalArgumentException("The rule pack " + name + " has no DRL files");
+        }
+        if (packs.putIfAbsent(name, new RulePack(name, drlPaths)) != null) {
+            throw new IllegalArgumentException("The rule pack " + name + " is already registered");
+        }
+    }
+
+    /**
+     * @param name
+     * @return the KieBase of the pack, it is built if it was not loaded yet
+     * @throws IllegalArgumentException
+     *             if the pack is not registered or has errors
+     */
+    public KieBase getKieBase(String name) {
+        return getPack(name).load();
+    }
+
+    /**
+     * Builds the packs that are not loaded yet in the background. The errors
+     * are logged, they are thrown again by {@link #getKieBase(String)}.
+     *
+     * @param executor
+     *            runs the builds
+     * @param names
+     *            packs to build, all the registered packs if none is given
+     */
+    public void warmUp(Executor executor, String... names) {
+        List<RulePack> selected = new ArrayList<RulePack>();
+        if (names.length == 0) {
+            selected.addAll(packs.values());
+        } else {
+            for (String name : names) {
+                selected.add(getPack(name));
+            }
+        }
+        for (final RulePack pack : selected) {
+            if (!pack.isLoaded()) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            pack.load();
+                        } catch (RuntimeException e) {
+                            logger.error("Unable to warm up the rule pack " + pack.name, e);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Releases the KieBase of a pack. The sessions already created keep
+     * working, and the pack is built again on the next request.
+     *
+     * @param name
+     * @return true if the pack was loaded
+     */
+    public boolean unload(String name) {
+        return getPack(name).unload();
+    }
+
+    /**
+     * @param name
+     * @return true if the KieBase of the pack is built
+     */
+    public boolean isLoaded(String name) {
+        return getPack(name).isLoaded();
+    }
+
+    /**
+     * @return the names of the loaded packs
+     */
+    public List<String> getLoadedPacks() {
+        List<String> loaded = new ArrayList<String>();
+        for (Map.Entry<String, RulePack> entry : packs.entrySet()) {
+            if (entry.getValue().isLoaded()) {
+                loaded.add(entry.getKey());
+            }
+        }
+        Collections.sort(loaded);
+        return loaded;
+    }
+
+    /**
+     * @param name
+     * @return the number of times the pack was built
+     */
+    public int getBuildCount(String name) {
+        return getPack(name).getBuildCount();
+    }
+
+    private RulePack getPack(String name) {
+        RulePack pack = packs.get(name);
+        if (pack == null) {
+            throw new IllegalArgumentException("Unknown rule pack: " + name);
+        }
+        return pack;
+    }
+
+    /**
+     * A pack and its KieBase, built in its own KieModule
+     */
+    private final class RulePack {
+        private final String name;
+        private final String[] drlPaths;
+        private final ReleaseId releaseId;
+        private KieBase kbase;
+        private int builds;
+
+        RulePack(String name, String[] drlPaths) {
+            this.name = name;
+            this.drlPaths = drlPaths.clone();
+            this.releaseId = ks.newReleaseId("com.wordpress.ezegrande.packs", name.replace('.', '-') + "-"
+                    + instance, "1.0");
+        }
+
+        synchronized KieBase load() {
+            if (kbase == null) {
+                long start = System.nanoTime();
+                KieFileSystem kfs = ks.newKieFileSystem();
+                kfs.generateAndWritePomXML(releaseId);
+                for (String path : drlPaths) {
+                    kfs.write(ResourceFactory.newClassPathResource(path));
+                }
+                KieBuilder kbuilder = ks.newKieBuilder(kfs).buildAll();
+                if (kbuilder.getResults().hasMessages(Level.ERROR)) {
+                    ks.getRepository().removeKieModule(releaseId);
+                    throw new IllegalArgumentException("Errors in the rule pack " + name + ": "
+                            + kbuilder.getResults());
+                }
+                kbase = ks.newKieContainer(releaseId).getKieBase();
+                builds++;
+                long nanos = System.nanoTime() - start;
+                if (metrics != null) {
+                    metrics.recordKieBaseBuild(name, nanos);
+                }
+                logger.info("Loaded the rule pack " + name + " in " + nanos / 1000000 + " ms");
+            }
+            return kbase;
+        }
+
+        synchronized boolean unload() {
+            if (kbase == null) {
+                return false;
+            }
+            kbase = null;
+            ks.getRepository().removeKieModule(releaseId);
+            logger.info("Unloaded the rule pack " + name);
+            return true;
+        }
+
+        synchronized boolean isLoaded() {
+            return kbase != null;
+        }
+
+        synchronized int getBuildCount() {
+            return builds;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.wordpress.ezegrande.drools.examples.partition;
+
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.EntryPoint;
+
+/**
+ * Layouts of the working memory for the Potential Customer rules:
+ * <ul>
+ * <li>SINGLE: every fact is in the default entry point
+ * ('potentialCustomer02.drl')
+ * <li>PARTITIONED: the Purchases are inserted into the 'purchases' entry
+ * point and the rules insert the Potential Customers into the 'derived' one
+ * ('potentialCustomerEntryPoints.drl')
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public enum EntryPointLayout {
+    SINGLE("DEFAULT", "DEFAULT", "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl"),
+    PARTITIONED("purchases", "derived",
+            "com/wordpress/ezegrande/drools/examples/partition/potentialCustomerEntryPoints.drl");
+
+    private final String purchasesEntryPoint;
+    private final String derivedEntryPoint;
+    private final String drlPath;
+
+    private EntryPointLayout(String purchasesEntryPoint, String derivedEntryPoint, String drlPath) {
+        this.purchasesEntryPoint = purchasesEntryPoint;
+        this.derivedEntryPoint = derivedEntryPoint;
+        this.drlPath = drlPath;
+    }
+
+    public String getPurchasesEntryPoint() {
+        return purchasesEntryPoint;
+    }
+
+    public String getDerivedEntryPoint() {
+        return derivedEntryPoint;
+    }
+
+    /**
+     * @return the classpath resource with the rules written for this layout
+     */
+    public String getDrlPath() {
+        return drlPath;
+    }
+
+    /**
+     * @param session
+     * @return the entry point where the Purchases must be inserted
+     */
+    public EntryPoint getPurchases(KieSession session) {
+        return session.getEntryPoint(purchasesEntryPoint);
+    }
+
+    /**
+     * @param session
+     * @return the entry point where the rules insert the Potential Customers
+     */
+    public EntryPoint getDerived(KieSession session) {
+        return session.getEntryPoint(derivedEntryPoint);
+    }
+}
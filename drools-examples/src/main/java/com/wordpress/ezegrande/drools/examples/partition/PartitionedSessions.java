@@ -0,0 +1,147 @@
+package com.wordpress.ezegrande.drools.examples.partition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.kie.api.KieBase;
+import org.kie.api.runtime.ClassObjectFilter;
+import org.kie.api.runtime.KieSession;
+
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Splits the working memory of the Potential Customer rules in partitions by
+ * Customer, one KieSession per partition, and fires the partitions in
+ * parallel. The rules only join facts of the same Customer, so the results
+ * are the same than with a single session.
+ *
+ * Each session uses the given {@link EntryPointLayout}: the Purchases are
+ * inserted into its purchases entry point, and the Potential Customers are
+ * read from its derived one.
+ *
+ * The facts must be inserted by a single thread, and not while the rules are
+ * fired.
+ *
+ * @author ezegrande
+ */
+public class PartitionedSessions {
+    private final EntryPointLayout layout;
+    private final KieSession[] sessions;
+    private final ExecutorService executor;
+
+    /**
+     * @param kbase
+     *            KieBase with the rules of the layout
+     * @param layout
+     * @param partitions
+     *            number of sessions, and of threads that fire them
+     */
+    public PartitionedSessions(KieBase kbase, EntryPointLayout layout, int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Invalid number of partitions: " + partitions);
+        }
+        this.layout = layout;
+        this.sessions = new KieSession[partitions];
+        for (int i = 0; i < partitions; i++) {
+            sessions[i] = kbase.newKieSession();
+        }
+        this.executor = partitions > 1 ? Executors.newFixedThreadPool(partitions) : null;
+    }
+
+    public void setGlobal(String identifier, Object value) {
+        for (KieSession session : sessions) {
+            session.setGlobal(identifier, value);
+        }
+    }
+
+    /**
+     * Inserts the Purchase into the partition of its Customer
+     *
+     * @param purchase
+     */
+    public void insert(Purchase purchase) {
+        layout.getPurchases(sessions[getPartition(purchase.getCustomerId())]).insert(purchase);
+    }
+
+    /**
+     * Fires the rules of all the partitions, in parallel
+     *
+     * @return the total number of fired rules
+     */
+    public int fireAllRules() {
+        if (executor == null) {
+            return sessions[0].fireAllRules();
+        }
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>(sessions.length);
+        for (final KieSession session : sessions) {
+            results.add(executor.submit(new Callable<Integer>() {
+                public Integer call() {
+                    return session.fireAllRules();
+                }
+            }));
+        }
+        int fired = 0;
+        try {
+            for (Future<Integer> result : results) {
+                fired += result.get().intValue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while firing the partitions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to fire a partition", e.getCause());
+        }
+        return fired;
+    }
+
+    /**
+     * @return the Potential Customers of all the partitions
+     */
+    public List<PotentialCustomer> getPotentialCustomers() {
+        List<PotentialCustomer> potentialCustomers = new ArrayList<PotentialCustomer>();
+        ClassObjectFilter filter = new ClassObjectFilter(PotentialCustomer.class);
+        for (KieSession session : sessions) {
+            for (Object o : layout.getDerived(session).getObjects(filter)) {
+                potentialCustomers.add((PotentialCustomer) o);
+            }
+        }
+        return potentialCustomers;
+    }
+
+    public int getPartitionCount() {
+        return sessions.length;
+    }
+
+    /**
+     * @param customerId
+     * @return the partition of the Customer
+     */
+    public int getPartition(int customerId) {
+        return (customerId & Integer.MAX_VALUE) % sessions.length;
+    }
+
+    public KieSession getSession(int partition) {
+        return sessions[partition];
+    }
+
+    /**
+     * Disposes the sessions and stops the threads
+     */
+    public void dispose() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        for (KieSession session : sessions) {
+            session.dispose();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.wordpress.ezegrande.drools.examples.precompiled;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import org.drools.core.util.DroolsStreamUtils;
+import org.kie.api.KieBase;
+import org.kie.api.io.ResourceType;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.definition.KnowledgePackage;
+import org.kie.internal.io.ResourceFactory;
+
+/**
+ * Precompiled rule packs: the DRL files (for example, 'discount.drl' and
+ * 'potentialCustomer02.drl') are compiled at build time and written in binary
+ * form, and the runtime loads them without parsing DRL or compiling any Java
+ * code:
+ * <ul>
+ * <li>The consequences are compiled as Java methods: the package dialect
+ * "mvel" is switched to "java" when the pack is generated, so the
+ * consequences must also be valid Java code
+ * <li>The compiled classes of the consequences are part of the pack, they are
+ * only defined by the class loader of the KieBase
+ * <li>The constraints are part of the pack too. Drools compiles them to
+ * bytecode after evaluating them a few times
+ * </ul>
+ *
+ * The packs are generated running the main method of this class as a step of
+ * the build. The pom runs it in the 'process-classes' phase, writing the pack
+ * of 'discount.drl' and 'potentialCustomer02.drl' in the output directory:
+ *
+ * <pre>
+ * java PrecompiledRulePacks target/classes/com/wordpress/ezegrande/drools/examples/precompiled/purchases.pack \
+ *     com/wordpress/ezegrande/drools/examples/simple/discount.drl \
+ *     com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl
+ * </pre>
+ *
+ * so the runtime loads it with {@link #load(String)}.
+ *
+ * The packs depend on the Drools version, they must be generated again after
+ * upgrading it.
+ *
+ * @author ezegrande
+ */
+public class PrecompiledRulePacks {
+    private static final Pattern MVEL_DIALECT = Pattern.compile("^(\\s*)dialect\\s+\"mvel\"", Pattern.MULTILINE);
+
+    private PrecompiledRulePacks() {
+        // Non-instantiable from outside
+    }
+
+    /**
+     * Generates a pack
+     *
+     * @param args
+     *            the pack file, and the DRL files (classpath resources)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: PrecompiledRulePacks <pack file> <drl>...");
+        }
+        String[] drlPaths = new String[args.length - 1];
+        System.arraycopy(args, 1, drlPaths, 0, drlPaths.length);
+        File pack = new File(args[0]);
+        if (pack.getParentFile() != null && !pack.getParentFile().isDirectory() && !pack.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create the directory of " + pack);
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(pack));
+        try {
+            generate(out, drlPaths);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Compiles the DRL files and writes them as a pack
+     *
+     * @param out
+     * @param drlPaths
+     *            classpath resources
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if the files have errors
+     */
+    public static void generate(OutputStream out, String... drlPaths) throws IOException {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        for (String path : drlPaths) {
+            String drl = MVEL_DIALECT.matcher(readClasspathResource(path)).replaceAll("$1dialect \"java\"");
+            kbuilder.add(ResourceFactory.newByteArrayResource(drl.getBytes("UTF-8")).setSourcePath(path),
+                    ResourceType.DRL);
+        }
+        if (kbuilder.hasErrors()) {
+            throw new IllegalArgumentException(kbuilder.getErrors().toString());
+        }
+        DroolsStreamUtils.streamOut(out, kbuilder.getKnowledgePackages());
+    }
+
+    /**
+     * Loads a pack into a new KieBase
+     *
+     * @param in
+     * @return the KieBase with the rules of the pack
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public static KieBase load(InputStream in) throws IOException {
+        Collection<KnowledgePackage> packages;
+        try {
+            packages = (Collection<KnowledgePackage>) DroolsStreamUtils.streamIn(in,
+                    PrecompiledRulePacks.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to load the rule pack: " + e.getMessage());
+        }
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        kbase.addKnowledgePackages(packages);
+        return kbase;
+    }
+
+    /**
+     * Loads a pack from the classpath into a new KieBase
+     *
+     * @param path
+     *            classpath resource of the pack
+     * @return the KieBase with the rules of the pack
+     * @throws IOException
+     *             if the pack is not in the classpath (i.e. it was not
+     *             generated by the build)
+     */
+    public static KieBase load(String path) throws IOException {
+        InputStream in = PrecompiledRulePacks.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("Rule pack not found in the classpath: " + path);
+        }
+        try {
+            return load(new BufferedInputStream(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String readClasspathResource(String path) throws IOException {
+        InputStream in = PrecompiledRulePacks.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("Resource not found: " + path);
+        }
+        try {
+            return new Scanner(in, "UTF-8").useDelimiter("\\A").next();
+        } finally {
+            in.close();
+        }
+    }
+}
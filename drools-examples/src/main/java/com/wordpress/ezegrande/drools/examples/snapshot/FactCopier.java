@@ -0,0 +1,11 @@
+package com.wordpress.ezegrande.drools.examples.snapshot;
+
+/**
+ * Copies the facts of a type into the snapshots, so the readers do not see
+ * the changes that the rules make to the facts afterwards
+ *
+ * @author ezegrande
+ */
+public interface FactCopier<T> {
+    T copy(T fact);
+}
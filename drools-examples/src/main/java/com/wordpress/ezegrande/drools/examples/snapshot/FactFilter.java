@@ -0,0 +1,10 @@
+package com.wordpress.ezegrande.drools.examples.snapshot;
+
+/**
+ * Selects the facts of a snapshot, see {@link FactSnapshot#select(Class, FactFilter)}
+ *
+ * @author ezegrande
+ */
+public interface FactFilter<T> {
+    boolean accept(T fact);
+}
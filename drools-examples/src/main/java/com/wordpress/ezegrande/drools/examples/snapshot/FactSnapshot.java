@@ -0,0 +1,89 @@
+package com.wordpress.ezegrande.drools.examples.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of the tracked fact types of a session, published by the
+ * {@link SnapshotSession} at the end of a fire cycle. It can be read by any
+ * number of threads without locks.
+ *
+ * The lists of the types that did not change in a cycle are shared with the
+ * previous snapshot.
+ *
+ * @author ezegrande
+ */
+public class FactSnapshot {
+    private final long version;
+    private final long publishedMillis;
+    private final Map<Class<?>, List<?>> facts;
+
+    FactSnapshot(long version, long publishedMillis, Map<Class<?>, List<?>> facts) {
+        this.version = version;
+        this.publishedMillis = publishedMillis;
+        this.facts = facts;
+    }
+
+    /**
+     * @return the number of the snapshot, it grows with every fire cycle that
+     *         changes a tracked type
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public long getPublishedMillis() {
+        return publishedMillis;
+    }
+
+    /**
+     * @param type
+     *            a tracked type
+     * @return the facts of the type, in insertion order
+     * @throws IllegalArgumentException
+     *             if the type is not tracked
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getFacts(Class<T> type) {
+        List<?> list = facts.get(type);
+        if (list == null) {
+            throw new IllegalArgumentException("The type " + type.getName() + " is not tracked");
+        }
+        return (List<T>) list;
+    }
+
+    /**
+     * @param type
+     *            a tracked type
+     * @param filter
+     * @return the facts of the type accepted by the filter
+     */
+    public <T> List<T> select(Class<T> type, FactFilter<T> filter) {
+        List<T> selected = new ArrayList<T>();
+        for (T fact : getFacts(type)) {
+            if (filter.accept(fact)) {
+                selected.add(fact);
+            }
+        }
+        return Collections.unmodifiableList(selected);
+    }
+
+    /**
+     * @param type
+     *            a tracked type
+     * @return the number of facts of the type
+     */
+    public int count(Class<?> type) {
+        return getFacts(type).size();
+    }
+
+    public String toString() {
+        StringBuilder counts = new StringBuilder();
+        for (Map.Entry<Class<?>, List<?>> entry : facts.entrySet()) {
+            counts.append(" | ").append(entry.getKey().getSimpleName()).append(": ").append(entry.getValue().size());
+        }
+        return "FactSnapshot [Version: " + version + counts + "]";
+    }
+}
@@ -0,0 +1,225 @@
+package com.wordpress.ezegrande.drools.examples.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.EntryPoint;
+import org.kie.api.runtime.rule.FactHandle;
+
+/**
+ * A KieSession that publishes an immutable {@link FactSnapshot} of some fact
+ * types after each fire cycle, so other threads (e.g. dashboards asking which
+ * Potential Customers exist) can query them without touching the session:
+ * <ul>
+ * <li>The engine thread keeps the facts of the tracked types from the
+ * insert, update and delete events, in any entry point
+ * <li>{@link #fireAllRules()} fires the rules and publishes a new snapshot
+ * if a tracked type changed. Only the lists of the changed types are copied
+ * <li>{@link #getSnapshot()} returns the last published snapshot, without
+ * locks. The readers never see the changes of a cycle that is still firing
+ * </ul>
+ *
+ * The snapshots hold copies of the facts, made by the {@link FactCopier} of
+ * their type at publish time, and only for the facts inserted or updated in
+ * the cycle. Sharing the fact objects would let the readers see the changes
+ * that the rules keep making to them.
+ *
+ * It is not thread-safe, like the KieSession, except for
+ * {@link #getSnapshot()}.
+ *
+ * @author ezegrande
+ */
+public class SnapshotSession {
+    private final KieSession session;
+    private final Tracker tracker = new Tracker();
+    private final Map<Class<?>, TrackedType> types = new LinkedHashMap<Class<?>, TrackedType>();
+    private volatile FactSnapshot snapshot = new FactSnapshot(0, System.currentTimeMillis(),
+            Collections.<Class<?>, List<?>> emptyMap());
+
+    public SnapshotSession(KieSession session) {
+        this.session = session;
+        session.addEventListener(tracker);
+    }
+
+    public KieSession getSession() {
+        return session;
+    }
+
+    /**
+     * Tracks a fact type, the snapshots hold copies of the facts. The facts
+     * already in the session are included in the next snapshot.
+     *
+     * @param type
+     *            the facts of the type and of its subtypes are tracked
+     * @param copier
+     *            copies the facts into the snapshots
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <T> void track(Class<T> type, FactCopier<? super T> copier) {
+        if (copier == null) {
+            throw new IllegalArgumentException("A FactCopier is required to track the type " + type.getName());
+        }
+        if (types.containsKey(type)) {
+            throw new IllegalArgumentException("The type " + type.getName() + " is already tracked");
+        }
+        TrackedType tracked = new TrackedType(type, (FactCopier) copier);
+        types.put(type, tracked);
+        for (EntryPoint entryPoint : session.getEntryPoints()) {
+            for (FactHandle handle : entryPoint.getFactHandles()) {
+                Object fact = entryPoint.getObject(handle);
+                if (type.isInstance(fact)) {
+                    tracked.put(handle, fact);
+                }
+            }
+        }
+        tracked.dirty = true;
+    }
+
+    public FactHandle insert(Object fact) {
+        return session.insert(fact);
+    }
+
+    /**
+     * Fires the rules and publishes a new snapshot if a tracked type changed
+     *
+     * @return the number of fired rules
+     */
+    public int fireAllRules() {
+        int fired = session.fireAllRules();
+        publish();
+        return fired;
+    }
+
+    /**
+     * Publishes a new snapshot if a tracked type changed since the last one,
+     * e.g. after inserting facts without firing the rules
+     *
+     * @return the last snapshot
+     */
+    public FactSnapshot publish() {
+        FactSnapshot last = snapshot;
+        boolean changed = false;
+        Map<Class<?>, List<?>> facts = new LinkedHashMap<Class<?>, List<?>>();
+        for (TrackedType tracked : types.values()) {
+            changed |= tracked.dirty;
+            facts.put(tracked.type, tracked.publish());
+        }
+        if (!changed) {
+            return last;
+        }
+        snapshot = new FactSnapshot(last.getVersion() + 1, System.currentTimeMillis(),
+                Collections.unmodifiableMap(facts));
+        return snapshot;
+    }
+
+    /**
+     * @return the last published snapshot, it can be called from any thread
+     */
+    public FactSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Disposes the session, the last snapshot can still be read
+     */
+    public void dispose() {
+        session.removeEventListener(tracker);
+        session.dispose();
+        types.clear();
+    }
+
+    /**
+     * The facts of a type, changed only by the engine thread
+     */
+    private static final class TrackedType {
+        private final Class<?> type;
+        private final FactCopier<Object> copier;
+        private final LinkedHashMap<FactHandle, Object> facts = new LinkedHashMap<FactHandle, Object>();
+        // Copies of the last snapshot, and the facts to copy again
+        private final Map<FactHandle, Object> copies = new HashMap<FactHandle, Object>();
+        private final Set<FactHandle> changed = new HashSet<FactHandle>();
+        private List<Object> published = Collections.emptyList();
+        private boolean dirty;
+
+        TrackedType(Class<?> type, FactCopier<Object> copier) {
+            this.type = type;
+            this.copier = copier;
+        }
+
+        void put(FactHandle handle, Object fact) {
+            facts.put(handle, fact);
+            changed.add(handle);
+            dirty = true;
+        }
+
+        void remove(FactHandle handle) {
+            if (facts.remove(handle) != null) {
+                copies.remove(handle);
+                changed.remove(handle);
+                dirty = true;
+            }
+        }
+
+        /**
+         * @return a new list if the type changed, else the published one
+         */
+        List<Object> publish() {
+            if (!dirty) {
+                return published;
+            }
+            List<Object> list = new ArrayList<Object>(facts.size());
+            for (Map.Entry<FactHandle, Object> fact : facts.entrySet()) {
+                Object copy = copies.get(fact.getKey());
+                if (copy == null || changed.contains(fact.getKey())) {
+                    copy = copier.copy(fact.getValue());
+                    copies.put(fact.getKey(), copy);
+                }
+                list.add(copy);
+            }
+            changed.clear();
+            dirty = false;
+            published = Collections.unmodifiableList(list);
+            return published;
+        }
+    }
+
+    /**
+     * Tracks the facts inserted, updated and deleted in the session
+     */
+    private final class Tracker implements RuleRuntimeEventListener {
+        public void objectInserted(ObjectInsertedEvent event) {
+            for (TrackedType tracked : types.values()) {
+                if (tracked.type.isInstance(event.getObject())) {
+                    tracked.put(event.getFactHandle(), event.getObject());
+                }
+            }
+        }
+
+        public void objectUpdated(ObjectUpdatedEvent event) {
+            for (TrackedType tracked : types.values()) {
+                if (tracked.type.isInstance(event.getObject())) {
+                    tracked.put(event.getFactHandle(), event.getObject());
+                } else {
+                    tracked.remove(event.getFactHandle());
+                }
+            }
+        }
+
+        public void objectDeleted(ObjectDeletedEvent event) {
+            for (TrackedType tracked : types.values()) {
+                tracked.remove(event.getFactHandle());
+            }
+        }
+    }
+}
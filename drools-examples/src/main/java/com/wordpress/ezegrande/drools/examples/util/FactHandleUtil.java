@@ -0,0 +1,34 @@
+package com.wordpress.ezegrande.drools.examples.util;
+
+import org.kie.api.runtime.rule.FactHandle;
+
+/**
+ * Helper methods for FactHandles
+ * 
+ * @author ezegrande
+ *
+ */
+public class FactHandleUtil {
+    private FactHandleUtil() {
+        // Non-instantiable from outside
+    }
+
+    /**
+     * Returns the id of the FactHandle. The KIE API does not expose it, so it
+     * is taken from the external form of the handle, which has this format:
+     * 'type:id:identityHashCode:hashCode:recency:entryPoint:traitType'. The id
+     * is unique per session and it is kept when the session is marshalled.
+     * 
+     * @param factHandle
+     * @return the id of the FactHandle
+     */
+    public static long getId(FactHandle factHandle) {
+        String externalForm = factHandle.toExternalForm();
+        int start = externalForm.indexOf(':') + 1;
+        int end = externalForm.indexOf(':', start);
+        if (start == 0 || end < 0) {
+            throw new IllegalArgumentException("Unknown FactHandle format: " + externalForm);
+        }
+        return Long.parseLong(externalForm.substring(start, end));
+    }
+}
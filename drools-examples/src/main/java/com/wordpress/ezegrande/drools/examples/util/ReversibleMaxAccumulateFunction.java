@@ -0,0 +1,87 @@
+package com.wordpress.ezegrande.drools.examples.util;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.TreeMap;
+
+import org.kie.api.runtime.rule.AccumulateFunction;
+
+/**
+ * Same result than the 'max' accumulate function, but it supports reverse.
+ * The built-in function does not, so deleting one of the k accumulated facts
+ * iterates the remaining ones again, and deleting all of them is quadratic in
+ * k. This one keeps the accumulated values sorted with their counts, so adding
+ * or removing a value takes O(log k).
+ *
+ * Import it in the DRL file with
+ * 'import accumulate com.wordpress.ezegrande.drools.examples.util.ReversibleMaxAccumulateFunction reversibleMax;'
+ *
+ * @author ezegrande
+ */
+public class ReversibleMaxAccumulateFunction implements AccumulateFunction {
+
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        // No state
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+        // No state
+    }
+
+    public Serializable createContext() {
+        return new MaxData();
+    }
+
+    public void init(Serializable context) {
+        ((MaxData) context).counts.clear();
+    }
+
+    public void accumulate(Serializable context, Object value) {
+        TreeMap<Double, Integer> counts = ((MaxData) context).counts;
+        Double key = Double.valueOf(((Number) value).doubleValue());
+        Integer count = counts.get(key);
+        counts.put(key, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+    }
+
+    public void reverse(Serializable context, Object value) {
+        TreeMap<Double, Integer> counts = ((MaxData) context).counts;
+        Double key = Double.valueOf(((Number) value).doubleValue());
+        Integer count = counts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count.intValue() == 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, Integer.valueOf(count.intValue() - 1));
+        }
+    }
+
+    /**
+     * @return the biggest value, or negative infinity without values (as the
+     *         'max' function)
+     */
+    public Object getResult(Serializable context) {
+        TreeMap<Double, Integer> counts = ((MaxData) context).counts;
+        return counts.isEmpty() ? Double.valueOf(Double.NEGATIVE_INFINITY) : counts.lastKey();
+    }
+
+    public boolean supportsReverse() {
+        return true;
+    }
+
+    public Class<?> getResultType() {
+        return Number.class;
+    }
+
+    /**
+     * The accumulated values and how many times each one was accumulated
+     */
+    private static final class MaxData implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final TreeMap<Double, Integer> counts = new TreeMap<Double, Integer>();
+    }
+}
@@ -85,6 +85,17 @@ public class TestUtil {
         return kbase.newKieSession(ksconf, null);
     }
 
+    /**
+     * Creates a new KieBase that contains the drl files sent by parameter
+     * 
+     * @return the new KieBase
+     */
+    public static KieBase createKieBase(String... drlResourcesPaths) {
+        KieServices ks = KieServices.Factory.get();
+        KieContainer kcontainer = createKieContainer(ks, drlResourcesPaths);
+        return kcontainer.newKieBase(ks.newKieBaseConfiguration());
+    }
+
     /**
      * Creates a new KieContainer, which will include a KieModule with the DRL
      * files sent as parameter
@@ -0,0 +1,106 @@
+package com.wordpress.ezegrande.drools.examples.batching;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kie.api.KieBase;
+import org.kie.api.runtime.StatelessKieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Benchmark of the {@link PurchaseCoalescer}. It is not a test case, run it
+ * from its main method. Several threads submit single Purchases to the rules of
+ * 'discount.drl', and it measures the throughput and the average latency of:
+ * <ul>
+ * <li>One execution of a new StatelessKieSession per Purchase
+ * <li>The coalescer, which executes the Purchases in batches
+ * </ul>
+ *
+ * Arguments: threads (default 16) and Purchases per thread (default 20000).
+ *
+ * @author ezegrande
+ */
+public class PurchaseCoalescerBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(PurchaseCoalescerBenchmark.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int purchases = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        final KieBase kbase = TestUtil.createKieBase(DISCOUNT_DRL);
+
+        // Warm up
+        run("Single executions", threads, purchases / 10, new Executor() {
+            public void execute(Purchase purchase) {
+                newSession(kbase).execute(purchase);
+            }
+        });
+        run("Single executions", threads, purchases, new Executor() {
+            public void execute(Purchase purchase) {
+                newSession(kbase).execute(purchase);
+            }
+        });
+
+        final PurchaseCoalescer coalescer = new PurchaseCoalescer(newSession(kbase), 256, 500);
+        coalescer.start();
+        try {
+            run("Coalescer", threads, purchases, new Executor() {
+                public void execute(Purchase purchase) throws Exception {
+                    coalescer.submit(purchase).get();
+                }
+            });
+        } finally {
+            coalescer.stop();
+        }
+        logger.info("Coalescer batches: " + coalescer.getBatchCount() + " | Average batch size: "
+                + coalescer.getPurchaseCount() / Math.max(coalescer.getBatchCount(), 1) + " | Window: "
+                + coalescer.getWindowMicros() + " us");
+    }
+
+    private static void run(String name, int threads, final int purchases, final Executor executor)
+            throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong latencyNanos = new AtomicLong();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < purchases; i++) {
+                            long submitted = System.nanoTime();
+                            executor.execute(new Purchase("customer" + i, i % 1000, PAYMENT_METHODS[i % 3]));
+                            latencyNanos.addAndGet(System.nanoTime() - submitted);
+                        }
+                    } catch (Exception e) {
+                        logger.error("Unable to execute a purchase", e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        long nanos = System.nanoTime() - start;
+        long total = (long) threads * purchases;
+        logger.info(name + " | Threads: " + threads + " | Purchases: " + total + " | " + total * 1000000000L / nanos
+                + " purchases/s | Average latency: " + latencyNanos.get() / total / 1000 + " us");
+    }
+
+    private static StatelessKieSession newSession(KieBase kbase) {
+        StatelessKieSession session = kbase.newStatelessKieSession();
+        session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        return session;
+    }
+
+    private interface Executor {
+        void execute(Purchase purchase) throws Exception;
+    }
+}
@@ -0,0 +1,176 @@
+package com.wordpress.ezegrande.drools.examples.batching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.kie.api.runtime.StatelessKieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Tests cases for the {@link PurchaseCoalescer}, using the rules of
+ * 'discount.drl'
+ *
+ * @author ezegrande
+ */
+public class PurchaseCoalescerTestCase {
+    private Logger logger = LoggerFactory.getLogger(PurchaseCoalescerTestCase.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+
+    /**
+     * Purchases submitted by several threads are executed in batches, and each
+     * caller gets the discount of its own Purchase
+     */
+    @Test
+    public void testConcurrentSubmissions() throws Exception {
+        final PurchaseCoalescer coalescer = new PurchaseCoalescer(createSession(), 64, 2000);
+        coalescer.start();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 2000; i++) {
+                final PaymentMethod paymentMethod = PaymentMethod.values()[i % 3];
+                final double expected = paymentMethod == PaymentMethod.CASH ? 0 : paymentMethod == PaymentMethod.DEBIT
+                        ? 0.05 : 0.1;
+                results.add(callers.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        Purchase purchase = new Purchase("john", 100, paymentMethod);
+                        double discount = coalescer.submit(purchase).get(10, TimeUnit.SECONDS).doubleValue();
+                        return Boolean.valueOf(discount == expected);
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get().booleanValue());
+            }
+        } finally {
+            callers.shutdown();
+            coalescer.stop();
+        }
+        Assert.assertEquals(2000, coalescer.getPurchaseCount());
+        Assert.assertTrue(coalescer.getBatchCount() < 2000);
+        logger.info("Batches: " + coalescer.getBatchCount() + " | Window: " + coalescer.getWindowMicros() + " us");
+    }
+
+    /**
+     * Without concurrent submissions the window shrinks, so a single Purchase
+     * is not delayed
+     */
+    @Test
+    public void testWindowShrinksWithoutLoad() throws Exception {
+        PurchaseCoalescer coalescer = new PurchaseCoalescer(createSession(), 64, 100000);
+        coalescer.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                Purchase purchase = new Purchase("mary", 100, PaymentMethod.CREDIT);
+                Assert.assertEquals(0.1, coalescer.submit(purchase).get(10, TimeUnit.SECONDS).doubleValue());
+            }
+            Assert.assertEquals(20, coalescer.getBatchCount());
+            Assert.assertTrue(coalescer.getWindowMicros() < 10);
+        } finally {
+            coalescer.stop();
+        }
+    }
+
+    /**
+     * After shrinking without load, the window grows again when the Purchases
+     * come back in bursts
+     */
+    @Test
+    public void testWindowRecoversAfterIdle() throws Exception {
+        PurchaseCoalescer coalescer = new PurchaseCoalescer(createSession(), 64, 100000);
+        coalescer.start();
+        try {
+            for (int i = 0; i < 40; i++) {
+                coalescer.submit(new Purchase("mary", 100, PaymentMethod.CREDIT)).get(10, TimeUnit.SECONDS);
+            }
+            long idleWindow = coalescer.getWindowMicros();
+            Assert.assertTrue(idleWindow < 10);
+
+            long maxWindow = idleWindow;
+            for (int burst = 0; burst < 50; burst++) {
+                List<DiscountFuture> futures = new ArrayList<DiscountFuture>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(coalescer.submit(new Purchase("john", 100, PaymentMethod.DEBIT)));
+                }
+                for (DiscountFuture future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+                maxWindow = Math.max(maxWindow, coalescer.getWindowMicros());
+            }
+            logger.info("Window | Idle: " + idleWindow + " us | Under load: " + maxWindow + " us");
+            Assert.assertTrue(maxWindow > idleWindow);
+        } finally {
+            coalescer.stop();
+        }
+    }
+
+    /**
+     * The Purchases submitted while stopping are executed or failed, none of
+     * them is left waiting forever
+     */
+    @Test
+    public void testStopWhileSubmitting() throws Exception {
+        final PurchaseCoalescer coalescer = new PurchaseCoalescer(createSession(), 64, 2000);
+        coalescer.start();
+        final CountDownLatch started = new CountDownLatch(4);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        List<Future<List<DiscountFuture>>> results = new ArrayList<Future<List<DiscountFuture>>>();
+        for (int i = 0; i < 4; i++) {
+            results.add(callers.submit(new Callable<List<DiscountFuture>>() {
+                public List<DiscountFuture> call() {
+                    List<DiscountFuture> futures = new ArrayList<DiscountFuture>();
+                    started.countDown();
+                    try {
+                        while (!stopped.get()) {
+                            futures.add(coalescer.submit(new Purchase("john", 100, PaymentMethod.CASH)));
+                        }
+                    } catch (IllegalStateException e) {
+                        // Stopped
+                    }
+                    return futures;
+                }
+            }));
+        }
+        started.await();
+        Thread.sleep(50);
+        coalescer.stop();
+        stopped.set(true);
+        callers.shutdown();
+        int completed = 0;
+        for (Future<List<DiscountFuture>> result : results) {
+            for (DiscountFuture future : result.get()) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    completed++;
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+        Assert.assertEquals(coalescer.getPurchaseCount(), completed);
+    }
+
+    private StatelessKieSession createSession() {
+        StatelessKieSession session = TestUtil.createStatelessKieSession(DISCOUNT_DRL);
+        session.setGlobal("logger", logger);
+        return session;
+    }
+}
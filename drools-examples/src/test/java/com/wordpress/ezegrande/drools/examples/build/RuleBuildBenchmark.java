@@ -0,0 +1,103 @@
+package com.wordpress.ezegrande.drools.examples.build;
+
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark of the {@link RuleBuildService} against building all the files in
+ * a single KieFileSystem (as TestUtil does). It is not a test case, run it from
+ * its main method. It generates a repository of DRL files like 'discount.drl'
+ * and measures:
+ * <ul>
+ * <li>Serial build of a single KieFileSystem
+ * <li>Full build of the service, with the packages built in parallel
+ * <li>Incremental build of the service after changing one file
+ * </ul>
+ *
+ * Arguments: packages (default 8), files per package (default 25), rules per
+ * file (default 10) and threads (default: the number of processors).
+ *
+ * @author ezegrande
+ */
+public class RuleBuildBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(RuleBuildBenchmark.class);
+
+    public static void main(String[] args) {
+        int packages = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+        int rules = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        // Warm up
+        buildSerial(2, 2, rules);
+        buildWithService(2, 2, rules, threads).shutdown();
+
+        long start = System.nanoTime();
+        buildSerial(packages, files, rules);
+        logger.info("Serial build | Files: " + packages * files + " | Wall: " + (System.nanoTime() - start) / 1000000
+                + " ms");
+
+        RuleBuildService service = buildWithService(packages, files, rules, threads);
+        try {
+            RuleBuildReport report = service.update(path(0, 0), drl(0, 0, rules, "0.2"));
+            logger.info("Incremental build | " + report);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static void buildSerial(int packages, int files, int rules) {
+        KieServices ks = KieServices.Factory.get();
+        KieFileSystem kfs = ks.newKieFileSystem();
+        for (int p = 0; p < packages; p++) {
+            for (int f = 0; f < files; f++) {
+                kfs.write("src/main/resources/" + path(p, f), drl(p, f, rules, "0.1"));
+            }
+        }
+        KieBuilder kbuilder = ks.newKieBuilder(kfs).buildAll();
+        if (kbuilder.getResults().hasMessages(Level.ERROR)) {
+            throw new IllegalArgumentException(kbuilder.getResults().toString());
+        }
+    }
+
+    private static RuleBuildService buildWithService(int packages, int files, int rules, int threads) {
+        RuleBuildService service = new RuleBuildService(threads);
+        for (int p = 0; p < packages; p++) {
+            for (int f = 0; f < files; f++) {
+                service.addDrl(path(p, f), drl(p, f, rules, "0.1"));
+            }
+        }
+        RuleBuildReport report = service.buildAll();
+        logger.info("Service full build | Threads: " + threads + " | " + report + " | Slowest: "
+                + report.getSlowestFiles(1));
+        return service;
+    }
+
+    private static String path(int p, int f) {
+        return "com/wordpress/ezegrande/rules/p" + p + "/rules" + f + ".drl";
+    }
+
+    /**
+     * @return a DRL like 'discount.drl', with a discount rule per subtotal band
+     */
+    private static String drl(int p, int f, int rules, String discount) {
+        StringBuilder drl = new StringBuilder();
+        drl.append("package com.wordpress.ezegrande.rules.p").append(p).append(";\n\n");
+        drl.append("import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;\n");
+        drl.append("import com.wordpress.ezegrande.drools.examples.model.Purchase;\n\n");
+        drl.append("dialect \"mvel\"\n\n");
+        for (int r = 0; r < rules; r++) {
+            drl.append("rule \"Discount ").append(f).append('-').append(r).append("\"\n");
+            drl.append("    when\n");
+            drl.append("        $p:Purchase(paymentMethod == PaymentMethod.CREDIT, subtotal > ").append(r * 100)
+                    .append(", subtotal <= ").append((r + 1) * 100).append(")\n");
+            drl.append("    then\n");
+            drl.append("        $p.setDiscount(").append(discount).append(");\n");
+            drl.append("end\n\n");
+        }
+        return drl.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.wordpress.ezegrande.drools.examples.build;
+
+import java.io.IOException;
+import java.util.Scanner;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.partition.EntryPointLayout;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link RuleBuildService}, with the files of two
+ * packages: 'discount.drl' and 'potentialCustomer02.drl' (simple) and
+ * 'potentialCustomerEntryPoints.drl' (partition)
+ *
+ * @author ezegrande
+ */
+public class RuleBuildServiceTestCase {
+    private Logger logger = LoggerFactory.getLogger(RuleBuildServiceTestCase.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+
+    private RuleBuildService service;
+
+    @Before
+    public void setUp() throws IOException {
+        service = new RuleBuildService(2);
+        service.addClasspathDrl(DISCOUNT_DRL, POTENTIAL_CUSTOMER_DRL, EntryPointLayout.PARTITIONED.getDrlPath());
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    /**
+     * All the files are built, and then only the changed one is compiled again
+     */
+    @Test
+    public void testBuildAndUpdate() {
+        RuleBuildReport report = service.buildAll();
+        Assert.assertFalse(report.isIncremental());
+        Assert.assertEquals(3, report.getFiles().size());
+        Assert.assertEquals(DISCOUNT_DRL, report.getFiles().get(0).getPath());
+        Assert.assertEquals("com.wordpress.ezegrande.drools.examples.partition", report.getFiles().get(2)
+                .getPackageName());
+        Assert.assertEquals(0.1, executeCreditPurchase());
+
+        String drl = readDiscountDrl().replace("setDiscount(0.1)", "setDiscount(0.15)");
+        report = service.update(DISCOUNT_DRL, drl);
+        Assert.assertTrue(report.isIncremental());
+        Assert.assertEquals(1, report.getFiles().size());
+        Assert.assertEquals(0.15, executeCreditPurchase());
+        // The other file of the package is still there
+        Assert.assertNotNull(service.getKieBase().getRule("com.wordpress.ezegrande.drools.examples.simple",
+                "Identify potential customers"));
+        Assert.assertNotNull(service.getKieBase().getRule("com.wordpress.ezegrande.drools.examples.partition",
+                "Identify potential customers"));
+    }
+
+    /**
+     * A file with errors is rejected, and the previous version is kept
+     */
+    @Test
+    public void testUpdateWithErrors() {
+        service.buildAll();
+        String drl = readDiscountDrl().replace("paymentMethod == PaymentMethod.CREDIT", "paymentMethod ==");
+        try {
+            service.update(DISCOUNT_DRL, drl);
+            Assert.fail("The DRL has errors");
+        } catch (IllegalArgumentException e) {
+            logger.info("Expected error: " + e.getMessage());
+        }
+        Assert.assertEquals(0.1, executeCreditPurchase());
+    }
+
+    private double executeCreditPurchase() {
+        KieSession session = service.getKieBase().newKieSession();
+        try {
+            session.setGlobal("logger", logger);
+            session.setGlobal("emailService", EmailService.getInstance());
+            Purchase purchase = new Purchase("john", 500, PaymentMethod.CREDIT);
+            session.insert(purchase);
+            session.fireAllRules();
+            return purchase.getDiscount();
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    private String readDiscountDrl() {
+        return new Scanner(getClass().getClassLoader().getResourceAsStream(DISCOUNT_DRL), "UTF-8").useDelimiter(
+                "\\A").next();
+    }
+}
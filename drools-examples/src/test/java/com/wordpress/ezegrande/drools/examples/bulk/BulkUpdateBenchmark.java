@@ -0,0 +1,118 @@
+package com.wordpress.ezegrande.drools.examples.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.drools.core.common.InternalFactHandle;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Benchmark of the {@link BulkUpdate} against one update per change. It is not
+ * a test case, run it from its main method. A session with the rules of
+ * 'discount.drl' and 'potentialCustomer02.drl' holds the Purchases, and they
+ * are re-priced: every subtotal is changed twice (a price increase, and then
+ * rounding it), and the rules are fired. It measures:
+ * <ul>
+ * <li>Full: two update(handle, object) of each Purchase, evaluating every
+ * pattern. Only for reference
+ * <li>Masked: two updates of each Purchase, only for the patterns on the
+ * subtotal
+ * <li>Bulk: one update of each Purchase, only for the patterns on the
+ * subtotal. Compared with Masked, it measures the gain of merging the changes
+ * </ul>
+ *
+ * Arguments: Purchases (default 1000000). Run it with a heap of 3 GB or more.
+ *
+ * @author ezegrande
+ */
+public class BulkUpdateBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(BulkUpdateBenchmark.class);
+
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    public static void main(String[] args) {
+        int purchases = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        org.apache.log4j.Logger.getLogger(EmailService.class).setLevel(Level.WARN);
+        KieBase kbase = TestUtil.createKieBase("com/wordpress/ezegrande/drools/examples/simple/discount.drl",
+                "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl");
+
+        // Warm up
+        for (Mode mode : Mode.values()) {
+            run(kbase, purchases / 10, mode);
+        }
+
+        for (Mode mode : Mode.values()) {
+            run(kbase, purchases, mode);
+        }
+    }
+
+    private static void run(KieBase kbase, int count, Mode mode) {
+        KieSession session = kbase.newKieSession();
+        try {
+            session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+            session.setGlobal("emailService", EmailService.getInstance());
+            List<Purchase> purchases = new ArrayList<Purchase>(count);
+            List<FactHandle> handles = new ArrayList<FactHandle>(count);
+            for (int i = 0; i < count; i++) {
+                Purchase purchase = new Purchase("customer" + i % 10000, i % 500, PAYMENT_METHODS[i % 3]);
+                purchases.add(purchase);
+                handles.add(session.insert(purchase));
+            }
+            session.fireAllRules();
+
+            long start = System.nanoTime();
+            BulkUpdate update = new BulkUpdate(session);
+            int updated = 0;
+            for (int i = 0; i < count; i++) {
+                Purchase purchase = purchases.get(i);
+                purchase.setSubtotal(purchase.getSubtotal() * 1.07);
+                updated += change(session, update, handles.get(i), mode);
+                purchase.setSubtotal(Math.round(purchase.getSubtotal()));
+                updated += change(session, update, handles.get(i), mode);
+            }
+            if (mode == Mode.BULK) {
+                updated = update.apply();
+            }
+            long propagated = System.nanoTime() - start;
+            int fired = session.fireAllRules();
+            long total = System.nanoTime() - start;
+            logger.info(mode + " | Purchases: " + count + " | Changes: " + 2L * count + " | Updates: " + updated
+                    + " | Fired: " + fired + " | Update: " + propagated / 1000000 + " ms | Update and fire: "
+                    + total / 1000000 + " ms");
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    /**
+     * @return the number of updates done now
+     */
+    private static int change(KieSession session, BulkUpdate update, FactHandle handle, Mode mode) {
+        switch (mode) {
+        case FULL:
+            session.update(handle, ((InternalFactHandle) handle).getObject());
+            return 1;
+        case MASKED:
+            update.change(handle, "subtotal");
+            return update.apply();
+        default:
+            update.change(handle, "subtotal");
+            return 0;
+        }
+    }
+
+    private enum Mode {
+        FULL, MASKED, BULK
+    }
+}
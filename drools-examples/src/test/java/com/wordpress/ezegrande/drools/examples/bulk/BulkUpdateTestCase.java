@@ -0,0 +1,164 @@
+package com.wordpress.ezegrande.drools.examples.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message.Level;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Tests cases for the {@link BulkUpdate}, with a rule on the payment method,
+ * a rule on the subtotal and a rule joining the Purchases to the Potential
+ * Customers by their ids, which record their firings
+ *
+ * @author ezegrande
+ */
+public class BulkUpdateTestCase {
+    private static final String DRL = "package com.wordpress.ezegrande.drools.examples.bulk;\n"
+            + "import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;\n"
+            + "import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;\n"
+            + "import com.wordpress.ezegrande.drools.examples.model.Purchase;\n"
+            + "global java.util.List fired;\n"
+            + "rule \"Cash\" when $p:Purchase(paymentMethod == PaymentMethod.CASH)"
+            + " then fired.add(\"Cash \" + $p.getCustomerName()); end\n"
+            + "rule \"Big\" when $p:Purchase(subtotal > 300)"
+            + " then fired.add(\"Big \" + $p.getCustomerName()); end\n"
+            + "rule \"Potential\" when PotentialCustomer($id : customerId) $p:Purchase(customerId == $id)"
+            + " then fired.add(\"Potential \" + $p.getSubtotal()); end\n";
+
+    private KieSession session;
+    private List<String> fired = new ArrayList<String>();
+    private List<FactHandle> handles = new ArrayList<FactHandle>();
+    private List<Purchase> purchases = new ArrayList<Purchase>();
+
+    @Before
+    public void setUp() {
+        KieServices ks = KieServices.Factory.get();
+        KieFileSystem kfs = ks.newKieFileSystem();
+        kfs.write("src/main/resources/com/wordpress/ezegrande/drools/examples/bulk/bulk.drl", DRL);
+        KieBuilder kbuilder = ks.newKieBuilder(kfs).buildAll();
+        if (kbuilder.getResults().hasMessages(Level.ERROR)) {
+            throw new IllegalArgumentException(kbuilder.getResults().toString());
+        }
+        session = ks.newKieContainer(kbuilder.getKieModule().getReleaseId()).newKieSession();
+        session.setGlobal("fired", fired);
+        String[] customers = { "john", "mary", "peter" };
+        for (String customer : customers) {
+            Purchase purchase = new Purchase(customer, 100, PaymentMethod.CASH);
+            purchases.add(purchase);
+            handles.add(session.insert(purchase));
+        }
+        session.fireAllRules();
+        Assert.assertEquals(3, fired.size());
+        fired.clear();
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.dispose(session);
+    }
+
+    /**
+     * The changes to the same fact are merged, and only the rule on the
+     * subtotal is evaluated again
+     */
+    @Test
+    public void testChangedProperties() {
+        BulkUpdate update = new BulkUpdate(session);
+        for (int i = 0; i < 2; i++) {
+            purchases.get(i).setSubtotal(purchases.get(i).getSubtotal() * 2);
+            update.change(handles.get(i), "subtotal");
+            purchases.get(i).setSubtotal(purchases.get(i).getSubtotal() * 2);
+            update.change(handles.get(i), "subtotal");
+        }
+        Assert.assertEquals(2, update.size());
+        Assert.assertEquals(4, update.getChanges());
+        Assert.assertEquals(2, update.apply());
+        Assert.assertEquals(0, update.size());
+        Assert.assertEquals(2, session.fireAllRules());
+        Assert.assertTrue(fired.contains("Big john"));
+        Assert.assertTrue(fired.contains("Big mary"));
+
+        // Back under $300, the rule on the payment method is not fired again
+        fired.clear();
+        purchases.get(0).setSubtotal(100);
+        update.change(handles.get(0), "subtotal");
+        Assert.assertEquals(0, update.applyAndFire());
+        Assert.assertTrue(fired.isEmpty());
+
+        // Changing the payment method does
+        purchases.get(0).setPaymentMethod(PaymentMethod.DEBIT);
+        update.change(handles.get(0), "paymentMethod");
+        purchases.get(0).setPaymentMethod(PaymentMethod.CASH);
+        update.change(handles.get(0), "paymentMethod", "subtotal");
+        Assert.assertEquals(1, update.applyAndFire());
+        Assert.assertEquals("Cash john", fired.get(0));
+    }
+
+    /**
+     * Changing the Customer Name of a Purchase also changes its id, so the
+     * joins on the Customer id are evaluated again
+     */
+    @Test
+    public void testChangedCustomer() {
+        session.insert(new PotentialCustomer("mary", 0));
+        Assert.assertEquals(1, session.fireAllRules());
+        Assert.assertEquals("Potential 100.0", fired.get(0));
+        fired.clear();
+
+        BulkUpdate update = new BulkUpdate(session);
+        purchases.get(0).setCustomerName("mary");
+        purchases.get(0).setSubtotal(50);
+        update.change(handles.get(0), "customerName");
+        purchases.get(1).setCustomerName("peter");
+        update.change(handles.get(1), "customerName");
+        Assert.assertEquals(1, update.applyAndFire());
+        Assert.assertEquals("Potential 50.0", fired.get(0));
+
+        // Mary has no Purchases now
+        fired.clear();
+        purchases.get(0).setCustomerName("john");
+        update.change(handles.get(0), "customerName");
+        Assert.assertEquals(0, update.applyAndFire());
+        purchases.get(2).setCustomerName("mary");
+        update.change(handles.get(2), "customerName");
+        Assert.assertEquals(1, update.applyAndFire());
+        Assert.assertEquals("Potential 100.0", fired.get(0));
+    }
+
+    /**
+     * A plain update evaluates every pattern again, the deleted facts are
+     * skipped and the properties must exist
+     */
+    @Test
+    public void testFullUpdateAndErrors() {
+        purchases.get(0).setSubtotal(400);
+        session.update(handles.get(0), purchases.get(0));
+        Assert.assertEquals(2, session.fireAllRules());
+
+        BulkUpdate update = new BulkUpdate(session);
+        update.change(handles.get(1), "subtotal");
+        session.delete(handles.get(1));
+        Assert.assertEquals(0, update.apply());
+        try {
+            update.change(handles.get(2), "total");
+            Assert.fail("Purchase has no 'total' setter");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.wordpress.ezegrande.drools.examples.cache;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Tests cases for the {@link DiscountResultCache}, using the rules of
+ * 'discount.drl'
+ *
+ * @author ezegrande
+ */
+public class DiscountResultCacheTestCase {
+    private Logger logger = LoggerFactory.getLogger(DiscountResultCacheTestCase.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    private static final String DISCOUNT_PACKAGE = "com.wordpress.ezegrande.drools.examples.simple";
+
+    /**
+     * Equal Purchases of different Customers get the cached result, and the
+     * least recently used result is evicted when the cache is full
+     */
+    @Test
+    public void testCachedResults() {
+        DiscountResultCache cache = new DiscountResultCache(TestUtil.createKieBase(DISCOUNT_DRL), 2);
+        cache.setGlobal("logger", logger);
+        try {
+            Purchase john = new Purchase("john", 500, PaymentMethod.CREDIT);
+            DiscountResult result = cache.execute(john);
+            Assert.assertEquals(0.1, john.getDiscount());
+            Assert.assertEquals(Arrays.asList("Credit Card purchases have 10% of discount"), result.getFiredRules());
+
+            Purchase mary = new Purchase("mary", 500, PaymentMethod.CREDIT);
+            Assert.assertSame(result, cache.execute(mary));
+            Assert.assertEquals(0.1, mary.getDiscount());
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(1, cache.getMisses());
+
+            // Same Payment Method, but a different Subtotal
+            Purchase george = new Purchase("george", 300, PaymentMethod.CREDIT);
+            Assert.assertNotSame(result, cache.execute(george));
+            Assert.assertEquals(0.1, george.getDiscount());
+
+            // A Cash Purchase with a stale discount gets it overwritten
+            Purchase cash = new Purchase("john", 500, PaymentMethod.CASH);
+            cash.setDiscount(0.5);
+            cache.execute(cash);
+            Assert.assertEquals(0d, cash.getDiscount());
+            Assert.assertEquals(2, cache.size());
+            Assert.assertEquals(1, cache.getEvictions());
+
+            // The first result was evicted
+            cache.execute(new Purchase("paul", 500, PaymentMethod.CREDIT));
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(4, cache.getMisses());
+            Assert.assertEquals(0.2, cache.getHitRatio());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * The cache is cleared when a rule is removed from the KieBase
+     */
+    @Test
+    public void testInvalidationOnKieBaseChange() {
+        KieBase kbase = TestUtil.createKieBase(DISCOUNT_DRL);
+        DiscountResultCache cache = new DiscountResultCache(kbase, 100);
+        cache.setGlobal("logger", logger);
+        try {
+            Purchase john = new Purchase("john", 500, PaymentMethod.CREDIT);
+            cache.execute(john);
+            Assert.assertEquals(0.1, john.getDiscount());
+            Assert.assertEquals(1, cache.size());
+
+            kbase.removeRule(DISCOUNT_PACKAGE, "Credit Card purchases have 10% of discount");
+            Assert.assertEquals(1, cache.getInvalidations());
+            Assert.assertEquals(0, cache.size());
+            Assert.assertTrue(cache.isEnabled());
+
+            Purchase mary = new Purchase("mary", 500, PaymentMethod.CREDIT);
+            DiscountResult result = cache.execute(mary);
+            Assert.assertEquals(0d, mary.getDiscount());
+            Assert.assertFalse(result.isDiscountChanged());
+            Assert.assertTrue(result.getFiredRules().isEmpty());
+            Assert.assertEquals(0, cache.getHits());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * Rules with side effects in the globals are not cache-safe
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRulesNotCacheSafe() {
+        new DiscountResultCache(TestUtil.createKieBase(POTENTIAL_CUSTOMER_DRL, DISCOUNT_DRL), 100);
+    }
+}
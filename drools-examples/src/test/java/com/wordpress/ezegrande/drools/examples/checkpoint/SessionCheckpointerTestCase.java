@@ -0,0 +1,312 @@
+package com.wordpress.ezegrande.drools.examples.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.drools.core.ClassObjectFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link SessionCheckpointer}, using the same rules than
+ * the AllRulesTestCase ('discount.drl' and 'potentialCustomer02.drl').
+ *
+ * @author ezegrande
+ */
+public class SessionCheckpointerTestCase {
+    private Logger logger = LoggerFactory.getLogger(SessionCheckpointerTestCase.class);
+
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("checkpoints", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Purchases are inserted but the rules are not fired before the
+     * checkpoint. The Agenda is part of the full checkpoint, so the rules are
+     * fired by the restored session.
+     */
+    @Test
+    public void testFullCheckpoint() throws Exception {
+        KieSession session = createSession();
+        SessionCheckpointer checkpointer = new SessionCheckpointer(session.getKieBase(), directory);
+        try {
+            session.insert(new Purchase("john", 350, PaymentMethod.CASH));
+            session.insert(new Purchase("mary", 250, PaymentMethod.CASH));
+            session.insert(new Purchase("john", 400, PaymentMethod.CASH));
+            session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+            session.insert(new Purchase("john", 500, PaymentMethod.DEBIT));
+            checkpointer.checkpoint(session);
+        } finally {
+            TestUtil.dispose(session);
+        }
+
+        KieSession restored = checkpointer.restore();
+        try {
+            setGlobals(restored);
+            Assert.assertEquals(5, getObjects(restored, Purchase.class).size());
+            restored.fireAllRules();
+
+            List<PotentialCustomer> potentialCustomers = getObjects(restored, PotentialCustomer.class);
+            Assert.assertEquals(1, potentialCustomers.size());
+            Assert.assertEquals("john", potentialCustomers.get(0).getCustomerName());
+            for (Purchase purchase : getObjects(restored, Purchase.class)) {
+                if (purchase.getPaymentMethod() == PaymentMethod.CREDIT) {
+                    Assert.assertEquals(0.1, purchase.getDiscount());
+                }
+            }
+        } finally {
+            TestUtil.dispose(restored);
+        }
+    }
+
+    /**
+     * Changes after the full checkpoint are written as a delta, which is
+     * applied after restoring the full checkpoint
+     */
+    @Test
+    public void testDeltaCheckpoint() throws Exception {
+        KieSession session = createSession();
+        SessionCheckpointer checkpointer = new SessionCheckpointer(session.getKieBase(), directory);
+        try {
+            checkpointer.track(session);
+            session.insert(new Purchase("john", 350, PaymentMethod.CASH));
+            FactHandle george = session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+            session.fireAllRules();
+            checkpointer.checkpoint(session);
+
+            session.insert(new Purchase("mary", 450, PaymentMethod.CASH));
+            session.delete(george);
+            session.fireAllRules();
+            checkpointer.checkpointDelta();
+        } finally {
+            TestUtil.dispose(session);
+        }
+        Assert.assertEquals(2, directory.listFiles().length);
+
+        KieSession restored = checkpointer.restore();
+        try {
+            setGlobals(restored);
+            restored.fireAllRules();
+
+            List<Purchase> purchases = getObjects(restored, Purchase.class);
+            Assert.assertEquals(2, purchases.size());
+            for (Purchase purchase : purchases) {
+                Assert.assertFalse("george".equals(purchase.getCustomerName()));
+            }
+            // The Potential Customer derived after the full checkpoint is not
+            // part of the delta, the rules derive it again
+            List<PotentialCustomer> potentialCustomers = getObjects(restored, PotentialCustomer.class);
+            Assert.assertEquals(2, potentialCustomers.size());
+        } finally {
+            TestUtil.dispose(restored);
+        }
+
+        // A new full checkpoint deletes the previous ones
+        KieSession restoredAgain = checkpointer.restore();
+        try {
+            checkpointer.checkpoint(restoredAgain);
+            Assert.assertEquals(1, directory.listFiles().length);
+        } finally {
+            TestUtil.dispose(restoredAgain);
+        }
+    }
+
+    /**
+     * The facts inserted by a delta get new ids in the restored session, so
+     * the restore takes a full checkpoint and the next delta refers to them:
+     * full, delta, restore, delta, restore
+     */
+    @Test
+    public void testChainedRestores() throws Exception {
+        KieSession session = createSession();
+        SessionCheckpointer checkpointer = new SessionCheckpointer(session.getKieBase(), directory);
+        try {
+            checkpointer.track(session);
+            session.insert(new Purchase("john", 350, PaymentMethod.CASH));
+            session.fireAllRules();
+            checkpointer.checkpoint(session);
+
+            session.insert(new Purchase("mary", 450, PaymentMethod.CASH));
+            session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+            session.fireAllRules();
+            checkpointer.checkpointDelta();
+        } finally {
+            TestUtil.dispose(session);
+        }
+
+        KieSession restored = checkpointer.restore();
+        try {
+            setGlobals(restored);
+            restored.fireAllRules();
+            // Only the full checkpoint of the restored session is left
+            Assert.assertEquals(1, directory.listFiles().length);
+            Assert.assertEquals(2, getObjects(restored, PotentialCustomer.class).size());
+
+            // Change the facts inserted by the delta
+            for (FactHandle handle : restored.getFactHandles()) {
+                Object fact = restored.getObject(handle);
+                if (fact instanceof Purchase && "george".equals(((Purchase) fact).getCustomerName())) {
+                    restored.delete(handle);
+                } else if (fact instanceof Purchase && "mary".equals(((Purchase) fact).getCustomerName())) {
+                    ((Purchase) fact).setSubtotal(460);
+                    restored.update(handle, fact);
+                }
+            }
+            restored.fireAllRules();
+            checkpointer.checkpointDelta();
+        } finally {
+            TestUtil.dispose(restored);
+        }
+
+        KieSession restoredAgain = checkpointer.restore();
+        try {
+            setGlobals(restoredAgain);
+            restoredAgain.fireAllRules();
+            List<Purchase> purchases = getObjects(restoredAgain, Purchase.class);
+            Assert.assertEquals(2, purchases.size());
+            for (Purchase purchase : purchases) {
+                Assert.assertFalse("george".equals(purchase.getCustomerName()));
+                if ("mary".equals(purchase.getCustomerName())) {
+                    Assert.assertEquals(460.0, purchase.getSubtotal());
+                }
+            }
+            // Derived once per customer, never restored as stated facts
+            Assert.assertEquals(2, getObjects(restoredAgain, PotentialCustomer.class).size());
+        } finally {
+            TestUtil.dispose(restoredAgain);
+        }
+    }
+
+    /**
+     * A delta that can not be written keeps its changes for the next one,
+     * merged with the changes made since then
+     */
+    @Test
+    public void testFailedDelta() throws Exception {
+        KieSession session = createSession();
+        SessionCheckpointer checkpointer = new SessionCheckpointer(session.getKieBase(), directory);
+        // The delta can not be renamed over a directory
+        File blocker = new File(directory, "checkpoint-2.delta");
+        File blockerContent = new File(blocker, "content");
+        try {
+            checkpointer.track(session);
+            FactHandle george = session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+            session.fireAllRules();
+            checkpointer.checkpoint(session);
+
+            Purchase mary = new Purchase("mary", 450, PaymentMethod.CASH);
+            FactHandle maryHandle = session.insert(mary);
+            session.fireAllRules();
+            Assert.assertTrue(blocker.mkdir() && blockerContent.createNewFile());
+            try {
+                checkpointer.checkpointDelta();
+                Assert.fail("The delta can not be renamed");
+            } catch (IOException e) {
+                logger.info("Expected error: " + e.getMessage());
+            }
+            Assert.assertTrue(blockerContent.delete() && blocker.delete());
+
+            mary.setSubtotal(460);
+            session.update(maryHandle, mary);
+            session.delete(george);
+            session.fireAllRules();
+            checkpointer.checkpointDelta();
+        } finally {
+            TestUtil.dispose(session);
+        }
+        Assert.assertEquals(2, directory.listFiles().length);
+
+        KieSession restored = checkpointer.restore();
+        try {
+            setGlobals(restored);
+            restored.fireAllRules();
+            List<Purchase> purchases = getObjects(restored, Purchase.class);
+            Assert.assertEquals(1, purchases.size());
+            Assert.assertEquals("mary", purchases.get(0).getCustomerName());
+            Assert.assertEquals(460.0, purchases.get(0).getSubtotal());
+        } finally {
+            TestUtil.dispose(restored);
+        }
+    }
+
+    /**
+     * The Potential Customers inserted by the rules are not part of a delta,
+     * only the Purchases inserted by the application
+     */
+    @Test
+    public void testDerivedFactsAreNotTracked() {
+        KieSession session = createSession();
+        DeltaTracker tracker = new DeltaTracker();
+        try {
+            session.addEventListener(tracker);
+            session.insert(new Purchase("john", 350, PaymentMethod.CASH));
+            session.fireAllRules();
+            Assert.assertEquals(1, getObjects(session, PotentialCustomer.class).size());
+            List<FactOperation> delta = tracker.drain();
+            Assert.assertEquals(1, delta.size());
+            Assert.assertTrue(delta.get(0).getObject() instanceof Purchase);
+
+            // Deleting the derived fact is not tracked either
+            for (FactHandle handle : session.getFactHandles()) {
+                if (session.getObject(handle) instanceof PotentialCustomer) {
+                    session.delete(handle);
+                }
+            }
+            Assert.assertEquals(0, tracker.size());
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    private KieSession createSession() {
+        KieSession session = TestUtil.createKieSession(POTENTIAL_CUSTOMER_DRL, DISCOUNT_DRL);
+        setGlobals(session);
+        return session;
+    }
+
+    private void setGlobals(KieSession session) {
+        session.setGlobal("logger", logger);
+        session.setGlobal("emailService", EmailService.getInstance());
+    }
+
+    private <T> List<T> getObjects(KieSession session, Class<T> type) {
+        Collection<?> objects = session.getObjects(new ClassObjectFilter(type));
+        List<T> result = new ArrayList<T>(objects.size());
+        for (Object object : objects) {
+            result.add(type.cast(object));
+        }
+        return result;
+    }
+}
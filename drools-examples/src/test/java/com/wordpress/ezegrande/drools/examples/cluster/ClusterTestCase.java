@@ -0,0 +1,201 @@
+package com.wordpress.ezegrande.drools.examples.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieBase;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Tests cases for the {@link ClusterCoordinator}, using the same rules than
+ * the AllRulesTestCase ('discount.drl' and 'potentialCustomer02.drl'). The
+ * nodes run in the same JVM and listen in the loopback interface.
+ *
+ * @author ezegrande
+ */
+public class ClusterTestCase {
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final int PARTITION_COUNT = 16;
+
+    private KieBase kbase;
+    private List<RuleNode> nodes = new ArrayList<RuleNode>();
+    private ClusterCoordinator coordinator;
+
+    @Before
+    public void createCluster() throws Exception {
+        kbase = TestUtil.createKieBase(POTENTIAL_CUSTOMER_DRL, DISCOUNT_DRL);
+        coordinator = new ClusterCoordinator(PARTITION_COUNT);
+        coordinator.addNode(startNode().getAddress());
+        coordinator.addNode(startNode().getAddress());
+    }
+
+    @After
+    public void stopCluster() {
+        coordinator.close();
+        for (RuleNode node : nodes) {
+            node.stop();
+        }
+    }
+
+    /**
+     * The Purchases of the AllRulesTestCase get the same discounts and the
+     * same Potential Customer when they are distributed between the nodes
+     */
+    @Test
+    public void testPartitionedEvaluation() throws Exception {
+        Purchase john1 = submit("john", 350, PaymentMethod.CASH);
+        Purchase mary = submit("mary", 250, PaymentMethod.CASH);
+        Purchase john2 = submit("john", 400, PaymentMethod.CASH);
+        Purchase george = submit("george", 500, PaymentMethod.CREDIT);
+        Purchase john3 = submit("john", 500, PaymentMethod.DEBIT);
+
+        Assert.assertEquals(0d, john1.getDiscount());
+        Assert.assertEquals(0d, mary.getDiscount());
+        Assert.assertEquals(0d, john2.getDiscount());
+        Assert.assertEquals(0.1, george.getDiscount());
+        Assert.assertEquals(0.05, john3.getDiscount());
+
+        List<PotentialCustomer> potentialCustomers = coordinator.getPotentialCustomers();
+        Assert.assertEquals(1, potentialCustomers.size());
+        Assert.assertEquals("john", potentialCustomers.get(0).getCustomerName());
+        Assert.assertEquals(280d, potentialCustomers.get(0).getCreditLimit());
+    }
+
+    /**
+     * The state of the moved partitions is kept when a node joins and when a
+     * node leaves the cluster, so the Potential Customers are not lost nor
+     * inferred twice
+     */
+    @Test
+    public void testRebalancing() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            submit("customer" + i, 400, PaymentMethod.CASH);
+        }
+        Assert.assertEquals(40, getPotentialCustomerNames().size());
+        assertBalanced(2);
+
+        RuleNode third = startNode();
+        coordinator.addNode(third.getAddress());
+        assertBalanced(3);
+        Assert.assertFalse(third.getPartitions().isEmpty());
+        for (int i = 0; i < 40; i++) {
+            submit("customer" + i, 500, PaymentMethod.CASH);
+        }
+        Assert.assertEquals(40, coordinator.getPotentialCustomers().size());
+
+        coordinator.removeNode(nodes.get(0).getAddress());
+        assertBalanced(2);
+        Assert.assertTrue(nodes.get(0).getPartitions().isEmpty());
+        for (int i = 0; i < 40; i++) {
+            submit("customer" + i, 600, PaymentMethod.CASH);
+        }
+        Assert.assertEquals(40, coordinator.getPotentialCustomers().size());
+        Assert.assertEquals(40, getPotentialCustomerNames().size());
+    }
+
+    /**
+     * A partition that can not be imported (the new node has no
+     * 'potentialCustomer02.drl' rules nor its globals) stays in its owner, with
+     * its state, and the connections to the nodes are still usable
+     */
+    @Test
+    public void testFailedImport() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            submit("customer" + i, 400, PaymentMethod.CASH);
+        }
+        RuleNode broken = startNode(TestUtil.createKieBase(DISCOUNT_DRL));
+        try {
+            coordinator.addNode(broken.getAddress());
+            Assert.fail("The partitions can not be imported in " + broken.getAddress());
+        } catch (IOException e) {
+            // Expected
+        }
+        assertBalanced(2);
+        Assert.assertTrue(broken.getPartitions().isEmpty());
+        Assert.assertEquals(40, coordinator.getPotentialCustomers().size());
+        for (int i = 0; i < 40; i++) {
+            submit("customer" + i, 500, PaymentMethod.CASH);
+        }
+        Assert.assertEquals(40, coordinator.getPotentialCustomers().size());
+        Assert.assertEquals(40, getPotentialCustomerNames().size());
+
+        // The node answers the next request after the failed import
+        NodeClient client = new NodeClient(broken.getAddress());
+        try {
+            client.importPartition(0, new byte[] { 1, 2, 3 });
+            Assert.fail("The session is not valid");
+        } catch (IOException e) {
+            // Expected
+        }
+        Assert.assertTrue(client.getPotentialCustomers().isEmpty());
+        client.close();
+    }
+
+    /**
+     * Stopping a node closes the connections of its clients
+     */
+    @Test
+    public void testStop() throws Exception {
+        RuleNode node = nodes.get(0);
+        NodeClient client = new NodeClient(node.getAddress());
+        client.getPotentialCustomers();
+        node.stop();
+        try {
+            client.getPotentialCustomers();
+            Assert.fail("The node was stopped");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            client.close();
+        }
+    }
+
+    private RuleNode startNode() throws Exception {
+        return startNode(kbase);
+    }
+
+    private RuleNode startNode(KieBase kbase) throws Exception {
+        RuleNode node = new RuleNode(kbase);
+        node.start();
+        nodes.add(node);
+        return node;
+    }
+
+    private Purchase submit(String customerName, double subtotal, PaymentMethod paymentMethod) throws Exception {
+        Purchase purchase = new Purchase(customerName, subtotal, paymentMethod);
+        coordinator.submit(purchase);
+        return purchase;
+    }
+
+    private Set<String> getPotentialCustomerNames() throws Exception {
+        Set<String> names = new HashSet<String>();
+        for (PotentialCustomer potentialCustomer : coordinator.getPotentialCustomers()) {
+            names.add(potentialCustomer.getCustomerName());
+        }
+        return names;
+    }
+
+    private void assertBalanced(int nodeCount) {
+        int share = (PARTITION_COUNT + nodeCount - 1) / nodeCount;
+        int total = 0;
+        Assert.assertEquals(nodeCount, coordinator.getPartitionCounts().size());
+        for (Integer count : coordinator.getPartitionCounts().values()) {
+            Assert.assertTrue(count.intValue() <= share);
+            total += count.intValue();
+        }
+        Assert.assertEquals(PARTITION_COUNT, total);
+    }
+}
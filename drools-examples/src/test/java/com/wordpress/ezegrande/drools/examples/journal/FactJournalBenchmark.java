@@ -0,0 +1,98 @@
+package com.wordpress.ezegrande.drools.examples.journal;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Benchmark of the {@link FactJournal}. It is not a test case, run it from its
+ * main method. For each batch size it measures:
+ * <ul>
+ * <li>Journaled inserts per second into a session with the 'discount.drl' rules
+ * <li>Replayed operations per second into a new session
+ * </ul>
+ *
+ * @author ezegrande
+ */
+public class FactJournalBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(FactJournalBenchmark.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        // Batch size 1 syncs every operation, so it is run with less operations
+        run(1, Math.min(operations, 2000));
+        run(100, operations);
+        run(1000, operations);
+        run(10000, operations);
+    }
+
+    private static void run(int batchSize, int operations) throws Exception {
+        File directory = File.createTempFile("journal-benchmark", "");
+        directory.delete();
+        JournalConfiguration configuration = new JournalConfiguration(directory);
+        configuration.setBatchSize(batchSize);
+        configuration.setSegmentSize(16L * 1024 * 1024);
+        try {
+            FactJournal journal = new FactJournal(configuration);
+            KieSession session = createSession();
+            long start = System.nanoTime();
+            try {
+                session.addEventListener(journal);
+                for (int i = 0; i < operations; i++) {
+                    session.insert(new Purchase("customer" + (i % 10000), i % 1000, PAYMENT_METHODS[i % 3]));
+                }
+                journal.commit();
+            } finally {
+                TestUtil.dispose(session);
+                journal.close();
+            }
+            long journalNanos = System.nanoTime() - start;
+
+            KieSession replayed = createSession();
+            start = System.nanoTime();
+            try {
+                FactJournal.replay(directory, replayed);
+            } finally {
+                TestUtil.dispose(replayed);
+            }
+            long replayNanos = System.nanoTime() - start;
+
+            logger.info("Batch size: " + batchSize + " | Operations: " + operations + " | Commits: "
+                    + journal.getCommitCount() + " | Journaled: " + perSecond(operations, journalNanos)
+                    + " ops/s | Replayed: " + perSecond(operations, replayNanos) + " ops/s");
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static KieSession createSession() {
+        KieSession session = TestUtil.createKieSession(DISCOUNT_DRL);
+        session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        return session;
+    }
+
+    private static long perSecond(int operations, long nanos) {
+        return operations * 1000000000L / Math.max(nanos, 1);
+    }
+
+    private static void delete(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,356 @@
+package com.wordpress.ezegrande.drools.examples.journal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+
+import junit.framework.Assert;
+
+import org.drools.core.ClassObjectFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.checkpoint.FactOperation;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link FactJournal}, using the same rules than the
+ * AllRulesTestCase ('discount.drl' and 'potentialCustomer02.drl').
+ *
+ * @author ezegrande
+ */
+public class FactJournalTestCase {
+    private Logger logger = LoggerFactory.getLogger(FactJournalTestCase.class);
+
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Inserts, updates and deletes purchases in a journaled session, and then
+     * replays the journal into a new session. The Potential Customers inserted
+     * by the rules are not journaled, they are inferred again after the replay.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        FactJournal journal = new FactJournal(new JournalConfiguration(directory));
+        KieSession session = createSession();
+        try {
+            session.addEventListener(journal);
+            session.insert(new Purchase("john", 350, PaymentMethod.CASH));
+            Purchase mary = new Purchase("mary", 250, PaymentMethod.CASH);
+            FactHandle maryFactHandle = session.insert(mary);
+            FactHandle george = session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+            session.fireAllRules();
+
+            mary.setSubtotal(450);
+            session.update(maryFactHandle, mary);
+            session.delete(george);
+            session.fireAllRules();
+            Assert.assertEquals(2, session.getFactHandles(new ClassObjectFilter(PotentialCustomer.class)).size());
+        } finally {
+            TestUtil.dispose(session);
+            journal.close();
+        }
+        Assert.assertEquals(5, journal.getAppendCount());
+
+        KieSession replayed = createSession();
+        try {
+            Assert.assertEquals(5, FactJournal.replay(directory, replayed));
+            replayed.fireAllRules();
+
+            Collection<?> purchases = replayed.getObjects(new ClassObjectFilter(Purchase.class));
+            Assert.assertEquals(2, purchases.size());
+            Collection<?> potentialCustomers = replayed.getObjects(new ClassObjectFilter(PotentialCustomer.class));
+            Assert.assertEquals(2, potentialCustomers.size());
+        } finally {
+            TestUtil.dispose(replayed);
+        }
+    }
+
+    /**
+     * Operations are synced to disk in batches
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        JournalConfiguration configuration = new JournalConfiguration(directory);
+        configuration.setBatchSize(100);
+        configuration.setSyncIntervalMillis(0);
+        FactJournal journal = new FactJournal(configuration);
+        try {
+            for (int i = 0; i < 250; i++) {
+                journal.append(new FactOperation(FactOperation.Type.INSERT, i, new Purchase("john", i,
+                        PaymentMethod.CASH)));
+            }
+            Assert.assertEquals(2, journal.getCommitCount());
+            journal.commit();
+            Assert.assertEquals(3, journal.getCommitCount());
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * The journal switches to a new segment when the current one is full, and
+     * all the segments are replayed in order
+     */
+    @Test
+    public void testSegmentRotation() throws Exception {
+        JournalConfiguration configuration = new JournalConfiguration(directory);
+        configuration.setBatchSize(10);
+        configuration.setSegmentSize(1024);
+        FactJournal journal = new FactJournal(configuration);
+        try {
+            for (int i = 0; i < 200; i++) {
+                journal.append(new FactOperation(FactOperation.Type.INSERT, i, new Purchase("customer" + i, i,
+                        PaymentMethod.DEBIT)));
+            }
+        } finally {
+            journal.close();
+        }
+        Assert.assertTrue(directory.listFiles().length > 1);
+
+        KieSession replayed = createSession();
+        try {
+            Assert.assertEquals(200, FactJournal.replay(directory, replayed));
+            Assert.assertEquals(200, replayed.getFactCount());
+        } finally {
+            TestUtil.dispose(replayed);
+        }
+    }
+
+    /**
+     * A record partially written during a crash is ignored by the replay
+     */
+    @Test
+    public void testPartialRecord() throws Exception {
+        FactJournal journal = new FactJournal(new JournalConfiguration(directory));
+        try {
+            for (int i = 0; i < 10; i++) {
+                journal.append(new FactOperation(FactOperation.Type.INSERT, i, new Purchase("john", i,
+                        PaymentMethod.CASH)));
+            }
+        } finally {
+            journal.close();
+        }
+        FileOutputStream segment = new FileOutputStream(directory.listFiles()[0], true);
+        try {
+            segment.write(new byte[] { 0, 0, 0, 40, 1, 2 });
+        } finally {
+            segment.close();
+        }
+
+        KieSession replayed = createSession();
+        try {
+            Assert.assertEquals(10, FactJournal.replay(directory, replayed));
+        } finally {
+            TestUtil.dispose(replayed);
+        }
+    }
+
+    /**
+     * A record whose length is negative, too big or beyond the end of the
+     * segment stops the replay, without reading its payload
+     */
+    @Test
+    public void testInvalidRecordLength() throws Exception {
+        byte[][] headers = { { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0 },
+                { 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0 }, { 0, 0x10, 0, 0, 0, 0, 0, 0, 1, 2, 3 } };
+        for (byte[] header : headers) {
+            FactJournal journal = new FactJournal(new JournalConfiguration(directory));
+            try {
+                for (int i = 0; i < 10; i++) {
+                    journal.append(new FactOperation(FactOperation.Type.INSERT, i, new Purchase("john", i,
+                            PaymentMethod.CASH)));
+                }
+            } finally {
+                journal.close();
+            }
+            FileOutputStream segment = new FileOutputStream(directory.listFiles()[0], true);
+            try {
+                segment.write(header);
+            } finally {
+                segment.close();
+            }
+
+            KieSession replayed = createSession();
+            try {
+                Assert.assertEquals(10, FactJournal.replay(directory, replayed));
+            } finally {
+                TestUtil.dispose(replayed);
+            }
+            deleteDirectory();
+            createDirectory();
+        }
+    }
+
+    /**
+     * A zero-filled tail (e.g. a preallocated page) is not read as an empty
+     * record, it ends the replay of the last segment
+     */
+    @Test
+    public void testZeroFilledTail() throws Exception {
+        FactJournal journal = new FactJournal(new JournalConfiguration(directory));
+        try {
+            for (int i = 0; i < 10; i++) {
+                journal.append(new FactOperation(FactOperation.Type.INSERT, i, new Purchase("john", i,
+                        PaymentMethod.CASH)));
+            }
+        } finally {
+            journal.close();
+        }
+        FileOutputStream segment = new FileOutputStream(directory.listFiles()[0], true);
+        try {
+            segment.write(new byte[4096]);
+        } finally {
+            segment.close();
+        }
+
+        KieSession replayed = createSession();
+        try {
+            Assert.assertEquals(10, FactJournal.replay(directory, replayed));
+        } finally {
+            TestUtil.dispose(replayed);
+        }
+    }
+
+    /**
+     * A corrupted record in a segment that is not the last one fails the
+     * replay, instead of skipping the following segments
+     */
+    @Test
+    public void testCorruptedClosedSegment() throws Exception {
+        JournalConfiguration configuration = new JournalConfiguration(directory);
+        configuration.setBatchSize(10);
+        configuration.setSegmentSize(1024);
+        FactJournal journal = new FactJournal(configuration);
+        try {
+            for (int i = 0; i < 200; i++) {
+                journal.append(new FactOperation(FactOperation.Type.INSERT, i, new Purchase("customer" + i, i,
+                        PaymentMethod.DEBIT)));
+            }
+        } finally {
+            journal.close();
+        }
+        RandomAccessFile first = new RandomAccessFile(new File(directory, "journal-1.log"), "rw");
+        try {
+            // The last byte of the first record
+            long position = first.readInt() + 7;
+            first.seek(position);
+            int last = first.read();
+            first.seek(position);
+            first.write(last ^ 0xFF);
+        } finally {
+            first.close();
+        }
+
+        KieSession replayed = createSession();
+        try {
+            FactJournal.replay(directory, replayed);
+            Assert.fail("The first segment is corrupted");
+        } catch (IOException e) {
+            logger.info("Expected error: " + e.getMessage());
+        } finally {
+            TestUtil.dispose(replayed);
+        }
+    }
+
+    /**
+     * A journal opened on the segments of a previous session rejects new
+     * operations until they are replayed, checkpointed and deleted, so the ids
+     * of the old and new FactHandles are never mixed
+     */
+    @Test
+    public void testRecovering() throws Exception {
+        FactJournal journal = new FactJournal(new JournalConfiguration(directory));
+        try {
+            for (int i = 0; i < 10; i++) {
+                journal.append(new FactOperation(FactOperation.Type.INSERT, i, new Purchase("john", i,
+                        PaymentMethod.CASH)));
+            }
+        } finally {
+            journal.close();
+        }
+
+        journal = new FactJournal(new JournalConfiguration(directory));
+        KieSession replayed = createSession();
+        try {
+            Assert.assertTrue(journal.isRecovering());
+            try {
+                journal.append(new FactOperation(FactOperation.Type.DELETE, 1, null));
+                Assert.fail("The journal has segments of a previous session");
+            } catch (IllegalStateException e) {
+                logger.info("Expected error: " + e.getMessage());
+            }
+            Assert.assertEquals(10, FactJournal.replay(directory, replayed));
+            // Here the replayed session would be checkpointed
+            journal.deleteClosedSegments();
+            Assert.assertFalse(journal.isRecovering());
+
+            replayed.addEventListener(journal);
+            replayed.insert(new Purchase("mary", 100, PaymentMethod.DEBIT));
+        } finally {
+            TestUtil.dispose(replayed);
+            journal.close();
+        }
+        Assert.assertEquals(1, directory.listFiles().length);
+
+        KieSession restored = createSession();
+        try {
+            Assert.assertEquals(1, FactJournal.replay(directory, restored));
+        } finally {
+            TestUtil.dispose(restored);
+        }
+    }
+
+    /**
+     * A closed journal rejects new operations
+     */
+    @Test
+    public void testAppendAfterClose() throws Exception {
+        FactJournal journal = new FactJournal(new JournalConfiguration(directory));
+        journal.close();
+        try {
+            journal.append(new FactOperation(FactOperation.Type.DELETE, 1, null));
+            Assert.fail("The journal is closed");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        // Nothing to commit
+        journal.commit();
+    }
+
+    private KieSession createSession() {
+        KieSession session = TestUtil.createKieSession(POTENTIAL_CUSTOMER_DRL, DISCOUNT_DRL);
+        session.setGlobal("logger", logger);
+        session.setGlobal("emailService", EmailService.getInstance());
+        return session;
+    }
+}
@@ -0,0 +1,134 @@
+package com.wordpress.ezegrande.drools.examples.leak;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.checkpoint.SessionCheckpointer;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Tests cases for the {@link TrackedSessionFactory}, with the rules of
+ * 'discount.drl'
+ *
+ * @author ezegrande
+ */
+public class TrackedSessionFactoryTestCase {
+    private Logger logger = LoggerFactory.getLogger(TrackedSessionFactoryTestCase.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+
+    private KieBase kbase;
+    private TrackedSessionFactory factory;
+
+    @Before
+    public void setUp() {
+        kbase = TestUtil.createKieBase(DISCOUNT_DRL);
+        factory = new TrackedSessionFactory(kbase);
+        factory.setStackSampleRate(1);
+    }
+
+    /**
+     * A tracked session works as the session, and it is not a leak once
+     * disposed
+     */
+    @Test
+    public void testDisposedSession() throws InterruptedException {
+        KieSession session = factory.newKieSession();
+        session.setGlobal("logger", logger);
+        Purchase purchase = new Purchase("george", 500, PaymentMethod.CREDIT);
+        session.insert(purchase);
+        Assert.assertEquals(1, session.fireAllRules());
+        Assert.assertEquals(0.1, purchase.getDiscount());
+        Assert.assertEquals(1, factory.getLiveSessions());
+
+        TestUtil.dispose(session);
+        session = null;
+        Assert.assertEquals(0, factory.getLiveSessions());
+        Assert.assertEquals(1, factory.getDisposedSessions());
+        Assert.assertEquals(0, collectLeaks(1));
+        Assert.assertEquals(0, kbase.getKieSessions().size());
+    }
+
+    /**
+     * A session dropped without being disposed is reported, and disposed if
+     * auto dispose is enabled
+     */
+    @Test
+    public void testLeakedSession() throws InterruptedException {
+        factory.setAutoDispose(true);
+        leakSession();
+        Assert.assertEquals(1, kbase.getKieSessions().size());
+
+        Assert.assertEquals(1, collectLeaks(50));
+        Assert.assertEquals(1, factory.getLeakedSessions());
+        Assert.assertEquals(0, factory.getLiveSessions());
+        Assert.assertEquals(0, kbase.getKieSessions().size());
+    }
+
+    /**
+     * The marshaller of the checkpoints casts the session to the classes of
+     * drools-core, so it needs the real session instead of the tracked one
+     */
+    @Test
+    public void testUnwrap() throws Exception {
+        File directory = File.createTempFile("checkpoints", "");
+        directory.delete();
+        SessionCheckpointer checkpointer = new SessionCheckpointer(kbase, directory);
+        KieSession session = factory.newKieSession();
+        try {
+            session.setGlobal("logger", logger);
+            session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+            session.fireAllRules();
+            try {
+                checkpointer.checkpoint(session);
+                Assert.fail("The tracked session can not be marshalled");
+            } catch (ClassCastException e) {
+                logger.info("Expected error: " + e.getMessage());
+            }
+
+            KieSession real = TrackedSessionFactory.unwrap(session);
+            Assert.assertNotSame(session, real);
+            Assert.assertSame(real, TrackedSessionFactory.unwrap(real));
+            checkpointer.checkpoint(real);
+            KieSession restored = checkpointer.restore();
+            Assert.assertEquals(1, restored.getFactCount());
+            restored.dispose();
+        } finally {
+            TestUtil.dispose(session);
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+        Assert.assertEquals(0, factory.getLiveSessions());
+        Assert.assertEquals(1, factory.getDisposedSessions());
+    }
+
+    private void leakSession() {
+        KieSession session = factory.newKieSession();
+        session.setGlobal("logger", logger);
+        session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+        session.fireAllRules();
+        // Not disposed
+    }
+
+    private int collectLeaks(int attempts) throws InterruptedException {
+        int leaks = 0;
+        for (int i = 0; i < attempts && leaks == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+            leaks = factory.checkLeaks();
+        }
+        return leaks;
+    }
+}
@@ -0,0 +1,104 @@
+package com.wordpress.ezegrande.drools.examples.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.kie.api.KieBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Soak test of the purchase rules ('discount.drl' and
+ * 'potentialCustomer02.drl') with synthetic load, in STATEFUL and STATELESS
+ * mode. It is not a test case, run it from its main method, for example
+ * before and after upgrading Drools. Each run writes its report
+ * (&lt;run&gt;.properties) and samples (&lt;run&gt;.csv) to the output
+ * directory, and then all the reports of the directory are compared: each
+ * run against the oldest one with the same configuration.
+ *
+ * Arguments: minutes per mode (default 60), output directory (default
+ * target/soak), customers (default 100000), target rate in purchases per
+ * second (default 0, as fast as possible) and batch size (default 100).
+ *
+ * @author ezegrande
+ */
+public class PurchaseSoakBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(PurchaseSoakBenchmark.class);
+
+    public static void main(String[] args) throws Exception {
+        double minutes = args.length > 0 ? Double.parseDouble(args[0]) : 60;
+        File dir = new File(args.length > 1 ? args[1] : "target/soak");
+        int customers = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        int rate = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        // The emails are not logged, so logging is not measured
+        org.apache.log4j.Logger.getLogger(EmailService.class).setLevel(Level.WARN);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        KieBase kbase = TestUtil.createKieBase(SoakDriverTestCase.DISCOUNT_DRL,
+                SoakDriverTestCase.POTENTIAL_CUSTOMER_DRL);
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        for (SoakDriver.Mode mode : SoakDriver.Mode.values()) {
+            SoakDriver driver = new SoakDriver(kbase, new PurchaseGenerator(1, customers), mode);
+            driver.setGlobal("logger", NOPLogger.NOP_LOGGER);
+            driver.setGlobal("emailService", EmailService.getInstance());
+            driver.setTargetRate(rate);
+            driver.setBatchSize(batchSize);
+            SoakReport report = driver.run(timestamp + "-" + mode, (long) (minutes * 60000));
+            write(dir, report);
+        }
+        logger.info("Comparison:\n" + SoakReport.compare(readAll(dir)));
+    }
+
+    private static void write(File dir, SoakReport report) throws IOException {
+        OutputStream out = new FileOutputStream(new File(dir, report.getName() + ".properties"));
+        try {
+            report.store(out);
+        } finally {
+            out.close();
+        }
+        Writer csv = new FileWriter(new File(dir, report.getName() + ".csv"));
+        try {
+            report.writeSamples(csv);
+        } finally {
+            csv.close();
+        }
+    }
+
+    /**
+     * @return the reports of the directory, sorted by name (the oldest first)
+     */
+    private static List<SoakReport> readAll(File dir) throws IOException {
+        String[] names = dir.list();
+        Arrays.sort(names);
+        List<SoakReport> reports = new ArrayList<SoakReport>();
+        for (String name : names) {
+            if (name.endsWith(".properties")) {
+                InputStream in = new FileInputStream(new File(dir, name));
+                try {
+                    reports.add(SoakReport.load(in));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return reports;
+    }
+}
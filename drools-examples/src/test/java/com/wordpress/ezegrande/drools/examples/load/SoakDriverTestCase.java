@@ -0,0 +1,137 @@
+package com.wordpress.ezegrande.drools.examples.load;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link PurchaseGenerator} and the {@link SoakDriver},
+ * with short runs of the rules of 'discount.drl' and
+ * 'potentialCustomer02.drl'
+ *
+ * @author ezegrande
+ */
+public class SoakDriverTestCase {
+    private Logger logger = LoggerFactory.getLogger(SoakDriverTestCase.class);
+
+    static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+
+    /**
+     * The generated stream depends only on the seed and the configuration
+     */
+    @Test
+    public void testGenerator() {
+        PurchaseGenerator generator = new PurchaseGenerator(42, 10);
+        generator.setPaymentMix(0, 1, 3);
+        generator.setSubtotals(SubtotalDistribution.uniform(100, 200));
+        Purchase[] purchases = generator.next(1000);
+
+        Set<String> customers = new HashSet<String>();
+        int credit = 0;
+        for (Purchase purchase : purchases) {
+            customers.add(purchase.getCustomerName());
+            Assert.assertTrue(purchase.getPaymentMethod() != PaymentMethod.CASH);
+            Assert.assertTrue(purchase.getSubtotal() >= 100 && purchase.getSubtotal() <= 200);
+            if (purchase.getPaymentMethod() == PaymentMethod.CREDIT) {
+                credit++;
+            }
+        }
+        Assert.assertEquals(10, customers.size());
+        Assert.assertTrue("Credit purchases: " + credit, credit > 700 && credit < 800);
+
+        PurchaseGenerator same = new PurchaseGenerator(42, 10);
+        same.setPaymentMix(0, 1, 3);
+        same.setSubtotals(SubtotalDistribution.uniform(100, 200));
+        Purchase purchase = same.next();
+        Assert.assertEquals(purchases[0].getCustomerName(), purchase.getCustomerName());
+        Assert.assertEquals(purchases[0].getSubtotal(), purchase.getSubtotal());
+    }
+
+    /**
+     * The configuration used to pick the baselines includes the rules and the
+     * payment mix
+     */
+    @Test
+    public void testConfiguration() {
+        KieBase kbase = TestUtil.createKieBase(DISCOUNT_DRL, POTENTIAL_CUSTOMER_DRL);
+        PurchaseGenerator generator = new PurchaseGenerator(7, 1000);
+        String configuration = new SoakDriver(kbase, generator, SoakDriver.Mode.STATELESS).getConfiguration();
+        Assert.assertTrue(configuration, configuration.contains("CASH 0.333 / DEBIT 0.333 / CREDIT 0.333"));
+        Assert.assertEquals(configuration, new SoakDriver(TestUtil.createKieBase(DISCOUNT_DRL,
+                POTENTIAL_CUSTOMER_DRL), new PurchaseGenerator(7, 1000), SoakDriver.Mode.STATELESS)
+                .getConfiguration());
+
+        Assert.assertFalse(configuration.equals(new SoakDriver(TestUtil.createKieBase(DISCOUNT_DRL), generator,
+                SoakDriver.Mode.STATELESS).getConfiguration()));
+        generator.setPaymentMix(1, 0, 1);
+        Assert.assertTrue(generator.getPaymentMix(), generator.getPaymentMix().startsWith("CASH 0.5 / DEBIT 0.0"));
+        Assert.assertFalse(configuration.equals(new SoakDriver(kbase, generator, SoakDriver.Mode.STATELESS)
+                .getConfiguration()));
+    }
+
+    /**
+     * Short runs in both modes are sampled, and their reports are stored,
+     * loaded and compared
+     */
+    @Test
+    public void testRunAndCompare() throws Exception {
+        KieBase kbase = TestUtil.createKieBase(DISCOUNT_DRL, POTENTIAL_CUSTOMER_DRL);
+        List<SoakReport> reports = new ArrayList<SoakReport>();
+        for (SoakDriver.Mode mode : SoakDriver.Mode.values()) {
+            SoakDriver driver = new SoakDriver(kbase, new PurchaseGenerator(7, 1000), mode);
+            driver.setGlobal("logger", NOPLogger.NOP_LOGGER);
+            driver.setGlobal("emailService", EmailService.getInstance());
+            driver.setWindow(500);
+            driver.setTargetRate(20000);
+            driver.setSampleIntervalMillis(250);
+            SoakReport report = driver.run(mode.name(), 1000);
+
+            Assert.assertTrue(report.getPurchases() > 0);
+            Assert.assertTrue("Throughput: " + report.getThroughput(), report.getThroughput() <= 22000);
+            Assert.assertTrue(report.getSamples().size() >= 3);
+            Assert.assertTrue(report.getBatchP999Micros() >= report.getBatchP50Micros());
+            if (mode == SoakDriver.Mode.STATEFUL) {
+                // Firing the rules is part of the batch
+                Assert.assertTrue(report.getFireP50Micros() > 0);
+                Assert.assertTrue(report.getFireP999Micros() >= report.getFireP50Micros());
+                Assert.assertTrue(report.getFireP999Micros() <= report.getBatchMaxMicros());
+            } else {
+                Assert.assertEquals(0, report.getFireP50Micros());
+            }
+            StringWriter csv = new StringWriter();
+            report.writeSamples(csv);
+            Assert.assertTrue(csv.toString().startsWith(SoakSample.CSV_HEADER + "\n"));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            report.store(out);
+            SoakReport loaded = SoakReport.load(new ByteArrayInputStream(out.toByteArray()));
+            Assert.assertEquals(report.getPurchases(), loaded.getPurchases());
+            Assert.assertEquals(report.getBatchP99Micros(), loaded.getBatchP99Micros());
+            Assert.assertEquals(report.getFireP99Micros(), loaded.getFireP99Micros());
+            Assert.assertEquals(report.getConfiguration(), loaded.getConfiguration());
+            reports.add(loaded);
+        }
+        String comparison = SoakReport.compare(reports);
+        logger.info("Comparison:\n" + comparison);
+        Assert.assertTrue(comparison.contains("STATEFUL"));
+        Assert.assertTrue(comparison.contains("STATELESS"));
+    }
+}
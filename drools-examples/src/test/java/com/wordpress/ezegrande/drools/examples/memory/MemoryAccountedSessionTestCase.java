@@ -0,0 +1,175 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.metrics.MetricsRegistry;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link MemoryAccountedSession}, with the rules of
+ * 'discount.drl' and 'potentialCustomer02.drl'
+ *
+ * @author ezegrande
+ */
+public class MemoryAccountedSessionTestCase {
+    private Logger logger = LoggerFactory.getLogger(MemoryAccountedSessionTestCase.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+
+    private static KieBase kbase;
+
+    private FactSizeEstimator estimator = new FactSizeEstimator();
+    private long purchaseBytes = estimator.estimate(new Purchase("john", 100, PaymentMethod.CREDIT));
+    private MemoryAccountedSession session;
+    private final AtomicInteger softLimitCalls = new AtomicInteger();
+    private final AtomicInteger hardLimitCalls = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        if (kbase == null) {
+            kbase = TestUtil.createKieBase(DISCOUNT_DRL, POTENTIAL_CUSTOMER_DRL);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (session != null) {
+            session.dispose();
+        }
+    }
+
+    /**
+     * The facts of the application and the ones inserted by the rules are
+     * accounted by type
+     */
+    @Test
+    public void testAccounting() {
+        createSession(new MemoryLimits(0, 0, HardLimitPolicy.REJECT));
+        Assert.assertEquals(40 + FactSizeEstimator.DEFAULT_ENGINE_OVERHEAD, purchaseBytes);
+        FactHandle george = session.insert(new Purchase("george", 500, PaymentMethod.CREDIT));
+        session.insert(new Purchase("peter", 100, PaymentMethod.DEBIT));
+        session.insert(new Purchase("john", 450, PaymentMethod.CASH));
+        session.fireAllRules();
+
+        TypeMemory purchases = session.getTypeMemory().get("Purchase");
+        Assert.assertEquals(3, purchases.getFacts());
+        Assert.assertEquals(3 * purchaseBytes, purchases.getTotalBytes());
+        Assert.assertEquals(3 * FactSizeEstimator.DEFAULT_ENGINE_OVERHEAD, purchases.getEngineBytes());
+        TypeMemory potentialCustomers = session.getTypeMemory().get("PotentialCustomer");
+        Assert.assertEquals(1, potentialCustomers.getFacts());
+        long potentialCustomerBytes = estimator.estimate(new PotentialCustomer("john", 360));
+        Assert.assertEquals(3 * purchaseBytes + potentialCustomerBytes, session.getUsedBytes());
+
+        session.getSession().delete(george);
+        Assert.assertEquals(2, session.getTypeMemory().get("Purchase").getFacts());
+        Assert.assertEquals(2 * purchaseBytes + potentialCustomerBytes, session.getUsedBytes());
+
+        MetricsRegistry registry = new MetricsRegistry();
+        session.registerMetrics(registry, "session.test.memory");
+        Assert.assertEquals(Long.valueOf(session.getUsedBytes()), registry.snapshot().get("session.test.memory.bytes"));
+    }
+
+    /**
+     * The inserts over the hard limit are rejected, and the soft limit is
+     * notified once
+     */
+    @Test
+    public void testRejectOverHardLimit() {
+        createSession(new MemoryLimits(2 * purchaseBytes, 3 * purchaseBytes, HardLimitPolicy.REJECT));
+        for (int i = 0; i < 3; i++) {
+            session.insert(new Purchase("customer" + i, 100, PaymentMethod.CREDIT));
+        }
+        try {
+            session.insert(new Purchase("customer3", 100, PaymentMethod.CREDIT));
+            Assert.fail("The hard limit was exceeded");
+        } catch (IllegalStateException e) {
+            logger.info("Expected error: " + e.getMessage());
+        }
+        Assert.assertEquals(3, session.getSession().getFactCount());
+        Assert.assertEquals(1, session.getRejectedInserts());
+        Assert.assertEquals(1, hardLimitCalls.get());
+        Assert.assertEquals(1, softLimitCalls.get());
+        Assert.assertEquals(1, session.getSoftLimitEvents());
+    }
+
+    /**
+     * The oldest facts are evicted to make room for the new ones, and for the
+     * facts inserted by the rules
+     */
+    @Test
+    public void testEvictOldest() {
+        createSession(new MemoryLimits(0, 3 * purchaseBytes, HardLimitPolicy.EVICT_OLDEST));
+        FactHandle first = session.insert(new Purchase("customer0", 100, PaymentMethod.CREDIT));
+        for (int i = 1; i < 5; i++) {
+            session.insert(new Purchase("customer" + i, 100, PaymentMethod.CREDIT));
+        }
+        Assert.assertEquals(3, session.getSession().getFactCount());
+        Assert.assertEquals(2, session.getEvictedFacts());
+        Assert.assertNull(session.getSession().getObject(first));
+        Assert.assertEquals(0, hardLimitCalls.get());
+
+        // The rules insert a PotentialCustomer over the limit
+        session.insert(new Purchase("john", 450, PaymentMethod.CASH));
+        session.fireAllRules();
+        Assert.assertTrue(session.getUsedBytes() <= 3 * purchaseBytes);
+        Assert.assertEquals(1, session.getTypeMemory().get("PotentialCustomer").getFacts());
+        Assert.assertEquals(1, hardLimitCalls.get());
+    }
+
+    /**
+     * The facts inserted by the rules are not evicted, so the offer is not
+     * sent again to a Potential Customer
+     */
+    @Test
+    public void testEvictOnlyApplicationFacts() {
+        long potentialCustomerBytes = estimator.estimate(new PotentialCustomer("john", 360));
+        createSession(new MemoryLimits(0, 3 * purchaseBytes + potentialCustomerBytes, HardLimitPolicy.EVICT_OLDEST));
+        session.insert(new Purchase("john", 450, PaymentMethod.CASH));
+        // The discount, the PotentialCustomer and the offer
+        Assert.assertEquals(3, session.fireAllRules());
+        FactHandle john = session.insert(new Purchase("john", 400, PaymentMethod.CASH));
+        session.insert(new Purchase("customer0", 100, PaymentMethod.CREDIT));
+        Assert.assertEquals(2, session.fireAllRules());
+
+        // After the first Purchase of john, the oldest fact is the PotentialCustomer
+        for (int i = 1; i < 4; i++) {
+            session.insert(new Purchase("customer" + i, 100, PaymentMethod.CREDIT));
+            // Only the discount
+            Assert.assertEquals(1, session.fireAllRules());
+        }
+        Assert.assertEquals(1, session.getTypeMemory().get("PotentialCustomer").getFacts());
+        Assert.assertEquals(3, session.getTypeMemory().get("Purchase").getFacts());
+        Assert.assertNull(session.getSession().getObject(john));
+        Assert.assertEquals(3, session.getEvictedFacts());
+    }
+
+    private void createSession(MemoryLimits limits) {
+        session = new MemoryAccountedSession(kbase.newKieSession(), limits, estimator);
+        session.getSession().setGlobal("logger", logger);
+        session.getSession().setGlobal("emailService", EmailService.getInstance());
+        session.setListener(new MemoryLimitListener() {
+            public void softLimitExceeded(MemoryAccountedSession session) {
+                softLimitCalls.incrementAndGet();
+            }
+
+            public void hardLimitExceeded(MemoryAccountedSession session) {
+                hardLimitCalls.incrementAndGet();
+            }
+        });
+    }
+}
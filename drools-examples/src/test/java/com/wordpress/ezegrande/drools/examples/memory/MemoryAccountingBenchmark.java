@@ -0,0 +1,95 @@
+package com.wordpress.ezegrande.drools.examples.memory;
+
+import org.apache.log4j.Level;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.load.PurchaseGenerator;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Measures the real memory held by a session with the rules of 'discount.drl'
+ * and 'potentialCustomer02.drl', to calibrate the engine overhead of the
+ * {@link FactSizeEstimator}, and the cost of the accounting. It is not a test
+ * case, run it from its main method (with a fixed heap, e.g. -Xms2g -Xmx2g).
+ *
+ * The purchases are created before measuring, so the heap growth of the
+ * session is the engine memory of the facts (fact handles and node memories)
+ * plus the PotentialCustomers inserted by the rules.
+ *
+ * Arguments: purchases (default 200000) and customers (default 50000).
+ *
+ * @author ezegrande
+ */
+public class MemoryAccountingBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(MemoryAccountingBenchmark.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+
+    public static void main(String[] args) {
+        int purchases = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        // The emails are not logged, so logging is not measured
+        org.apache.log4j.Logger.getLogger(EmailService.class).setLevel(Level.WARN);
+        KieBase kbase = TestUtil.createKieBase(DISCOUNT_DRL, POTENTIAL_CUSTOMER_DRL);
+        Purchase[] input = new PurchaseGenerator(1, customers).next(purchases);
+        // Warm up
+        run(kbase, input, false, false);
+        run(kbase, input, true, false);
+
+        run(kbase, input, false, true);
+        run(kbase, input, true, true);
+    }
+
+    private static void run(KieBase kbase, Purchase[] input, boolean accounted, boolean log) {
+        long before = usedHeap();
+        KieSession session = kbase.newKieSession();
+        session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        session.setGlobal("emailService", EmailService.getInstance());
+        FactSizeEstimator estimator = new FactSizeEstimator();
+        MemoryAccountedSession accountedSession = accounted ? new MemoryAccountedSession(session, new MemoryLimits(
+                0, 0, HardLimitPolicy.REJECT), estimator) : null;
+        long start = System.nanoTime();
+        for (Purchase purchase : input) {
+            if (accounted) {
+                accountedSession.insert(purchase);
+            } else {
+                session.insert(purchase);
+            }
+        }
+        session.fireAllRules();
+        long nanos = System.nanoTime() - start;
+        long heap = usedHeap() - before;
+        long facts = session.getFactCount();
+        if (log) {
+            StringBuilder message = new StringBuilder(accounted ? "Accounted" : "Plain");
+            message.append(" | Facts: ").append(facts).append(" | Insert and fire: ").append(nanos / 1000000)
+                    .append(" ms | Heap growth: ").append(heap / 1024).append(" KB (").append(heap / facts)
+                    .append(" bytes per fact)");
+            if (accounted) {
+                long estimatedEngine = 0;
+                for (TypeMemory type : accountedSession.getTypeMemory().values()) {
+                    estimatedEngine += type.getEngineBytes();
+                    message.append(" | ").append(type);
+                }
+                message.append(" | Estimated engine bytes: ").append(estimatedEngine / 1024).append(" KB");
+            }
+            logger.info(message.toString());
+        }
+        session.dispose();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
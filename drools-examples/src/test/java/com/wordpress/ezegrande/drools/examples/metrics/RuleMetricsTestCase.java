@@ -0,0 +1,159 @@
+package com.wordpress.ezegrande.drools.examples.metrics;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Scanner;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.pack.RulePackRegistry;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link RuleMetrics}, with the rules of 'discount.drl'
+ * and 'potentialCustomer02.drl'
+ *
+ * @author ezegrande
+ */
+public class RuleMetricsTestCase {
+    private Logger logger = LoggerFactory.getLogger(RuleMetricsTestCase.class);
+
+    private static final String SIMPLE = "com.wordpress.ezegrande.drools.examples.simple";
+
+    private MBeanServer server;
+    private RuleMetrics metrics;
+
+    @Before
+    public void setUp() {
+        server = MBeanServerFactory.newMBeanServer();
+        metrics = new RuleMetrics("test", server);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.close();
+    }
+
+    /**
+     * The facts, fire latency and build time of a session are published in
+     * the registry and as MBeans, until the session is disposed
+     */
+    @Test
+    public void testSessionMetrics() throws Exception {
+        RulePackRegistry packs = new RulePackRegistry(metrics);
+        packs.register(SIMPLE, "com/wordpress/ezegrande/drools/examples/simple/discount.drl",
+                "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl");
+        MonitoredSession session = metrics.monitor(packs.getKieBase(SIMPLE).newKieSession(), "orders");
+        session.getSession().setGlobal("logger", logger);
+        session.getSession().setGlobal("emailService", EmailService.getInstance());
+        TestUtil.insertAll(session.getSession(), new Purchase("george", 500, PaymentMethod.CREDIT), new Purchase(
+                "peter", 100, PaymentMethod.DEBIT), new Purchase("john", 450, PaymentMethod.CASH));
+        Assert.assertEquals(5, session.fireAllRules());
+
+        Assert.assertEquals(3, session.getFactCount(Purchase.class));
+        Assert.assertEquals(1, session.getFactCount(PotentialCustomer.class));
+        Assert.assertEquals(1, session.getFireCount());
+        ObjectName sessionName = session.getObjectName();
+        Assert.assertEquals(4L, server.getAttribute(sessionName, "FactCount"));
+        Assert.assertEquals(1, server.getAttribute(new ObjectName(RuleMetrics.DOMAIN
+                + ":type=RuleMetrics,name=\"test\""), "LiveSessions"));
+        String text = metrics.getMetricsText();
+        logger.info("Metrics:\n" + text);
+        Assert.assertTrue(text.contains("session.orders.facts.Purchase 3\n"));
+        Assert.assertTrue(text.contains("session.orders.fire.count 1\n"));
+        Assert.assertTrue(text.contains("kiebase." + SIMPLE + ".build.count 1\n"));
+        Assert.assertTrue(text.contains("rules.fired 5\n"));
+
+        session.dispose();
+        Assert.assertFalse(server.isRegistered(sessionName));
+        Assert.assertEquals(0, metrics.getLiveSessions());
+        Assert.assertEquals(1, metrics.getDisposedSessions());
+        Assert.assertFalse(metrics.getMetricsText().contains("session.orders"));
+        Assert.assertTrue(metrics.getMetricsText().contains("sessions.fire.count 1\n"));
+    }
+
+    /**
+     * Disposing a session only removes its own metrics, not the ones of a
+     * session whose name starts with the same prefix
+     */
+    @Test
+    public void testSessionNamePrefix() {
+        MonitoredSession orders = metrics.monitor(TestUtil.createKieSession(
+                "com/wordpress/ezegrande/drools/examples/simple/discount.drl"), "orders");
+        MonitoredSession ordersEu = metrics.monitor(TestUtil.createKieSession(
+                "com/wordpress/ezegrande/drools/examples/simple/discount.drl"), "orders.eu");
+        try {
+            for (MonitoredSession session : new MonitoredSession[] { orders, ordersEu }) {
+                session.getSession().setGlobal("logger", logger);
+                session.getSession().insert(new Purchase("john", 100, PaymentMethod.CASH));
+                session.fireAllRules();
+            }
+            orders.dispose();
+            String text = metrics.getMetricsText();
+            Assert.assertFalse(text.contains("session.orders.facts.Purchase"));
+            Assert.assertFalse(text.contains("session.orders.fire.count"));
+            Assert.assertTrue(text.contains("session.orders.eu.facts.Purchase 1\n"));
+            Assert.assertTrue(text.contains("session.orders.eu.fire.count 1\n"));
+        } finally {
+            ordersEu.dispose();
+        }
+    }
+
+    /**
+     * The percentiles are estimated with the upper bound of their bucket
+     */
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(30000);
+        }
+        histogram.record(70000000);
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50, histogram.getPercentileMicros(50));
+        Assert.assertEquals(50, histogram.getPercentileMicros(99));
+        Assert.assertEquals(70000, histogram.getPercentileMicros(100));
+        Assert.assertEquals(70000, histogram.getMaxMicros());
+    }
+
+    /**
+     * The metrics are scraped from the local endpoint
+     */
+    @Test
+    public void testEndpoint() throws IOException {
+        MetricsEndpoint endpoint = new MetricsEndpoint(metrics.getRegistry(), 0);
+        try {
+            String json = read(new URL("http://127.0.0.1:" + endpoint.getPort() + "/metrics.json"));
+            Assert.assertEquals("{\"sessions.created\":0,\"sessions.disposed\":0,\"sessions.live\":0}", json);
+            String text = read(new URL("http://127.0.0.1:" + endpoint.getPort() + "/metrics"));
+            Assert.assertTrue(text.startsWith("sessions.created 0\n"));
+            try {
+                read(new URL("http://127.0.0.1:" + endpoint.getPort() + "/unknown"));
+                Assert.fail("Unknown path");
+            } catch (FileNotFoundException e) {
+                logger.info("Expected error: " + e.getMessage());
+            }
+        } finally {
+            endpoint.close();
+        }
+    }
+
+    private static String read(URL url) throws IOException {
+        return new Scanner(url.openStream(), "UTF-8").useDelimiter("\\A").next();
+    }
+}
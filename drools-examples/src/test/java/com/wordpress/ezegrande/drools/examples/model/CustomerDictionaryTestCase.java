@@ -0,0 +1,54 @@
+package com.wordpress.ezegrande.drools.examples.model;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests cases for the {@link CustomerDictionary}
+ *
+ * @author ezegrande
+ */
+public class CustomerDictionaryTestCase {
+
+    /**
+     * Names get sequential ids, and equal names share the id and the String
+     * instance
+     */
+    @Test
+    public void testIds() {
+        CustomerDictionary dictionary = new CustomerDictionary();
+        Assert.assertEquals(0, dictionary.getId("john"));
+        Assert.assertEquals(1, dictionary.getId("mary"));
+        Assert.assertEquals(0, dictionary.getId(new String("john")));
+        Assert.assertEquals(2, dictionary.size());
+        Assert.assertEquals("mary", dictionary.getName(1));
+        Assert.assertEquals(-1, dictionary.findId("george"));
+        Assert.assertSame(dictionary.getName(0), dictionary.canonicalize(new String("john")));
+
+        // The names array grows
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertEquals(i + 2, dictionary.getId("customer" + i));
+        }
+        Assert.assertEquals("customer4999", dictionary.getName(5001));
+    }
+
+    /**
+     * Purchases and Potential Customers of the same Customer have the same id
+     * in the shared dictionary
+     */
+    @Test
+    public void testSharedIds() {
+        Purchase purchase = new Purchase(new String("john"), 350, PaymentMethod.CASH);
+        PotentialCustomer potentialCustomer = new PotentialCustomer(new String("john"), 280);
+        Assert.assertEquals(purchase.getCustomerId(), potentialCustomer.getCustomerId());
+        Assert.assertSame(purchase.getCustomerName(), potentialCustomer.getCustomerName());
+        Assert.assertEquals(CustomerDictionary.getInstance().findId("john"), purchase.getCustomerId());
+
+        purchase.setCustomerName("mary");
+        Assert.assertEquals("mary", purchase.getCustomerName());
+        Assert.assertFalse(purchase.getCustomerId() == potentialCustomer.getCustomerId());
+
+        Assert.assertEquals(-1, new Purchase(null, 10, PaymentMethod.CASH).getCustomerId());
+    }
+}
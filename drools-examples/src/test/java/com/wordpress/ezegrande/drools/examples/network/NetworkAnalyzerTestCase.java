@@ -0,0 +1,107 @@
+package com.wordpress.ezegrande.drools.examples.network;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+
+/**
+ * Tests cases for the {@link NetworkAnalyzer}, with the rules of
+ * 'discount.drl' and 'potentialCustomer02.drl', and with rules written to
+ * show hashed alpha nodes and joins that are not indexed
+ *
+ * @author ezegrande
+ */
+public class NetworkAnalyzerTestCase {
+    private Logger logger = LoggerFactory.getLogger(NetworkAnalyzerTestCase.class);
+
+    private static final String SAMPLE_DRL = "package com.wordpress.ezegrande.drools.examples.network;\n"
+            + "import com.wordpress.ezegrande.drools.examples.model.Purchase;\n"
+            + "import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;\n"
+            + "rule \"Customer 1\" when Purchase(customerId == 1) then end\n"
+            + "rule \"Customer 2\" when Purchase(customerId == 2) then end\n"
+            + "rule \"Customer 3\" when Purchase(customerId == 3) then end\n"
+            + "rule \"Other customers\" when $p:Purchase(customerId == 1)"
+            + " PotentialCustomer(customerId != $p.customerId) then end\n"
+            + "rule \"Every pair\" when Purchase() PotentialCustomer() then end\n";
+
+    /**
+     * The Potential Customers are found by the index of the NotNode, but the
+     * payment methods are enums, so their alpha nodes are not hashed
+     */
+    @Test
+    public void testSimpleRules() {
+        NetworkReport report = NetworkAnalyzer.analyze(TestUtil.createKieBase(
+                "com/wordpress/ezegrande/drools/examples/simple/discount.drl",
+                "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl"));
+        logger.info("Simple rules:\n" + report.toText());
+
+        Assert.assertEquals(3, report.getAlphaNodeHashingThreshold());
+        Assert.assertEquals(Integer.valueOf(2), report.getNodeCounts().get("ObjectTypeNode"));
+        Assert.assertEquals(Integer.valueOf(6), report.getNodeCounts().get("RuleTerminalNode"));
+
+        NodeReport not = report.getNode("NotNode", "customerId == $p.customerId");
+        Assert.assertTrue(not.isIndexed());
+        Assert.assertEquals(1, not.getIndexedConstraints());
+        Assert.assertTrue(not.getWarnings().isEmpty());
+
+        // The CASH pattern is shared by the discount and the potential customer rules
+        NodeReport cash = report.getNode("AlphaNode", "paymentMethod == PaymentMethod.CASH");
+        Assert.assertEquals(2, cash.getSharingCount());
+        Assert.assertEquals(NodeReport.Hashing.NOT_HASHABLE, cash.getHashing());
+        Assert.assertEquals(1, cash.getWarnings().size());
+        Assert.assertEquals(1, report.getNode("ObjectTypeNode", "AbstractPurchase").getWarnings().size());
+
+        NodeReport creditLimit = report.getNode("AlphaNode", "creditLimit <= 500");
+        Assert.assertEquals(NodeReport.Hashing.NOT_HASHABLE, creditLimit.getHashing());
+        Assert.assertTrue(creditLimit.getWarnings().isEmpty());
+        Assert.assertEquals(4, report.getWarnings().size());
+    }
+
+    /**
+     * The equalities on an int field are hashed, the inequality can not index
+     * the join, and the join without constraints is a cartesian product
+     */
+    @Test
+    public void testHashingAndIndexing() {
+        NetworkReport report = NetworkAnalyzer.analyze(createKieBase(SAMPLE_DRL));
+        logger.info("Sample rules:\n" + report.toText());
+
+        List<NodeReport> alphas = report.getNodes("AlphaNode");
+        Assert.assertEquals(3, alphas.size());
+        for (NodeReport alpha : alphas) {
+            Assert.assertEquals(NodeReport.Hashing.HASHED, alpha.getHashing());
+        }
+        Assert.assertEquals(2, report.getNode("AlphaNode", "customerId == 1").getSharingCount());
+
+        NodeReport inequality = report.getNode("JoinNode", "customerId != $p.customerId");
+        Assert.assertFalse(inequality.isIndexed());
+        Assert.assertEquals(1, inequality.getWarnings().size());
+
+        NodeReport cartesian = report.getNode("JoinNode", "");
+        Assert.assertEquals(0, cartesian.getIndexedConstraints());
+        Assert.assertEquals(1, cartesian.getWarnings().size());
+        Assert.assertEquals(2, report.getWarnings().size());
+    }
+
+    private static KieBase createKieBase(String drl) {
+        KieServices ks = KieServices.Factory.get();
+        KieFileSystem kfs = ks.newKieFileSystem();
+        kfs.write("src/main/resources/com/wordpress/ezegrande/drools/examples/network/sample.drl", drl);
+        KieBuilder kbuilder = ks.newKieBuilder(kfs).buildAll();
+        if (kbuilder.getResults().hasMessages(Level.ERROR)) {
+            throw new IllegalArgumentException(kbuilder.getResults().toString());
+        }
+        return ks.newKieContainer(kbuilder.getKieModule().getReleaseId()).getKieBase();
+    }
+}
@@ -0,0 +1,163 @@
+package com.wordpress.ezegrande.drools.examples.offheap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.CustomerDictionary;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Benchmark of the {@link OffHeapPurchaseStore} against the Purchase POJOs.
+ * It is not a test case, run it from its main method. For each model it
+ * creates the Purchases, inserts them into a session with the 'discount.drl'
+ * rules and fires them, measuring:
+ * <ul>
+ * <li>Heap used by the Purchases, and by the Purchases plus the session. For
+ * the store, the Purchases are its flyweights, which are created when they are
+ * inserted
+ * <li>Number of garbage collections and the time spent in them
+ * <li>Time to bulk load the store from a file in its columnar format
+ * </ul>
+ *
+ * Arguments: purchases (default 10000000) and customers (default 1000000).
+ *
+ * @author ezegrande
+ */
+public class OffHeapPurchaseBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(OffHeapPurchaseBenchmark.class);
+
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    public static void main(String[] args) throws Exception {
+        int purchases = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        runPojos(purchases, customers);
+        runOffHeap(purchases, customers);
+    }
+
+    private static void runPojos(int purchases, int customers) {
+        long baseline = usedMemory();
+        long[] gc = gcStats();
+        long start = System.nanoTime();
+        List<Purchase> pojos = new ArrayList<Purchase>(purchases);
+        for (int i = 0; i < purchases; i++) {
+            pojos.add(new Purchase("customer" + (i % customers), i % 1000, PAYMENT_METHODS[i % 3]));
+        }
+        long createMillis = (System.nanoTime() - start) / 1000000;
+        long dataMemory = usedMemory() - baseline;
+
+        KieSession session = createSession();
+        try {
+            start = System.nanoTime();
+            for (Purchase purchase : pojos) {
+                session.insert(purchase);
+            }
+            session.fireAllRules();
+            long fireMillis = (System.nanoTime() - start) / 1000000;
+            log("POJOs", purchases, createMillis, fireMillis, dataMemory, usedMemory() - baseline, gc);
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    private static void runOffHeap(int purchases, int customers) throws Exception {
+        long baseline = usedMemory();
+        long[] gc = gcStats();
+        long start = System.nanoTime();
+        OffHeapPurchaseStore store = new OffHeapPurchaseStore(new CustomerDictionary(), purchases);
+        for (int i = 0; i < purchases; i++) {
+            store.add("customer" + (i % customers), i % 1000, PAYMENT_METHODS[i % 3]);
+        }
+        long createMillis = (System.nanoTime() - start) / 1000000;
+        // Measured with a flyweight per row, as the POJOs
+        PurchaseFlyweight[] flyweights = new PurchaseFlyweight[purchases];
+        for (int row = 0; row < purchases; row++) {
+            flyweights[row] = store.get(row);
+        }
+        long dataMemory = usedMemory() - baseline;
+
+        KieSession session = createSession();
+        try {
+            start = System.nanoTime();
+            for (PurchaseFlyweight flyweight : flyweights) {
+                session.insert(flyweight);
+            }
+            session.fireAllRules();
+            long fireMillis = (System.nanoTime() - start) / 1000000;
+            log("Off-heap", purchases, createMillis, fireMillis, dataMemory, usedMemory() - baseline, gc);
+        } finally {
+            TestUtil.dispose(session);
+        }
+
+        File file = File.createTempFile("purchases", ".columns");
+        try {
+            FileChannel out = new FileOutputStream(file).getChannel();
+            try {
+                store.writeTo(out);
+            } finally {
+                out.close();
+            }
+            OffHeapPurchaseStore loaded = new OffHeapPurchaseStore(new CustomerDictionary(), purchases);
+            start = System.nanoTime();
+            FileChannel in = new FileInputStream(file).getChannel();
+            try {
+                loaded.load(in);
+            } finally {
+                in.close();
+            }
+            logger.info("Bulk load: " + loaded.size() + " purchases (" + file.length() / 1024 / 1024 + " MB) in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static KieSession createSession() {
+        KieSession session = TestUtil.createKieSession(DISCOUNT_DRL);
+        session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        return session;
+    }
+
+    private static void log(String model, int purchases, long createMillis, long fireMillis, long dataMemory,
+            long sessionMemory, long[] gcBefore) {
+        long[] gcAfter = gcStats();
+        logger.info(model + " | Purchases: " + purchases + " | Create: " + createMillis + " ms | Insert and fire: "
+                + fireMillis + " ms | Heap (purchases): " + dataMemory / 1024 / 1024
+                + " MB | Heap (purchases and session): " + sessionMemory / 1024 / 1024 + " MB | GCs: "
+                + (gcAfter[0] - gcBefore[0]) + " | GC time: " + (gcAfter[1] - gcBefore[1]) + " ms");
+    }
+
+    /**
+     * @return the number of collections and the time spent in them
+     */
+    private static long[] gcStats() {
+        long[] stats = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            stats[0] += Math.max(gc.getCollectionCount(), 0);
+            stats[1] += Math.max(gc.getCollectionTime(), 0);
+        }
+        return stats;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,122 @@
+package com.wordpress.ezegrande.drools.examples.offheap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.channels.Channels;
+import java.util.Collection;
+
+import junit.framework.Assert;
+
+import org.drools.core.ClassObjectFilter;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.CustomerDictionary;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link OffHeapPurchaseStore}, using the same rules than
+ * the AllRulesTestCase ('discount.drl' and 'potentialCustomer02.drl').
+ *
+ * @author ezegrande
+ */
+public class OffHeapPurchaseStoreTestCase {
+    private Logger logger = LoggerFactory.getLogger(OffHeapPurchaseStoreTestCase.class);
+
+    private static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    private static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+
+    /**
+     * The rules evaluate the flyweights as any other Purchase, and the
+     * discounts are written in the store
+     */
+    @Test
+    public void testRulesWithFlyweights() {
+        // A small capacity, so the columns grow
+        OffHeapPurchaseStore store = new OffHeapPurchaseStore(new CustomerDictionary(), 2);
+        int john1 = store.add("john", 350, PaymentMethod.CASH);
+        int mary = store.add("mary", 250, PaymentMethod.CASH);
+        int john2 = store.add("john", 400, PaymentMethod.CASH);
+        int george = store.add("george", 500, PaymentMethod.CREDIT);
+        int john3 = store.add("john", 500, PaymentMethod.DEBIT);
+        Assert.assertEquals(5, store.size());
+        Assert.assertEquals(3, store.getDictionary().size());
+
+        KieSession session = TestUtil.createKieSession(POTENTIAL_CUSTOMER_DRL, DISCOUNT_DRL);
+        try {
+            session.setGlobal("logger", logger);
+            session.setGlobal("emailService", EmailService.getInstance());
+            store.insertAll(session);
+            session.fireAllRules();
+
+            Assert.assertEquals(0d, store.getDiscount(john1));
+            Assert.assertEquals(0d, store.getDiscount(mary));
+            Assert.assertEquals(0d, store.getDiscount(john2));
+            Assert.assertEquals(0.1, store.getDiscount(george));
+            Assert.assertEquals(0.05, store.getDiscount(john3));
+            Assert.assertEquals(450d, store.get(george).getTotal());
+
+            Collection<?> potentialCustomers = session.getObjects(new ClassObjectFilter(PotentialCustomer.class));
+            Assert.assertEquals(1, potentialCustomers.size());
+            Assert.assertEquals("john", ((PotentialCustomer) potentialCustomers.iterator().next()).getCustomerName());
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    /**
+     * A flyweight only holds its store and its row, it inherits no fields
+     */
+    @Test
+    public void testFlyweightFields() {
+        int fields = 0;
+        for (Class<?> type = PurchaseFlyweight.class; type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    Assert.assertEquals(PurchaseFlyweight.class, field.getDeclaringClass());
+                    fields++;
+                }
+            }
+        }
+        Assert.assertEquals(2, fields);
+    }
+
+    /**
+     * The columns are written and bulk loaded into a store whose dictionary
+     * has different ids for the same names
+     */
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        OffHeapPurchaseStore store = new OffHeapPurchaseStore(new CustomerDictionary(), 16);
+        for (int i = 0; i < 1000; i++) {
+            int row = store.add("customer" + (i % 100), i, PaymentMethod.values()[i % 3]);
+            store.setDiscount(row, 0.05);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        store.writeTo(Channels.newChannel(bytes));
+
+        CustomerDictionary dictionary = new CustomerDictionary();
+        dictionary.getId("mary");
+        dictionary.getId("customer42");
+        OffHeapPurchaseStore loaded = new OffHeapPurchaseStore(dictionary, 16);
+        loaded.add("mary", 100, PaymentMethod.CASH);
+        Assert.assertEquals(1000, loaded.load(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))));
+
+        Assert.assertEquals(1001, loaded.size());
+        Assert.assertEquals(101, dictionary.size());
+        Assert.assertEquals("mary", loaded.getCustomerName(0));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(store.getCustomerName(i), loaded.getCustomerName(i + 1));
+            Assert.assertEquals(store.getSubtotal(i), loaded.getSubtotal(i + 1));
+            Assert.assertEquals(store.getPaymentMethod(i), loaded.getPaymentMethod(i + 1));
+            Assert.assertEquals(0.05, loaded.getDiscount(i + 1));
+        }
+    }
+}
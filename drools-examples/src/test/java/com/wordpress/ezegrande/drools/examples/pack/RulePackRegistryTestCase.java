@@ -0,0 +1,116 @@
+package com.wordpress.ezegrande.drools.examples.pack;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.partition.EntryPointLayout;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link RulePackRegistry}, with two packs: the simple
+ * package ('discount.drl' and 'potentialCustomer02.drl') and the partition
+ * package ('potentialCustomerEntryPoints.drl')
+ *
+ * @author ezegrande
+ */
+public class RulePackRegistryTestCase {
+    private Logger logger = LoggerFactory.getLogger(RulePackRegistryTestCase.class);
+
+    private static final String SIMPLE = "com.wordpress.ezegrande.drools.examples.simple";
+    private static final String PARTITION = "com.wordpress.ezegrande.drools.examples.partition";
+
+    private RulePackRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new RulePackRegistry();
+        registry.register(SIMPLE, "com/wordpress/ezegrande/drools/examples/simple/discount.drl",
+                "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl");
+        registry.register(PARTITION, EntryPointLayout.PARTITIONED.getDrlPath());
+    }
+
+    /**
+     * Only the requested pack is built, once, and it is built again after
+     * being unloaded
+     */
+    @Test
+    public void testLoadOnFirstUseAndUnload() {
+        Assert.assertTrue(registry.getLoadedPacks().isEmpty());
+
+        KieBase kbase = registry.getKieBase(SIMPLE);
+        Assert.assertSame(kbase, registry.getKieBase(SIMPLE));
+        Assert.assertEquals(1, registry.getBuildCount(SIMPLE));
+        Assert.assertTrue(registry.isLoaded(SIMPLE));
+        Assert.assertFalse(registry.isLoaded(PARTITION));
+        Assert.assertEquals(0.1, executeCreditPurchase(kbase));
+
+        Assert.assertTrue(registry.unload(SIMPLE));
+        Assert.assertFalse(registry.unload(SIMPLE));
+        Assert.assertFalse(registry.isLoaded(SIMPLE));
+        KieBase reloaded = registry.getKieBase(SIMPLE);
+        Assert.assertNotSame(kbase, reloaded);
+        Assert.assertEquals(2, registry.getBuildCount(SIMPLE));
+        Assert.assertEquals(0.1, executeCreditPurchase(reloaded));
+    }
+
+    /**
+     * The packs are built in the background
+     */
+    @Test
+    public void testWarmUp() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        registry.warmUp(executor);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        Assert.assertEquals(2, registry.getLoadedPacks().size());
+        Assert.assertEquals(1, registry.getBuildCount(PARTITION));
+        registry.getKieBase(PARTITION);
+        Assert.assertEquals(1, registry.getBuildCount(PARTITION));
+    }
+
+    /**
+     * Unknown and duplicated packs are rejected
+     */
+    @Test
+    public void testInvalidPacks() {
+        try {
+            registry.getKieBase("com.wordpress.ezegrande.unknown");
+            Assert.fail("The pack is not registered");
+        } catch (IllegalArgumentException e) {
+            logger.info("Expected error: " + e.getMessage());
+        }
+        try {
+            registry.register(SIMPLE, "com/wordpress/ezegrande/drools/examples/simple/discount.drl");
+            Assert.fail("The pack is already registered");
+        } catch (IllegalArgumentException e) {
+            logger.info("Expected error: " + e.getMessage());
+        }
+    }
+
+    private double executeCreditPurchase(KieBase kbase) {
+        KieSession session = kbase.newKieSession();
+        try {
+            session.setGlobal("logger", logger);
+            session.setGlobal("emailService", EmailService.getInstance());
+            Purchase purchase = new Purchase("george", 500, PaymentMethod.CREDIT);
+            session.insert(purchase);
+            session.fireAllRules();
+            return purchase.getDiscount();
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+}
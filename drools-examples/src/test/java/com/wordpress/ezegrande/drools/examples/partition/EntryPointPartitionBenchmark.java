@@ -0,0 +1,75 @@
+package com.wordpress.ezegrande.drools.examples.partition;
+
+import org.apache.log4j.Level;
+import org.kie.api.KieBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Benchmark of the throughput of the Potential Customer rules with each
+ * {@link EntryPointLayout}, in a single session and in
+ * {@link PartitionedSessions} fired in parallel. It is not a test case, run it
+ * from its main method.
+ *
+ * Arguments: purchases (default 400000), customers (default 100000) and the
+ * maximum number of partitions (default: the number of processors).
+ *
+ * @author ezegrande
+ */
+public class EntryPointPartitionBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(EntryPointPartitionBenchmark.class);
+
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    public static void main(String[] args) {
+        int purchases = args.length > 0 ? Integer.parseInt(args[0]) : 400000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int maxPartitions = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime()
+                .availableProcessors();
+        // The emails are not logged, so logging is not measured
+        org.apache.log4j.Logger.getLogger(EmailService.class).setLevel(Level.WARN);
+        Purchase[] input = new Purchase[purchases];
+        for (int i = 0; i < purchases; i++) {
+            input[i] = new Purchase("customer" + (i % customers), 100 + (i * 7) % 400, PAYMENT_METHODS[i % 3]);
+        }
+        for (EntryPointLayout layout : EntryPointLayout.values()) {
+            KieBase kbase = TestUtil.createKieBase(layout.getDrlPath());
+            // Warm up
+            run(kbase, layout, 1, input, purchases / 10, false);
+            for (int partitions = 1; partitions <= maxPartitions; partitions *= 2) {
+                run(kbase, layout, partitions, input, purchases, true);
+            }
+        }
+    }
+
+    private static void run(KieBase kbase, EntryPointLayout layout, int partitions, Purchase[] input, int count,
+            boolean log) {
+        PartitionedSessions sessions = new PartitionedSessions(kbase, layout, partitions);
+        sessions.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        sessions.setGlobal("emailService", EmailService.getInstance());
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sessions.insert(input[i]);
+            }
+            long insertNanos = System.nanoTime() - start;
+            int fired = sessions.fireAllRules();
+            long totalNanos = System.nanoTime() - start;
+            int potentialCustomers = sessions.getPotentialCustomers().size();
+            if (log) {
+                logger.info(layout + " | Partitions: " + partitions + " | Purchases: " + count + " | Insert: "
+                        + insertNanos / 1000000 + " ms | Insert and fire: " + totalNanos / 1000000
+                        + " ms | Throughput: " + (long) (count / (totalNanos / 1e9)) + " purchases/s | Fired: "
+                        + fired + " | Potential Customers: " + potentialCustomers);
+            }
+        } finally {
+            sessions.dispose();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.wordpress.ezegrande.drools.examples.partition;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+
+import org.drools.core.ClassObjectFilter;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link EntryPointLayout}s and the
+ * {@link PartitionedSessions}
+ *
+ * @author ezegrande
+ */
+public class EntryPointPartitionTestCase {
+    private Logger logger = LoggerFactory.getLogger(EntryPointPartitionTestCase.class);
+
+    /**
+     * The Purchases and the Potential Customers are kept in their own entry
+     * points
+     */
+    @Test
+    public void testPartitionedLayout() {
+        EntryPointLayout layout = EntryPointLayout.PARTITIONED;
+        KieSession session = TestUtil.createKieSession(layout.getDrlPath());
+        try {
+            session.setGlobal("logger", logger);
+            session.setGlobal("emailService", EmailService.getInstance());
+            layout.getPurchases(session).insert(new Purchase("john", 350, PaymentMethod.CASH));
+            layout.getPurchases(session).insert(new Purchase("john", 800, PaymentMethod.CASH));
+            layout.getPurchases(session).insert(new Purchase("mary", 500, PaymentMethod.CREDIT));
+            session.fireAllRules();
+
+            Assert.assertEquals(1, layout.getDerived(session).getFactCount());
+            Assert.assertEquals(3, layout.getPurchases(session).getFactCount());
+            // Nothing in the default entry point
+            Assert.assertEquals(0, session.getObjects(new ClassObjectFilter(PotentialCustomer.class)).size());
+            PotentialCustomer pc = (PotentialCustomer) layout.getDerived(session).getObjects().iterator().next();
+            Assert.assertEquals("john", pc.getCustomerName());
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    /**
+     * Every layout and number of partitions finds the same Potential Customers
+     */
+    @Test
+    public void testPartitionedSessions() {
+        Set<String> expected = null;
+        for (EntryPointLayout layout : EntryPointLayout.values()) {
+            for (int partitions = 1; partitions <= 4; partitions *= 2) {
+                PartitionedSessions sessions = new PartitionedSessions(TestUtil.createKieBase(layout.getDrlPath()),
+                        layout, partitions);
+                try {
+                    sessions.setGlobal("logger", logger);
+                    sessions.setGlobal("emailService", EmailService.getInstance());
+                    for (int i = 0; i < 1000; i++) {
+                        sessions.insert(new Purchase("customer" + (i % 100), (i * 7) % 500,
+                                PaymentMethod.values()[i % 3]));
+                    }
+                    Assert.assertTrue(sessions.fireAllRules() > 0);
+                    Set<String> names = new TreeSet<String>();
+                    for (PotentialCustomer pc : sessions.getPotentialCustomers()) {
+                        Assert.assertTrue(names.add(pc.getCustomerName()));
+                    }
+                    if (expected == null) {
+                        expected = names;
+                        Assert.assertFalse(expected.isEmpty());
+                    }
+                    Assert.assertEquals(expected, names);
+                } finally {
+                    sessions.dispose();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.wordpress.ezegrande.drools.examples.precompiled;
+
+import java.io.IOException;
+
+import org.apache.log4j.Level;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Benchmark of the {@link PrecompiledRulePacks} against building the DRL files
+ * ('discount.drl' and 'potentialCustomer02.drl') with a KieBuilder, as
+ * TestUtil does. It is not a test case, run it from its main method, with the
+ * pack generated by the build in the classpath. It measures:
+ * <ul>
+ * <li>Startup: the time to create the KieBase, from the DRL files or from the
+ * pack in the classpath
+ * <li>Steady state: the throughput of inserting the purchases and firing the
+ * rules
+ * </ul>
+ *
+ * Arguments: startup iterations (default 20), purchases (default 400000) and
+ * customers (default 100000).
+ *
+ * @author ezegrande
+ */
+public class PrecompiledRulePacksBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(PrecompiledRulePacksBenchmark.class);
+
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int purchases = args.length > 1 ? Integer.parseInt(args[1]) : 400000;
+        int customers = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        // The emails are not logged, so logging is not measured
+        org.apache.log4j.Logger.getLogger(EmailService.class).setLevel(Level.WARN);
+        String pack = PrecompiledRulePacksTestCase.PACK;
+
+        // Warm up
+        createFromDrl();
+        PrecompiledRulePacks.load(pack);
+
+        long start = System.nanoTime();
+        KieBase drlKieBase = null;
+        for (int i = 0; i < iterations; i++) {
+            drlKieBase = createFromDrl();
+        }
+        long drlNanos = (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        KieBase packKieBase = null;
+        for (int i = 0; i < iterations; i++) {
+            packKieBase = PrecompiledRulePacks.load(pack);
+        }
+        long packNanos = (System.nanoTime() - start) / iterations;
+        logger.info("Startup | DRL: " + drlNanos / 1000 + " us | Pack: " + packNanos / 1000 + " us | Speedup: "
+                + String.format("%.1f", (double) drlNanos / packNanos) + "x");
+
+        Purchase[] input = new Purchase[purchases];
+        for (int i = 0; i < purchases; i++) {
+            input[i] = new Purchase("customer" + (i % customers), 100 + (i * 7) % 400, PAYMENT_METHODS[i % 3]);
+        }
+        // Warm up, the constraints are compiled to bytecode by then
+        run("DRL", drlKieBase, input, purchases / 10, false);
+        run("Pack", packKieBase, input, purchases / 10, false);
+        run("DRL", drlKieBase, input, purchases, true);
+        run("Pack", packKieBase, input, purchases, true);
+    }
+
+    private static KieBase createFromDrl() {
+        return TestUtil.createKieBase(PrecompiledRulePacksTestCase.DISCOUNT_DRL,
+                PrecompiledRulePacksTestCase.POTENTIAL_CUSTOMER_DRL);
+    }
+
+    private static void run(String name, KieBase kbase, Purchase[] input, int count, boolean log) {
+        KieSession session = kbase.newKieSession();
+        session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        session.setGlobal("emailService", EmailService.getInstance());
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                session.insert(input[i]);
+            }
+            int fired = session.fireAllRules();
+            long nanos = System.nanoTime() - start;
+            if (log) {
+                logger.info(name + " | Purchases: " + count + " | Insert and fire: " + nanos / 1000000
+                        + " ms | Throughput: " + (long) (count / (nanos / 1e9)) + " purchases/s | Fired: " + fired);
+            }
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.wordpress.ezegrande.drools.examples.precompiled;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+import junit.framework.Assert;
+
+import org.drools.core.ClassObjectFilter;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link PrecompiledRulePacks}: a pack with
+ * 'discount.drl' and 'potentialCustomer02.drl' must give the same results as
+ * the DRL files. The build generates it in the classpath ({@link #PACK}).
+ *
+ * @author ezegrande
+ */
+public class PrecompiledRulePacksTestCase {
+    private Logger logger = LoggerFactory.getLogger(PrecompiledRulePacksTestCase.class);
+
+    static final String DISCOUNT_DRL = "com/wordpress/ezegrande/drools/examples/simple/discount.drl";
+    static final String POTENTIAL_CUSTOMER_DRL = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    static final String PACK = "com/wordpress/ezegrande/drools/examples/precompiled/purchases.pack";
+
+    /**
+     * The rules of the pack generated by the build are applied as the rules of
+     * the DRL files
+     */
+    @Test
+    public void testBuildPack() throws IOException {
+        assertRules(PrecompiledRulePacks.load(PACK));
+    }
+
+    /**
+     * A pack generated in memory gives the same results
+     */
+    @Test
+    public void testGenerateAndLoad() throws IOException {
+        assertRules(PrecompiledRulePacks.load(new ByteArrayInputStream(generate())));
+    }
+
+    /**
+     * A pack can not be generated from missing DRL files, nor loaded from a
+     * missing resource
+     */
+    @Test
+    public void testGenerateMissingDrl() throws IOException {
+        try {
+            PrecompiledRulePacks.generate(new ByteArrayOutputStream(), "missing.drl");
+            Assert.fail("The DRL file does not exist");
+        } catch (IOException e) {
+            logger.info("Expected error: " + e.getMessage());
+        }
+        try {
+            PrecompiledRulePacks.load("missing.pack");
+            Assert.fail("The pack does not exist");
+        } catch (IOException e) {
+            logger.info("Expected error: " + e.getMessage());
+        }
+    }
+
+    private void assertRules(KieBase kbase) {
+        Assert.assertNotNull(kbase.getRule("com.wordpress.ezegrande.drools.examples.simple",
+                "Identify potential customers"));
+
+        KieSession session = kbase.newKieSession();
+        try {
+            session.setGlobal("logger", logger);
+            session.setGlobal("emailService", EmailService.getInstance());
+            Purchase credit = new Purchase("george", 500, PaymentMethod.CREDIT);
+            Purchase debit = new Purchase("peter", 100, PaymentMethod.DEBIT);
+            Purchase cash = new Purchase("john", 450, PaymentMethod.CASH);
+            TestUtil.insertAll(session, credit, debit, cash);
+            session.fireAllRules();
+
+            Assert.assertEquals(0.1, credit.getDiscount());
+            Assert.assertEquals(0.05, debit.getDiscount());
+            Collection<?> potentialCustomers = session.getObjects(new ClassObjectFilter(PotentialCustomer.class));
+            Assert.assertEquals(1, potentialCustomers.size());
+            Assert.assertEquals("john", ((PotentialCustomer) potentialCustomers.iterator().next()).getCustomerName());
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    static byte[] generate() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrecompiledRulePacks.generate(out, DISCOUNT_DRL, POTENTIAL_CUSTOMER_DRL);
+        return out.toByteArray();
+    }
+}
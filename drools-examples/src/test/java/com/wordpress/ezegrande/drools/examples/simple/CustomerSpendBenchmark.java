@@ -0,0 +1,93 @@
+package com.wordpress.ezegrande.drools.examples.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.core.ClassObjectFilter;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.CustomerSpend;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Benchmark of the rules of 'customerSpend.drl'. It is not a test case, run it
+ * from its main method. Cash Purchases are inserted in batches, firing the
+ * rules after each batch, and then the first 10% of them are deleted. It
+ * measures:
+ * <ul>
+ * <li>Purchases per second of the first and the last 10% of the inserts. If
+ * the aggregation is incremental both are similar, even if the Customers have
+ * more Purchases at the end.
+ * <li>Deleted Purchases per second
+ * </ul>
+ *
+ * Arguments: purchases (default 10000000) and customers (default 1000000).
+ * The default values need a heap of around 8 GB.
+ *
+ * @author ezegrande
+ */
+public class CustomerSpendBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(CustomerSpendBenchmark.class);
+
+    private static final String DRL_PATH = "com/wordpress/ezegrande/drools/examples/simple/customerSpend.drl";
+    private static final int BATCH_SIZE = 10000;
+
+    public static void main(String[] args) {
+        int purchases = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        KieSession session = TestUtil.createKieSession(DRL_PATH);
+        try {
+            int tenth = Math.max(purchases / 10, 1);
+            List<FactHandle> deleted = new ArrayList<FactHandle>(tenth);
+            long firstTenthNanos = 0;
+            long lastTenthNanos = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < purchases; i++) {
+                FactHandle factHandle = session.insert(new Purchase("customer" + (i % customers),
+                        100 + (i * 7) % 400, PaymentMethod.CASH));
+                if (i < tenth) {
+                    deleted.add(factHandle);
+                }
+                if ((i + 1) % BATCH_SIZE == 0 || i == purchases - 1) {
+                    session.fireAllRules();
+                }
+                if (i == tenth - 1) {
+                    firstTenthNanos = System.nanoTime() - start;
+                }
+                if (i == purchases - tenth - 1) {
+                    lastTenthNanos = System.nanoTime();
+                }
+            }
+            long end = System.nanoTime();
+            lastTenthNanos = end - lastTenthNanos;
+            logger.info("Purchases: " + purchases + " | Customers: " + customers + " | Total: "
+                    + (end - start) / 1000000 + " ms | First 10%: " + perSecond(tenth, firstTenthNanos)
+                    + " purchases/s | Last 10%: " + perSecond(tenth, lastTenthNanos) + " purchases/s");
+
+            start = System.nanoTime();
+            for (int i = 0; i < deleted.size(); i++) {
+                session.delete(deleted.get(i));
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    session.fireAllRules();
+                }
+            }
+            session.fireAllRules();
+            long deleteNanos = System.nanoTime() - start;
+            logger.info("Deleted: " + deleted.size() + " | " + perSecond(deleted.size(), deleteNanos)
+                    + " purchases/s | Customer Spends: "
+                    + session.getFactHandles(new ClassObjectFilter(CustomerSpend.class)).size());
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    private static long perSecond(int purchases, long nanos) {
+        return purchases * 1000000000L / Math.max(nanos, 1);
+    }
+}
@@ -0,0 +1,93 @@
+package com.wordpress.ezegrande.drools.examples.simple;
+
+import java.util.Collection;
+
+import junit.framework.Assert;
+
+import org.drools.core.ClassObjectFilter;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.CustomerSpend;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+
+/**
+ * Tests cases for the Business Rules included in the file
+ * 'customerSpend.drl', which aggregate the total Cash spend of each Customer
+ * and identify Potential Customers based on it.
+ *
+ * @author ezegrande
+ */
+public class CustomerSpendRulesTestCase {
+    private Logger logger = LoggerFactory.getLogger(CustomerSpendRulesTestCase.class);
+
+    private static final String DRL_PATH = "com/wordpress/ezegrande/drools/examples/simple/customerSpend.drl";
+
+    /**
+     * Inserts the following Purchases into the Working Memory:
+     * <ul>
+     * <li>Customer 'john' spends $150 in Cash
+     * <li>Customer 'mary' spends $250 in Cash
+     * <li>Customer 'john' spends $200 in Cash
+     * <li>Customer 'john' spends $500 in Credit Card
+     * </ul>
+     *
+     * No single Purchase is over $300, but 'john' spends $350 in Cash, so he is
+     * a Potential Customer. Deleting one of his Purchases updates the total and
+     * retracts the Potential Customer, and deleting the other one removes the
+     * Customer Spend.
+     */
+    @Test
+    public void testCustomerSpend() {
+        logger.info("Starting @Test testCustomerSpend()");
+        KieSession session = TestUtil.createKieSession(DRL_PATH);
+
+        FactHandle john1 = session.insert(new Purchase("john", 150, PaymentMethod.CASH));
+        session.insert(new Purchase("mary", 250, PaymentMethod.CASH));
+        FactHandle john2 = session.insert(new Purchase("john", 200, PaymentMethod.CASH));
+        session.insert(new Purchase("john", 500, PaymentMethod.CREDIT));
+        session.fireAllRules();
+
+        CustomerSpend john = getCustomerSpend(session, "john");
+        Assert.assertEquals(350d, john.getTotal());
+        Assert.assertEquals(2, john.getPurchaseCount());
+        Assert.assertEquals(250d, getCustomerSpend(session, "mary").getTotal());
+
+        Collection<?> potentialCustomers = session.getObjects(new ClassObjectFilter(PotentialCustomer.class));
+        Assert.assertEquals(1, potentialCustomers.size());
+        Assert.assertEquals(new PotentialCustomer("john", 280), potentialCustomers.iterator().next());
+
+        // The total is updated and the Potential Customer is retracted
+        session.delete(john2);
+        session.fireAllRules();
+        Assert.assertEquals(150d, john.getTotal());
+        Assert.assertEquals(1, john.getPurchaseCount());
+        Assert.assertEquals(0, session.getObjects(new ClassObjectFilter(PotentialCustomer.class)).size());
+
+        // Without Cash Purchases the Customer Spend is removed
+        session.delete(john1);
+        session.fireAllRules();
+        Assert.assertNull(getCustomerSpend(session, "john"));
+        Assert.assertEquals(1, session.getObjects(new ClassObjectFilter(CustomerSpend.class)).size());
+
+        // Release resources
+        session.dispose();
+        logger.info("===> End of test <===\n");
+    }
+
+    private CustomerSpend getCustomerSpend(KieSession session, String customerName) {
+        for (Object object : session.getObjects(new ClassObjectFilter(CustomerSpend.class))) {
+            CustomerSpend customerSpend = (CustomerSpend) object;
+            if (customerSpend.getCustomerName().equals(customerName)) {
+                return customerSpend;
+            }
+        }
+        return null;
+    }
+}
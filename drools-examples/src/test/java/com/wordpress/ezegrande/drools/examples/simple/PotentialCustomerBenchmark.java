@@ -0,0 +1,106 @@
+package com.wordpress.ezegrande.drools.examples.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.core.ClassObjectFilter;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Benchmark of the rules that identify Potential Customers with a 'not'
+ * pattern ('potentialCustomer02.drl') against the ones that use logical
+ * insertions ('potentialCustomer03.drl'). It is not a test case, run it from
+ * its main method. For each DRL file it measures:
+ * <ul>
+ * <li>Time to insert the Purchases and fire the rules
+ * <li>Heap used by the session after firing the rules
+ * <li>Time to delete the first half of the Purchases and fire the rules
+ * <li>Potential Customers left in the session, stale ones included
+ * </ul>
+ *
+ * It runs with the Purchases spread evenly between the customers, and skewed:
+ * half of the Purchases belong to {@value #HEAVY_CUSTOMERS} customers, so the
+ * cost per customer of the rules shows up.
+ *
+ * Arguments: purchases (default 200000) and customers (default 50000).
+ *
+ * @author ezegrande
+ */
+public class PotentialCustomerBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(PotentialCustomerBenchmark.class);
+
+    private static final String DRL02_PATH = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    private static final String DRL03_PATH = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer03.drl";
+    private static final PaymentMethod[] PAYMENT_METHODS = PaymentMethod.values();
+    private static final int HEAVY_CUSTOMERS = 10;
+
+    public static void main(String[] args) {
+        int purchases = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        // Warm up
+        run(DRL02_PATH, purchases / 10, customers / 10, false);
+        run(DRL03_PATH, purchases / 10, customers / 10, false);
+
+        run(DRL02_PATH, purchases, customers, false);
+        run(DRL03_PATH, purchases, customers, false);
+        run(DRL02_PATH, purchases, customers, true);
+        run(DRL03_PATH, purchases, customers, true);
+    }
+
+    private static void run(String drlPath, int purchases, int customers, boolean skewed) {
+        long baseline = usedMemory();
+        KieSession session = TestUtil.createKieSession(drlPath);
+        session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        session.setGlobal("emailService", EmailService.getInstance());
+        try {
+            List<FactHandle> factHandles = new ArrayList<FactHandle>(purchases);
+            long start = System.nanoTime();
+            for (int i = 0; i < purchases; i++) {
+                int customer = skewed && i % 2 == 0 ? (i / 2) % HEAVY_CUSTOMERS : i % customers;
+                factHandles.add(session.insert(new Purchase("customer" + customer, 100 + (i * 7) % 400,
+                        PAYMENT_METHODS[i % 3])));
+            }
+            session.fireAllRules();
+            long insertMillis = (System.nanoTime() - start) / 1000000;
+            long memory = usedMemory() - baseline;
+            int potentialCustomers = countPotentialCustomers(session);
+
+            start = System.nanoTime();
+            for (int i = 0; i < purchases / 2; i++) {
+                session.delete(factHandles.get(i));
+            }
+            session.fireAllRules();
+            long deleteMillis = (System.nanoTime() - start) / 1000000;
+
+            logger.info(drlPath.substring(drlPath.lastIndexOf('/') + 1) + " | Purchases: " + purchases
+                    + " | Customers: " + customers + (skewed ? " (skewed)" : "") + " | Insert and fire: " + insertMillis + " ms | Memory: "
+                    + memory / 1024 + " KB | Potential Customers: " + potentialCustomers + " | Delete and fire: "
+                    + deleteMillis + " ms | Potential Customers after delete: "
+                    + countPotentialCustomers(session));
+        } finally {
+            TestUtil.dispose(session);
+        }
+    }
+
+    private static int countPotentialCustomers(KieSession session) {
+        return session.getFactHandles(new ClassObjectFilter(PotentialCustomer.class)).size();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
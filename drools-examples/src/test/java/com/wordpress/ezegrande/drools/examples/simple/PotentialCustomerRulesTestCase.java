@@ -1,17 +1,23 @@
 package com.wordpress.ezegrande.drools.examples.simple;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import junit.framework.Assert;
 
 import org.drools.core.ClassObjectFilter;
 import org.drools.core.common.DefaultFactHandle;
 import org.junit.Test;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
 import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.StatelessKieSession;
 import org.kie.api.runtime.rule.FactHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
 
 import com.wordpress.ezegrande.drools.examples.TestUtil;
 import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
@@ -45,7 +51,8 @@ import com.wordpress.ezegrande.drools.examples.service.EmailService;
  * 'potentialCustomer01.drl' since the rule that identifies Potential
  * Customers will be fired for each Cash Purchase > $300. Because of this, we
  * might have more than one PotentialCustomer object for a same Customer. The
- * fix for this is shown in 'potentialCustomer02.drl'
+ * fix for this is shown in 'potentialCustomer02.drl', and
+ * 'potentialCustomer03.drl' does the same using logical insertions
  * 
  * @author ezegrande
  */
@@ -54,6 +61,7 @@ public class PotentialCustomerRulesTestCase {
 
     private static final String DRL01_PATH = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer01.drl";
     private static final String DRL02_PATH = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl";
+    private static final String DRL03_PATH = "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer03.drl";
 
     /**
      * Tests the Rule 'Identify potential customers' of the DRL file
@@ -241,4 +249,89 @@ public class PotentialCustomerRulesTestCase {
        logger.info("===> End of test <===\n");
     }
 
+    /**
+     * Tests the Rule 'Identify potential customers' of the DRL file
+     * 'potentialCustomer03.drl', which inserts the Potential Customers
+     * logically:
+     * <ul>
+     * <li>Customer 'john' spends $350 in Cash
+     * <li>Customer 'mary' spends $250 in Cash
+     * <li>Customer 'john' spends $400 in Cash
+     * </ul>
+     * 
+     * Both Purchases of 'john' justify only one "PotentialCustomer" object,
+     * with a credit limit based on the biggest one. Deleting the biggest
+     * Purchase recalculates the credit limit, and deleting both Purchases
+     * retracts the Potential Customer.
+     */
+    @Test
+    public void testIdentifyPotentialCustomer_Logical_Insertion() {
+        logger.info("Starting @Test testIdentifyPotentialCustomer_Logical_Insertion()");
+        // Create the Stateful Session
+        KieSession session = TestUtil.createKieSession(DRL03_PATH);
+        session.setGlobal("logger", logger);
+        session.setGlobal("emailService", EmailService.getInstance());
+
+        FactHandle john1 = session.insert(new Purchase("john", 350, PaymentMethod.CASH));
+        session.insert(new Purchase("mary", 250, PaymentMethod.CASH));
+        FactHandle john2 = session.insert(new Purchase("john", 400, PaymentMethod.CASH));
+        session.fireAllRules();
+
+        Collection<FactHandle> factHandles = session.getFactHandles(new ClassObjectFilter(PotentialCustomer.class));
+        Assert.assertEquals(1, factHandles.size());
+        PotentialCustomer pc = (PotentialCustomer) ((DefaultFactHandle) factHandles.iterator().next()).getObject();
+        Assert.assertEquals(new PotentialCustomer("john", 320), pc);
+
+        // The credit limit is recalculated with the remaining Purchase
+        session.delete(john2);
+        session.fireAllRules();
+        factHandles = session.getFactHandles(new ClassObjectFilter(PotentialCustomer.class));
+        Assert.assertEquals(1, factHandles.size());
+        pc = (PotentialCustomer) ((DefaultFactHandle) factHandles.iterator().next()).getObject();
+        Assert.assertEquals(new PotentialCustomer("john", 280), pc);
+
+        // Without justifications the Potential Customer is retracted
+        session.delete(john1);
+        session.fireAllRules();
+        factHandles = session.getFactHandles(new ClassObjectFilter(PotentialCustomer.class));
+        Assert.assertEquals(0, factHandles.size());
+
+        // Release resources
+        session.dispose();
+        logger.info("===> End of test <===\n");
+    }
+
+    /**
+     * Tests that the Rule 'Identify potential customers' of the DRL file
+     * 'potentialCustomer03.drl' fires once per Customer, not once per
+     * Purchase: 'john' spends 50 times more than $300 in Cash
+     */
+    @Test
+    public void testIdentifyPotentialCustomer_Logical_Insertion_Once_Per_Customer() {
+        logger.info("Starting @Test testIdentifyPotentialCustomer_Logical_Insertion_Once_Per_Customer()");
+        KieSession session = TestUtil.createKieSession(DRL03_PATH);
+        session.setGlobal("logger", NOPLogger.NOP_LOGGER);
+        session.setGlobal("emailService", EmailService.getInstance());
+        final List<String> fired = new ArrayList<String>();
+        session.addEventListener(new DefaultAgendaEventListener() {
+            public void afterMatchFired(AfterMatchFiredEvent event) {
+                fired.add(event.getMatch().getRule().getName());
+            }
+        });
+
+        for (int i = 0; i < 50; i++) {
+            session.insert(new Purchase("john", 301 + i, PaymentMethod.CASH));
+        }
+        session.fireAllRules();
+
+        Assert.assertEquals(1, Collections.frequency(fired, "Identify potential customers"));
+        Collection<FactHandle> factHandles = session.getFactHandles(new ClassObjectFilter(PotentialCustomer.class));
+        Assert.assertEquals(1, factHandles.size());
+        PotentialCustomer pc = (PotentialCustomer) ((DefaultFactHandle) factHandles.iterator().next()).getObject();
+        Assert.assertEquals(new PotentialCustomer("john", 350 * 0.80), pc);
+
+        session.dispose();
+        logger.info("===> End of test <===\n");
+    }
+
 }
@@ -0,0 +1,192 @@
+package com.wordpress.ezegrande.drools.examples.snapshot;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import com.wordpress.ezegrande.drools.examples.TestUtil;
+import com.wordpress.ezegrande.drools.examples.model.PaymentMethod;
+import com.wordpress.ezegrande.drools.examples.model.PotentialCustomer;
+import com.wordpress.ezegrande.drools.examples.model.Purchase;
+import com.wordpress.ezegrande.drools.examples.service.EmailService;
+
+/**
+ * Tests cases for the {@link SnapshotSession}, with the rules of
+ * 'discount.drl' and 'potentialCustomer02.drl'
+ *
+ * @author ezegrande
+ */
+public class SnapshotSessionTestCase {
+    private static final FactCopier<Purchase> PURCHASE_COPIER = new FactCopier<Purchase>() {
+        public Purchase copy(Purchase fact) {
+            Purchase copy = new Purchase(fact.getCustomerName(), fact.getSubtotal(), fact.getPaymentMethod());
+            copy.setDiscount(fact.getDiscount());
+            return copy;
+        }
+    };
+    private static final FactCopier<PotentialCustomer> POTENTIAL_CUSTOMER_COPIER = new FactCopier<PotentialCustomer>() {
+        public PotentialCustomer copy(PotentialCustomer fact) {
+            return new PotentialCustomer(fact.getCustomerName(), fact.getCreditLimit());
+        }
+    };
+
+    private SnapshotSession session;
+
+    @Before
+    public void setUp() {
+        org.apache.log4j.Logger.getLogger(EmailService.class).setLevel(Level.WARN);
+        session = new SnapshotSession(TestUtil.createKieSession(
+                "com/wordpress/ezegrande/drools/examples/simple/discount.drl",
+                "com/wordpress/ezegrande/drools/examples/simple/potentialCustomer02.drl"));
+        session.getSession().setGlobal("logger", NOPLogger.NOP_LOGGER);
+        session.getSession().setGlobal("emailService", EmailService.getInstance());
+    }
+
+    @After
+    public void tearDown() {
+        session.dispose();
+    }
+
+    /**
+     * A snapshot does not change after it is published, and the types that
+     * did not change are shared with the next snapshot
+     */
+    @Test
+    public void testVersions() {
+        Purchase john = new Purchase("john", 400, PaymentMethod.CASH);
+        session.insert(john);
+        session.track(Purchase.class, PURCHASE_COPIER);
+        session.track(PotentialCustomer.class, POTENTIAL_CUSTOMER_COPIER);
+        Assert.assertEquals(0, session.getSnapshot().getVersion());
+
+        session.fireAllRules();
+        FactSnapshot first = session.getSnapshot();
+        Assert.assertEquals(1, first.getVersion());
+        Assert.assertEquals(1, first.count(Purchase.class));
+        List<PotentialCustomer> customers = first.getFacts(PotentialCustomer.class);
+        Assert.assertEquals(1, customers.size());
+        Assert.assertEquals("john", customers.get(0).getCustomerName());
+        Assert.assertEquals(320.0, customers.get(0).getCreditLimit());
+
+        // The snapshot does not see the changes made to the facts later
+        john.setSubtotal(100);
+        Assert.assertEquals(400.0, first.getFacts(Purchase.class).get(0).getSubtotal());
+        john.setSubtotal(400);
+
+        // Nothing changed, no new version
+        session.fireAllRules();
+        Assert.assertSame(first, session.getSnapshot());
+
+        // A purchase that does not create a Potential Customer
+        session.insert(new Purchase("mary", 100, PaymentMethod.CREDIT));
+        session.fireAllRules();
+        FactSnapshot second = session.getSnapshot();
+        Assert.assertEquals(2, second.getVersion());
+        Assert.assertEquals(1, first.count(Purchase.class));
+        Assert.assertEquals(2, second.count(Purchase.class));
+        Assert.assertSame(customers, second.getFacts(PotentialCustomer.class));
+
+        session.insert(new Purchase("peter", 1000, PaymentMethod.CASH));
+        session.fireAllRules();
+        FactSnapshot third = session.getSnapshot();
+        Assert.assertEquals(2, third.count(PotentialCustomer.class));
+        Assert.assertEquals(1, third.select(PotentialCustomer.class, new FactFilter<PotentialCustomer>() {
+            public boolean accept(PotentialCustomer fact) {
+                return fact.getCreditLimit() > 500;
+            }
+        }).size());
+        // The copy of the first Potential Customer is reused
+        Assert.assertSame(customers.get(0), third.getFacts(PotentialCustomer.class).get(0));
+        Assert.assertEquals(1, customers.size());
+        try {
+            third.getFacts(String.class);
+            Assert.fail("String is not tracked");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            session.track(String.class, null);
+            Assert.fail("The facts must be copied");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * The readers query the snapshots while the engine keeps firing, and
+     * every snapshot has exactly one Potential Customer for each customer with
+     * a cash purchase over $300
+     */
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        session.track(Purchase.class, PURCHASE_COPIER);
+        session.track(PotentialCustomer.class, POTENTIAL_CUSTOMER_COPIER);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicReference<String> error = new AtomicReference<String>();
+        int readers = 4;
+        final CountDownLatch done = new CountDownLatch(readers);
+        for (int i = 0; i < readers; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        long lastVersion = 0;
+                        while (running.get() && error.get() == null) {
+                            FactSnapshot snapshot = session.getSnapshot();
+                            if (snapshot.getVersion() < lastVersion) {
+                                error.set("Version went back: " + snapshot.getVersion() + " < " + lastVersion);
+                            }
+                            lastVersion = snapshot.getVersion();
+                            if (lastVersion > 0) {
+                                check(snapshot, error);
+                            }
+                            reads.incrementAndGet();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        for (int i = 0; i < 500; i++) {
+            session.insert(new Purchase("customer" + (i % 50), 100 + i, i % 3 == 0 ? PaymentMethod.CASH
+                    : PaymentMethod.DEBIT));
+            session.fireAllRules();
+        }
+        running.set(false);
+        done.await();
+        Assert.assertNull(error.get(), error.get());
+        Assert.assertTrue(reads.get() > 0);
+        Assert.assertEquals(500, session.getSnapshot().count(Purchase.class));
+        check(session.getSnapshot(), error);
+        Assert.assertNull(error.get(), error.get());
+    }
+
+    private static void check(FactSnapshot snapshot, AtomicReference<String> error) {
+        Set<String> expected = new HashSet<String>();
+        for (Purchase purchase : snapshot.getFacts(Purchase.class)) {
+            if (purchase.getPaymentMethod() == PaymentMethod.CASH && purchase.getSubtotal() > 300) {
+                expected.add(purchase.getCustomerName());
+            }
+        }
+        Set<String> found = new HashSet<String>();
+        for (PotentialCustomer customer : snapshot.getFacts(PotentialCustomer.class)) {
+            found.add(customer.getCustomerName());
+        }
+        if (!expected.equals(found) || found.size() != snapshot.count(PotentialCustomer.class)) {
+            error.set("Inconsistent " + snapshot + ": expected " + expected + ", found " + found);
+        }
+    }
+}